@@ -0,0 +1,89 @@
+package org.drmit.shortestpath.benchmarks;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.infrastructure.repository.neo4j.Neo4jBatchImporter;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.kernel.impl.util.FileUtils;
+
+/**
+ * Throwaway Neo4j store holding the network a benchmark runs on. The legs are
+ * loaded offline through the batch importer, which keeps the set up of large
+ * networks short, and the store is deleted when closed.
+ *
+ * @author Leandro Ferreira
+ */
+public final class BenchmarkStore implements Closeable {
+
+	/** Name of the network the legs are loaded into. */
+	public static final String NETWORK = "Benchmark";
+
+	/** Store directory. */
+	private final File storeDir;
+
+	/** Embedded database opened on the store. */
+	private final GraphDatabaseService graphDatabase;
+
+	/**
+	 * Constructs a BenchmarkStore object.
+	 *
+	 * @param storeDir
+	 *            the store directory.
+	 */
+	private BenchmarkStore(File storeDir) {
+		this.storeDir = storeDir;
+		this.graphDatabase = new GraphDatabaseFactory()
+				.newEmbeddedDatabase(storeDir.getAbsolutePath());
+	}
+
+	/**
+	 * Creates a store in a temporary directory holding the given legs.
+	 *
+	 * @param legs
+	 *            the legs of the network, possibly empty.
+	 * @return the store, opened.
+	 * @throws IOException
+	 *             if the temporary directory could not be created.
+	 */
+	public static BenchmarkStore create(List<Leg> legs) throws IOException {
+		final File storeDir = File.createTempFile("logistica-benchmark", "");
+		if (!storeDir.delete() || !storeDir.mkdir()) {
+			throw new IOException("Could not create " + storeDir);
+		}
+
+		final Neo4jBatchImporter importer = new Neo4jBatchImporter(
+				storeDir.getAbsolutePath());
+		try {
+			importer.importLegs(NETWORK, legs.iterator());
+		} finally {
+			importer.close();
+		}
+		return new BenchmarkStore(storeDir);
+	}
+
+	/**
+	 * Gets the embedded database opened on the store.
+	 *
+	 * @return the graph database.
+	 */
+	public GraphDatabaseService getGraphDatabase() {
+		return graphDatabase;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		graphDatabase.shutdown();
+		FileUtils.deleteRecursively(storeDir);
+	}
+
+}
@@ -0,0 +1,73 @@
+package org.drmit.shortestpath.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.presentation.converter.LogisticsNetworkConverter;
+import org.drmit.shortestpath.presentation.converter.impl.DefaultLogisticsNetworkConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures DefaultLogisticsNetworkConverter.parseLegs on the text format
+ * posted to the REST API.
+ *
+ * @author Leandro Ferreira
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ParseLegsBenchmark {
+
+	/** Network shape. */
+	@Param({ "ROAD" })
+	private SyntheticNetwork network;
+
+	/** Number of legs of the network. */
+	@Param({ "1000", "10000", "100000" })
+	private int legs;
+
+	/** Converter under measurement. */
+	private final LogisticsNetworkConverter converter = new DefaultLogisticsNetworkConverter();
+
+	/** Network in the text format. */
+	private String lexicalLegs;
+
+	/**
+	 * Generates the network and formats it.
+	 */
+	@Setup
+	public void setUp() {
+		final StringBuilder builder = new StringBuilder();
+		for (Leg leg : network.generate(legs, 42)) {
+			builder.append(leg.getOrigin()).append(' ')
+					.append(leg.getDestination()).append(' ')
+					.append((long) leg.getDistance()).append('\n');
+		}
+		lexicalLegs = builder.toString();
+	}
+
+	/**
+	 * Parses the whole network.
+	 *
+	 * @return the legs parsed.
+	 */
+	@Benchmark
+	public List<Leg> parseLegs() {
+		return converter.parseLegs(lexicalLegs);
+	}
+
+}
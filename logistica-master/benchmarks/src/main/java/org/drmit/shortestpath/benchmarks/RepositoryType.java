@@ -0,0 +1,99 @@
+package org.drmit.shortestpath.benchmarks;
+
+import org.drmit.shortestpath.infrastructure.repository.RepositoryExeption;
+import org.drmit.shortestpath.infrastructure.repository.RouteRepository;
+import org.drmit.shortestpath.infrastructure.repository.cache.CachingRouteRepository;
+import org.drmit.shortestpath.infrastructure.repository.cache.EvictionPolicy;
+import org.drmit.shortestpath.infrastructure.repository.memory.AltInMemoryRouteRepository;
+import org.drmit.shortestpath.infrastructure.repository.memory.ContractionHierarchyInMemoryRouteRepository;
+import org.drmit.shortestpath.infrastructure.repository.memory.DijkstraInMemoryRouteRepository;
+import org.drmit.shortestpath.infrastructure.repository.neo4j.AStarNeo4jRouteRepository;
+import org.drmit.shortestpath.infrastructure.repository.neo4j.BidirectionalDijkstraNeo4jRouteRepository;
+import org.drmit.shortestpath.infrastructure.repository.neo4j.DijkstraNeo4jRouteRepository;
+import org.neo4j.graphdb.GraphDatabaseService;
+
+/**
+ * Route repository implementations the benchmarks compare.
+ *
+ * @author Leandro Ferreira
+ */
+public enum RepositoryType {
+
+	/** Dijkstra search running on the Neo4j store. */
+	NEO4J_DIJKSTRA {
+		@Override
+		RouteRepository open(GraphDatabaseService graphDatabase) {
+			return new DijkstraNeo4jRouteRepository(graphDatabase);
+		}
+	},
+
+	/** Bidirectional Dijkstra search running on the Neo4j store. */
+	NEO4J_BIDIRECTIONAL_DIJKSTRA {
+		@Override
+		RouteRepository open(GraphDatabaseService graphDatabase) {
+			return new BidirectionalDijkstraNeo4jRouteRepository(graphDatabase);
+		}
+	},
+
+	/** A* search running on the Neo4j store, without coordinates. */
+	NEO4J_A_STAR {
+		@Override
+		RouteRepository open(GraphDatabaseService graphDatabase) {
+			return new AStarNeo4jRouteRepository(graphDatabase);
+		}
+	},
+
+	/** Dijkstra search running on the in-memory graph. */
+	IN_MEMORY_DIJKSTRA {
+		@Override
+		RouteRepository open(GraphDatabaseService graphDatabase)
+				throws RepositoryExeption {
+			return new DijkstraInMemoryRouteRepository(
+					new DijkstraNeo4jRouteRepository(graphDatabase));
+		}
+	},
+
+	/** A* search guided by landmarks running on the in-memory graph. */
+	IN_MEMORY_ALT {
+		@Override
+		RouteRepository open(GraphDatabaseService graphDatabase)
+				throws RepositoryExeption {
+			return new AltInMemoryRouteRepository(
+					new DijkstraNeo4jRouteRepository(graphDatabase));
+		}
+	},
+
+	/** Contraction hierarchy search running on the in-memory graph. */
+	CONTRACTION_HIERARCHY {
+		@Override
+		RouteRepository open(GraphDatabaseService graphDatabase)
+				throws RepositoryExeption {
+			return new ContractionHierarchyInMemoryRouteRepository(
+					new DijkstraNeo4jRouteRepository(graphDatabase));
+		}
+	},
+
+	/** Route cache in front of the contraction hierarchy, as deployed. */
+	CACHED_CONTRACTION_HIERARCHY {
+		@Override
+		RouteRepository open(GraphDatabaseService graphDatabase)
+				throws RepositoryExeption {
+			return new CachingRouteRepository(
+					CONTRACTION_HIERARCHY.open(graphDatabase), 10000,
+					EvictionPolicy.LRU);
+		}
+	};
+
+	/**
+	 * Opens a route repository of this type on the given database.
+	 *
+	 * @param graphDatabase
+	 *            the graph database.
+	 * @return the route repository.
+	 * @throws RepositoryExeption
+	 *             if the repository could not be loaded.
+	 */
+	abstract RouteRepository open(GraphDatabaseService graphDatabase)
+			throws RepositoryExeption;
+
+}
@@ -0,0 +1,75 @@
+package org.drmit.shortestpath.benchmarks;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.drmit.shortestpath.domain.model.Leg;
+
+/**
+ * Random origin and destination pairs drawn from a network, so that every
+ * invocation of a benchmark searches a different route.
+ *
+ * @author Leandro Ferreira
+ */
+final class RoutePairs {
+
+	/** Number of pairs drawn. */
+	private static final int PAIR_COUNT = 1024;
+
+	/** Pair origins. */
+	private final String[] origins = new String[PAIR_COUNT];
+
+	/** Pair destinations. */
+	private final String[] destinations = new String[PAIR_COUNT];
+
+	/**
+	 * Constructs a RoutePairs object, drawing the pairs from the locations of
+	 * the network.
+	 *
+	 * @param legs
+	 *            the legs of the network.
+	 * @param seed
+	 *            the random seed.
+	 */
+	RoutePairs(List<Leg> legs, long seed) {
+		final Random random = new Random(seed);
+		for (int i = 0; i < PAIR_COUNT; i++) {
+			origins[i] = legs.get(random.nextInt(legs.size())).getOrigin();
+			destinations[i] = legs.get(random.nextInt(legs.size()))
+					.getDestination();
+		}
+	}
+
+	/**
+	 * Picks a pair at random for the calling thread.
+	 *
+	 * @return the index of the pair.
+	 */
+	int pick() {
+		return ThreadLocalRandom.current().nextInt(PAIR_COUNT);
+	}
+
+	/**
+	 * Gets the origin of a pair.
+	 *
+	 * @param pair
+	 *            the pair index.
+	 * @return the origin.
+	 */
+	String getOrigin(int pair) {
+		return origins[pair];
+	}
+
+	/**
+	 * Gets the destination of a pair.
+	 *
+	 * @param pair
+	 *            the pair index.
+	 * @return the destination.
+	 */
+	String getDestination(int pair) {
+		return destinations[pair];
+	}
+
+}
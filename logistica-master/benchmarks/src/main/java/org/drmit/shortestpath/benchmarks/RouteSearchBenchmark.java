@@ -0,0 +1,105 @@
+package org.drmit.shortestpath.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.domain.model.Route;
+import org.drmit.shortestpath.infrastructure.repository.RepositoryExeption;
+import org.drmit.shortestpath.infrastructure.repository.RouteNotFoundRepositoryExeption;
+import org.drmit.shortestpath.infrastructure.repository.RouteRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures RouteRepository.findShortestRoute between random locations.
+ *
+ * @author Leandro Ferreira
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RouteSearchBenchmark {
+
+	/** Network shape. */
+	@Param({ "GRID", "ROAD", "SCALE_FREE" })
+	private SyntheticNetwork network;
+
+	/** Number of legs of the network. */
+	@Param({ "1000", "10000", "100000" })
+	private int legs;
+
+	/** Route repository implementation. */
+	@Param({ "NEO4J_DIJKSTRA", "NEO4J_BIDIRECTIONAL_DIJKSTRA",
+			"IN_MEMORY_DIJKSTRA", "IN_MEMORY_ALT", "CONTRACTION_HIERARCHY" })
+	private RepositoryType repository;
+
+	/** Store holding the network. */
+	private BenchmarkStore store;
+
+	/** Route repository under measurement. */
+	private RouteRepository routeRepository;
+
+	/** Routes searched. */
+	private RoutePairs pairs;
+
+	/**
+	 * Generates the network and opens the repository.
+	 *
+	 * @throws IOException
+	 *             if the store could not be created.
+	 * @throws RepositoryExeption
+	 *             if the repository could not be loaded.
+	 */
+	@Setup
+	public void setUp() throws IOException, RepositoryExeption {
+		final List<Leg> networkLegs = network.generate(legs, 42);
+		store = BenchmarkStore.create(networkLegs);
+		routeRepository = repository.open(store.getGraphDatabase());
+		pairs = new RoutePairs(networkLegs, 7);
+	}
+
+	/**
+	 * Closes the store.
+	 *
+	 * @throws IOException
+	 *             if the store could not be deleted.
+	 */
+	@TearDown
+	public void tearDown() throws IOException {
+		store.close();
+	}
+
+	/**
+	 * Finds the shortest route between a random pair of locations.
+	 *
+	 * @return the route found, or null if there is none.
+	 * @throws RepositoryExeption
+	 *             if a repository access error occurs.
+	 */
+	@Benchmark
+	public Route findShortestRoute() throws RepositoryExeption {
+		final int pair = pairs.pick();
+		try {
+			return routeRepository.findShortestRoute(BenchmarkStore.NETWORK,
+					pairs.getOrigin(pair), pairs.getDestination(pair));
+		} catch (RouteNotFoundRepositoryExeption e) {
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,121 @@
+package org.drmit.shortestpath.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.infrastructure.repository.RepositoryExeption;
+import org.drmit.shortestpath.infrastructure.repository.RouteRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures RouteRepository.saveLegs, both inserting new legs and updating
+ * legs which already exist in a network of the given size.
+ *
+ * @author Leandro Ferreira
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SaveLegsBenchmark {
+
+	/** Network shape. */
+	@Param({ "ROAD" })
+	private SyntheticNetwork network;
+
+	/** Number of legs of the network already stored. */
+	@Param({ "1000", "100000" })
+	private int legs;
+
+	/** Number of legs saved per invocation. */
+	@Param({ "100", "1000" })
+	private int batchSize;
+
+	/** Route repository implementation. */
+	@Param({ "NEO4J_DIJKSTRA" })
+	private RepositoryType repository;
+
+	/** Store holding the network. */
+	private BenchmarkStore store;
+
+	/** Route repository under measurement. */
+	private RouteRepository routeRepository;
+
+	/** Legs saved by every invocation. */
+	private List<Leg> batch;
+
+	/** Number of networks inserted so far. */
+	private final AtomicInteger insertedNetworks = new AtomicInteger();
+
+	/**
+	 * Generates and stores the network, and takes a batch out of it.
+	 *
+	 * @throws IOException
+	 *             if the store could not be created.
+	 * @throws RepositoryExeption
+	 *             if the repository could not be loaded.
+	 */
+	@Setup
+	public void setUp() throws IOException, RepositoryExeption {
+		final List<Leg> networkLegs = network.generate(legs, 42);
+		store = BenchmarkStore.create(networkLegs);
+		routeRepository = repository.open(store.getGraphDatabase());
+
+		batch = new ArrayList<Leg>(batchSize);
+		for (int i = 0; i < batchSize; i++) {
+			batch.add(networkLegs.get(i % networkLegs.size()));
+		}
+	}
+
+	/**
+	 * Closes the store.
+	 *
+	 * @throws IOException
+	 *             if the store could not be deleted.
+	 */
+	@TearDown
+	public void tearDown() throws IOException {
+		store.close();
+	}
+
+	/**
+	 * Saves the batch into a network of its own, creating every leg.
+	 *
+	 * @throws RepositoryExeption
+	 *             if a repository access error occurs.
+	 */
+	@Benchmark
+	public void insertLegs() throws RepositoryExeption {
+		routeRepository.saveLegs(
+				"Insert" + insertedNetworks.incrementAndGet(), batch);
+	}
+
+	/**
+	 * Saves the batch into the stored network, updating every leg.
+	 *
+	 * @throws RepositoryExeption
+	 *             if a repository access error occurs.
+	 */
+	@Benchmark
+	public void updateLegs() throws RepositoryExeption {
+		routeRepository.saveLegs(BenchmarkStore.NETWORK, batch);
+	}
+
+}
@@ -0,0 +1,111 @@
+package org.drmit.shortestpath.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.drmit.shortestpath.application.services.NoShippingRouteServiceException;
+import org.drmit.shortestpath.application.services.ServiceException;
+import org.drmit.shortestpath.application.services.ShippingService;
+import org.drmit.shortestpath.application.services.impl.DefaultShippingRatingService;
+import org.drmit.shortestpath.application.services.impl.DefaultShippingService;
+import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.domain.model.ShippingDetails;
+import org.drmit.shortestpath.infrastructure.repository.RepositoryExeption;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures DefaultShippingService.getShippingDetails end to end, from the
+ * route search to the shipping rate.
+ *
+ * @author Leandro Ferreira
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ShippingServiceBenchmark {
+
+	/** Network shape. */
+	@Param({ "ROAD" })
+	private SyntheticNetwork network;
+
+	/** Number of legs of the network. */
+	@Param({ "1000", "10000", "100000" })
+	private int legs;
+
+	/** Route repository implementation. */
+	@Param({ "NEO4J_DIJKSTRA", "CACHED_CONTRACTION_HIERARCHY" })
+	private RepositoryType repository;
+
+	/** Store holding the network. */
+	private BenchmarkStore store;
+
+	/** Shipping service under measurement. */
+	private ShippingService shippingService;
+
+	/** Routes searched. */
+	private RoutePairs pairs;
+
+	/**
+	 * Generates the network and wires the service.
+	 *
+	 * @throws IOException
+	 *             if the store could not be created.
+	 * @throws RepositoryExeption
+	 *             if the repository could not be loaded.
+	 */
+	@Setup
+	public void setUp() throws IOException, RepositoryExeption {
+		final List<Leg> networkLegs = network.generate(legs, 42);
+		store = BenchmarkStore.create(networkLegs);
+		shippingService = new DefaultShippingService(
+				repository.open(store.getGraphDatabase()),
+				new DefaultShippingRatingService());
+		pairs = new RoutePairs(networkLegs, 7);
+	}
+
+	/**
+	 * Closes the store.
+	 *
+	 * @throws IOException
+	 *             if the store could not be deleted.
+	 */
+	@TearDown
+	public void tearDown() throws IOException {
+		store.close();
+	}
+
+	/**
+	 * Gets the shipping details between a random pair of locations.
+	 *
+	 * @return the shipping details, or null if there is no route.
+	 * @throws ServiceException
+	 *             if a service access error occurs.
+	 */
+	@Benchmark
+	public ShippingDetails getShippingDetails() throws ServiceException {
+		final int pair = pairs.pick();
+		try {
+			return shippingService.getShippingDetails(BenchmarkStore.NETWORK,
+					pairs.getOrigin(pair), pairs.getDestination(pair), 10,
+					2.5);
+		} catch (NoShippingRouteServiceException e) {
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,174 @@
+package org.drmit.shortestpath.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.drmit.shortestpath.domain.model.Leg;
+
+/**
+ * Shapes of the synthetic logistics networks the benchmarks run on. Every
+ * network is generated from a seed, so runs are comparable.
+ *
+ * @author Leandro Ferreira
+ */
+public enum SyntheticNetwork {
+
+	/**
+	 * Square grid with two-way legs between neighbours and uniform distances.
+	 * Many routes tie, which is the worst case for plain Dijkstra.
+	 */
+	GRID {
+		@Override
+		void generate(int legCount, Random random, List<Leg> legs) {
+			final int side = side(legCount);
+			for (int y = 0; y < side; y++) {
+				for (int x = 0; x < side; x++) {
+					final int node = y * side + x;
+					if (x + 1 < side) {
+						connect(legs, node, node + 1, 10);
+					}
+					if (y + 1 < side) {
+						connect(legs, node, node + side, 10);
+					}
+				}
+			}
+		}
+	},
+
+	/**
+	 * Grid with missing streets, varying distances and a coarser grid of fast
+	 * highways, resembling a road network.
+	 */
+	ROAD {
+		@Override
+		void generate(int legCount, Random random, List<Leg> legs) {
+			final int side = side(legCount);
+			for (int y = 0; y < side; y++) {
+				for (int x = 0; x < side; x++) {
+					final int node = y * side + x;
+					if (x + 1 < side && random.nextInt(10) < 8) {
+						connect(legs, node, node + 1, 10 + random.nextInt(40));
+					}
+					if (y + 1 < side && random.nextInt(10) < 8) {
+						connect(legs, node, node + side,
+								10 + random.nextInt(40));
+					}
+					if (x % HIGHWAY_SPACING == 0 && y % HIGHWAY_SPACING == 0) {
+						if (x + HIGHWAY_SPACING < side) {
+							connect(legs, node, node + HIGHWAY_SPACING, 80);
+						}
+						if (y + HIGHWAY_SPACING < side) {
+							connect(legs, node, node + HIGHWAY_SPACING * side,
+									80);
+						}
+					}
+				}
+			}
+		}
+	},
+
+	/**
+	 * Preferential attachment network, where a few hubs concentrate most of
+	 * the legs, resembling an airline or parcel hub network.
+	 */
+	SCALE_FREE {
+		@Override
+		void generate(int legCount, Random random, List<Leg> legs) {
+			// Endpoints of every edge so far, sampled proportionally to degree
+			final int[] endpoints = new int[legCount + 2];
+			int endpointCount = 0;
+			endpoints[endpointCount++] = 0;
+			endpoints[endpointCount++] = 1;
+			connect(legs, 0, 1, 1 + random.nextInt(100));
+
+			for (int node = 2; legs.size() < legCount; node++) {
+				// Each new location attaches to two existing ones
+				for (int i = 0; i < 2 && endpointCount + 2 <= endpoints.length; i++) {
+					final int target = endpoints[random.nextInt(endpointCount)];
+					connect(legs, node, target, 1 + random.nextInt(100));
+					endpoints[endpointCount++] = node;
+					endpoints[endpointCount++] = target;
+				}
+			}
+		}
+	};
+
+	/** Spacing between highways of the road network, in locations. */
+	private static final int HIGHWAY_SPACING = 10;
+
+	/**
+	 * Generates a network with the given number of legs.
+	 *
+	 * @param legCount
+	 *            the number of legs.
+	 * @param seed
+	 *            the random seed.
+	 * @return the legs of the network.
+	 * @throws IllegalArgumentException
+	 *             if legCount is not positive.
+	 */
+	public List<Leg> generate(int legCount, long seed) {
+		if (legCount <= 0) {
+			throw new IllegalArgumentException("legCount is not positive");
+		}
+
+		final List<Leg> legs = new ArrayList<Leg>(legCount + 4);
+		generate(legCount, new Random(seed), legs);
+		return legs.size() > legCount ? new ArrayList<Leg>(legs.subList(0,
+				legCount)) : legs;
+	}
+
+	/**
+	 * Adds legs to the list until it holds at least legCount legs.
+	 *
+	 * @param legCount
+	 *            the number of legs.
+	 * @param random
+	 *            the random generator.
+	 * @param legs
+	 *            the list the legs are added to.
+	 */
+	abstract void generate(int legCount, Random random, List<Leg> legs);
+
+	/**
+	 * Gets the name of a location.
+	 *
+	 * @param node
+	 *            the location number.
+	 * @return the location name.
+	 */
+	public static String getLocation(int node) {
+		return "L" + node;
+	}
+
+	/**
+	 * Gets the side of a grid with about four legs per location.
+	 *
+	 * @param legCount
+	 *            the number of legs.
+	 * @return the side of the grid.
+	 */
+	private static int side(int legCount) {
+		return Math.max(2, (int) Math.ceil(Math.sqrt(legCount / 4.0)) + 1);
+	}
+
+	/**
+	 * Adds a two-way connection between two locations.
+	 *
+	 * @param legs
+	 *            the list the legs are added to.
+	 * @param from
+	 *            the first location number.
+	 * @param to
+	 *            the second location number.
+	 * @param distance
+	 *            the distance between the locations.
+	 */
+	private static void connect(List<Leg> legs, int from, int to,
+			double distance) {
+		legs.add(new Leg(getLocation(from), getLocation(to), distance));
+		legs.add(new Leg(getLocation(to), getLocation(from), distance));
+	}
+
+}
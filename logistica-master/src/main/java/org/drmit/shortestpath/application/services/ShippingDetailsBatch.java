@@ -0,0 +1,25 @@
+package org.drmit.shortestpath.application.services;
+
+import java.util.Iterator;
+import java.util.concurrent.Future;
+
+import org.drmit.shortestpath.domain.model.ShippingDetails;
+
+/**
+ * Future shipping details of a batch of orders, in order. The orders are read
+ * as the futures are taken, a window ahead of the last one taken, and the
+ * searches of the orders read ahead run meanwhile. A batch is consumed by a
+ * single thread.
+ *
+ * @author Leandro Ferreira
+ */
+public interface ShippingDetailsBatch extends Iterator<Future<ShippingDetails>> {
+
+	/**
+	 * Stops reading orders and cancels the searches of the orders read ahead,
+	 * leaving running searches to complete. The batch has no next future
+	 * afterwards.
+	 */
+	public void cancel();
+
+}
@@ -1,5 +1,8 @@
 package org.drmit.shortestpath.application.services;
 
+import org.drmit.shortestpath.domain.model.Route;
+import org.drmit.shortestpath.domain.model.VehicleProfile;
+
 /**
  * Shipping rating service.
  * 
@@ -23,4 +26,21 @@ public interface ShippingRatingService {
 	public double getShippingRate(double distance, double vehicleMileage,
 			double fuelPrice) throws ServiceException;
 
+	/**
+	 * Gets the order shipping rate of a route for a vehicle: the fuel cost
+	 * plus the weighted toll of each of its legs.
+	 * 
+	 * @param route
+	 *            the shipping route.
+	 * @param vehicleProfile
+	 *            the cost model of the vehicle.
+	 * @param fuelPrice
+	 *            fuel price per liter.
+	 * @return the shipping rate.
+	 * @throws ServiceException
+	 *             if a service access error occurs.
+	 */
+	public double getShippingRate(Route route, VehicleProfile vehicleProfile,
+			double fuelPrice) throws ServiceException;
+
 }
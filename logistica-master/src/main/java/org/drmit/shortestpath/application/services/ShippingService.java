@@ -1,7 +1,15 @@
 package org.drmit.shortestpath.application.services;
 
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.drmit.shortestpath.domain.model.Leg;
 import org.drmit.shortestpath.domain.model.LogisticsNetwork;
 import org.drmit.shortestpath.domain.model.ShippingDetails;
+import org.drmit.shortestpath.domain.model.ShippingMatrix;
+import org.drmit.shortestpath.domain.model.ShippingQuote;
+import org.drmit.shortestpath.domain.model.ShortestPathTree;
 
 /**
  * Shipping service.
@@ -11,7 +19,9 @@ import org.drmit.shortestpath.domain.model.ShippingDetails;
 public interface ShippingService {
 
 	/**
-	 * Adds a new logistics network used for shipping route selection.
+	 * Adds a new logistics network used for shipping route selection. If a
+	 * network with the same name already exists, it is replaced, writing only
+	 * the legs which changed.
 	 * 
 	 * @param logisticsNetwork
 	 *            the logistics network.
@@ -22,8 +32,46 @@ public interface ShippingService {
 			throws ServiceException;
 
 	/**
-	 * Gets an order shipping details.
+	 * Imports a logistics network streamed leg by leg, so that networks too
+	 * large to be held in memory can be loaded. If a network with the same name
+	 * already exists, it is replaced: legs already in the network are updated,
+	 * and the legs missing from the stream are removed once it is exhausted.
+	 * The import is committed in batches and is not atomic: if it fails, the
+	 * legs imported so far are kept and no leg is removed.
+	 * 
+	 * @param name
+	 *            network name.
+	 * @param legs
+	 *            the shipping legs contained in this network.
+	 * @return the number of legs imported.
+	 * @throws ServiceException
+	 *             if a service access error occurs.
+	 */
+	public long importLogisticsNetwork(String name, Iterator<Leg> legs)
+			throws ServiceException;
+
+	/**
+	 * Saves the coordinates of a location, shared by all the logistics
+	 * networks. Route repositories guided by coordinates use them for the
+	 * networks whose locations all have coordinates.
+	 * 
+	 * @param location
+	 *            the location name.
+	 * @param latitude
+	 *            the location latitude, in decimal degrees.
+	 * @param longitude
+	 *            the location longitude, in decimal degrees.
+	 * @throws ServiceException
+	 *             if a service access error occurs.
+	 */
+	public void saveLocationCoordinates(String location, double latitude,
+			double longitude) throws ServiceException;
+
+	/**
+	 * Gets an order shipping details within a logistics network.
 	 * 
+	 * @param network
+	 *            the logistics network name.
 	 * @param origin
 	 *            the origin of shipment.
 	 * @param destination
@@ -39,8 +87,187 @@ public interface ShippingService {
 	 * @throws ServiceException
 	 *             if a service access error occurs.
 	 */
-	public ShippingDetails getShippingDetails(String origin,
+	public ShippingDetails getShippingDetails(String network, String origin,
 			String destination, double vehicleMileage, double fuelPrice)
 			throws NoShippingRouteServiceException, ServiceException;
 
+	/**
+	 * Gets an order shipping details within a logistics network without its
+	 * shipping route: only the length of the shortest route is searched, and
+	 * the route itself is neither reconstructed nor returned.
+	 * 
+	 * @param network
+	 *            the logistics network name.
+	 * @param origin
+	 *            the origin of shipment.
+	 * @param destination
+	 *            the destination of shipment.
+	 * @param vehicleMileage
+	 *            vehicle mileage (in Kilometers per liter or KMPL).
+	 * @param fuelPrice
+	 *            fuel price per liter.
+	 * @return the order shipping details, whose shipping route is null.
+	 * @throws NoShippingRouteServiceException
+	 *             if no shipping route could be found between the origin and
+	 *             destination.
+	 * @throws ServiceException
+	 *             if a service access error occurs.
+	 */
+	public ShippingDetails getShippingDetailsWithoutRoute(String network,
+			String origin, String destination, double vehicleMileage,
+			double fuelPrice) throws NoShippingRouteServiceException,
+			ServiceException;
+
+	/**
+	 * Gets an order shipping details within a logistics network, following
+	 * the route which is cheapest for a vehicle, tolls and road classes
+	 * included, rather than the shortest one.
+	 * 
+	 * @param network
+	 *            the logistics network name.
+	 * @param origin
+	 *            the origin of shipment.
+	 * @param destination
+	 *            the destination of shipment.
+	 * @param vehicleProfile
+	 *            the name of the vehicle profile.
+	 * @param fuelPrice
+	 *            fuel price per liter.
+	 * @return the order shipping details.
+	 * @throws IllegalArgumentException
+	 *             if the vehicle profile is unknown.
+	 * @throws NoShippingRouteServiceException
+	 *             if no shipping route could be found between the origin and
+	 *             destination.
+	 * @throws ServiceException
+	 *             if a service access error occurs.
+	 */
+	public ShippingDetails getCheapestShippingDetails(String network,
+			String origin, String destination, String vehicleProfile,
+			double fuelPrice) throws NoShippingRouteServiceException,
+			ServiceException;
+
+	/**
+	 * Gets an order shipping details within a logistics network, following
+	 * the fastest route for the given departure time rather than the shortest
+	 * one. The shipping route is a TimedRoute holding the arrival time.
+	 * 
+	 * @param network
+	 *            the logistics network name.
+	 * @param origin
+	 *            the origin of shipment.
+	 * @param destination
+	 *            the destination of shipment.
+	 * @param departureTime
+	 *            the departure time, in seconds since midnight of the first
+	 *            day.
+	 * @param vehicleMileage
+	 *            vehicle mileage (in Kilometers per liter or KMPL).
+	 * @param fuelPrice
+	 *            fuel price per liter.
+	 * @return the order shipping details.
+	 * @throws NoShippingRouteServiceException
+	 *             if no shipping route could be found between the origin and
+	 *             destination.
+	 * @throws ServiceException
+	 *             if a service access error occurs.
+	 */
+	public ShippingDetails getFastestShippingDetails(String network,
+			String origin, String destination, double departureTime,
+			double vehicleMileage, double fuelPrice)
+			throws NoShippingRouteServiceException, ServiceException;
+
+	/**
+	 * Gets the shipping details of a batch of orders within a logistics
+	 * network, without their shipping routes. The orders are streamed: they
+	 * are read as the future shipping details are taken, a window ahead of the
+	 * last one taken, and the search of each order is submitted to a bounded
+	 * pool as soon as it is read, so that the searches run while the batch is
+	 * being read. Orders sharing an origin and a destination share a single
+	 * search of the shortest route length.
+	 * <p>
+	 * Each order fails on its own: the future of an order without a route
+	 * fails with a NoShippingRouteServiceException, and the future of an order
+	 * whose search failed with a ServiceException, both wrapped in an
+	 * ExecutionException.
+	 * 
+	 * @param network
+	 *            the logistics network name.
+	 * @param quotes
+	 *            the orders to quote, read as the batch is consumed.
+	 * @return the future shipping details of each order, in order.
+	 * @throws RejectedExecutionException
+	 *             if the pool is saturated.
+	 * @throws ServiceException
+	 *             if a service access error occurs.
+	 */
+	public ShippingDetailsBatch getShippingDetails(String network,
+			Iterator<ShippingQuote> quotes) throws ServiceException;
+
+	/**
+	 * Gets the shipping details of up to k alternative routes between the
+	 * origin and the destination within a logistics network, ranked by length.
+	 * 
+	 * @param network
+	 *            the logistics network name.
+	 * @param origin
+	 *            the origin of shipment.
+	 * @param destination
+	 *            the destination of shipment.
+	 * @param k
+	 *            the maximum number of alternatives.
+	 * @param vehicleMileage
+	 *            vehicle mileage (in Kilometers per liter or KMPL).
+	 * @param fuelPrice
+	 *            fuel price per liter.
+	 * @return the shipping details of each alternative, shortest first.
+	 * @throws NoShippingRouteServiceException
+	 *             if no shipping route could be found between the origin and
+	 *             destination.
+	 * @throws ServiceException
+	 *             if a service access error occurs.
+	 */
+	public List<ShippingDetails> getAlternativeShippingDetails(String network,
+			String origin, String destination, int k, double vehicleMileage,
+			double fuelPrice) throws NoShippingRouteServiceException,
+			ServiceException;
+
+	/**
+	 * Gets the shortest routes from an origin to every location reachable
+	 * from it within a logistics network.
+	 * 
+	 * @param network
+	 *            the logistics network name.
+	 * @param origin
+	 *            the origin of shipment.
+	 * @return the shortest path tree of the origin, which only reaches the
+	 *         origin itself if it is unknown to the network.
+	 * @throws ServiceException
+	 *             if a service access error occurs.
+	 */
+	public ShortestPathTree getShortestRoutesFrom(String network, String origin)
+			throws ServiceException;
+
+	/**
+	 * Gets the shipping distance and rate between every origin and every
+	 * destination within a logistics network.
+	 * 
+	 * @param network
+	 *            the logistics network name.
+	 * @param origins
+	 *            the origins of shipment.
+	 * @param destinations
+	 *            the destinations of shipment.
+	 * @param vehicleMileage
+	 *            vehicle mileage (in Kilometers per liter or KMPL).
+	 * @param fuelPrice
+	 *            fuel price per liter.
+	 * @return the shipping matrix, indexed by origin and destination.
+	 * @throws ServiceException
+	 *             if a service access error occurs.
+	 */
+	public ShippingMatrix getShippingMatrix(String network,
+			List<String> origins, List<String> destinations,
+			double vehicleMileage, double fuelPrice) throws ServiceException;
+
 }
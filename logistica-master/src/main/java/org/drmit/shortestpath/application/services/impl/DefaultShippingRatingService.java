@@ -2,6 +2,9 @@ package org.drmit.shortestpath.application.services.impl;
 
 import org.drmit.shortestpath.application.services.ServiceException;
 import org.drmit.shortestpath.application.services.ShippingRatingService;
+import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.domain.model.Route;
+import org.drmit.shortestpath.domain.model.VehicleProfile;
 import org.springframework.stereotype.Service;
 
 /**
@@ -37,7 +40,34 @@ public class DefaultShippingRatingService implements ShippingRatingService {
 			throw new IllegalArgumentException("fuelPrice is null");
 		}
 
-		return ((distance * fuelPrice) / vehicleMileage);
+		return (distance * fuelPrice) / vehicleMileage;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.drmit.shortestpath.application.services.ShippingRatingService#
+	 * getShippingRate(org.drmit.shortestpath.domain.model.Route,
+	 * org.drmit.shortestpath.domain.model.VehicleProfile, double)
+	 */
+	@Override
+	public double getShippingRate(Route route, VehicleProfile vehicleProfile,
+			double fuelPrice) throws ServiceException {
+		if (route == null) {
+			throw new IllegalArgumentException("route is null");
+		}
+		if (vehicleProfile == null) {
+			throw new IllegalArgumentException("vehicleProfile is null");
+		}
+		if (fuelPrice < 0) {
+			throw new IllegalArgumentException("fuelPrice is null");
+		}
+
+		double shippingRate = 0;
+		for (Leg leg : route.getLegs()) {
+			shippingRate += vehicleProfile.getLegCost(leg, fuelPrice);
+		}
+		return shippingRate;
 	}
 
 }
@@ -1,15 +1,42 @@
 package org.drmit.shortestpath.application.services.impl;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 import org.drmit.shortestpath.application.services.NoShippingRouteServiceException;
 import org.drmit.shortestpath.application.services.ServiceException;
+import org.drmit.shortestpath.application.services.ShippingDetailsBatch;
 import org.drmit.shortestpath.application.services.ShippingRatingService;
 import org.drmit.shortestpath.application.services.ShippingService;
+import org.drmit.shortestpath.domain.model.DistanceMatrix;
+import org.drmit.shortestpath.domain.model.Leg;
 import org.drmit.shortestpath.domain.model.LogisticsNetwork;
 import org.drmit.shortestpath.domain.model.Route;
 import org.drmit.shortestpath.domain.model.ShippingDetails;
+import org.drmit.shortestpath.domain.model.ShippingMatrix;
+import org.drmit.shortestpath.domain.model.ShippingQuote;
+import org.drmit.shortestpath.domain.model.ShortestPathTree;
+import org.drmit.shortestpath.domain.model.VehicleProfile;
 import org.drmit.shortestpath.infrastructure.repository.RouteNotFoundRepositoryExeption;
 import org.drmit.shortestpath.infrastructure.repository.RouteRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
 /**
@@ -26,6 +53,24 @@ public class DefaultShippingService implements ShippingService {
 	/** The underlying shipping rating service implementation. */
 	private ShippingRatingService shippingRatingService = null;
 
+	/** Vehicle profiles, by name. */
+	private volatile Map<String, VehicleProfile> vehicleProfiles = new HashMap<String, VehicleProfile>();
+
+	/** Default number of orders of a batch read past the one awaited. */
+	public static final int DEFAULT_BATCH_WINDOW = 32;
+
+	/**
+	 * Number of distinct origin and destination pairs of a batch whose
+	 * searches are shared with the later orders of the batch.
+	 */
+	private static final int SHARED_SEARCH_COUNT = 4096;
+
+	/** Executor of the searches of order batches. */
+	private volatile Executor batchExecutor = null;
+
+	/** Number of orders of a batch read past the one awaited. */
+	private volatile int batchWindow = DEFAULT_BATCH_WINDOW;
+
 	/**
 	 * Constructs a new DefaultShippingService object.
 	 * 
@@ -92,6 +137,83 @@ public class DefaultShippingService implements ShippingService {
 		this.shippingRatingService = shippingRatingService;
 	}
 
+	/**
+	 * Gets the executor of the searches of order batches.
+	 * 
+	 * @return the executor of the searches of order batches.
+	 */
+	public Executor getBatchExecutor() {
+		return batchExecutor;
+	}
+
+	/**
+	 * Sets the executor of the searches of order batches, which should be
+	 * bounded, so that a saturated executor rejects new batches instead of
+	 * queueing them without limit.
+	 * 
+	 * @param batchExecutor
+	 *            the executor to set.
+	 * @throws IllegalArgumentException
+	 *             if batchExecutor is null.
+	 */
+	@Autowired
+	@Qualifier("bulkQueryExecutor")
+	public void setBatchExecutor(Executor batchExecutor) {
+		if (batchExecutor == null) {
+			throw new IllegalArgumentException("batchExecutor is null");
+		}
+		this.batchExecutor = batchExecutor;
+	}
+
+	/**
+	 * Gets the number of orders of a batch read past the one awaited.
+	 * 
+	 * @return the batch window.
+	 */
+	public int getBatchWindow() {
+		return batchWindow;
+	}
+
+	/**
+	 * Sets the number of orders of a batch read past the one awaited, whose
+	 * searches are submitted as they are read, which bounds both the orders
+	 * held and the share of the executor queue a single batch takes.
+	 * 
+	 * @param batchWindow
+	 *            the batch window to set.
+	 * @throws IllegalArgumentException
+	 *             if batchWindow is not positive.
+	 */
+	public void setBatchWindow(int batchWindow) {
+		if (batchWindow <= 0) {
+			throw new IllegalArgumentException("batchWindow is not positive");
+		}
+		this.batchWindow = batchWindow;
+	}
+
+	/**
+	 * Sets the vehicle profiles cheapest routes may be searched for.
+	 * 
+	 * @param vehicleProfiles
+	 *            the vehicle profiles to set.
+	 * @throws IllegalArgumentException
+	 *             if vehicleProfiles is null or if two profiles share a name.
+	 */
+	@Autowired(required = false)
+	public void setVehicleProfiles(List<VehicleProfile> vehicleProfiles) {
+		if (vehicleProfiles == null) {
+			throw new IllegalArgumentException("vehicleProfiles is null");
+		}
+		final Map<String, VehicleProfile> byName = new HashMap<String, VehicleProfile>();
+		for (VehicleProfile vehicleProfile : vehicleProfiles) {
+			if (byName.put(vehicleProfile.getName(), vehicleProfile) != null) {
+				throw new IllegalArgumentException(
+						"vehicleProfiles has duplicate names");
+			}
+		}
+		this.vehicleProfiles = byName;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -106,8 +228,9 @@ public class DefaultShippingService implements ShippingService {
 		}
 
 		try {
-			// Saves all given Legs into the route repository
-			routeRepository.saveLegs(logisticsNetwork.getLegs());
+			// Replaces the network of the route repository with the given Legs
+			routeRepository.replaceLegs(logisticsNetwork.getName(),
+					logisticsNetwork.getLegs());
 		} catch (Exception e) {
 			// Propagates the exception
 			throw new ServiceException(e.getMessage(), e);
@@ -118,12 +241,70 @@ public class DefaultShippingService implements ShippingService {
 	 * (non-Javadoc)
 	 * 
 	 * @see org.drmit.shortestpath.application.services.ShippingService#
-	 * getShippingDetails(java.lang.String, java.lang.String, double, double)
+	 * importLogisticsNetwork(java.lang.String, java.util.Iterator)
 	 */
 	@Override
-	public ShippingDetails getShippingDetails(String origin,
+	public long importLogisticsNetwork(String name, Iterator<Leg> legs)
+			throws ServiceException {
+		if (name == null) {
+			throw new IllegalArgumentException("name is null");
+		}
+		if (legs == null) {
+			throw new IllegalArgumentException("legs is null");
+		}
+
+		try {
+			// Replaces the network of the route repository with the streamed
+			// Legs
+			return routeRepository.importLegs(name, legs);
+		} catch (IllegalArgumentException e) {
+			// Malformed legs are reported to the caller as is
+			throw e;
+		} catch (Exception e) {
+			// Propagates the exception
+			throw new ServiceException(e.getMessage(), e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.drmit.shortestpath.application.services.ShippingService#
+	 * saveLocationCoordinates(java.lang.String, double, double)
+	 */
+	@Override
+	public void saveLocationCoordinates(String location, double latitude,
+			double longitude) throws ServiceException {
+		if (location == null) {
+			throw new IllegalArgumentException("location is null");
+		}
+
+		try {
+			// Saves the coordinates into the route repository
+			routeRepository.saveCoordinates(location, latitude, longitude);
+		} catch (IllegalArgumentException e) {
+			// Invalid coordinates are reported to the caller as is
+			throw e;
+		} catch (Exception e) {
+			// Propagates the exception
+			throw new ServiceException(e.getMessage(), e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.drmit.shortestpath.application.services.ShippingService#
+	 * getShippingDetails(java.lang.String, java.lang.String, java.lang.String,
+	 * double, double)
+	 */
+	@Override
+	public ShippingDetails getShippingDetails(String network, String origin,
 			String destination, double vehicleMileage, double fuelPrice)
 			throws NoShippingRouteServiceException, ServiceException {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
 		if (origin == null) {
 			throw new IllegalArgumentException("origin is null");
 		}
@@ -139,8 +320,8 @@ public class DefaultShippingService implements ShippingService {
 
 		try {
 			// Gets the shortest shipping route
-			final Route route = routeRepository.findShortestRoute(origin,
-					destination);
+			final Route route = routeRepository.findShortestRoute(network,
+					origin, destination);
 
 			// Returns the order shipping details
 			return new ShippingDetails(shippingRatingService.getShippingRate(
@@ -154,4 +335,684 @@ public class DefaultShippingService implements ShippingService {
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.drmit.shortestpath.application.services.ShippingService#
+	 * getShippingDetailsWithoutRoute(java.lang.String, java.lang.String,
+	 * java.lang.String, double, double)
+	 */
+	@Override
+	public ShippingDetails getShippingDetailsWithoutRoute(String network,
+			String origin, String destination, double vehicleMileage,
+			double fuelPrice) throws NoShippingRouteServiceException,
+			ServiceException {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (origin == null) {
+			throw new IllegalArgumentException("origin is null");
+		}
+		if (destination == null) {
+			throw new IllegalArgumentException("destination is null");
+		}
+		if (vehicleMileage <= 0) {
+			throw new IllegalArgumentException("vehicleMileage is invalid");
+		}
+		if (fuelPrice < 0) {
+			throw new IllegalArgumentException("fuelPrice is negative");
+		}
+
+		try {
+			// Gets the shortest shipping route length
+			final double distance = routeRepository.findShortestDistance(
+					network, origin, destination);
+
+			// Returns the order shipping details
+			return new ShippingDetails(shippingRatingService.getShippingRate(
+					distance, vehicleMileage, fuelPrice), distance);
+		} catch (RouteNotFoundRepositoryExeption e) {
+			// Propagates the exception
+			throw new NoShippingRouteServiceException(e.getMessage(), e);
+		} catch (Exception e) {
+			// Propagates the exception
+			throw new ServiceException(e.getMessage(), e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.drmit.shortestpath.application.services.ShippingService#
+	 * getCheapestShippingDetails(java.lang.String, java.lang.String,
+	 * java.lang.String, java.lang.String, double)
+	 */
+	@Override
+	public ShippingDetails getCheapestShippingDetails(String network,
+			String origin, String destination, String vehicleProfile,
+			double fuelPrice) throws NoShippingRouteServiceException,
+			ServiceException {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (origin == null) {
+			throw new IllegalArgumentException("origin is null");
+		}
+		if (destination == null) {
+			throw new IllegalArgumentException("destination is null");
+		}
+		if (vehicleProfile == null) {
+			throw new IllegalArgumentException("vehicleProfile is null");
+		}
+		if (fuelPrice < 0) {
+			throw new IllegalArgumentException("fuelPrice is negative");
+		}
+		final VehicleProfile profile = vehicleProfiles.get(vehicleProfile);
+		if (profile == null) {
+			throw new IllegalArgumentException("vehicleProfile is unknown");
+		}
+
+		try {
+			// Gets the cheapest shipping route for the vehicle
+			final Route route = routeRepository.findCheapestRoute(network,
+					origin, destination, profile, fuelPrice);
+
+			// Returns the order shipping details
+			return new ShippingDetails(shippingRatingService.getShippingRate(
+					route, profile, fuelPrice), route);
+		} catch (RouteNotFoundRepositoryExeption e) {
+			// Propagates the exception
+			throw new NoShippingRouteServiceException(e.getMessage(), e);
+		} catch (Exception e) {
+			// Propagates the exception
+			throw new ServiceException(e.getMessage(), e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.drmit.shortestpath.application.services.ShippingService#
+	 * getFastestShippingDetails(java.lang.String, java.lang.String,
+	 * java.lang.String, double, double, double)
+	 */
+	@Override
+	public ShippingDetails getFastestShippingDetails(String network,
+			String origin, String destination, double departureTime,
+			double vehicleMileage, double fuelPrice)
+			throws NoShippingRouteServiceException, ServiceException {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (origin == null) {
+			throw new IllegalArgumentException("origin is null");
+		}
+		if (destination == null) {
+			throw new IllegalArgumentException("destination is null");
+		}
+		if (vehicleMileage <= 0) {
+			throw new IllegalArgumentException("vehicleMileage is invalid");
+		}
+		if (fuelPrice < 0) {
+			throw new IllegalArgumentException("fuelPrice is negative");
+		}
+
+		try {
+			// Gets the fastest shipping route
+			final Route route = routeRepository.findFastestRoute(network,
+					origin, destination, departureTime);
+
+			// Returns the order shipping details
+			return new ShippingDetails(shippingRatingService.getShippingRate(
+					route.getLength(), vehicleMileage, fuelPrice), route);
+		} catch (RouteNotFoundRepositoryExeption e) {
+			// Propagates the exception
+			throw new NoShippingRouteServiceException(e.getMessage(), e);
+		} catch (Exception e) {
+			// Propagates the exception
+			throw new ServiceException(e.getMessage(), e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.drmit.shortestpath.application.services.ShippingService#
+	 * getShippingDetails(java.lang.String, java.util.Iterator)
+	 */
+	@Override
+	public ShippingDetailsBatch getShippingDetails(String network,
+			Iterator<ShippingQuote> quotes) throws ServiceException {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (quotes == null) {
+			throw new IllegalArgumentException("quotes is null");
+		}
+
+		// Reads the first window of orders, submitting their searches
+		final QuoteBatch batch = new QuoteBatch(network, quotes);
+		try {
+			batch.start();
+		} catch (RuntimeException e) {
+			batch.cancel();
+			throw e;
+		}
+		return batch;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.drmit.shortestpath.application.services.ShippingService#
+	 * getAlternativeShippingDetails(java.lang.String, java.lang.String,
+	 * java.lang.String, int, double, double)
+	 */
+	@Override
+	public List<ShippingDetails> getAlternativeShippingDetails(String network,
+			String origin, String destination, int k, double vehicleMileage,
+			double fuelPrice) throws NoShippingRouteServiceException,
+			ServiceException {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (origin == null) {
+			throw new IllegalArgumentException("origin is null");
+		}
+		if (destination == null) {
+			throw new IllegalArgumentException("destination is null");
+		}
+		if (k <= 0) {
+			throw new IllegalArgumentException("k is not positive");
+		}
+		if (vehicleMileage <= 0) {
+			throw new IllegalArgumentException("vehicleMileage is invalid");
+		}
+		if (fuelPrice < 0) {
+			throw new IllegalArgumentException("fuelPrice is negative");
+		}
+
+		final List<Route> routes;
+		try {
+			// Gets the alternative shipping routes
+			routes = routeRepository.findKShortestRoutes(network, origin,
+					destination, k);
+		} catch (Exception e) {
+			// Propagates the exception
+			throw new ServiceException(e.getMessage(), e);
+		}
+		if (routes.isEmpty()) {
+			throw new NoShippingRouteServiceException(String.format(
+					"No route could be found between the %s and %s", origin,
+					destination));
+		}
+
+		// Rates every alternative
+		final List<ShippingDetails> shippingDetails = new ArrayList<ShippingDetails>(
+				routes.size());
+		for (Route route : routes) {
+			shippingDetails.add(new ShippingDetails(shippingRatingService
+					.getShippingRate(route.getLength(), vehicleMileage,
+							fuelPrice), route));
+		}
+		return shippingDetails;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.drmit.shortestpath.application.services.ShippingService#
+	 * getShortestRoutesFrom(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public ShortestPathTree getShortestRoutesFrom(String network, String origin)
+			throws ServiceException {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (origin == null) {
+			throw new IllegalArgumentException("origin is null");
+		}
+
+		try {
+			// Finds the routes to every reachable location at once
+			return routeRepository.findShortestRoutesFrom(network, origin);
+		} catch (Exception e) {
+			// Propagates the exception
+			throw new ServiceException(e.getMessage(), e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.drmit.shortestpath.application.services.ShippingService#
+	 * getShippingMatrix(java.lang.String, java.util.List, java.util.List,
+	 * double, double)
+	 */
+	@Override
+	public ShippingMatrix getShippingMatrix(String network,
+			List<String> origins, List<String> destinations,
+			double vehicleMileage, double fuelPrice) throws ServiceException {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (origins == null) {
+			throw new IllegalArgumentException("origins is null");
+		}
+		if (destinations == null) {
+			throw new IllegalArgumentException("destinations is null");
+		}
+		if (vehicleMileage <= 0) {
+			throw new IllegalArgumentException("vehicleMileage is invalid");
+		}
+		if (fuelPrice < 0) {
+			throw new IllegalArgumentException("fuelPrice is negative");
+		}
+
+		try {
+			// Gets the shortest route lengths
+			final DistanceMatrix distanceMatrix = routeRepository
+					.findDistances(network, origins, destinations);
+
+			// Rates every reachable destination
+			final double[][] shippingRates = new double[origins.size()][destinations
+					.size()];
+			for (int i = 0; i < shippingRates.length; i++) {
+				for (int j = 0; j < shippingRates[i].length; j++) {
+					if (distanceMatrix.isReachable(i, j)) {
+						shippingRates[i][j] = shippingRatingService
+								.getShippingRate(
+										distanceMatrix.getDistance(i, j),
+										vehicleMileage, fuelPrice);
+					}
+				}
+			}
+
+			// Returns the shipping matrix
+			return new ShippingMatrix(distanceMatrix, shippingRates);
+		} catch (Exception e) {
+			// Propagates the exception
+			throw new ServiceException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Search of the shortest route length between an origin and a destination.
+	 */
+	private final class DistanceSearch implements Callable<Double> {
+
+		/** Logistics network name. */
+		private final String network;
+
+		/** Origin of shipment. */
+		private final String origin;
+
+		/** Destination of shipment. */
+		private final String destination;
+
+		/**
+		 * Constructs a DistanceSearch object.
+		 * 
+		 * @param network
+		 *            the logistics network name.
+		 * @param origin
+		 *            the origin of shipment.
+		 * @param destination
+		 *            the destination of shipment.
+		 */
+		DistanceSearch(String network, String origin, String destination) {
+			this.network = network;
+			this.origin = origin;
+			this.destination = destination;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.concurrent.Callable#call()
+		 */
+		@Override
+		public Double call() throws NoShippingRouteServiceException,
+				ServiceException {
+			try {
+				// Gets the shortest shipping route length
+				return routeRepository.findShortestDistance(network, origin,
+						destination);
+			} catch (RouteNotFoundRepositoryExeption e) {
+				// Propagates the exception
+				throw new NoShippingRouteServiceException(e.getMessage(), e);
+			} catch (Exception e) {
+				// Propagates the exception
+				throw new ServiceException(e.getMessage(), e);
+			}
+		}
+
+	}
+
+	/**
+	 * Search of the shortest route length of an origin and destination pair,
+	 * shared by the orders of a batch with that pair. A search the executor
+	 * rejects is submitted again when awaited, and run by the awaiting thread
+	 * if rejected again, which slows the consumer of the batch down to the pace
+	 * of the executor.
+	 */
+	private final class PairSearch extends FutureTask<Double> {
+
+		/** Whether the executor accepted the search. */
+		private boolean submitted = false;
+
+		/**
+		 * Constructs a PairSearch object.
+		 * 
+		 * @param network
+		 *            the logistics network name.
+		 * @param origin
+		 *            the origin of shipment.
+		 * @param destination
+		 *            the destination of shipment.
+		 */
+		PairSearch(String network, String origin, String destination) {
+			super(new DistanceSearch(network, origin, destination));
+		}
+
+		/**
+		 * Submits the search to the batch executor.
+		 * 
+		 * @throws RejectedExecutionException
+		 *             if the executor rejected the search.
+		 */
+		void submit() {
+			batchExecutor.execute(this);
+			submitted = true;
+		}
+
+		/**
+		 * Submits the search unless it was, leaving it unsubmitted if the
+		 * executor rejects it.
+		 */
+		void trySubmit() {
+			if (!submitted && !isDone()) {
+				try {
+					submit();
+				} catch (RejectedExecutionException e) {
+					// Leaves the search until awaited
+				}
+			}
+		}
+
+		/**
+		 * Gets the search, submitting it first, or running it in the calling
+		 * thread if the executor rejects it again.
+		 * 
+		 * @return the search.
+		 */
+		PairSearch await() {
+			if (!submitted && !isDone()) {
+				try {
+					submit();
+				} catch (RejectedExecutionException e) {
+					// Runs the awaited search in the calling thread
+					run();
+				}
+			}
+			return this;
+		}
+
+	}
+
+	/**
+	 * Batch of orders read from a stream a window ahead of the one awaited, so
+	 * that neither the orders nor their searches pile up however large the
+	 * batch is. Orders sharing an origin and a destination share a single
+	 * search, as long as their pair is among the latest distinct ones.
+	 */
+	private final class QuoteBatch implements ShippingDetailsBatch {
+
+		/** Logistics network name. */
+		private final String network;
+
+		/** Orders not read yet. */
+		private final Iterator<ShippingQuote> quotes;
+
+		/** Orders read ahead of the consumer, in order. */
+		private final Deque<RatedDistance> orders = new ArrayDeque<RatedDistance>();
+
+		/** Searches of the latest distinct origin and destination pairs. */
+		private final Map<List<String>, PairSearch> searches = new LinkedHashMap<List<String>, PairSearch>(
+				16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<List<String>, PairSearch> eldest) {
+				return size() > SHARED_SEARCH_COUNT;
+			}
+		};
+
+		/** Whether the batch was cancelled. */
+		private boolean cancelled = false;
+
+		/**
+		 * Constructs a QuoteBatch object.
+		 * 
+		 * @param network
+		 *            the logistics network name.
+		 * @param quotes
+		 *            the orders of the batch.
+		 */
+		QuoteBatch(String network, Iterator<ShippingQuote> quotes) {
+			this.network = network;
+			this.quotes = quotes;
+		}
+
+		/**
+		 * Reads the first window of orders, submitting their searches.
+		 * 
+		 * @throws RejectedExecutionException
+		 *             if the executor rejected the first search.
+		 */
+		void start() {
+			if (quotes.hasNext()) {
+				read().submit();
+			}
+			fill();
+		}
+
+		/**
+		 * Reads orders up to a window past the one awaited next, submitting
+		 * their searches.
+		 */
+		private void fill() {
+			while (!cancelled && orders.size() <= batchWindow
+					&& quotes.hasNext()) {
+				read().trySubmit();
+			}
+		}
+
+		/**
+		 * Reads the next order.
+		 * 
+		 * @return the search of the order, new unless shared with an earlier
+		 *         order.
+		 * @throws IllegalArgumentException
+		 *             if the order is null.
+		 */
+		private PairSearch read() {
+			final ShippingQuote quote = quotes.next();
+			if (quote == null) {
+				throw new IllegalArgumentException("quotes contains null");
+			}
+			final List<String> pair = Arrays.asList(quote.getOrigin(),
+					quote.getDestination());
+			PairSearch search = searches.get(pair);
+			if (search == null) {
+				search = new PairSearch(network, quote.getOrigin(),
+						quote.getDestination());
+				searches.put(pair, search);
+			}
+			orders.add(new RatedDistance(search, quote));
+			return search;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.Iterator#hasNext()
+		 */
+		@Override
+		public boolean hasNext() {
+			return !cancelled && (!orders.isEmpty() || quotes.hasNext());
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.Iterator#next()
+		 */
+		@Override
+		public Future<ShippingDetails> next() {
+			if (cancelled) {
+				throw new NoSuchElementException();
+			}
+
+			// Keeps the window full past the order taken
+			fill();
+			if (orders.isEmpty()) {
+				throw new NoSuchElementException();
+			}
+			return orders.poll();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.Iterator#remove()
+		 */
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see org.drmit.shortestpath.application.services.ShippingDetailsBatch#
+		 * cancel()
+		 */
+		@Override
+		public void cancel() {
+			cancelled = true;
+			for (RatedDistance order : orders) {
+				order.cancel(false);
+			}
+			orders.clear();
+		}
+
+	}
+
+	/**
+	 * Shipping details of an order, rated once the distance search shared with
+	 * the other orders of the same origin and destination completes. Cancelling
+	 * it cancels the shared search.
+	 */
+	private final class RatedDistance implements Future<ShippingDetails> {
+
+		/** Shortest route length search. */
+		private final PairSearch search;
+
+		/** Order rated. */
+		private final ShippingQuote quote;
+
+		/**
+		 * Constructs a RatedDistance object.
+		 * 
+		 * @param search
+		 *            the shortest route length search.
+		 * @param quote
+		 *            the order rated.
+		 */
+		RatedDistance(PairSearch search, ShippingQuote quote) {
+			this.search = search;
+			this.quote = quote;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.concurrent.Future#cancel(boolean)
+		 */
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return search.cancel(mayInterruptIfRunning);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.concurrent.Future#isCancelled()
+		 */
+		@Override
+		public boolean isCancelled() {
+			return search.isCancelled();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.concurrent.Future#isDone()
+		 */
+		@Override
+		public boolean isDone() {
+			return search.isDone();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.concurrent.Future#get()
+		 */
+		@Override
+		public ShippingDetails get() throws InterruptedException,
+				ExecutionException {
+			return rate(search.await().get());
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.concurrent.Future#get(long,
+		 * java.util.concurrent.TimeUnit)
+		 */
+		@Override
+		public ShippingDetails get(long timeout, TimeUnit unit)
+				throws InterruptedException, ExecutionException,
+				TimeoutException {
+			return rate(search.await().get(timeout, unit));
+		}
+
+		/**
+		 * Rates the shortest route length of the order.
+		 * 
+		 * @param distance
+		 *            the shortest route length.
+		 * @return the order shipping details.
+		 * @throws ExecutionException
+		 *             if the rating failed.
+		 */
+		private ShippingDetails rate(double distance)
+				throws ExecutionException {
+			try {
+				return new ShippingDetails(
+						shippingRatingService.getShippingRate(distance,
+								quote.getVehicleMileage(), quote.getFuelPrice()),
+						distance);
+			} catch (ServiceException e) {
+				// Fails the order alone
+				throw new ExecutionException(e.getMessage(), e);
+			}
+		}
+
+	}
+
 }
@@ -0,0 +1,206 @@
+package org.drmit.shortestpath.domain.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+import org.apache.commons.lang.builder.ReflectionToStringBuilder;
+
+/**
+ * This class contains the shortest route length between every origin and every
+ * destination of a set of locations.
+ * 
+ * @author Leandro Ferreira
+ */
+public class DistanceMatrix implements Serializable {
+
+	/** Serial version id. */
+	private static final long serialVersionUID = 1L;
+
+	/** Route origins, one per row. */
+	private List<String> origins = null;
+
+	/** Route destinations, one per column. */
+	private List<String> destinations = null;
+
+	/**
+	 * Shortest route length between each origin and destination, or positive
+	 * infinity if no route exists.
+	 */
+	private double[][] distances = null;
+
+	/**
+	 * Constructs a DistanceMatrix object.
+	 * 
+	 * @param origins
+	 *            the route origins, one per row.
+	 * @param destinations
+	 *            the route destinations, one per column.
+	 * @param distances
+	 *            the shortest route length between each origin and
+	 *            destination, or positive infinity if no route exists.
+	 * @throws IllegalArgumentException
+	 *             if origins, destinations or distances is null, or if the
+	 *             distances do not match the origins and destinations.
+	 */
+	public DistanceMatrix(List<String> origins, List<String> destinations,
+			double[][] distances) {
+		setOrigins(origins);
+		setDestinations(destinations);
+		setDistances(distances);
+	}
+
+	/**
+	 * Gets an unmodifiable view of the route origins.
+	 * 
+	 * @return an unmodifiable view of the route origins.
+	 */
+	public List<String> getOrigins() {
+		return Collections.unmodifiableList(origins);
+	}
+
+	/**
+	 * Sets the route origins.
+	 * 
+	 * @param origins
+	 *            the origins to set.
+	 * @throws IllegalArgumentException
+	 *             if origins is null.
+	 */
+	private void setOrigins(List<String> origins) {
+		if (origins == null) {
+			throw new IllegalArgumentException("origins is null");
+		}
+		this.origins = new ArrayList<String>(origins);
+	}
+
+	/**
+	 * Gets an unmodifiable view of the route destinations.
+	 * 
+	 * @return an unmodifiable view of the route destinations.
+	 */
+	public List<String> getDestinations() {
+		return Collections.unmodifiableList(destinations);
+	}
+
+	/**
+	 * Sets the route destinations.
+	 * 
+	 * @param destinations
+	 *            the destinations to set.
+	 * @throws IllegalArgumentException
+	 *             if destinations is null.
+	 */
+	private void setDestinations(List<String> destinations) {
+		if (destinations == null) {
+			throw new IllegalArgumentException("destinations is null");
+		}
+		this.destinations = new ArrayList<String>(destinations);
+	}
+
+	/**
+	 * Sets the shortest route lengths.
+	 * 
+	 * @param distances
+	 *            the distances to set.
+	 * @throws IllegalArgumentException
+	 *             if distances is null or does not match the origins and
+	 *             destinations.
+	 */
+	private void setDistances(double[][] distances) {
+		if (distances == null) {
+			throw new IllegalArgumentException("distances is null");
+		}
+		if (distances.length != origins.size()) {
+			throw new IllegalArgumentException(
+					"distances does not match the origins");
+		}
+		this.distances = new double[distances.length][];
+		for (int i = 0; i < distances.length; i++) {
+			if (distances[i] == null
+					|| distances[i].length != destinations.size()) {
+				throw new IllegalArgumentException(
+						"distances does not match the destinations");
+			}
+			this.distances[i] = distances[i].clone();
+		}
+	}
+
+	/**
+	 * Gets the shortest route length between an origin and a destination.
+	 * 
+	 * @param origin
+	 *            the origin index.
+	 * @param destination
+	 *            the destination index.
+	 * @return the shortest route length, or positive infinity if no route
+	 *         exists.
+	 * @throws IndexOutOfBoundsException
+	 *             if origin or destination is out of range.
+	 */
+	public double getDistance(int origin, int destination) {
+		return distances[origin][destination];
+	}
+
+	/**
+	 * Returns true if a route exists between an origin and a destination.
+	 * 
+	 * @param origin
+	 *            the origin index.
+	 * @param destination
+	 *            the destination index.
+	 * @return true if a route exists.
+	 * @throws IndexOutOfBoundsException
+	 *             if origin or destination is out of range.
+	 */
+	public boolean isReachable(int origin, int destination) {
+		return distances[origin][destination] != Double.POSITIVE_INFINITY;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return new HashCodeBuilder(17, 37).append(origins)
+				.append(destinations).append(distances).toHashCode();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == null) {
+			return false;
+		}
+		if (obj == this) {
+			return true;
+		}
+		if (obj.getClass() != getClass()) {
+			return false;
+		}
+		final DistanceMatrix rhs = (DistanceMatrix) obj;
+		return new EqualsBuilder().append(origins, rhs.origins)
+				.append(destinations, rhs.destinations)
+				.append(distances, rhs.distances).isEquals();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return ReflectionToStringBuilder.toString(this);
+	}
+
+}
@@ -26,6 +26,15 @@ public class Leg implements Serializable {
 	/** The distance covered by this leg. */
 	private double distance;
 
+	/** Travel time profile, or null if the leg has none. */
+	private TravelTimeProfile travelTimeProfile;
+
+	/** Toll charged for this leg. */
+	private double toll;
+
+	/** Road class, or null if the leg has none. */
+	private String roadClass;
+
 	/**
 	 * Creates a new Leg object.
 	 * 
@@ -37,9 +46,51 @@ public class Leg implements Serializable {
 	 *            the distance covered by this leg.
 	 */
 	public Leg(String origin, String destination, double distance) {
+		this(origin, destination, distance, null);
+	}
+
+	/**
+	 * Creates a new Leg object whose travel time depends on the departure
+	 * time.
+	 * 
+	 * @param origin
+	 *            the leg origin.
+	 * @param destination
+	 *            the leg destination.
+	 * @param distance
+	 *            the distance covered by this leg.
+	 * @param travelTimeProfile
+	 *            the travel time profile of this leg, or null if it has none.
+	 */
+	public Leg(String origin, String destination, double distance,
+			TravelTimeProfile travelTimeProfile) {
+		this(origin, destination, distance, travelTimeProfile, 0, null);
+	}
+
+	/**
+	 * Creates a new Leg object with every attribute.
+	 * 
+	 * @param origin
+	 *            the leg origin.
+	 * @param destination
+	 *            the leg destination.
+	 * @param distance
+	 *            the distance covered by this leg.
+	 * @param travelTimeProfile
+	 *            the travel time profile of this leg, or null if it has none.
+	 * @param toll
+	 *            the toll charged for this leg.
+	 * @param roadClass
+	 *            the road class of this leg, or null if it has none.
+	 */
+	public Leg(String origin, String destination, double distance,
+			TravelTimeProfile travelTimeProfile, double toll, String roadClass) {
 		setOrigin(origin);
 		setDestination(destination);
 		setDistance(distance);
+		setToll(toll);
+		this.travelTimeProfile = travelTimeProfile;
+		this.roadClass = roadClass;
 	}
 
 	/**
@@ -114,6 +165,49 @@ public class Leg implements Serializable {
 		this.distance = distance;
 	}
 
+	/**
+	 * Gets the travel time profile of this leg.
+	 * 
+	 * @return the travel time profile, or null if the leg has none.
+	 */
+	public TravelTimeProfile getTravelTimeProfile() {
+		return travelTimeProfile;
+	}
+
+	/**
+	 * Gets the toll charged for this leg.
+	 * 
+	 * @return the toll, 0 if the leg is toll-free.
+	 */
+	public double getToll() {
+		return toll;
+	}
+
+	/**
+	 * Sets the toll charged for this leg.
+	 * 
+	 * @param toll
+	 *            the toll to set.
+	 * @throws IllegalArgumentException
+	 *             if toll is negative.
+	 */
+	private void setToll(double toll) {
+		if (!(toll >= 0)) {
+			throw new IllegalArgumentException("toll is negative");
+		}
+		this.toll = toll;
+	}
+
+	/**
+	 * Gets the road class of this leg, such as "highway", which vehicle
+	 * profiles weight fuel consumption by.
+	 * 
+	 * @return the road class, or null if the leg has none.
+	 */
+	public String getRoadClass() {
+		return roadClass;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
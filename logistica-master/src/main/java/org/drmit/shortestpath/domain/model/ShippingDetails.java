@@ -14,7 +14,10 @@ public class ShippingDetails {
 	/** Shipping rate. */
 	private double shippingRate = 0;
 
-	/** Shipping route. */
+	/** Shipping distance. */
+	private double shippingDistance = 0;
+
+	/** Shipping route, or null if only its length was searched. */
 	private Route shippingRoute = null;
 
 	/**
@@ -32,6 +35,23 @@ public class ShippingDetails {
 	public ShippingDetails(double shippingRate, Route shippingRoute) {
 		setShippingRate(shippingRate);
 		setShippingRoute(shippingRoute);
+		setShippingDistance(shippingRoute.getLength());
+	}
+
+	/**
+	 * Constructs a ShippingDetails object holding the length of the shipping
+	 * route but not the route itself.
+	 * 
+	 * @param shippingRate
+	 *            the shipping rate.
+	 * @param shippingDistance
+	 *            the length of the shipping route.
+	 * @throws IllegalArgumentException
+	 *             if shippingRate or shippingDistance is negative.
+	 */
+	public ShippingDetails(double shippingRate, double shippingDistance) {
+		setShippingRate(shippingRate);
+		setShippingDistance(shippingDistance);
 	}
 
 	/**
@@ -58,10 +78,34 @@ public class ShippingDetails {
 		this.shippingRate = shippingRate;
 	}
 
+	/**
+	 * Gets the shipping distance, the length of the shipping route.
+	 * 
+	 * @return the shipping distance.
+	 */
+	public double getShippingDistance() {
+		return shippingDistance;
+	}
+
+	/**
+	 * Sets the shipping distance.
+	 * 
+	 * @param shippingDistance
+	 *            the distance to set.
+	 * @throws IllegalArgumentException
+	 *             if shippingDistance is negative.
+	 */
+	private void setShippingDistance(double shippingDistance) {
+		if (shippingDistance < 0) {
+			throw new IllegalArgumentException("shippingDistance is negative");
+		}
+		this.shippingDistance = shippingDistance;
+	}
+
 	/**
 	 * Gets the shipping route.
 	 * 
-	 * @return the shipping route.
+	 * @return the shipping route, or null if only its length was searched.
 	 */
 	public Route getShippingRoute() {
 		return shippingRoute;
@@ -90,7 +134,7 @@ public class ShippingDetails {
 	@Override
 	public int hashCode() {
 		return new HashCodeBuilder(17, 37).append(shippingRate)
-				.append(shippingRoute).toHashCode();
+				.append(shippingDistance).append(shippingRoute).toHashCode();
 	}
 
 	/*
@@ -111,6 +155,7 @@ public class ShippingDetails {
 		}
 		final ShippingDetails rhs = (ShippingDetails) obj;
 		return new EqualsBuilder().append(shippingRate, rhs.shippingRate)
+				.append(shippingDistance, rhs.shippingDistance)
 				.append(shippingRoute, rhs.shippingRoute).isEquals();
 	}
 
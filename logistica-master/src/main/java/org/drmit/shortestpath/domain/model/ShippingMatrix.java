@@ -0,0 +1,183 @@
+package org.drmit.shortestpath.domain.model;
+
+import java.util.List;
+
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+import org.apache.commons.lang.builder.ReflectionToStringBuilder;
+
+/**
+ * This class contains the shipping distance and rate between every origin and
+ * every destination of a set of locations.
+ * 
+ * @author Leandro Ferreira
+ */
+public class ShippingMatrix {
+
+	/** Shortest route lengths. */
+	private DistanceMatrix distanceMatrix = null;
+
+	/** Shipping rate between each origin and destination. */
+	private double[][] shippingRates = null;
+
+	/**
+	 * Constructs a ShippingMatrix object.
+	 * 
+	 * @param distanceMatrix
+	 *            the shortest route lengths.
+	 * @param shippingRates
+	 *            the shipping rate between each origin and destination,
+	 *            ignored where no route exists.
+	 * @throws IllegalArgumentException
+	 *             if distanceMatrix or shippingRates is null, or if the
+	 *             shipping rates do not match the distance matrix.
+	 */
+	public ShippingMatrix(DistanceMatrix distanceMatrix,
+			double[][] shippingRates) {
+		setDistanceMatrix(distanceMatrix);
+		setShippingRates(shippingRates);
+	}
+
+	/**
+	 * Sets the shortest route lengths.
+	 * 
+	 * @param distanceMatrix
+	 *            the distanceMatrix to set.
+	 * @throws IllegalArgumentException
+	 *             if distanceMatrix is null.
+	 */
+	private void setDistanceMatrix(DistanceMatrix distanceMatrix) {
+		if (distanceMatrix == null) {
+			throw new IllegalArgumentException("distanceMatrix is null");
+		}
+		this.distanceMatrix = distanceMatrix;
+	}
+
+	/**
+	 * Sets the shipping rates.
+	 * 
+	 * @param shippingRates
+	 *            the shippingRates to set.
+	 * @throws IllegalArgumentException
+	 *             if shippingRates is null or does not match the distance
+	 *             matrix.
+	 */
+	private void setShippingRates(double[][] shippingRates) {
+		if (shippingRates == null) {
+			throw new IllegalArgumentException("shippingRates is null");
+		}
+		final int destinationCount = distanceMatrix.getDestinations().size();
+		if (shippingRates.length != distanceMatrix.getOrigins().size()) {
+			throw new IllegalArgumentException(
+					"shippingRates does not match the origins");
+		}
+		this.shippingRates = new double[shippingRates.length][];
+		for (int i = 0; i < shippingRates.length; i++) {
+			if (shippingRates[i] == null
+					|| shippingRates[i].length != destinationCount) {
+				throw new IllegalArgumentException(
+						"shippingRates does not match the destinations");
+			}
+			this.shippingRates[i] = shippingRates[i].clone();
+		}
+	}
+
+	/**
+	 * Gets the shipment origins, one per row.
+	 * 
+	 * @return the shipment origins.
+	 */
+	public List<String> getOrigins() {
+		return distanceMatrix.getOrigins();
+	}
+
+	/**
+	 * Gets the shipment destinations, one per column.
+	 * 
+	 * @return the shipment destinations.
+	 */
+	public List<String> getDestinations() {
+		return distanceMatrix.getDestinations();
+	}
+
+	/**
+	 * Gets the shortest route length between each origin and destination.
+	 * 
+	 * @return the route lengths, with null where no route exists.
+	 */
+	public Double[][] getDistances() {
+		final int originCount = getOrigins().size();
+		final int destinationCount = getDestinations().size();
+		final Double[][] distances = new Double[originCount][destinationCount];
+		for (int i = 0; i < originCount; i++) {
+			for (int j = 0; j < destinationCount; j++) {
+				if (distanceMatrix.isReachable(i, j)) {
+					distances[i][j] = distanceMatrix.getDistance(i, j);
+				}
+			}
+		}
+		return distances;
+	}
+
+	/**
+	 * Gets the shipping rate between each origin and destination.
+	 * 
+	 * @return the shipping rates, with null where no route exists.
+	 */
+	public Double[][] getShippingRates() {
+		final int originCount = getOrigins().size();
+		final int destinationCount = getDestinations().size();
+		final Double[][] rates = new Double[originCount][destinationCount];
+		for (int i = 0; i < originCount; i++) {
+			for (int j = 0; j < destinationCount; j++) {
+				if (distanceMatrix.isReachable(i, j)) {
+					rates[i][j] = shippingRates[i][j];
+				}
+			}
+		}
+		return rates;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return new HashCodeBuilder(17, 37).append(distanceMatrix)
+				.append(shippingRates).toHashCode();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == null) {
+			return false;
+		}
+		if (obj == this) {
+			return true;
+		}
+		if (obj.getClass() != getClass()) {
+			return false;
+		}
+		final ShippingMatrix rhs = (ShippingMatrix) obj;
+		return new EqualsBuilder().append(distanceMatrix, rhs.distanceMatrix)
+				.append(shippingRates, rhs.shippingRates).isEquals();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return ReflectionToStringBuilder.toString(this);
+	}
+
+}
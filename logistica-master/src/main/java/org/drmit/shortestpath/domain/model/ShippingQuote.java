@@ -0,0 +1,192 @@
+package org.drmit.shortestpath.domain.model;
+
+import java.io.Serializable;
+
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+import org.apache.commons.lang.builder.ReflectionToStringBuilder;
+
+/**
+ * Represents an order to be quoted: the origin and destination of shipment,
+ * and the vehicle and fuel price the shipping rate is calculated with.
+ *
+ * @author Leandro Ferreira
+ */
+public class ShippingQuote implements Serializable {
+
+	/** Serial version id. */
+	private static final long serialVersionUID = 1L;
+
+	/** Origin of shipment. */
+	private String origin;
+
+	/** Destination of shipment. */
+	private String destination;
+
+	/** Vehicle mileage (in Kilometers per liter or KMPL). */
+	private double vehicleMileage;
+
+	/** Fuel price per liter. */
+	private double fuelPrice;
+
+	/**
+	 * Creates a new ShippingQuote object.
+	 *
+	 * @param origin
+	 *            the origin of shipment.
+	 * @param destination
+	 *            the destination of shipment.
+	 * @param vehicleMileage
+	 *            vehicle mileage (in Kilometers per liter or KMPL).
+	 * @param fuelPrice
+	 *            fuel price per liter.
+	 */
+	public ShippingQuote(String origin, String destination,
+			double vehicleMileage, double fuelPrice) {
+		setOrigin(origin);
+		setDestination(destination);
+		setVehicleMileage(vehicleMileage);
+		setFuelPrice(fuelPrice);
+	}
+
+	/**
+	 * Gets the origin of shipment.
+	 *
+	 * @return the origin of shipment.
+	 */
+	public String getOrigin() {
+		return origin;
+	}
+
+	/**
+	 * Sets the origin of shipment.
+	 *
+	 * @param origin
+	 *            the origin to set.
+	 * @throws IllegalArgumentException
+	 *             if origin is null.
+	 */
+	private void setOrigin(String origin) {
+		if (origin == null) {
+			throw new IllegalArgumentException("origin is null");
+		}
+		this.origin = origin;
+	}
+
+	/**
+	 * Gets the destination of shipment.
+	 *
+	 * @return the destination of shipment.
+	 */
+	public String getDestination() {
+		return destination;
+	}
+
+	/**
+	 * Sets the destination of shipment.
+	 *
+	 * @param destination
+	 *            the destination to set.
+	 * @throws IllegalArgumentException
+	 *             if destination is null.
+	 */
+	private void setDestination(String destination) {
+		if (destination == null) {
+			throw new IllegalArgumentException("destination is null");
+		}
+		this.destination = destination;
+	}
+
+	/**
+	 * Gets the vehicle mileage.
+	 *
+	 * @return the vehicle mileage (in Kilometers per liter or KMPL).
+	 */
+	public double getVehicleMileage() {
+		return vehicleMileage;
+	}
+
+	/**
+	 * Sets the vehicle mileage.
+	 *
+	 * @param vehicleMileage
+	 *            the mileage to set.
+	 * @throws IllegalArgumentException
+	 *             if vehicleMileage is not positive.
+	 */
+	private void setVehicleMileage(double vehicleMileage) {
+		if (vehicleMileage <= 0) {
+			throw new IllegalArgumentException("vehicleMileage is invalid");
+		}
+		this.vehicleMileage = vehicleMileage;
+	}
+
+	/**
+	 * Gets the fuel price.
+	 *
+	 * @return the fuel price per liter.
+	 */
+	public double getFuelPrice() {
+		return fuelPrice;
+	}
+
+	/**
+	 * Sets the fuel price.
+	 *
+	 * @param fuelPrice
+	 *            the price to set.
+	 * @throws IllegalArgumentException
+	 *             if fuelPrice is negative.
+	 */
+	private void setFuelPrice(double fuelPrice) {
+		if (fuelPrice < 0) {
+			throw new IllegalArgumentException("fuelPrice is negative");
+		}
+		this.fuelPrice = fuelPrice;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return new HashCodeBuilder(17, 37).append(origin).append(destination)
+				.append(vehicleMileage).append(fuelPrice).toHashCode();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == null) {
+			return false;
+		}
+		if (obj == this) {
+			return true;
+		}
+		if (obj.getClass() != getClass()) {
+			return false;
+		}
+		final ShippingQuote rhs = (ShippingQuote) obj;
+		return new EqualsBuilder().append(origin, rhs.origin)
+				.append(destination, rhs.destination)
+				.append(vehicleMileage, rhs.vehicleMileage)
+				.append(fuelPrice, rhs.fuelPrice).isEquals();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return ReflectionToStringBuilder.toString(this);
+	}
+
+}
@@ -0,0 +1,297 @@
+package org.drmit.shortestpath.domain.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * This class contains the shortest routes from an origin to every location
+ * reachable from it, as a predecessor tree.
+ * <p>
+ * The locations are held in parallel arrays in the order their distance was
+ * settled, starting with the origin, so the tree takes a few bytes per
+ * location. Routes are only reconstructed when asked for.
+ *
+ * @author Leandro Ferreira
+ */
+public class ShortestPathTree implements Serializable {
+
+	/** Serial version id. */
+	private static final long serialVersionUID = 1L;
+
+	/** Tree origin. */
+	private String origin = null;
+
+	/** Reachable locations, in ascending distance order. */
+	private String[] locations = null;
+
+	/** Shortest route length to each location. */
+	private double[] distances = null;
+
+	/** Index of the location preceding each location, or -1 for the origin. */
+	private int[] predecessors = null;
+
+	/** Distance of the leg reaching each location, or 0 for the origin. */
+	private double[] legDistances = null;
+
+	/** Index of each location, built on first lookup. */
+	private transient volatile Map<String, Integer> indexes = null;
+
+	/**
+	 * Constructs a ShortestPathTree object. The arrays are owned by the tree
+	 * and must not be modified afterwards.
+	 *
+	 * @param origin
+	 *            the tree origin.
+	 * @param locations
+	 *            the reachable locations, in ascending distance order and
+	 *            starting with the origin.
+	 * @param distances
+	 *            the shortest route length to each location.
+	 * @param predecessors
+	 *            the index of the location preceding each location, or -1 for
+	 *            the origin.
+	 * @param legDistances
+	 *            the distance of the leg reaching each location.
+	 * @throws IllegalArgumentException
+	 *             if any argument is null, if the arrays have different
+	 *             lengths or if the first location is not the origin.
+	 */
+	public ShortestPathTree(String origin, String[] locations,
+			double[] distances, int[] predecessors, double[] legDistances) {
+		if (origin == null) {
+			throw new IllegalArgumentException("origin is null");
+		}
+		if (locations == null) {
+			throw new IllegalArgumentException("locations is null");
+		}
+		if (distances == null) {
+			throw new IllegalArgumentException("distances is null");
+		}
+		if (predecessors == null) {
+			throw new IllegalArgumentException("predecessors is null");
+		}
+		if (legDistances == null) {
+			throw new IllegalArgumentException("legDistances is null");
+		}
+		if (locations.length == 0 || !origin.equals(locations[0])) {
+			throw new IllegalArgumentException(
+					"locations does not start with the origin");
+		}
+		if (distances.length != locations.length
+				|| predecessors.length != locations.length
+				|| legDistances.length != locations.length) {
+			throw new IllegalArgumentException(
+					"arrays do not match the locations");
+		}
+		this.origin = origin;
+		this.locations = locations;
+		this.distances = distances;
+		this.predecessors = predecessors;
+		this.legDistances = legDistances;
+	}
+
+	/**
+	 * Creates the tree of an origin from which no other location is
+	 * reachable.
+	 *
+	 * @param origin
+	 *            the tree origin.
+	 * @return a tree holding the origin alone.
+	 * @throws IllegalArgumentException
+	 *             if origin is null.
+	 */
+	public static ShortestPathTree of(String origin) {
+		return new ShortestPathTree(origin, new String[] { origin },
+				new double[] { 0 }, new int[] { -1 }, new double[] { 0 });
+	}
+
+	/**
+	 * Gets the tree origin.
+	 *
+	 * @return the tree origin.
+	 */
+	public String getOrigin() {
+		return origin;
+	}
+
+	/**
+	 * Gets the number of locations reachable from the origin, the origin
+	 * included.
+	 *
+	 * @return the number of reachable locations.
+	 */
+	public int getLocationCount() {
+		return locations.length;
+	}
+
+	/**
+	 * Gets a reachable location. Locations are indexed in ascending distance
+	 * order, the origin first.
+	 *
+	 * @param index
+	 *            the location index.
+	 * @return the location.
+	 * @throws IndexOutOfBoundsException
+	 *             if index is out of range.
+	 */
+	public String getLocation(int index) {
+		return locations[index];
+	}
+
+	/**
+	 * Gets the shortest route length to a reachable location.
+	 *
+	 * @param index
+	 *            the location index.
+	 * @return the shortest route length.
+	 * @throws IndexOutOfBoundsException
+	 *             if index is out of range.
+	 */
+	public double getDistance(int index) {
+		return distances[index];
+	}
+
+	/**
+	 * Gets the predecessor of a reachable location along its shortest route.
+	 *
+	 * @param index
+	 *            the location index.
+	 * @return the index of the predecessor, or -1 for the origin.
+	 * @throws IndexOutOfBoundsException
+	 *             if index is out of range.
+	 */
+	public int getPredecessor(int index) {
+		return predecessors[index];
+	}
+
+	/**
+	 * Gets the index of a location.
+	 *
+	 * @param location
+	 *            the location.
+	 * @return the location index, or -1 if it is not reachable from the
+	 *         origin.
+	 */
+	public int indexOf(String location) {
+		Map<String, Integer> indexes = this.indexes;
+		if (indexes == null) {
+			// Racing threads build equal maps, so either may be kept
+			indexes = new HashMap<String, Integer>(locations.length * 4 / 3 + 1);
+			for (int i = 0; i < locations.length; i++) {
+				indexes.put(locations[i], i);
+			}
+			this.indexes = indexes;
+		}
+		final Integer index = indexes.get(location);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * Returns true if a location is reachable from the origin.
+	 *
+	 * @param location
+	 *            the location.
+	 * @return true if a route exists.
+	 */
+	public boolean isReachable(String location) {
+		return indexOf(location) >= 0;
+	}
+
+	/**
+	 * Gets the shortest route length to a location.
+	 *
+	 * @param location
+	 *            the location.
+	 * @return the shortest route length, or positive infinity if the location
+	 *         is not reachable.
+	 */
+	public double getDistance(String location) {
+		final int index = indexOf(location);
+		return index < 0 ? Double.POSITIVE_INFINITY : distances[index];
+	}
+
+	/**
+	 * Reconstructs the shortest route to a location.
+	 *
+	 * @param destination
+	 *            the route destination.
+	 * @return the shortest route, or null if the destination is not
+	 *         reachable.
+	 * @throws IllegalArgumentException
+	 *             if destination is null.
+	 */
+	public Route getRoute(String destination) {
+		if (destination == null) {
+			throw new IllegalArgumentException("destination is null");
+		}
+
+		final int index = indexOf(destination);
+		if (index < 0) {
+			return null;
+		}
+
+		// Walks the predecessors back to the origin
+		final List<Leg> legs = new ArrayList<Leg>();
+		for (int i = index; predecessors[i] >= 0; i = predecessors[i]) {
+			legs.add(new Leg(locations[predecessors[i]], locations[i],
+					legDistances[i]));
+		}
+		Collections.reverse(legs);
+		return new Route(origin, destination, legs);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return new HashCodeBuilder(17, 37).append(origin).append(locations)
+				.append(distances).toHashCode();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == null) {
+			return false;
+		}
+		if (obj == this) {
+			return true;
+		}
+		if (obj.getClass() != getClass()) {
+			return false;
+		}
+		final ShortestPathTree rhs = (ShortestPathTree) obj;
+		return new EqualsBuilder().append(origin, rhs.origin)
+				.append(locations, rhs.locations)
+				.append(distances, rhs.distances)
+				.append(predecessors, rhs.predecessors)
+				.append(legDistances, rhs.legDistances).isEquals();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this).append("origin", origin)
+				.append("locationCount", locations.length).toString();
+	}
+
+}
@@ -0,0 +1,105 @@
+package org.drmit.shortestpath.domain.model;
+
+import java.util.List;
+
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+
+/**
+ * This class represents a route between two locations travelled at a given
+ * departure time.
+ *
+ * @author Leandro Ferreira
+ */
+public class TimedRoute extends Route {
+
+	/** Serial version id. */
+	private static final long serialVersionUID = 1L;
+
+	/** Departure time, in seconds. */
+	private double departureTime = 0;
+
+	/** Arrival time, in seconds. */
+	private double arrivalTime = 0;
+
+	/**
+	 * Creates a new TimedRoute object.
+	 *
+	 * @param origin
+	 *            the route origin.
+	 * @param destination
+	 *            the route destination.
+	 * @param legs
+	 *            the list of legs associated with this route.
+	 * @param departureTime
+	 *            the departure time from the origin, in seconds.
+	 * @param arrivalTime
+	 *            the arrival time at the destination, in seconds.
+	 * @throws IllegalArgumentException
+	 *             if the arrival time precedes the departure time.
+	 */
+	public TimedRoute(String origin, String destination, List<Leg> legs,
+			double departureTime, double arrivalTime) {
+		super(origin, destination, legs);
+		if (!(arrivalTime >= departureTime)) {
+			throw new IllegalArgumentException(
+					"arrivalTime precedes the departureTime");
+		}
+		this.departureTime = departureTime;
+		this.arrivalTime = arrivalTime;
+	}
+
+	/**
+	 * Gets the departure time from the origin.
+	 *
+	 * @return the departure time, in seconds.
+	 */
+	public double getDepartureTime() {
+		return departureTime;
+	}
+
+	/**
+	 * Gets the arrival time at the destination.
+	 *
+	 * @return the arrival time, in seconds.
+	 */
+	public double getArrivalTime() {
+		return arrivalTime;
+	}
+
+	/**
+	 * Gets the time it takes to travel the route.
+	 *
+	 * @return the travel time, in seconds.
+	 */
+	public double getTravelTime() {
+		return arrivalTime - departureTime;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.domain.model.Route#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return new HashCodeBuilder(17, 37).appendSuper(super.hashCode())
+				.append(departureTime).append(arrivalTime).toHashCode();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.domain.model.Route#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (!super.equals(obj)) {
+			return false;
+		}
+		final TimedRoute rhs = (TimedRoute) obj;
+		return new EqualsBuilder().append(departureTime, rhs.departureTime)
+				.append(arrivalTime, rhs.arrivalTime).isEquals();
+	}
+
+}
@@ -0,0 +1,272 @@
+package org.drmit.shortestpath.domain.model;
+
+import java.io.Serializable;
+import java.nio.DoubleBuffer;
+
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * Daily piecewise-linear travel time profile of a leg: the time it takes to
+ * cover the leg as a function of the departure time.
+ * <p>
+ * The profile is given by breakpoints, each a departure time in seconds since
+ * midnight and the travel time in seconds when departing then. Travel times
+ * between breakpoints are interpolated linearly, wrapping around midnight, so
+ * the profile repeats every day. Profiles must be FIFO: departing later never
+ * means arriving earlier, which keeps time-dependent Dijkstra searches exact.
+ *
+ * @author Leandro Ferreira
+ */
+public class TravelTimeProfile implements Serializable {
+
+	/** Serial version id. */
+	private static final long serialVersionUID = 1L;
+
+	/** Profile period, in seconds. */
+	public static final double PERIOD = 86400;
+
+	/** Departure time of each breakpoint, in ascending order. */
+	private double[] departureTimes = null;
+
+	/** Travel time of each breakpoint. */
+	private double[] travelTimes = null;
+
+	/**
+	 * Constructs a TravelTimeProfile object. The arrays are copied.
+	 *
+	 * @param departureTimes
+	 *            the departure time of each breakpoint, in seconds since
+	 *            midnight and strictly ascending order.
+	 * @param travelTimes
+	 *            the travel time of each breakpoint, in seconds.
+	 * @throws IllegalArgumentException
+	 *             if any argument is null or empty, if the arrays have
+	 *             different lengths, if a departure time is out of order or
+	 *             outside the day, if a travel time is negative or if the
+	 *             profile is not FIFO.
+	 */
+	public TravelTimeProfile(double[] departureTimes, double[] travelTimes) {
+		if (departureTimes == null) {
+			throw new IllegalArgumentException("departureTimes is null");
+		}
+		if (travelTimes == null) {
+			throw new IllegalArgumentException("travelTimes is null");
+		}
+		if (departureTimes.length == 0) {
+			throw new IllegalArgumentException("departureTimes is empty");
+		}
+		if (departureTimes.length != travelTimes.length) {
+			throw new IllegalArgumentException(
+					"travelTimes does not match the departureTimes");
+		}
+
+		final int count = departureTimes.length;
+		for (int i = 0; i < count; i++) {
+			if (!(departureTimes[i] >= 0 && departureTimes[i] < PERIOD)) {
+				throw new IllegalArgumentException(
+						"departureTimes is outside the day");
+			}
+			if (i > 0 && departureTimes[i] <= departureTimes[i - 1]) {
+				throw new IllegalArgumentException(
+						"departureTimes is not ascending");
+			}
+			if (!(travelTimes[i] >= 0)) {
+				throw new IllegalArgumentException("travelTimes is negative");
+			}
+		}
+
+		// Arrival times must not decrease between breakpoints, midnight
+		// included
+		for (int i = 0; i < count && count > 1; i++) {
+			final int next = (i + 1) % count;
+			final double interval = next > i ? departureTimes[next]
+					- departureTimes[i] : departureTimes[next] + PERIOD
+					- departureTimes[i];
+			if (travelTimes[next] - travelTimes[i] < -interval) {
+				throw new IllegalArgumentException("profile is not FIFO");
+			}
+		}
+
+		this.departureTimes = departureTimes.clone();
+		this.travelTimes = travelTimes.clone();
+	}
+
+	/**
+	 * Gets the number of breakpoints.
+	 *
+	 * @return the number of breakpoints.
+	 */
+	public int getBreakpointCount() {
+		return departureTimes.length;
+	}
+
+	/**
+	 * Gets the departure time of each breakpoint.
+	 *
+	 * @return a copy of the departure times, in seconds since midnight.
+	 */
+	public double[] getDepartureTimes() {
+		return departureTimes.clone();
+	}
+
+	/**
+	 * Gets the travel time of each breakpoint.
+	 *
+	 * @return a copy of the travel times, in seconds.
+	 */
+	public double[] getTravelTimes() {
+		return travelTimes.clone();
+	}
+
+	/**
+	 * Gets the travel time when departing at the given time.
+	 *
+	 * @param departureTime
+	 *            the departure time, in seconds since midnight of any day.
+	 * @return the travel time, in seconds.
+	 */
+	public double getTravelTime(double departureTime) {
+		return evaluate(departureTimes, travelTimes, 0, departureTimes.length,
+				departureTime);
+	}
+
+	/**
+	 * Evaluates a profile held in a range of arrays.
+	 *
+	 * @param departureTimes
+	 *            the array holding the breakpoint departure times.
+	 * @param travelTimes
+	 *            the array holding the breakpoint travel times.
+	 * @param from
+	 *            the index of the first breakpoint of the profile.
+	 * @param to
+	 *            the index after the last breakpoint of the profile.
+	 * @param departureTime
+	 *            the departure time, in seconds since midnight of any day.
+	 * @return the travel time, in seconds.
+	 */
+	public static double evaluate(double[] departureTimes,
+			double[] travelTimes, int from, int to, double departureTime) {
+		return evaluate(DoubleBuffer.wrap(departureTimes),
+				DoubleBuffer.wrap(travelTimes), from, to, departureTime);
+	}
+
+	/**
+	 * Evaluates a profile held in a range of buffers, such as the profiles of
+	 * a whole graph packed together, without allocating. The buffers are read
+	 * by absolute index only, so they may be shared between threads.
+	 *
+	 * @param departureTimes
+	 *            the buffer holding the breakpoint departure times.
+	 * @param travelTimes
+	 *            the buffer holding the breakpoint travel times.
+	 * @param from
+	 *            the index of the first breakpoint of the profile.
+	 * @param to
+	 *            the index after the last breakpoint of the profile.
+	 * @param departureTime
+	 *            the departure time, in seconds since midnight of any day.
+	 * @return the travel time, in seconds.
+	 */
+	public static double evaluate(DoubleBuffer departureTimes,
+			DoubleBuffer travelTimes, int from, int to, double departureTime) {
+		final int last = to - 1;
+		if (last == from) {
+			return travelTimes.get(from);
+		}
+
+		double time = departureTime % PERIOD;
+		if (time < 0) {
+			time += PERIOD;
+		}
+
+		// Finds the last breakpoint departing at or before the time
+		int low = from;
+		int high = last;
+		while (low <= high) {
+			final int middle = (low + high) >>> 1;
+			final double middleTime = departureTimes.get(middle);
+			if (middleTime < time) {
+				low = middle + 1;
+			} else if (middleTime > time) {
+				high = middle - 1;
+			} else {
+				return travelTimes.get(middle);
+			}
+		}
+		final int index = high;
+
+		// Interpolates between the breakpoints around the time, wrapping
+		// around midnight
+		final double startTime;
+		final double endTime;
+		final double startTravelTime;
+		final double endTravelTime;
+		if (index < from) {
+			startTime = departureTimes.get(last) - PERIOD;
+			startTravelTime = travelTimes.get(last);
+			endTime = departureTimes.get(from);
+			endTravelTime = travelTimes.get(from);
+		} else if (index == last) {
+			startTime = departureTimes.get(last);
+			startTravelTime = travelTimes.get(last);
+			endTime = departureTimes.get(from) + PERIOD;
+			endTravelTime = travelTimes.get(from);
+		} else {
+			startTime = departureTimes.get(index);
+			startTravelTime = travelTimes.get(index);
+			endTime = departureTimes.get(index + 1);
+			endTravelTime = travelTimes.get(index + 1);
+		}
+
+		return startTravelTime + (endTravelTime - startTravelTime)
+				* (time - startTime) / (endTime - startTime);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return new HashCodeBuilder(17, 37).append(departureTimes)
+				.append(travelTimes).toHashCode();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == null) {
+			return false;
+		}
+		if (obj == this) {
+			return true;
+		}
+		if (obj.getClass() != getClass()) {
+			return false;
+		}
+		final TravelTimeProfile rhs = (TravelTimeProfile) obj;
+		return new EqualsBuilder().append(departureTimes, rhs.departureTimes)
+				.append(travelTimes, rhs.travelTimes).isEquals();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("departureTimes", departureTimes)
+				.append("travelTimes", travelTimes).toString();
+	}
+
+}
@@ -0,0 +1,214 @@
+package org.drmit.shortestpath.domain.model;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+import org.apache.commons.lang.builder.ReflectionToStringBuilder;
+
+/**
+ * Cost model of a vehicle, by which the shipping rate of a leg is its fuel
+ * cost plus its weighted toll.
+ * <p>
+ * The fuel a leg takes is its distance over the vehicle mileage, times the
+ * fuel factor of the leg road class: a truck may burn 30% more fuel in urban
+ * roads and 10% less on highways. Road classes without a factor, and legs
+ * without a road class, have a factor of 1. The toll factor weights the tolls
+ * for the vehicle, such as by its number of axles.
+ *
+ * @author Leandro Ferreira
+ */
+public class VehicleProfile implements Serializable {
+
+	/** Serial version id. */
+	private static final long serialVersionUID = 1L;
+
+	/** Profile name. */
+	private String name = null;
+
+	/** Vehicle mileage (in Kilometers per liter or KMPL). */
+	private double vehicleMileage = 0;
+
+	/** Toll factor. */
+	private double tollFactor = 0;
+
+	/** Fuel factor by road class. */
+	private Map<String, Double> fuelFactors = null;
+
+	/**
+	 * Constructs a VehicleProfile object.
+	 *
+	 * @param name
+	 *            the profile name.
+	 * @param vehicleMileage
+	 *            vehicle mileage (in Kilometers per liter or KMPL).
+	 * @param tollFactor
+	 *            the factor tolls are multiplied by.
+	 * @param fuelFactors
+	 *            the factor fuel consumption is multiplied by, by road class.
+	 *            The map is copied.
+	 * @throws IllegalArgumentException
+	 *             if name or fuelFactors is null, if vehicleMileage is not
+	 *             positive or if a factor is negative.
+	 */
+	public VehicleProfile(String name, double vehicleMileage,
+			double tollFactor, Map<String, Double> fuelFactors) {
+		if (name == null) {
+			throw new IllegalArgumentException("name is null");
+		}
+		if (!(vehicleMileage > 0)) {
+			throw new IllegalArgumentException("vehicleMileage is invalid");
+		}
+		if (!(tollFactor >= 0)) {
+			throw new IllegalArgumentException("tollFactor is negative");
+		}
+		if (fuelFactors == null) {
+			throw new IllegalArgumentException("fuelFactors is null");
+		}
+		for (Double fuelFactor : fuelFactors.values()) {
+			if (fuelFactor == null || !(fuelFactor >= 0)) {
+				throw new IllegalArgumentException("fuelFactors is invalid");
+			}
+		}
+
+		this.name = name;
+		this.vehicleMileage = vehicleMileage;
+		this.tollFactor = tollFactor;
+		this.fuelFactors = new HashMap<String, Double>(fuelFactors);
+	}
+
+	/**
+	 * Gets the profile name.
+	 *
+	 * @return the profile name.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gets the vehicle mileage.
+	 *
+	 * @return the vehicle mileage (in Kilometers per liter or KMPL).
+	 */
+	public double getVehicleMileage() {
+		return vehicleMileage;
+	}
+
+	/**
+	 * Gets the factor tolls are multiplied by.
+	 *
+	 * @return the toll factor.
+	 */
+	public double getTollFactor() {
+		return tollFactor;
+	}
+
+	/**
+	 * Gets an unmodifiable view of the fuel factors.
+	 *
+	 * @return the fuel factor by road class.
+	 */
+	public Map<String, Double> getFuelFactors() {
+		return Collections.unmodifiableMap(fuelFactors);
+	}
+
+	/**
+	 * Gets the factor fuel consumption is multiplied by on a road class.
+	 *
+	 * @param roadClass
+	 *            the road class, or null.
+	 * @return the fuel factor, 1 if the road class has none.
+	 */
+	public double getFuelFactor(String roadClass) {
+		final Double fuelFactor = (roadClass == null) ? null : fuelFactors
+				.get(roadClass);
+		return (fuelFactor == null) ? 1 : fuelFactor;
+	}
+
+	/**
+	 * Gets the fuel the vehicle takes to cover a distance.
+	 *
+	 * @param distance
+	 *            the distance.
+	 * @param roadClass
+	 *            the road class, or null.
+	 * @return the fuel, in liters.
+	 */
+	public double getFuelUse(double distance, String roadClass) {
+		return distance * getFuelFactor(roadClass) / vehicleMileage;
+	}
+
+	/**
+	 * Gets the toll the vehicle pays.
+	 *
+	 * @param toll
+	 *            the toll charged for the leg.
+	 * @return the weighted toll.
+	 */
+	public double getTollCost(double toll) {
+		return toll * tollFactor;
+	}
+
+	/**
+	 * Gets the shipping rate of a leg.
+	 *
+	 * @param leg
+	 *            the leg.
+	 * @param fuelPrice
+	 *            fuel price per liter.
+	 * @return the fuel cost plus the weighted toll of the leg.
+	 */
+	public double getLegCost(Leg leg, double fuelPrice) {
+		return fuelPrice * getFuelUse(leg.getDistance(), leg.getRoadClass())
+				+ getTollCost(leg.getToll());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return new HashCodeBuilder(17, 37).append(name).append(vehicleMileage)
+				.append(tollFactor).append(fuelFactors).toHashCode();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == null) {
+			return false;
+		}
+		if (obj == this) {
+			return true;
+		}
+		if (obj.getClass() != getClass()) {
+			return false;
+		}
+		final VehicleProfile rhs = (VehicleProfile) obj;
+		return new EqualsBuilder().append(name, rhs.name)
+				.append(vehicleMileage, rhs.vehicleMileage)
+				.append(tollFactor, rhs.tollFactor)
+				.append(fuelFactors, rhs.fuelFactors).isEquals();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return ReflectionToStringBuilder.toString(this);
+	}
+
+}
@@ -0,0 +1,113 @@
+package org.drmit.shortestpath.infrastructure.concurrent;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed-size thread pool with a bounded queue. Once every thread is busy and
+ * the queue is full, tasks are rejected with a RejectedExecutionException
+ * instead of piling up, so that callers can shed load. Rejections are counted,
+ * and exported along with the queue size through JMX.
+ *
+ * @author Leandro Ferreira
+ */
+public class BoundedExecutor extends ThreadPoolExecutor implements
+		BoundedExecutorMXBean {
+
+	/** Name prefix of the pool threads. */
+	private final String name;
+
+	/** Number of tasks rejected. */
+	private final AtomicLong rejectedCount = new AtomicLong();
+
+	/**
+	 * Constructs a BoundedExecutor object.
+	 *
+	 * @param name
+	 *            the name prefix of the pool threads.
+	 * @param threadCount
+	 *            the number of threads.
+	 * @param queueCapacity
+	 *            the number of tasks which may wait for a thread.
+	 * @throws IllegalArgumentException
+	 *             if name is null, or if threadCount or queueCapacity is not
+	 *             positive.
+	 */
+	public BoundedExecutor(final String name, int threadCount,
+			int queueCapacity) {
+		super(threadCount, threadCount, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity),
+				new ThreadFactory() {
+					private final AtomicInteger threadNumber = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable runnable) {
+						final Thread thread = new Thread(runnable, name + "-"
+								+ threadNumber.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		if (name == null) {
+			throw new IllegalArgumentException("name is null");
+		}
+		this.name = name;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.concurrent.BoundedExecutorMXBean
+	 * #getName()
+	 */
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.util.concurrent.ThreadPoolExecutor#execute(java.lang.Runnable)
+	 */
+	@Override
+	public void execute(Runnable command) {
+		try {
+			super.execute(command);
+		} catch (RejectedExecutionException e) {
+			rejectedCount.incrementAndGet();
+			throw e;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.concurrent.BoundedExecutorMXBean
+	 * #getRejectedCount()
+	 */
+	@Override
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.concurrent.BoundedExecutorMXBean
+	 * #getQueueSize()
+	 */
+	@Override
+	public int getQueueSize() {
+		return getQueue().size();
+	}
+
+}
@@ -0,0 +1,38 @@
+package org.drmit.shortestpath.infrastructure.concurrent;
+
+/**
+ * Management interface of a bounded executor.
+ *
+ * @author Leandro Ferreira
+ */
+public interface BoundedExecutorMXBean {
+
+	/**
+	 * Gets the name prefix of the pool threads.
+	 *
+	 * @return the name of the executor.
+	 */
+	public String getName();
+
+	/**
+	 * Gets the approximate number of threads running tasks.
+	 *
+	 * @return the number of active threads.
+	 */
+	public int getActiveCount();
+
+	/**
+	 * Gets the number of tasks waiting for a thread.
+	 *
+	 * @return the queue size.
+	 */
+	public int getQueueSize();
+
+	/**
+	 * Gets the number of tasks rejected since the pool was created.
+	 *
+	 * @return the number of tasks rejected.
+	 */
+	public long getRejectedCount();
+
+}
@@ -0,0 +1,170 @@
+package org.drmit.shortestpath.infrastructure.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds, in the manner of
+ * HdrHistogram: values are counted in buckets whose width grows with their
+ * magnitude, so that any value is reported within 1/32 of its actual value
+ * while the histogram keeps a fixed size of a few kilobytes.
+ * <p>
+ * Values up to 63 have a bucket each. Above that, each power of two range is
+ * split into 32 buckets of equal width. Recording is a single atomic
+ * increment, so it may be called from any thread on hot paths.
+ *
+ * @author Leandro Ferreira
+ */
+public class LatencyHistogram {
+
+	/** Number of bits of precision below the leading bit of a value. */
+	private static final int SUB_BUCKET_BITS = 5;
+
+	/** Number of buckets per power of two range. */
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	/** Number of buckets, enough for any non-negative long. */
+	private static final int BUCKET_COUNT = 2 * SUB_BUCKET_COUNT
+			+ (63 - SUB_BUCKET_BITS - 1) * SUB_BUCKET_COUNT;
+
+	/** Count of values in each bucket. */
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+	/**
+	 * Records a value. Negative values are recorded as 0.
+	 *
+	 * @param nanos
+	 *            the latency in nanoseconds.
+	 */
+	public void record(long nanos) {
+		counts.incrementAndGet(bucketOf(Math.max(nanos, 0)));
+	}
+
+	/**
+	 * Records the time elapsed since the given start.
+	 *
+	 * @param startNanos
+	 *            the start, in System.nanoTime() terms.
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Clears every recorded value.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts.set(i, 0);
+		}
+	}
+
+	/**
+	 * Takes a summary of the values recorded so far. Values recorded while the
+	 * summary is taken may or may not be included.
+	 *
+	 * @return the summary.
+	 */
+	public LatencySnapshot snapshot() {
+		final long[] snapshot = new long[BUCKET_COUNT];
+		long count = 0;
+		double sum = 0;
+		int maxBucket = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			snapshot[i] = counts.get(i);
+			if (snapshot[i] > 0) {
+				count += snapshot[i];
+				sum += snapshot[i] * (double) midpointOf(i);
+				maxBucket = i;
+			}
+		}
+		if (count == 0) {
+			return new LatencySnapshot(0, 0, 0, 0, 0, 0, 0);
+		}
+		return new LatencySnapshot(count, sum / count, percentile(snapshot,
+				count, 0.5), percentile(snapshot, count, 0.9), percentile(
+				snapshot, count, 0.99), percentile(snapshot, count, 0.999),
+				highestOf(maxBucket));
+	}
+
+	/**
+	 * Gets the value at a percentile of a snapshot of the counts.
+	 *
+	 * @param snapshot
+	 *            the counts.
+	 * @param count
+	 *            the sum of the counts.
+	 * @param fraction
+	 *            the percentile, as a fraction of 1.
+	 * @return the highest value of the bucket holding the percentile.
+	 */
+	private static long percentile(long[] snapshot, long count,
+			double fraction) {
+		final long rank = Math.max(1, (long) Math.ceil(count * fraction));
+		long seen = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return highestOf(i);
+			}
+		}
+		return highestOf(snapshot.length - 1);
+	}
+
+	/**
+	 * Gets the bucket counting a value.
+	 *
+	 * @param value
+	 *            the non-negative value.
+	 * @return the bucket index.
+	 */
+	static int bucketOf(long value) {
+		if (value < 2 * SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		final int shift = 63 - Long.numberOfLeadingZeros(value)
+				- SUB_BUCKET_BITS;
+		return 2 * SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_COUNT
+				+ (int) (value >>> shift) - SUB_BUCKET_COUNT;
+	}
+
+	/**
+	 * Gets the lowest value counted by a bucket.
+	 *
+	 * @param bucket
+	 *            the bucket index.
+	 * @return the lowest value.
+	 */
+	static long lowestOf(int bucket) {
+		if (bucket < 2 * SUB_BUCKET_COUNT) {
+			return bucket;
+		}
+		final int offset = bucket - 2 * SUB_BUCKET_COUNT;
+		final int shift = offset / SUB_BUCKET_COUNT + 1;
+		return (long) (SUB_BUCKET_COUNT + offset % SUB_BUCKET_COUNT) << shift;
+	}
+
+	/**
+	 * Gets the highest value counted by a bucket.
+	 *
+	 * @param bucket
+	 *            the bucket index.
+	 * @return the highest value.
+	 */
+	static long highestOf(int bucket) {
+		return bucket == BUCKET_COUNT - 1 ? Long.MAX_VALUE
+				: lowestOf(bucket + 1) - 1;
+	}
+
+	/**
+	 * Gets the value standing for the values counted by a bucket.
+	 *
+	 * @param bucket
+	 *            the bucket index.
+	 * @return the middle value of the bucket.
+	 */
+	private static long midpointOf(int bucket) {
+		final long lowest = lowestOf(bucket);
+		return lowest + (highestOf(bucket) - lowest) / 2;
+	}
+
+}
@@ -0,0 +1,141 @@
+package org.drmit.shortestpath.infrastructure.metrics;
+
+import java.beans.ConstructorProperties;
+
+import org.apache.commons.lang.builder.ReflectionToStringBuilder;
+
+/**
+ * Summary of the latencies recorded by a histogram, in nanoseconds.
+ * Percentiles are reported as the highest value of the histogram bucket
+ * holding them.
+ *
+ * @author Leandro Ferreira
+ */
+public class LatencySnapshot {
+
+	/** Number of values recorded. */
+	private final long count;
+
+	/** Mean value. */
+	private final double mean;
+
+	/** Median. */
+	private final long p50;
+
+	/** 90th percentile. */
+	private final long p90;
+
+	/** 99th percentile. */
+	private final long p99;
+
+	/** 99.9th percentile. */
+	private final long p999;
+
+	/** Highest value. */
+	private final long max;
+
+	/**
+	 * Constructs a LatencySnapshot object.
+	 *
+	 * @param count
+	 *            the number of values recorded.
+	 * @param mean
+	 *            the mean value.
+	 * @param p50
+	 *            the median.
+	 * @param p90
+	 *            the 90th percentile.
+	 * @param p99
+	 *            the 99th percentile.
+	 * @param p999
+	 *            the 99.9th percentile.
+	 * @param max
+	 *            the highest value.
+	 */
+	@ConstructorProperties({ "count", "mean", "p50", "p90", "p99", "p999",
+			"max" })
+	public LatencySnapshot(long count, double mean, long p50, long p90,
+			long p99, long p999, long max) {
+		this.count = count;
+		this.mean = mean;
+		this.p50 = p50;
+		this.p90 = p90;
+		this.p99 = p99;
+		this.p999 = p999;
+		this.max = max;
+	}
+
+	/**
+	 * Gets the number of values recorded.
+	 *
+	 * @return the number of values.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Gets the mean value.
+	 *
+	 * @return the mean, in nanoseconds.
+	 */
+	public double getMean() {
+		return mean;
+	}
+
+	/**
+	 * Gets the median.
+	 *
+	 * @return the median, in nanoseconds.
+	 */
+	public long getP50() {
+		return p50;
+	}
+
+	/**
+	 * Gets the 90th percentile.
+	 *
+	 * @return the 90th percentile, in nanoseconds.
+	 */
+	public long getP90() {
+		return p90;
+	}
+
+	/**
+	 * Gets the 99th percentile.
+	 *
+	 * @return the 99th percentile, in nanoseconds.
+	 */
+	public long getP99() {
+		return p99;
+	}
+
+	/**
+	 * Gets the 99.9th percentile.
+	 *
+	 * @return the 99.9th percentile, in nanoseconds.
+	 */
+	public long getP999() {
+		return p999;
+	}
+
+	/**
+	 * Gets the highest value.
+	 *
+	 * @return the highest value, in nanoseconds.
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return ReflectionToStringBuilder.toString(this);
+	}
+
+}
@@ -0,0 +1,157 @@
+package org.drmit.shortestpath.infrastructure.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics of the routing pipeline: the latency of each of its stages, and the
+ * number of nodes settled and edges relaxed by the searches, which tell how
+ * much of the graph a slow query explored.
+ * <p>
+ * Metrics are process-wide, so the instance is shared by every component
+ * recording them, and exported through JMX by the application context.
+ *
+ * @author Leandro Ferreira
+ */
+public final class RoutingMetrics implements RoutingMetricsMXBean {
+
+	/** The shared instance. */
+	private static final RoutingMetrics INSTANCE = new RoutingMetrics();
+
+	/** Latency histogram of each stage, by ordinal. */
+	private final LatencyHistogram[] histograms = new LatencyHistogram[RoutingStage
+			.values().length];
+
+	/** Number of searches which reported their size. */
+	private final AtomicLong searchCount = new AtomicLong();
+
+	/** Number of nodes settled by the searches. */
+	private final AtomicLong settledNodeCount = new AtomicLong();
+
+	/** Number of edges relaxed by the searches. */
+	private final AtomicLong relaxedEdgeCount = new AtomicLong();
+
+	/**
+	 * Constructs a RoutingMetrics object.
+	 */
+	private RoutingMetrics() {
+		for (int i = 0; i < histograms.length; i++) {
+			histograms[i] = new LatencyHistogram();
+		}
+	}
+
+	/**
+	 * Gets the shared instance.
+	 *
+	 * @return the routing metrics.
+	 */
+	public static RoutingMetrics getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Gets the latency histogram of a stage.
+	 *
+	 * @param stage
+	 *            the stage.
+	 * @return the latency histogram.
+	 */
+	public LatencyHistogram getHistogram(RoutingStage stage) {
+		return histograms[stage.ordinal()];
+	}
+
+	/**
+	 * Records the latency of a stage which started at the given time.
+	 *
+	 * @param stage
+	 *            the stage.
+	 * @param startNanos
+	 *            the stage start, in System.nanoTime() terms.
+	 */
+	public void recordSince(RoutingStage stage, long startNanos) {
+		histograms[stage.ordinal()].recordSince(startNanos);
+	}
+
+	/**
+	 * Records the size of a search.
+	 *
+	 * @param settledNodes
+	 *            the number of nodes settled.
+	 * @param relaxedEdges
+	 *            the number of edges relaxed.
+	 */
+	public void recordSearch(long settledNodes, long relaxedEdges) {
+		searchCount.incrementAndGet();
+		settledNodeCount.addAndGet(settledNodes);
+		relaxedEdgeCount.addAndGet(relaxedEdges);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.metrics.RoutingMetricsMXBean#getLatencies
+	 * ()
+	 */
+	@Override
+	public Map<String, LatencySnapshot> getLatencies() {
+		final Map<String, LatencySnapshot> latencies = new LinkedHashMap<String, LatencySnapshot>();
+		for (RoutingStage stage : RoutingStage.values()) {
+			latencies.put(stage.getDisplayName(), getHistogram(stage)
+					.snapshot());
+		}
+		return latencies;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.metrics.RoutingMetricsMXBean#getSearchCount
+	 * ()
+	 */
+	@Override
+	public long getSearchCount() {
+		return searchCount.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.metrics.RoutingMetricsMXBean#
+	 * getSettledNodeCount()
+	 */
+	@Override
+	public long getSettledNodeCount() {
+		return settledNodeCount.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.metrics.RoutingMetricsMXBean#
+	 * getRelaxedEdgeCount()
+	 */
+	@Override
+	public long getRelaxedEdgeCount() {
+		return relaxedEdgeCount.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.metrics.RoutingMetricsMXBean#reset()
+	 */
+	@Override
+	public void reset() {
+		for (LatencyHistogram histogram : histograms) {
+			histogram.reset();
+		}
+		searchCount.set(0);
+		settledNodeCount.set(0);
+		relaxedEdgeCount.set(0);
+	}
+
+}
@@ -0,0 +1,45 @@
+package org.drmit.shortestpath.infrastructure.metrics;
+
+import java.util.Map;
+
+/**
+ * Management interface of the routing pipeline metrics.
+ *
+ * @author Leandro Ferreira
+ */
+public interface RoutingMetricsMXBean {
+
+	/**
+	 * Gets the latency summary of every stage of the routing pipeline.
+	 *
+	 * @return the latency summaries, keyed by stage display name.
+	 */
+	public Map<String, LatencySnapshot> getLatencies();
+
+	/**
+	 * Gets the number of in-memory searches which reported their size.
+	 *
+	 * @return the number of searches.
+	 */
+	public long getSearchCount();
+
+	/**
+	 * Gets the number of nodes settled by the in-memory searches.
+	 *
+	 * @return the number of settled nodes.
+	 */
+	public long getSettledNodeCount();
+
+	/**
+	 * Gets the number of edges relaxed by the in-memory searches.
+	 *
+	 * @return the number of relaxed edges.
+	 */
+	public long getRelaxedEdgeCount();
+
+	/**
+	 * Clears every metric.
+	 */
+	public void reset();
+
+}
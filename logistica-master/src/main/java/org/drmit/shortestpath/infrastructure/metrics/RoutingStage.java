@@ -0,0 +1,50 @@
+package org.drmit.shortestpath.infrastructure.metrics;
+
+/**
+ * Stages of the routing pipeline whose latency is recorded.
+ *
+ * @author Leandro Ferreira
+ */
+public enum RoutingStage {
+
+	/** Parsing of a leg out of its lexical representation. */
+	PARSE("parse"),
+
+	/** Transaction writing legs to the graph database. */
+	PERSIST("persist"),
+
+	/** Lookup of the node of a location. */
+	NODE_LOOKUP("nodeLookup"),
+
+	/** Shortest path search. */
+	SEARCH("search"),
+
+	/** Incremental repair of a hub shortest path tree after a write. */
+	REPAIR("repair"),
+
+	/** Conversion of a path found into a route. */
+	TO_ROUTE("toRoute");
+
+	/** Name the stage is reported with. */
+	private final String displayName;
+
+	/**
+	 * Constructs a RoutingStage.
+	 *
+	 * @param displayName
+	 *            the name the stage is reported with.
+	 */
+	private RoutingStage(String displayName) {
+		this.displayName = displayName;
+	}
+
+	/**
+	 * Gets the name the stage is reported with.
+	 *
+	 * @return the display name.
+	 */
+	public String getDisplayName() {
+		return displayName;
+	}
+
+}
@@ -1,42 +1,151 @@
 package org.drmit.shortestpath.infrastructure.repository;
 
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 
+import org.drmit.shortestpath.domain.model.DistanceMatrix;
 import org.drmit.shortestpath.domain.model.Route;
+import org.drmit.shortestpath.domain.model.ShortestPathTree;
+import org.drmit.shortestpath.domain.model.TimedRoute;
+import org.drmit.shortestpath.domain.model.VehicleProfile;
 import org.drmit.shortestpath.domain.model.Leg;
 
 /**
  * This interface defines a Route repository.
- * 
+ * <p>
+ * Legs are partitioned into logistics networks, identified by name. A location
+ * may belong to several networks, but routes only follow the legs of the
+ * network they are searched in.
+ *
  * @author Leandro Ferreira
  */
 public interface RouteRepository {
 
 	/**
-	 * Saves a Leg into the repository. If the Leg already exists in the
-	 * Repository, it will be updated.
-	 * 
+	 * Saves a Leg into a network of the repository. If the Leg already exists
+	 * in the Repository, it will be updated.
+	 *
+	 * @param network
+	 *            the network name.
 	 * @param leg
 	 *            the leg to be saved.
 	 * @throws RepositoryExeption
 	 *             if a repository access error occurs.
 	 */
-	public void saveLeg(Leg leg) throws RepositoryExeption;
+	public void saveLeg(String network, Leg leg) throws RepositoryExeption;
 
 	/**
-	 * Saves all given Legs into the repository. If a Leg already exists in the
-	 * Repository, it will be updated.
-	 * 
+	 * Saves all given Legs into a network of the repository. If a Leg already
+	 * exists in the Repository, it will be updated.
+	 *
+	 * @param network
+	 *            the network name.
 	 * @param legs
 	 *            the list of legs to be saved.
 	 * @throws RepositoryExeption
 	 *             if a repository access error occurs.
 	 */
-	public void saveLegs(List<Leg> legs) throws RepositoryExeption;
+	public void saveLegs(String network, List<Leg> legs)
+			throws RepositoryExeption;
 
 	/**
-	 * Tries to find the shortest route between the origin and the destination.
-	 * 
+	 * Replaces all the Legs of a network of the repository with the given
+	 * ones. Only the differences are written: legs missing from the given ones
+	 * are removed, legs whose distance changed are updated and new legs are
+	 * added. If a Leg is given more than once, the last one prevails.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @param legs
+	 *            the legs the network will be made of.
+	 * @throws RepositoryExeption
+	 *             if a repository access error occurs.
+	 */
+	public void replaceLegs(String network, Collection<Leg> legs)
+			throws RepositoryExeption;
+
+	/**
+	 * Replaces all the Legs of a network of the repository with a stream of
+	 * Legs, without holding them in memory. As with replaceLegs, only the
+	 * differences are written: legs whose distance changed are updated and new
+	 * legs are added, and once the stream is exhausted, the legs missing from
+	 * it are removed. Unlike replaceLegs, the import is not atomic: it is
+	 * committed in batches, and the batches committed before a failure are
+	 * kept, while no leg is removed.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @param legs
+	 *            the legs to be imported.
+	 * @return the number of legs imported.
+	 * @throws RepositoryExeption
+	 *             if a repository access error occurs.
+	 */
+	public long importLegs(String network, Iterator<Leg> legs)
+			throws RepositoryExeption;
+
+	/**
+	 * Saves the coordinates of a location, shared by all the networks, creating
+	 * the location if it does not exist. Repositories whose searches are
+	 * guided by coordinates use them only for the networks whose locations all
+	 * have coordinates.
+	 *
+	 * @param name
+	 *            the location name.
+	 * @param latitude
+	 *            the location latitude, in decimal degrees.
+	 * @param longitude
+	 *            the location longitude, in decimal degrees.
+	 * @throws IllegalArgumentException
+	 *             if name is null or the coordinates are out of range.
+	 * @throws RepositoryExeption
+	 *             if a repository access error occurs.
+	 */
+	public void saveCoordinates(String name, double latitude, double longitude)
+			throws RepositoryExeption;
+
+	/**
+	 * Gets the names of all the networks stored in the repository.
+	 *
+	 * @return the list of network names.
+	 * @throws RepositoryExeption
+	 *             if a repository access error occurs.
+	 */
+	public List<String> findNetworkNames() throws RepositoryExeption;
+
+	/**
+	 * Gets the version of a network, which is incremented by every committed
+	 * write to the legs of the network, so that copies of the network kept
+	 * elsewhere, such as graph snapshots, can be checked against the
+	 * repository.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @return the version of the network, or 0 if it was never written.
+	 * @throws RepositoryExeption
+	 *             if a repository access error occurs.
+	 */
+	public long getNetworkVersion(String network) throws RepositoryExeption;
+
+	/**
+	 * Gets all the Legs stored in a network of the repository.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @return the list of all the legs stored in the network, empty if the
+	 *         network does not exist.
+	 * @throws RepositoryExeption
+	 *             if a repository access error occurs.
+	 */
+	public List<Leg> findAllLegs(String network) throws RepositoryExeption;
+
+	/**
+	 * Tries to find the shortest route between the origin and the destination
+	 * within a network.
+	 *
+	 * @param network
+	 *            the network name.
 	 * @param origin
 	 *            the route origin.
 	 * @param destination
@@ -48,7 +157,144 @@ public interface RouteRepository {
 	 * @throws RepositoryExeption
 	 *             if a repository access error occurs.
 	 */
-	public Route findShortestRoute(String origin, String destination)
+	public Route findShortestRoute(String network, String origin,
+			String destination) throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption;
+
+	/**
+	 * Tries to find the length of the shortest route between the origin and
+	 * the destination within a network, without building the route itself.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @param origin
+	 *            the route origin.
+	 * @param destination
+	 *            the route destination.
+	 * @return the length of the shortest route between the origin and the
+	 *         destination.
+	 * @throws RouteNotFoundRepositoryExeption
+	 *             if no route could be found between the origin and
+	 *             destination.
+	 * @throws RepositoryExeption
+	 *             if a repository access error occurs.
+	 */
+	public double findShortestDistance(String network, String origin,
+			String destination) throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption;
+
+	/**
+	 * Tries to find the cheapest route between the origin and the destination
+	 * within a network for a vehicle: the route minimizing the fuel cost plus
+	 * the weighted tolls of its legs, rather than its length.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @param origin
+	 *            the route origin.
+	 * @param destination
+	 *            the route destination.
+	 * @param vehicleProfile
+	 *            the cost model of the vehicle.
+	 * @param fuelPrice
+	 *            fuel price per liter.
+	 * @return the cheapest route between the origin and the destination.
+	 * @throws RouteNotFoundRepositoryExeption
+	 *             if no route could be found between the origin and
+	 *             destination.
+	 * @throws RepositoryExeption
+	 *             if a repository access error occurs.
+	 */
+	public Route findCheapestRoute(String network, String origin,
+			String destination, VehicleProfile vehicleProfile, double fuelPrice)
+			throws RouteNotFoundRepositoryExeption, RepositoryExeption;
+
+	/**
+	 * Tries to find the fastest route between the origin and the destination
+	 * within a network when departing at the given time. Legs with a travel
+	 * time profile take the time it gives for the time they are entered,
+	 * other legs take a time proportional to their distance.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @param origin
+	 *            the route origin.
+	 * @param destination
+	 *            the route destination.
+	 * @param departureTime
+	 *            the departure time from the origin, in seconds since midnight
+	 *            of the first day.
+	 * @return the fastest route between the origin and the destination.
+	 * @throws UnsupportedOperationException
+	 *             if the repository does not support time-dependent routes.
+	 * @throws RouteNotFoundRepositoryExeption
+	 *             if no route could be found between the origin and
+	 *             destination.
+	 * @throws RepositoryExeption
+	 *             if a repository access error occurs.
+	 */
+	public TimedRoute findFastestRoute(String network, String origin,
+			String destination, double departureTime)
 			throws RouteNotFoundRepositoryExeption, RepositoryExeption;
 
+	/**
+	 * Finds up to k shortest loopless routes between the origin and the
+	 * destination within a network, ranked by length. Implementations may
+	 * bound the time spent searching, returning the shortest routes found by
+	 * then.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @param origin
+	 *            the route origin.
+	 * @param destination
+	 *            the route destination.
+	 * @param k
+	 *            the maximum number of routes.
+	 * @return the routes found, shortest first, empty if the destination is
+	 *         not reachable from the origin.
+	 * @throws IllegalArgumentException
+	 *             if k is not positive.
+	 * @throws UnsupportedOperationException
+	 *             if the repository does not support alternative routes.
+	 * @throws RepositoryExeption
+	 *             if a repository access error occurs.
+	 */
+	public List<Route> findKShortestRoutes(String network, String origin,
+			String destination, int k) throws RepositoryExeption;
+
+	/**
+	 * Finds the shortest routes from an origin to every location reachable
+	 * from it within a network, with a single search. An origin unknown to the
+	 * network only reaches itself.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @param origin
+	 *            the routes origin.
+	 * @return the shortest path tree of the origin.
+	 * @throws RepositoryExeption
+	 *             if a repository access error occurs.
+	 */
+	public ShortestPathTree findShortestRoutesFrom(String network,
+			String origin) throws RepositoryExeption;
+
+	/**
+	 * Finds the shortest route length between every origin and every
+	 * destination within a network. Locations unknown to the network are
+	 * unreachable, except from themselves.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @param origins
+	 *            the route origins.
+	 * @param destinations
+	 *            the route destinations.
+	 * @return the shortest route lengths, indexed by origin and destination.
+	 * @throws RepositoryExeption
+	 *             if a repository access error occurs.
+	 */
+	public DistanceMatrix findDistances(String network, List<String> origins,
+			List<String> destinations) throws RepositoryExeption;
+
 }
@@ -0,0 +1,29 @@
+package org.drmit.shortestpath.infrastructure.repository;
+
+import java.util.Collection;
+
+import org.drmit.shortestpath.domain.model.Leg;
+
+/**
+ * This interface defines a listener notified when the routes answered by a
+ * RouteRepository may have changed.
+ *
+ * @author Leandro Ferreira
+ */
+public interface RouteRepositoryListener {
+
+	/**
+	 * Called after a change to a network became visible to route queries.
+	 *
+	 * @param source
+	 *            the repository whose routes may have changed.
+	 * @param network
+	 *            the name of the network whose routes may have changed.
+	 * @param legs
+	 *            the legs saved by the change, or null if any leg of the
+	 *            network may have changed or been removed.
+	 */
+	public void routesChanged(RouteRepository source, String network,
+			Collection<Leg> legs);
+
+}
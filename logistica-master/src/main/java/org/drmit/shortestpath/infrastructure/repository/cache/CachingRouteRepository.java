@@ -0,0 +1,805 @@
+package org.drmit.shortestpath.infrastructure.repository.cache;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.drmit.shortestpath.domain.model.DistanceMatrix;
+import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.domain.model.Route;
+import org.drmit.shortestpath.domain.model.ShortestPathTree;
+import org.drmit.shortestpath.domain.model.TimedRoute;
+import org.drmit.shortestpath.domain.model.VehicleProfile;
+import org.drmit.shortestpath.infrastructure.repository.RepositoryExeption;
+import org.drmit.shortestpath.infrastructure.repository.RouteNotFoundRepositoryExeption;
+import org.drmit.shortestpath.infrastructure.repository.RouteRepository;
+import org.drmit.shortestpath.infrastructure.repository.RouteRepositoryListener;
+import org.drmit.shortestpath.infrastructure.repository.memory.AbstractInMemoryRouteRepository;
+
+/**
+ * RouteRepository decorator caching the shortest routes found by an underlying
+ * repository, keyed on their network, origin and destination.
+ * <p>
+ * The cache is bounded and evicts routes according to its eviction policy.
+ * When legs are saved into a network through the cache, or an in-memory
+ * delegate publishes the legs saved into it, only the routes and trees those
+ * legs may have changed are removed: those using one of the legs, and those
+ * a path through one of the legs could beat, by a lower bound test. Replacing
+ * or importing the legs of a network removes all its routes. Routes found
+ * while their network was changing are not cached, so a stale route never
+ * outlives the change.
+ * <p>
+ * The shortest path trees of the most recently used origins are cached as
+ * well, apart from the routes since a tree may be far larger than a route.
+ * Routes from a cached tree origin are reconstructed from the tree instead of
+ * being searched again.
+ *
+ * @author Leandro Ferreira
+ */
+public class CachingRouteRepository implements RouteRepository,
+		RouteRepositoryListener {
+
+	/** Underlying route repository. */
+	private final RouteRepository delegate;
+
+	/** Eviction policy. */
+	private final EvictionPolicy evictionPolicy;
+
+	/** Default maximum number of cached shortest path trees. */
+	public static final int DEFAULT_MAXIMUM_TREE_COUNT = 8;
+
+	/** Cached routes, guarded by itself. */
+	private final RouteCache cache;
+
+	/** Cached shortest path trees in access order, guarded by the cache. */
+	private final LinkedHashMap<RouteKey, ShortestPathTree> trees = new LinkedHashMap<RouteKey, ShortestPathTree>(
+			16, 0.75f, true);
+
+	/** Maximum number of cached shortest path trees, guarded by the cache. */
+	private int maximumTreeCount = DEFAULT_MAXIMUM_TREE_COUNT;
+
+	/** Number of invalidations of all the networks, guarded by the cache. */
+	private long generation = 0;
+
+	/** Number of invalidations of each network, guarded by the cache. */
+	private final Map<String, Long> networkGenerations = new HashMap<String, Long>();
+
+	/** Number of lookups answered from the cache. */
+	private final AtomicLong hitCount = new AtomicLong();
+
+	/** Number of lookups delegated to the underlying repository. */
+	private final AtomicLong missCount = new AtomicLong();
+
+	/** Number of routes evicted to make room for others. */
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	/**
+	 * Constructs a CachingRouteRepository object.
+	 *
+	 * @param delegate
+	 *            the underlying route repository.
+	 * @param maximumSize
+	 *            the maximum number of cached routes.
+	 * @param evictionPolicy
+	 *            the eviction policy.
+	 * @throws IllegalArgumentException
+	 *             if delegate or evictionPolicy is null, or if maximumSize is
+	 *             not positive.
+	 */
+	public CachingRouteRepository(RouteRepository delegate, int maximumSize,
+			EvictionPolicy evictionPolicy) {
+		if (delegate == null) {
+			throw new IllegalArgumentException("delegate is null");
+		}
+		if (evictionPolicy == null) {
+			throw new IllegalArgumentException("evictionPolicy is null");
+		}
+		this.delegate = delegate;
+		this.evictionPolicy = evictionPolicy;
+		this.cache = evictionPolicy.newCache(maximumSize);
+
+		// In-memory repositories may publish changes after the write returns
+		if (delegate instanceof AbstractInMemoryRouteRepository) {
+			((AbstractInMemoryRouteRepository) delegate)
+					.addRouteRepositoryListener(this);
+		}
+	}
+
+	/**
+	 * Gets the underlying route repository.
+	 *
+	 * @return the underlying route repository.
+	 */
+	public RouteRepository getDelegate() {
+		return delegate;
+	}
+
+	/**
+	 * Gets the eviction policy.
+	 *
+	 * @return the eviction policy.
+	 */
+	public EvictionPolicy getEvictionPolicy() {
+		return evictionPolicy;
+	}
+
+	/**
+	 * Gets the maximum number of cached routes.
+	 *
+	 * @return the maximum number of cached routes.
+	 */
+	public int getMaximumSize() {
+		return cache.getMaximumSize();
+	}
+
+	/**
+	 * Gets the number of cached routes.
+	 *
+	 * @return the number of cached routes.
+	 */
+	public int getSize() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	/**
+	 * Gets the maximum number of cached shortest path trees.
+	 *
+	 * @return the maximum number of cached trees.
+	 */
+	public int getMaximumTreeCount() {
+		synchronized (cache) {
+			return maximumTreeCount;
+		}
+	}
+
+	/**
+	 * Sets the maximum number of cached shortest path trees, evicting the
+	 * least recently used trees beyond it.
+	 *
+	 * @param maximumTreeCount
+	 *            the maximumTreeCount to set, 0 to disable tree caching.
+	 * @throws IllegalArgumentException
+	 *             if maximumTreeCount is negative.
+	 */
+	public void setMaximumTreeCount(int maximumTreeCount) {
+		if (maximumTreeCount < 0) {
+			throw new IllegalArgumentException("maximumTreeCount is negative");
+		}
+
+		synchronized (cache) {
+			this.maximumTreeCount = maximumTreeCount;
+			evictTrees();
+		}
+	}
+
+	/**
+	 * Gets the number of cached shortest path trees.
+	 *
+	 * @return the number of cached trees.
+	 */
+	public int getTreeCount() {
+		synchronized (cache) {
+			return trees.size();
+		}
+	}
+
+	/**
+	 * Evicts the least recently used trees beyond the maximum tree count. Must
+	 * be called while holding the cache lock.
+	 */
+	private void evictTrees() {
+		final Iterator<RouteKey> keys = trees.keySet().iterator();
+		while (trees.size() > maximumTreeCount) {
+			keys.next();
+			keys.remove();
+			evictionCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Gets the number of lookups answered from the cache.
+	 *
+	 * @return the number of cache hits.
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * Gets the number of lookups delegated to the underlying repository.
+	 *
+	 * @return the number of cache misses.
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * Gets the number of routes evicted to make room for others.
+	 *
+	 * @return the number of evictions.
+	 */
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	/**
+	 * Removes all the cached routes. Routes being found at the time will not
+	 * be cached.
+	 */
+	public void invalidateAll() {
+		synchronized (cache) {
+			generation++;
+			cache.clear();
+			trees.clear();
+		}
+	}
+
+	/**
+	 * Removes the cached routes of a network. Routes of the network being
+	 * found at the time will not be cached.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @throws IllegalArgumentException
+	 *             if network is null.
+	 */
+	public void invalidate(String network) {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+
+		synchronized (cache) {
+			nextGeneration(network);
+			cache.clear(network);
+			final Iterator<RouteKey> keys = trees.keySet().iterator();
+			while (keys.hasNext()) {
+				if (keys.next().getNetwork().equals(network)) {
+					keys.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes the cached routes and trees of a network which saving the given
+	 * legs may have changed, keeping all the others. Routes of the network
+	 * being found at the time will not be cached.
+	 * <p>
+	 * The legs are taken in turn, each being an increase, a decrease or a new
+	 * leg, against the entries the previous ones left. The tree of an origin
+	 * <code>s</code> is removed if it uses the leg <code>u-v</code> of
+	 * distance <code>w</code>, or if <code>dist(s, u) + w &lt; dist(s, v)</code>
+	 * . A route from <code>s</code> to <code>t</code> of length <code>d</code>
+	 * is removed if it uses the leg, or if a lower bound of
+	 * <code>dist(s, u) + w + dist(v, t)</code> is below <code>d</code>. The
+	 * bound is exact for the locations along the route, since its prefixes
+	 * are shortest routes too, and for <code>dist(s, u)</code> when the tree
+	 * of <code>s</code> is cached; other distances are bounded by 0.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @param legs
+	 *            the legs saved.
+	 * @throws IllegalArgumentException
+	 *             if network or legs is null.
+	 */
+	public void invalidate(String network, Collection<Leg> legs) {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (legs == null) {
+			throw new IllegalArgumentException("legs is null");
+		}
+
+		synchronized (cache) {
+			nextGeneration(network);
+
+			// Takes the entries of the network without recording accesses
+			final Map<RouteKey, Route> routes = cache.getRoutes(network);
+			final Map<String, ShortestPathTree> networkTrees = new HashMap<String, ShortestPathTree>();
+			for (Map.Entry<RouteKey, ShortestPathTree> entry : trees
+					.entrySet()) {
+				if (entry.getKey().getNetwork().equals(network)) {
+					networkTrees.put(entry.getValue().getOrigin(),
+							entry.getValue());
+				}
+			}
+
+			for (Leg leg : legs) {
+				if (leg == null) {
+					continue;
+				}
+				final Iterator<Map.Entry<RouteKey, Route>> routeEntries = routes
+						.entrySet().iterator();
+				while (routeEntries.hasNext()) {
+					final Map.Entry<RouteKey, Route> entry = routeEntries
+							.next();
+					final Route route = entry.getValue();
+					if (isAffected(route, leg,
+							networkTrees.get(route.getOrigin()))) {
+						cache.remove(entry.getKey());
+						routeEntries.remove();
+					}
+				}
+				final Iterator<ShortestPathTree> treeEntries = networkTrees
+						.values().iterator();
+				while (treeEntries.hasNext()) {
+					final ShortestPathTree tree = treeEntries.next();
+					if (isAffected(tree, leg)) {
+						trees.remove(new RouteKey(network, tree.getOrigin()));
+						treeEntries.remove();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns true if saving a leg may change a shortest route.
+	 *
+	 * @param route
+	 *            the shortest route.
+	 * @param leg
+	 *            the leg saved.
+	 * @param tree
+	 *            the shortest path tree of the route origin, or null.
+	 * @return true if the route uses the leg or could be beaten through it.
+	 */
+	private static boolean isAffected(Route route, Leg leg,
+			ShortestPathTree tree) {
+		// Finds the route prefix lengths up to the leg locations
+		double length = 0;
+		double toOrigin = route.getOrigin().equals(leg.getOrigin()) ? 0
+				: Double.NaN;
+		double toDestination = route.getOrigin()
+				.equals(leg.getDestination()) ? 0 : Double.NaN;
+		for (Leg routeLeg : route.getLegs()) {
+			if (routeLeg.equals(leg)) {
+				return true;
+			}
+			length += routeLeg.getDistance();
+			if (Double.isNaN(toOrigin)
+					&& routeLeg.getDestination().equals(leg.getOrigin())) {
+				toOrigin = length;
+			}
+			if (Double.isNaN(toDestination)
+					&& routeLeg.getDestination().equals(leg.getDestination())) {
+				toDestination = length;
+			}
+		}
+
+		// Bounds the length of the shortest route through the leg
+		double lowerBound = leg.getDistance();
+		if (!Double.isNaN(toOrigin)) {
+			lowerBound += toOrigin;
+		} else if (tree != null) {
+			lowerBound += tree.getDistance(leg.getOrigin());
+		}
+		if (!Double.isNaN(toDestination)) {
+			lowerBound += length - toDestination;
+		}
+		return lowerBound < length;
+	}
+
+	/**
+	 * Returns true if saving a leg may change a shortest path tree.
+	 *
+	 * @param tree
+	 *            the shortest path tree.
+	 * @param leg
+	 *            the leg saved.
+	 * @return true if the tree uses the leg or a location is closer through
+	 *         it.
+	 */
+	private static boolean isAffected(ShortestPathTree tree, Leg leg) {
+		final int origin = tree.indexOf(leg.getOrigin());
+		if (origin < 0) {
+			return false;
+		}
+		final int destination = tree.indexOf(leg.getDestination());
+		return destination < 0
+				|| tree.getPredecessor(destination) == origin
+				|| tree.getDistance(origin) + leg.getDistance() < tree
+						.getDistance(destination);
+	}
+
+	/**
+	 * Records an invalidation of a network, so that routes being found at the
+	 * time are not cached. Must be called while holding the cache lock.
+	 *
+	 * @param network
+	 *            the network name.
+	 */
+	private void nextGeneration(String network) {
+		final Long networkGeneration = networkGenerations.get(network);
+		networkGenerations.put(network, networkGeneration == null ? 1
+				: networkGeneration + 1);
+	}
+
+	/**
+	 * Gets the number of invalidations affecting a network so far. Must be
+	 * called while holding the cache lock.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @return the number of invalidations affecting the network.
+	 */
+	private long getGeneration(String network) {
+		final Long networkGeneration = networkGenerations.get(network);
+		return generation + (networkGeneration == null ? 0 : networkGeneration);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.
+	 * RouteRepositoryListener
+	 * #routesChanged(org.drmit.shortestpath.infrastructure
+	 * .repository.RouteRepository, java.lang.String, java.util.Collection)
+	 */
+	@Override
+	public void routesChanged(RouteRepository source, String network,
+			Collection<Leg> legs) {
+		if (legs == null) {
+			invalidate(network);
+		} else {
+			invalidate(network, legs);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.repository.RouteRepository#saveLeg
+	 * (java.lang.String, org.drmit.shortestpath.domain.model.Leg)
+	 */
+	@Override
+	public void saveLeg(String network, Leg leg) throws RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (leg == null) {
+			throw new IllegalArgumentException("leg is null");
+		}
+
+		try {
+			delegate.saveLeg(network, leg);
+		} finally {
+			invalidate(network, Collections.singletonList(leg));
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.repository.RouteRepository#saveLegs
+	 * (java.lang.String, java.util.List)
+	 */
+	@Override
+	public void saveLegs(String network, List<Leg> legs)
+			throws RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (legs == null) {
+			throw new IllegalArgumentException("legs is null");
+		}
+
+		try {
+			delegate.saveLegs(network, legs);
+		} finally {
+			invalidate(network, legs);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.repository.RouteRepository#replaceLegs
+	 * (java.lang.String, java.util.Collection)
+	 */
+	@Override
+	public void replaceLegs(String network, Collection<Leg> legs)
+			throws RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+
+		try {
+			delegate.replaceLegs(network, legs);
+		} finally {
+			invalidate(network);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.repository.RouteRepository#importLegs
+	 * (java.lang.String, java.util.Iterator)
+	 */
+	@Override
+	public long importLegs(String network, Iterator<Leg> legs)
+			throws RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+
+		try {
+			return delegate.importLegs(network, legs);
+		} finally {
+			invalidate(network);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * saveCoordinates(java.lang.String, double, double)
+	 */
+	@Override
+	public void saveCoordinates(String name, double latitude, double longitude)
+			throws RepositoryExeption {
+		// Cached routes do not depend on coordinates
+		delegate.saveCoordinates(name, latitude, longitude);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * findNetworkNames()
+	 */
+	@Override
+	public List<String> findNetworkNames() throws RepositoryExeption {
+		return delegate.findNetworkNames();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * getNetworkVersion(java.lang.String)
+	 */
+	@Override
+	public long getNetworkVersion(String network) throws RepositoryExeption {
+		return delegate.getNetworkVersion(network);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.repository.RouteRepository#findAllLegs
+	 * (java.lang.String)
+	 */
+	@Override
+	public List<Leg> findAllLegs(String network) throws RepositoryExeption {
+		return delegate.findAllLegs(network);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * findShortestRoute(java.lang.String, java.lang.String, java.lang.String)
+	 */
+	@Override
+	public Route findShortestRoute(String network, String origin,
+			String destination) throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (origin == null) {
+			throw new IllegalArgumentException("origin is null");
+		}
+		if (destination == null) {
+			throw new IllegalArgumentException("destination is null");
+		}
+
+		final RouteKey key = new RouteKey(network, origin, destination);
+		final long expectedGeneration;
+		synchronized (cache) {
+			Route route = cache.get(key);
+			if (route != null) {
+				hitCount.incrementAndGet();
+				return route;
+			}
+
+			// Reconstructs the route from the tree of the origin
+			final ShortestPathTree tree = trees.get(new RouteKey(network,
+					origin));
+			if (tree != null) {
+				hitCount.incrementAndGet();
+				route = tree.getRoute(destination);
+				if (route == null) {
+					throw new RouteNotFoundRepositoryExeption(String.format(
+							"No route could be found between the %s and %s",
+							origin, destination));
+				}
+				if (cache.put(key, route)) {
+					evictionCount.incrementAndGet();
+				}
+				return route;
+			}
+			expectedGeneration = getGeneration(network);
+		}
+		missCount.incrementAndGet();
+
+		final Route route = delegate.findShortestRoute(network, origin,
+				destination);
+
+		synchronized (cache) {
+			// Skips routes which may predate a change to the network
+			if (getGeneration(network) == expectedGeneration
+					&& cache.put(key, route)) {
+				evictionCount.incrementAndGet();
+			}
+		}
+		return route;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * findShortestDistance(java.lang.String, java.lang.String,
+	 * java.lang.String)
+	 */
+	@Override
+	public double findShortestDistance(String network, String origin,
+			String destination) throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (origin == null) {
+			throw new IllegalArgumentException("origin is null");
+		}
+		if (destination == null) {
+			throw new IllegalArgumentException("destination is null");
+		}
+
+		synchronized (cache) {
+			// Reads the length off a cached route or tree
+			final Route route = cache.get(new RouteKey(network, origin,
+					destination));
+			if (route != null) {
+				hitCount.incrementAndGet();
+				return route.getLength();
+			}
+			final ShortestPathTree tree = trees.get(new RouteKey(network,
+					origin));
+			if (tree != null) {
+				hitCount.incrementAndGet();
+				if (!tree.isReachable(destination)) {
+					throw new RouteNotFoundRepositoryExeption(String.format(
+							"No route could be found between the %s and %s",
+							origin, destination));
+				}
+				return tree.getDistance(destination);
+			}
+		}
+		missCount.incrementAndGet();
+
+		// Distances are not cached, as the delegate finds them without
+		// building routes
+		return delegate.findShortestDistance(network, origin, destination);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * findKShortestRoutes(java.lang.String, java.lang.String,
+	 * java.lang.String, int)
+	 */
+	@Override
+	public List<Route> findKShortestRoutes(String network, String origin,
+			String destination, int k) throws RepositoryExeption {
+		// Alternatives are requested too rarely to be worth caching
+		return delegate.findKShortestRoutes(network, origin, destination, k);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * findShortestRoutesFrom(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public ShortestPathTree findShortestRoutesFrom(String network,
+			String origin) throws RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (origin == null) {
+			throw new IllegalArgumentException("origin is null");
+		}
+
+		final RouteKey key = new RouteKey(network, origin);
+		final long expectedGeneration;
+		synchronized (cache) {
+			final ShortestPathTree tree = trees.get(key);
+			if (tree != null) {
+				hitCount.incrementAndGet();
+				return tree;
+			}
+			expectedGeneration = getGeneration(network);
+		}
+		missCount.incrementAndGet();
+
+		final ShortestPathTree tree = delegate.findShortestRoutesFrom(network,
+				origin);
+
+		synchronized (cache) {
+			// Skips trees which may predate a change to the network
+			if (maximumTreeCount > 0
+					&& getGeneration(network) == expectedGeneration) {
+				trees.put(key, tree);
+				evictTrees();
+			}
+		}
+		return tree;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * findCheapestRoute(java.lang.String, java.lang.String, java.lang.String,
+	 * org.drmit.shortestpath.domain.model.VehicleProfile, double)
+	 */
+	@Override
+	public Route findCheapestRoute(String network, String origin,
+			String destination, VehicleProfile vehicleProfile, double fuelPrice)
+			throws RouteNotFoundRepositoryExeption, RepositoryExeption {
+		// Routes depend on the fuel price, so cheapest routes are not cached
+		return delegate.findCheapestRoute(network, origin, destination,
+				vehicleProfile, fuelPrice);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * findFastestRoute(java.lang.String, java.lang.String, java.lang.String,
+	 * double)
+	 */
+	@Override
+	public TimedRoute findFastestRoute(String network, String origin,
+			String destination, double departureTime)
+			throws RouteNotFoundRepositoryExeption, RepositoryExeption {
+		// Departure times rarely repeat, so fastest routes are not cached
+		return delegate.findFastestRoute(network, origin, destination,
+				departureTime);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * findDistances(java.lang.String, java.util.List, java.util.List)
+	 */
+	@Override
+	public DistanceMatrix findDistances(String network, List<String> origins,
+			List<String> destinations) throws RepositoryExeption {
+		// Matrices are already answered with one search per origin
+		return delegate.findDistances(network, origins, destinations);
+	}
+
+}
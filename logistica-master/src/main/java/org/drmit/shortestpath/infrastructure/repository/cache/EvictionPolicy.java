@@ -0,0 +1,37 @@
+package org.drmit.shortestpath.infrastructure.repository.cache;
+
+/**
+ * Policies deciding which route is evicted from a full cache.
+ *
+ * @author Leandro Ferreira
+ */
+public enum EvictionPolicy {
+
+	/** Evicts the least recently used route. */
+	LRU {
+		@Override
+		RouteCache newCache(int maximumSize) {
+			return new LruRouteCache(maximumSize);
+		}
+	},
+
+	/** Evicts the least frequently used route. */
+	LFU {
+		@Override
+		RouteCache newCache(int maximumSize) {
+			return new LfuRouteCache(maximumSize);
+		}
+	};
+
+	/**
+	 * Creates an empty cache applying this policy.
+	 *
+	 * @param maximumSize
+	 *            the maximum number of entries.
+	 * @return the cache created.
+	 * @throws IllegalArgumentException
+	 *             if maximumSize is not positive.
+	 */
+	abstract RouteCache newCache(int maximumSize);
+
+}
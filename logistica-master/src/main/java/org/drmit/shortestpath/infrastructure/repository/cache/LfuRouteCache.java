@@ -0,0 +1,259 @@
+package org.drmit.shortestpath.infrastructure.repository.cache;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import org.drmit.shortestpath.domain.model.Route;
+
+/**
+ * RouteCache evicting the least frequently used entry. Ties are broken by
+ * evicting the entry which reached that frequency first. All operations run in
+ * constant time.
+ *
+ * @author Leandro Ferreira
+ */
+final class LfuRouteCache extends RouteCache {
+
+	/** Entries by key. */
+	private final Map<RouteKey, Entry> entries = new HashMap<RouteKey, Entry>();
+
+	/** Keys by access frequency, in the order they reached it. */
+	private final Map<Integer, LinkedHashSet<RouteKey>> frequencies = new HashMap<Integer, LinkedHashSet<RouteKey>>();
+
+	/** Lowest access frequency of any entry. */
+	private int minimumFrequency = 0;
+
+	/**
+	 * Constructs a LfuRouteCache object.
+	 *
+	 * @param maximumSize
+	 *            the maximum number of entries.
+	 * @throws IllegalArgumentException
+	 *             if maximumSize is not positive.
+	 */
+	LfuRouteCache(int maximumSize) {
+		super(maximumSize);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.repository.cache.RouteCache#get
+	 * (org.drmit.shortestpath.infrastructure.repository.cache.RouteKey)
+	 */
+	@Override
+	Route get(RouteKey key) {
+		final Entry entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		touch(key, entry);
+		return entry.route;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.repository.cache.RouteCache#put
+	 * (org.drmit.shortestpath.infrastructure.repository.cache.RouteKey,
+	 * org.drmit.shortestpath.domain.model.Route)
+	 */
+	@Override
+	boolean put(RouteKey key, Route route) {
+		final Entry existing = entries.get(key);
+		if (existing != null) {
+			existing.route = route;
+			touch(key, existing);
+			return false;
+		}
+
+		boolean evicted = false;
+		if (entries.size() >= getMaximumSize()) {
+			// Evicts the oldest entry among the least frequently used ones
+			final LinkedHashSet<RouteKey> keys = frequencies
+					.get(minimumFrequency);
+			final Iterator<RouteKey> iterator = keys.iterator();
+			entries.remove(iterator.next());
+			iterator.remove();
+			if (keys.isEmpty()) {
+				frequencies.remove(minimumFrequency);
+			}
+			evicted = true;
+		}
+
+		entries.put(key, new Entry(route));
+		getKeys(1).add(key);
+		minimumFrequency = 1;
+		return evicted;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.repository.cache.RouteCache#getRoutes
+	 * (java.lang.String)
+	 */
+	@Override
+	Map<RouteKey, Route> getRoutes(String network) {
+		final Map<RouteKey, Route> routes = new HashMap<RouteKey, Route>();
+		for (Map.Entry<RouteKey, Entry> entry : entries.entrySet()) {
+			if (entry.getKey().getNetwork().equals(network)) {
+				routes.put(entry.getKey(), entry.getValue().route);
+			}
+		}
+		return routes;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.repository.cache.RouteCache#remove
+	 * (org.drmit.shortestpath.infrastructure.repository.cache.RouteKey)
+	 */
+	@Override
+	void remove(RouteKey key) {
+		final Entry entry = entries.remove(key);
+		if (entry == null) {
+			return;
+		}
+		final LinkedHashSet<RouteKey> keys = frequencies.get(entry.frequency);
+		keys.remove(key);
+		if (keys.isEmpty()) {
+			frequencies.remove(entry.frequency);
+			if (minimumFrequency == entry.frequency) {
+				updateMinimumFrequency();
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.repository.cache.RouteCache#clear()
+	 */
+	@Override
+	void clear() {
+		entries.clear();
+		frequencies.clear();
+		minimumFrequency = 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.repository.cache.RouteCache#clear
+	 * (java.lang.String)
+	 */
+	@Override
+	void clear(String network) {
+		final Iterator<Map.Entry<RouteKey, Entry>> iterator = entries
+				.entrySet().iterator();
+		while (iterator.hasNext()) {
+			final Map.Entry<RouteKey, Entry> entry = iterator.next();
+			if (!entry.getKey().getNetwork().equals(network)) {
+				continue;
+			}
+			final int frequency = entry.getValue().frequency;
+			final LinkedHashSet<RouteKey> keys = frequencies.get(frequency);
+			keys.remove(entry.getKey());
+			if (keys.isEmpty()) {
+				frequencies.remove(frequency);
+			}
+			iterator.remove();
+		}
+
+		updateMinimumFrequency();
+	}
+
+	/**
+	 * Finds the lowest frequency left after entries were removed.
+	 */
+	private void updateMinimumFrequency() {
+		minimumFrequency = 0;
+		for (Integer frequency : frequencies.keySet()) {
+			if (minimumFrequency == 0 || frequency < minimumFrequency) {
+				minimumFrequency = frequency;
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.repository.cache.RouteCache#size()
+	 */
+	@Override
+	int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Records an access to an entry, moving its key to the next frequency.
+	 *
+	 * @param key
+	 *            the entry key.
+	 * @param entry
+	 *            the entry accessed.
+	 */
+	private void touch(RouteKey key, Entry entry) {
+		final LinkedHashSet<RouteKey> keys = frequencies.get(entry.frequency);
+		keys.remove(key);
+		if (keys.isEmpty()) {
+			frequencies.remove(entry.frequency);
+			if (minimumFrequency == entry.frequency) {
+				minimumFrequency++;
+			}
+		}
+		entry.frequency++;
+		getKeys(entry.frequency).add(key);
+	}
+
+	/**
+	 * Gets the keys with the given frequency, creating the set if needed.
+	 *
+	 * @param frequency
+	 *            the access frequency.
+	 * @return the keys with the given frequency.
+	 */
+	private LinkedHashSet<RouteKey> getKeys(int frequency) {
+		LinkedHashSet<RouteKey> keys = frequencies.get(frequency);
+		if (keys == null) {
+			keys = new LinkedHashSet<RouteKey>();
+			frequencies.put(frequency, keys);
+		}
+		return keys;
+	}
+
+	/**
+	 * Cached route and its access frequency.
+	 */
+	private static final class Entry {
+
+		/** Cached route. */
+		private Route route;
+
+		/** Number of accesses, including the insertion. */
+		private int frequency = 1;
+
+		/**
+		 * Constructs an Entry object.
+		 *
+		 * @param route
+		 *            the cached route.
+		 */
+		Entry(Route route) {
+			this.route = route;
+		}
+
+	}
+
+}
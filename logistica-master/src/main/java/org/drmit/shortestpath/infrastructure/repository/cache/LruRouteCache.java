@@ -0,0 +1,136 @@
+package org.drmit.shortestpath.infrastructure.repository.cache;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.drmit.shortestpath.domain.model.Route;
+
+/**
+ * RouteCache evicting the least recently used entry.
+ *
+ * @author Leandro Ferreira
+ */
+final class LruRouteCache extends RouteCache {
+
+	/** Entries in access order, least recently used first. */
+	private final LinkedHashMap<RouteKey, Route> entries = new LinkedHashMap<RouteKey, Route>(
+			16, 0.75f, true);
+
+	/**
+	 * Constructs a LruRouteCache object.
+	 *
+	 * @param maximumSize
+	 *            the maximum number of entries.
+	 * @throws IllegalArgumentException
+	 *             if maximumSize is not positive.
+	 */
+	LruRouteCache(int maximumSize) {
+		super(maximumSize);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.repository.cache.RouteCache#get
+	 * (org.drmit.shortestpath.infrastructure.repository.cache.RouteKey)
+	 */
+	@Override
+	Route get(RouteKey key) {
+		return entries.get(key);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.repository.cache.RouteCache#put
+	 * (org.drmit.shortestpath.infrastructure.repository.cache.RouteKey,
+	 * org.drmit.shortestpath.domain.model.Route)
+	 */
+	@Override
+	boolean put(RouteKey key, Route route) {
+		if (entries.put(key, route) != null
+				|| entries.size() <= getMaximumSize()) {
+			return false;
+		}
+
+		// Evicts the least recently used entry
+		final Iterator<RouteKey> iterator = entries.keySet().iterator();
+		iterator.next();
+		iterator.remove();
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.repository.cache.RouteCache#getRoutes
+	 * (java.lang.String)
+	 */
+	@Override
+	Map<RouteKey, Route> getRoutes(String network) {
+		final Map<RouteKey, Route> routes = new HashMap<RouteKey, Route>();
+		for (Map.Entry<RouteKey, Route> entry : entries.entrySet()) {
+			if (entry.getKey().getNetwork().equals(network)) {
+				routes.put(entry.getKey(), entry.getValue());
+			}
+		}
+		return routes;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.repository.cache.RouteCache#remove
+	 * (org.drmit.shortestpath.infrastructure.repository.cache.RouteKey)
+	 */
+	@Override
+	void remove(RouteKey key) {
+		entries.remove(key);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.repository.cache.RouteCache#clear()
+	 */
+	@Override
+	void clear() {
+		entries.clear();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.repository.cache.RouteCache#clear
+	 * (java.lang.String)
+	 */
+	@Override
+	void clear(String network) {
+		final Iterator<RouteKey> iterator = entries.keySet().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().getNetwork().equals(network)) {
+				iterator.remove();
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.repository.cache.RouteCache#size()
+	 */
+	@Override
+	int size() {
+		return entries.size();
+	}
+
+}
@@ -0,0 +1,99 @@
+package org.drmit.shortestpath.infrastructure.repository.cache;
+
+import java.util.Map;
+
+import org.drmit.shortestpath.domain.model.Route;
+
+/**
+ * Size-bounded map from route keys to routes. Implementations decide which
+ * entry is evicted when the cache is full; they are not thread-safe.
+ *
+ * @author Leandro Ferreira
+ */
+abstract class RouteCache {
+
+	/** Maximum number of entries. */
+	private final int maximumSize;
+
+	/**
+	 * Constructs a RouteCache object.
+	 *
+	 * @param maximumSize
+	 *            the maximum number of entries.
+	 * @throws IllegalArgumentException
+	 *             if maximumSize is not positive.
+	 */
+	RouteCache(int maximumSize) {
+		if (maximumSize <= 0) {
+			throw new IllegalArgumentException("maximumSize is not positive");
+		}
+		this.maximumSize = maximumSize;
+	}
+
+	/**
+	 * Gets the maximum number of entries.
+	 *
+	 * @return the maximum number of entries.
+	 */
+	int getMaximumSize() {
+		return maximumSize;
+	}
+
+	/**
+	 * Gets the route cached under the key, recording the access.
+	 *
+	 * @param key
+	 *            the route key.
+	 * @return the cached route, or null if there is none.
+	 */
+	abstract Route get(RouteKey key);
+
+	/**
+	 * Caches a route under the key, evicting an entry if the cache is full.
+	 *
+	 * @param key
+	 *            the route key.
+	 * @param route
+	 *            the route to be cached.
+	 * @return true if an entry was evicted to make room for the route.
+	 */
+	abstract boolean put(RouteKey key, Route route);
+
+	/**
+	 * Gets the entries of a network, without recording any access.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @return a copy of the entries of the network.
+	 */
+	abstract Map<RouteKey, Route> getRoutes(String network);
+
+	/**
+	 * Removes an entry.
+	 *
+	 * @param key
+	 *            the route key.
+	 */
+	abstract void remove(RouteKey key);
+
+	/**
+	 * Removes all the entries.
+	 */
+	abstract void clear();
+
+	/**
+	 * Removes all the entries of a network.
+	 *
+	 * @param network
+	 *            the network name.
+	 */
+	abstract void clear(String network);
+
+	/**
+	 * Gets the number of entries.
+	 *
+	 * @return the number of entries.
+	 */
+	abstract int size();
+
+}
@@ -0,0 +1,105 @@
+package org.drmit.shortestpath.infrastructure.repository.cache;
+
+/**
+ * Cache key of a route, made of its network, origin and destination. Keys
+ * without a destination stand for the routes from the origin to every
+ * destination.
+ *
+ * @author Leandro Ferreira
+ */
+final class RouteKey {
+
+	/** Route network. */
+	private final String network;
+
+	/** Route origin. */
+	private final String origin;
+
+	/** Route destination, or null for every destination. */
+	private final String destination;
+
+	/** Precomputed hash code. */
+	private final int hash;
+
+	/**
+	 * Constructs a RouteKey object.
+	 *
+	 * @param network
+	 *            the route network.
+	 * @param origin
+	 *            the route origin.
+	 * @param destination
+	 *            the route destination.
+	 */
+	RouteKey(String network, String origin, String destination) {
+		this.network = network;
+		this.origin = origin;
+		this.destination = destination;
+		this.hash = 31 * (31 * network.hashCode() + origin.hashCode())
+				+ (destination == null ? 0 : destination.hashCode());
+	}
+
+	/**
+	 * Constructs a RouteKey object for the routes from an origin to every
+	 * destination.
+	 *
+	 * @param network
+	 *            the route network.
+	 * @param origin
+	 *            the route origin.
+	 */
+	RouteKey(String network, String origin) {
+		this(network, origin, null);
+	}
+
+	/**
+	 * Gets the route network.
+	 *
+	 * @return the route network.
+	 */
+	String getNetwork() {
+		return network;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) {
+			return true;
+		}
+		if (!(obj instanceof RouteKey)) {
+			return false;
+		}
+		final RouteKey rhs = (RouteKey) obj;
+		return hash == rhs.hash && origin.equals(rhs.origin)
+				&& (destination == null ? rhs.destination == null
+						: destination.equals(rhs.destination))
+				&& network.equals(rhs.network);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return network + ":" + origin + "->"
+				+ (destination == null ? "*" : destination);
+	}
+
+}
@@ -0,0 +1,1440 @@
+package org.drmit.shortestpath.infrastructure.repository.memory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.drmit.shortestpath.domain.model.DistanceMatrix;
+import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.domain.model.Route;
+import org.drmit.shortestpath.domain.model.ShortestPathTree;
+import org.drmit.shortestpath.domain.model.TimedRoute;
+import org.drmit.shortestpath.domain.model.VehicleProfile;
+import org.drmit.shortestpath.infrastructure.repository.RepositoryExeption;
+import org.drmit.shortestpath.infrastructure.repository.RouteNotFoundRepositoryExeption;
+import org.drmit.shortestpath.infrastructure.repository.RouteRepository;
+import org.drmit.shortestpath.infrastructure.repository.RouteRepositoryListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class provides a skeletal implementation of the RouteRepository
+ * interface which answers queries from an in-memory compressed graph.
+ * <p>
+ * Writes are delegated to an underlying durable repository, from which a
+ * compressed graph per network is loaded at construction time and updated
+ * after every change to that network: the saved legs are applied to the
+ * current graph when no other write to the network came in between, and the
+ * network is loaded again otherwise. The graphs are immutable and published
+ * as {@link GraphVersion}s through an atomic reference: a write builds the
+ * next graph of its network off to the side, without holding any lock, and
+ * swaps the next version in with a compare-and-set. Queries never block on
+ * writes, see a network either before or after a write, and a write to one
+ * network leaves the graphs of the others untouched.
+ * <p>
+ * Given a snapshot directory, the graph of every network is also written
+ * there as a binary snapshot after each change, and opened from it with a
+ * memory mapping at construction time instead of scanning the durable
+ * repository. Each snapshot records the version of its network in the durable
+ * repository, and a snapshot whose network has been written since, such as by
+ * an offline import, is loaded from the durable repository again.
+ * <p>
+ * The shortest path trees of hub origins are kept up to date across writes:
+ * rather than searched again, they are repaired from the saved legs by a
+ * {@link DynamicShortestPathTree}, and answer the queries from their origins
+ * while no write to their network is in progress.
+ *
+ * @author Leandro Ferreira
+ */
+public abstract class AbstractInMemoryRouteRepository implements
+		RouteRepository {
+
+	/** Logger. */
+	private static final Logger logger = LoggerFactory
+			.getLogger(AbstractInMemoryRouteRepository.class);
+
+	/** Underlying durable route repository. */
+	private RouteRepository durableRepository = null;
+
+	/** Directory the graph snapshots are kept in, or null. */
+	private File snapshotDirectory = null;
+
+	/** Extension of the graph snapshot files. */
+	private static final String SNAPSHOT_EXTENSION = ".graph";
+
+	/** Graph of a network without any leg. */
+	private static final CompressedGraph EMPTY_GRAPH = CompressedGraph
+			.build(Collections.<Leg> emptyList());
+
+	/** Version of the graphs queries are answered from. */
+	private final AtomicReference<GraphVersion> versions = new AtomicReference<GraphVersion>(
+			GraphVersion.initial(Collections.<String, CompressedGraph> emptyMap(),
+					Collections.<String, Long> emptyMap()));
+
+	/** Stamp of the last graph load. */
+	private final AtomicLong loadStamps = new AtomicLong();
+
+	/** Lock ordering the snapshot writes. */
+	private final Object snapshotLock = new Object();
+
+	/** Dijkstra search state confined to each querying thread. */
+	private final ThreadLocal<DijkstraSearch> searches = new ThreadLocal<DijkstraSearch>();
+
+	/** Default time allowed to find alternative routes, in milliseconds. */
+	public static final long DEFAULT_ALTERNATIVE_ROUTES_TIMEOUT = 1000;
+
+	/** Time allowed to find alternative routes, in milliseconds. */
+	private volatile long alternativeRoutesTimeout = DEFAULT_ALTERNATIVE_ROUTES_TIMEOUT;
+
+	/** Seconds per hour. */
+	private static final double SECONDS_PER_HOUR = 3600;
+
+	/** Default speed along legs without a travel time profile. */
+	public static final double DEFAULT_SPEED = 60;
+
+	/**
+	 * Speed along legs without a travel time profile, in distance units per
+	 * hour.
+	 */
+	private volatile double speed = DEFAULT_SPEED;
+
+	/** Threads running the spur searches of alternative routes. */
+	private final ExecutorService spurSearchExecutor = Executors
+			.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+					new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable runnable) {
+							final Thread thread = new Thread(runnable,
+									"spur-search");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+
+	/** Listeners notified when a change becomes visible to queries. */
+	private final List<RouteRepositoryListener> listeners = new CopyOnWriteArrayList<RouteRepositoryListener>();
+
+	/** Shortest path trees of the hub origins, by network name and origin. */
+	private final ConcurrentMap<String, ConcurrentMap<String, DynamicShortestPathTree>> hubTrees = new ConcurrentHashMap<String, ConcurrentMap<String, DynamicShortestPathTree>>();
+
+	/** Lock ordering the repairs of the hub trees. */
+	private final Object hubLock = new Object();
+
+	/** Number of writes in progress, by network name. */
+	private final ConcurrentMap<String, AtomicInteger> writes = new ConcurrentHashMap<String, AtomicInteger>();
+
+	/**
+	 * Constructs a AbstractInMemoryRouteRepository object.
+	 *
+	 * @param durableRepository
+	 *            the underlying durable route repository.
+	 * @throws IllegalArgumentException
+	 *             if durableRepository is null.
+	 * @throws RepositoryExeption
+	 *             if the legs could not be loaded from the durable repository.
+	 */
+	public AbstractInMemoryRouteRepository(RouteRepository durableRepository)
+			throws RepositoryExeption {
+		this(durableRepository, null);
+	}
+
+	/**
+	 * Constructs a AbstractInMemoryRouteRepository object keeping snapshots
+	 * of the graphs in the given directory, which is created if needed.
+	 *
+	 * @param durableRepository
+	 *            the underlying durable route repository.
+	 * @param snapshotDirectory
+	 *            the directory the graph snapshots are kept in, or null to
+	 *            keep no snapshots.
+	 * @throws IllegalArgumentException
+	 *             if durableRepository is null.
+	 * @throws RepositoryExeption
+	 *             if the legs could not be loaded from the durable repository
+	 *             or the snapshot directory could not be created.
+	 */
+	public AbstractInMemoryRouteRepository(RouteRepository durableRepository,
+			File snapshotDirectory) throws RepositoryExeption {
+		setDurableRepository(durableRepository);
+		setSnapshotDirectory(snapshotDirectory);
+
+		// Opens the graph snapshots, loading from the durable repository
+		// those which are missing, unreadable or stale. The version is read
+		// first, so that a snapshot never records a later one than its legs
+		final Map<String, CompressedGraph> loaded = new HashMap<String, CompressedGraph>();
+		final Map<String, Long> networkVersions = new HashMap<String, Long>();
+		for (String network : durableRepository.findNetworkNames()) {
+			final long version = durableRepository.getNetworkVersion(network);
+			CompressedGraph graph = open(network, version);
+			if (graph == null) {
+				graph = load(network);
+				snapshot(network, graph, version);
+			}
+			loaded.put(network, graph);
+			networkVersions.put(network, version);
+		}
+		versions.set(GraphVersion.initial(loaded, networkVersions));
+	}
+
+	/**
+	 * Stops the threads running the spur searches once the searches in
+	 * progress complete. The repository must not be used afterwards.
+	 */
+	public void destroy() {
+		spurSearchExecutor.shutdown();
+	}
+
+	/**
+	 * Gets the underlying durable route repository.
+	 *
+	 * @return the underlying durable route repository.
+	 */
+	public RouteRepository getDurableRepository() {
+		return durableRepository;
+	}
+
+	/**
+	 * Sets the underlying durable route repository.
+	 *
+	 * @param durableRepository
+	 *            the durableRepository to set.
+	 * @throws IllegalArgumentException
+	 *             if durableRepository is null.
+	 */
+	private void setDurableRepository(RouteRepository durableRepository) {
+		if (durableRepository == null) {
+			throw new IllegalArgumentException("durableRepository is null");
+		}
+		this.durableRepository = durableRepository;
+	}
+
+	/**
+	 * Gets the directory the graph snapshots are kept in.
+	 *
+	 * @return the snapshot directory, or null if no snapshots are kept.
+	 */
+	public File getSnapshotDirectory() {
+		return snapshotDirectory;
+	}
+
+	/**
+	 * Sets the directory the graph snapshots are kept in, creating it if
+	 * needed.
+	 *
+	 * @param snapshotDirectory
+	 *            the snapshotDirectory to set, or null.
+	 * @throws RepositoryExeption
+	 *             if the directory could not be created.
+	 */
+	private void setSnapshotDirectory(File snapshotDirectory)
+			throws RepositoryExeption {
+		if (snapshotDirectory != null && !snapshotDirectory.isDirectory()
+				&& !snapshotDirectory.mkdirs()) {
+			throw new RepositoryExeption("Could not create "
+					+ snapshotDirectory);
+		}
+		this.snapshotDirectory = snapshotDirectory;
+	}
+
+	/**
+	 * Gets the time allowed to find alternative routes.
+	 *
+	 * @return the timeout, in milliseconds.
+	 */
+	public long getAlternativeRoutesTimeout() {
+		return alternativeRoutesTimeout;
+	}
+
+	/**
+	 * Sets the time allowed to find alternative routes. Once it elapses, the
+	 * routes found so far are returned.
+	 *
+	 * @param alternativeRoutesTimeout
+	 *            the timeout to set, in milliseconds.
+	 * @throws IllegalArgumentException
+	 *             if alternativeRoutesTimeout is not positive.
+	 */
+	public void setAlternativeRoutesTimeout(long alternativeRoutesTimeout) {
+		if (alternativeRoutesTimeout <= 0) {
+			throw new IllegalArgumentException(
+					"alternativeRoutesTimeout is not positive");
+		}
+		this.alternativeRoutesTimeout = alternativeRoutesTimeout;
+	}
+
+	/**
+	 * Gets the speed along legs without a travel time profile.
+	 *
+	 * @return the speed, in distance units per hour.
+	 */
+	public double getSpeed() {
+		return speed;
+	}
+
+	/**
+	 * Sets the speed along legs without a travel time profile, used by
+	 * fastest route searches.
+	 *
+	 * @param speed
+	 *            the speed to set, in distance units per hour.
+	 * @throws IllegalArgumentException
+	 *             if speed is not positive.
+	 */
+	public void setSpeed(double speed) {
+		if (!(speed > 0)) {
+			throw new IllegalArgumentException("speed is not positive");
+		}
+		this.speed = speed;
+	}
+
+	/**
+	 * Registers a listener to be notified whenever a change to a network
+	 * becomes visible to queries.
+	 *
+	 * @param listener
+	 *            the listener to be registered.
+	 * @throws IllegalArgumentException
+	 *             if listener is null.
+	 */
+	public void addRouteRepositoryListener(RouteRepositoryListener listener) {
+		if (listener == null) {
+			throw new IllegalArgumentException("listener is null");
+		}
+		listeners.add(listener);
+	}
+
+	/**
+	 * Makes an origin a hub of a network, whose shortest path tree is kept up
+	 * to date across writes and answers the queries from the origin.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @param origin
+	 *            the hub origin, which need not be in the network yet.
+	 * @throws IllegalArgumentException
+	 *             if network or origin is null.
+	 */
+	public void addHub(String network, String origin) {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (origin == null) {
+			throw new IllegalArgumentException("origin is null");
+		}
+
+		synchronized (hubLock) {
+			ConcurrentMap<String, DynamicShortestPathTree> trees = hubTrees
+					.get(network);
+			if (trees == null) {
+				trees = new ConcurrentHashMap<String, DynamicShortestPathTree>();
+				hubTrees.put(network, trees);
+			}
+			if (!trees.containsKey(origin)) {
+				trees.put(origin, DynamicShortestPathTree.build(
+						getLatestGraph(network), origin));
+			}
+		}
+	}
+
+	/**
+	 * Stops keeping the shortest path tree of a hub of a network.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @param origin
+	 *            the hub origin.
+	 */
+	public void removeHub(String network, String origin) {
+		synchronized (hubLock) {
+			final Map<String, DynamicShortestPathTree> trees = hubTrees
+					.get(network);
+			if (trees != null) {
+				trees.remove(origin);
+			}
+		}
+	}
+
+	/**
+	 * Gets the hubs of a network.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @return an unmodifiable set of the hub origins.
+	 */
+	public Set<String> getHubs(String network) {
+		final Map<String, DynamicShortestPathTree> trees = hubTrees
+				.get(network);
+		return (trees == null) ? Collections.<String> emptySet() : Collections
+				.unmodifiableSet(trees.keySet());
+	}
+
+	/**
+	 * Makes origins hubs of their networks.
+	 *
+	 * @param hubs
+	 *            the hub origins by network name.
+	 * @throws IllegalArgumentException
+	 *             if hubs is null or holds a null origin.
+	 */
+	public void setHubs(Map<String, List<String>> hubs) {
+		if (hubs == null) {
+			throw new IllegalArgumentException("hubs is null");
+		}
+		for (Map.Entry<String, List<String>> entry : hubs.entrySet()) {
+			for (String origin : entry.getValue()) {
+				addHub(entry.getKey(), origin);
+			}
+		}
+	}
+
+	/**
+	 * Gets the shortest path tree of a hub, if it is exact for the given
+	 * graph. Trees are only used while no write to their network is in
+	 * progress, since a write published by a concurrent one may not have been
+	 * repaired yet.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @param graph
+	 *            the graph pinned by the query.
+	 * @param origin
+	 *            the origin.
+	 * @return the shortest path tree, or null if the origin is not a hub or
+	 *         its tree is not exact for the graph.
+	 */
+	private DynamicShortestPathTree getHubTree(String network,
+			CompressedGraph graph, String origin) {
+		final Map<String, DynamicShortestPathTree> trees = hubTrees
+				.get(network);
+		if (trees == null) {
+			return null;
+		}
+
+		// Checks the writes before reading the tree, which then holds at least
+		// the changes of the pinned graph
+		final AtomicInteger count = writes.get(network);
+		if (count != null && count.get() > 0) {
+			return null;
+		}
+		final DynamicShortestPathTree tree = trees.get(origin);
+		return (tree != null && tree.getGraph() == graph) ? tree : null;
+	}
+
+	/**
+	 * Brings the shortest path trees of the hubs of a network up to its latest
+	 * published graph. A tree exact for the graph a write applied its legs to
+	 * is repaired from them, as long as the graph of the write is still the
+	 * latest; any other tree behind is searched again, since the writes
+	 * between its graph and the latest one are not known.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @param previous
+	 *            the graph the write applied its legs to, or null if it
+	 *            loaded the network.
+	 * @param graph
+	 *            the graph published by the write.
+	 * @param legs
+	 *            the legs saved by the write, or null if any leg of the
+	 *            network may have changed.
+	 */
+	private void repairHubs(String network, CompressedGraph previous,
+			CompressedGraph graph, Collection<Leg> legs) {
+		final Map<String, DynamicShortestPathTree> trees = hubTrees
+				.get(network);
+		if (trees == null) {
+			return;
+		}
+		synchronized (hubLock) {
+			final CompressedGraph latest = getLatestGraph(network);
+			for (Map.Entry<String, DynamicShortestPathTree> entry : trees
+					.entrySet()) {
+				final DynamicShortestPathTree tree = entry.getValue();
+				if (tree.getGraph() == latest) {
+					continue;
+				}
+				final boolean repairable = previous != null
+						&& tree.getGraph() == previous && graph == latest;
+				entry.setValue(tree.update(latest, repairable ? legs : null));
+			}
+		}
+	}
+
+	/**
+	 * Records the start of a write to a network.
+	 *
+	 * @param network
+	 *            the network name.
+	 */
+	private void beginWrite(String network) {
+		AtomicInteger count = writes.get(network);
+		if (count == null) {
+			final AtomicInteger created = new AtomicInteger();
+			count = writes.putIfAbsent(network, created);
+			if (count == null) {
+				count = created;
+			}
+		}
+		count.incrementAndGet();
+	}
+
+	/**
+	 * Records the end of a write to a network.
+	 *
+	 * @param network
+	 *            the network name.
+	 */
+	private void endWrite(String network) {
+		writes.get(network).decrementAndGet();
+	}
+
+	/**
+	 * Notifies the registered listeners that the routes of a network may have
+	 * changed.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @param legs
+	 *            the legs saved by the change, or null if any leg of the
+	 *            network may have changed.
+	 */
+	protected void fireRoutesChanged(String network, Collection<Leg> legs) {
+		for (RouteRepositoryListener listener : listeners) {
+			listener.routesChanged(this, network, legs);
+		}
+	}
+
+	/**
+	 * Gets the names of the networks loaded into memory.
+	 *
+	 * @return the network names.
+	 */
+	protected Set<String> getNetworkNames() {
+		return versions.get().getNetworkNames();
+	}
+
+	/**
+	 * Gets the version of the graphs queries are currently answered from.
+	 *
+	 * @return the current version.
+	 */
+	public GraphVersion getVersion() {
+		return versions.get();
+	}
+
+	/**
+	 * Gets the graph queries on a network are currently answered from.
+	 * Callers should read it once and use that reference for the whole query.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @return the current graph of the network, empty if the network does not
+	 *         exist.
+	 */
+	protected CompressedGraph getGraph(String network) {
+		return getLatestGraph(network);
+	}
+
+	/**
+	 * Gets the latest graph of a network published after a write, which
+	 * subclasses answering queries from structures built in the background
+	 * might not have caught up with yet.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @return the latest graph of the network, empty if the network does not
+	 *         exist.
+	 */
+	protected final CompressedGraph getLatestGraph(String network) {
+		final CompressedGraph graph = versions.get().getGraph(network);
+		return graph == null ? EMPTY_GRAPH : graph;
+	}
+
+	/**
+	 * Gets the Dijkstra search state of the current thread, sized for the
+	 * given graph.
+	 *
+	 * @param graph
+	 *            the graph to be searched.
+	 * @return the search state of the current thread.
+	 */
+	protected DijkstraSearch getDijkstraSearch(CompressedGraph graph) {
+		DijkstraSearch search = searches.get();
+		if (search == null || search.capacity() < graph.getNodeCount()) {
+			search = new DijkstraSearch(graph.getNodeCount());
+			searches.set(search);
+		}
+		return search;
+	}
+
+	/**
+	 * Builds the graph of a network from the legs stored in the durable
+	 * repository.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @return the graph built.
+	 * @throws RepositoryExeption
+	 *             if a repository access error occurs.
+	 */
+	private CompressedGraph load(String network) throws RepositoryExeption {
+		return load(network, null);
+	}
+
+	/**
+	 * Builds the graph of a network from the legs stored in the durable
+	 * repository, keeping the node ids of a previous graph.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @param previous
+	 *            the graph whose node ids are kept, or null.
+	 * @return the graph built.
+	 * @throws RepositoryExeption
+	 *             if a repository access error occurs.
+	 */
+	private CompressedGraph load(String network, CompressedGraph previous)
+			throws RepositoryExeption {
+		return CompressedGraph.build(durableRepository.findAllLegs(network),
+				previous);
+	}
+
+	/**
+	 * Gets the snapshot file of a network.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @return the snapshot file, named after the URL-encoded network name.
+	 */
+	private File getSnapshotFile(String network) {
+		try {
+			return new File(snapshotDirectory, URLEncoder.encode(network,
+					"UTF-8") + SNAPSHOT_EXTENSION);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Opens the graph of a network from its snapshot.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @param version
+	 *            the version of the network in the durable repository.
+	 * @return the graph opened, or null if no snapshots are kept or the
+	 *         snapshot is missing, unreadable or of another version.
+	 */
+	private CompressedGraph open(String network, long version) {
+		if (snapshotDirectory == null) {
+			return null;
+		}
+		final File file = getSnapshotFile(network);
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			final long snapshotVersion = CompressedGraph
+					.readNetworkVersion(file);
+			if (snapshotVersion != version) {
+				logger.info(String.format(
+						"Snapshot of %s is stale (version %d, %d stored)",
+						network, snapshotVersion, version));
+				return null;
+			}
+			return CompressedGraph.map(file);
+		} catch (IOException e) {
+			logger.warn(String.format(
+					"Snapshot of %s could not be opened: %s", network,
+					e.getMessage()));
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the snapshot of a network graph. A failure is only logged, since
+	 * the graph can always be loaded from the durable repository again.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @param graph
+	 *            the graph.
+	 * @param version
+	 *            the version of the network the graph was built from.
+	 */
+	private void snapshot(String network, CompressedGraph graph, long version) {
+		if (snapshotDirectory == null) {
+			return;
+		}
+		try {
+			graph.write(getSnapshotFile(network), version);
+		} catch (IOException e) {
+			logger.warn(String.format(
+					"Snapshot of %s could not be written: %s", network,
+					e.getMessage()));
+		}
+	}
+
+	/**
+	 * Updates the graph of a network after a write and publishes it in the
+	 * next version. The saved legs are applied to the current graph if the
+	 * write is the only one to the network since that graph was built, and
+	 * the graph is rebuilt from the legs stored in the durable repository
+	 * otherwise. Either is done without holding any lock, so concurrent writes
+	 * to other networks load in parallel, and a graph is not published if a
+	 * later load of the network already was.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @param legs
+	 *            the legs saved by the write, or null if any leg of the
+	 *            network may have changed.
+	 * @throws RepositoryExeption
+	 *             if a repository access error occurs.
+	 */
+	protected void reload(String network, Collection<Leg> legs)
+			throws RepositoryExeption {
+		// Stamps the load and reads the network version before reading, so
+		// that a later load sees at least the same writes and a graph never
+		// records a later version than its legs
+		final long stamp = loadStamps.incrementAndGet();
+		final long networkVersion = durableRepository
+				.getNetworkVersion(network);
+		final GraphVersion pinned = versions.get();
+		final CompressedGraph previous = pinned.getGraph(network);
+
+		// The version following the one of the current graph means that no
+		// other write came in between, so the saved legs are all it lacks
+		if (legs != null && previous != null
+				&& networkVersion == pinned.getNetworkVersion(network) + 1) {
+			final CompressedGraph updated = previous.update(legs);
+			if (updated != null
+					&& publish(network, previous, updated, stamp,
+							networkVersion)) {
+				published(network, previous, updated, legs, stamp,
+						networkVersion);
+				return;
+			}
+		}
+
+		// Saved legs keep the node ids, so that the hub trees stay valid
+		final CompressedGraph graph = (legs == null) ? load(network) : load(
+				network, previous);
+		GraphVersion current;
+		do {
+			current = versions.get();
+			if (current.getStamp(network) > stamp) {
+				// A later load, holding the changes too, was published first
+				repairHubs(network, null, null, legs);
+				graphChanged(network, legs, stamp);
+				return;
+			}
+		} while (!versions.compareAndSet(current,
+				current.next(network, graph, stamp, networkVersion)));
+		published(network, null, graph, legs, stamp, networkVersion);
+	}
+
+	/**
+	 * Publishes a graph updated from the previous graph of a network, unless
+	 * another graph of the network was published since.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @param previous
+	 *            the graph the update was applied to.
+	 * @param graph
+	 *            the updated graph.
+	 * @param stamp
+	 *            the stamp of the load.
+	 * @param networkVersion
+	 *            the version of the network the graph holds the writes of.
+	 * @return true if the graph was published.
+	 */
+	private boolean publish(String network, CompressedGraph previous,
+			CompressedGraph graph, long stamp, long networkVersion) {
+		GraphVersion current;
+		do {
+			current = versions.get();
+			if (current.getGraph(network) != previous) {
+				return false;
+			}
+		} while (!versions.compareAndSet(current,
+				current.next(network, graph, stamp, networkVersion)));
+		return true;
+	}
+
+	/**
+	 * Snapshots a graph just published for a write, repairs the hub trees and
+	 * reports the change.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @param previous
+	 *            the graph the write applied its legs to, or null if it
+	 *            loaded the network.
+	 * @param graph
+	 *            the graph published.
+	 * @param legs
+	 *            the legs saved by the write, or null if any leg of the
+	 *            network may have changed.
+	 * @param stamp
+	 *            the stamp of the load.
+	 * @param networkVersion
+	 *            the version of the network the graph holds the writes of.
+	 */
+	private void published(String network, CompressedGraph previous,
+			CompressedGraph graph, Collection<Leg> legs, long stamp,
+			long networkVersion) {
+		synchronized (snapshotLock) {
+			if (versions.get().getGraph(network) == graph) {
+				snapshot(network, graph, networkVersion);
+			}
+		}
+		repairHubs(network, previous, graph, legs);
+		graphChanged(network, legs, stamp);
+	}
+
+	/**
+	 * Called after a graph holding the changes of a write to a network has
+	 * been published. Notifies the listeners by default, since queries already
+	 * see the new graph.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @param legs
+	 *            the legs saved by the write, or null if any leg of the
+	 *            network may have changed.
+	 * @param stamp
+	 *            the stamp of the load holding the changes. Graphs with an
+	 *            equal or higher stamp hold them.
+	 */
+	protected void graphChanged(String network, Collection<Leg> legs,
+			long stamp) {
+		fireRoutesChanged(network, legs);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.repository.RouteRepository#saveLeg
+	 * (java.lang.String, org.drmit.shortestpath.domain.model.Leg)
+	 */
+	@Override
+	public void saveLeg(String network, Leg leg) throws RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (leg == null) {
+			throw new IllegalArgumentException("leg is null");
+		}
+
+		beginWrite(network);
+		try {
+			durableRepository.saveLeg(network, leg);
+			reload(network, Collections.singletonList(leg));
+		} finally {
+			endWrite(network);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.repository.RouteRepository#saveLegs
+	 * (java.lang.String, java.util.List)
+	 */
+	@Override
+	public void saveLegs(String network, List<Leg> legs)
+			throws RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (legs == null) {
+			throw new IllegalArgumentException("legs is null");
+		}
+
+		beginWrite(network);
+		try {
+			durableRepository.saveLegs(network, legs);
+			reload(network, legs);
+		} finally {
+			endWrite(network);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.repository.RouteRepository#replaceLegs
+	 * (java.lang.String, java.util.Collection)
+	 */
+	@Override
+	public void replaceLegs(String network, Collection<Leg> legs)
+			throws RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (legs == null) {
+			throw new IllegalArgumentException("legs is null");
+		}
+
+		beginWrite(network);
+		try {
+			durableRepository.replaceLegs(network, legs);
+			reload(network, null);
+		} finally {
+			endWrite(network);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.repository.RouteRepository#importLegs
+	 * (java.lang.String, java.util.Iterator)
+	 */
+	@Override
+	public long importLegs(String network, Iterator<Leg> legs)
+			throws RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (legs == null) {
+			throw new IllegalArgumentException("legs is null");
+		}
+
+		beginWrite(network);
+		try {
+			return durableRepository.importLegs(network, legs);
+		} finally {
+			try {
+				// Picks up whatever was committed, even if the import failed
+				reload(network, null);
+			} finally {
+				endWrite(network);
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * saveCoordinates(java.lang.String, double, double)
+	 */
+	@Override
+	public void saveCoordinates(String name, double latitude, double longitude)
+			throws RepositoryExeption {
+		// The in-memory graphs do not hold coordinates
+		durableRepository.saveCoordinates(name, latitude, longitude);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * findNetworkNames()
+	 */
+	@Override
+	public List<String> findNetworkNames() throws RepositoryExeption {
+		return new ArrayList<String>(getNetworkNames());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * getNetworkVersion(java.lang.String)
+	 */
+	@Override
+	public long getNetworkVersion(String network) throws RepositoryExeption {
+		return durableRepository.getNetworkVersion(network);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.repository.RouteRepository#findAllLegs
+	 * (java.lang.String)
+	 */
+	@Override
+	public List<Leg> findAllLegs(String network) throws RepositoryExeption {
+		return durableRepository.findAllLegs(network);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * findShortestRoute(java.lang.String, java.lang.String, java.lang.String)
+	 */
+	@Override
+	public Route findShortestRoute(String network, String origin,
+			String destination) throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (origin == null) {
+			throw new IllegalArgumentException("origin is null");
+		}
+		if (destination == null) {
+			throw new IllegalArgumentException("destination is null");
+		}
+
+		// Staying put requires no legs, even for unknown locations
+		if (origin.equals(destination)) {
+			final List<Leg> legs = Collections.emptyList();
+			return new Route(origin, destination, legs);
+		}
+
+		// Pins the current graph for the whole query
+		final CompressedGraph graph = getGraph(network);
+
+		final int originNode = graph.getNodeId(origin);
+		final int destinationNode = graph.getNodeId(destination);
+		final DynamicShortestPathTree hubTree = getHubTree(network, graph,
+				origin);
+		List<Leg> legs = null;
+		if (originNode >= 0 && destinationNode >= 0) {
+			legs = (hubTree != null) ? hubTree.getLegs(destinationNode)
+					: findShortestPath(network, graph, originNode,
+							destinationNode);
+		}
+		if (legs == null) {
+			throw new RouteNotFoundRepositoryExeption(String.format(
+					"No route could be found between the %s and %s", origin,
+					destination));
+		}
+
+		return new Route(origin, destination, legs);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * findShortestDistance(java.lang.String, java.lang.String,
+	 * java.lang.String)
+	 */
+	@Override
+	public double findShortestDistance(String network, String origin,
+			String destination) throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (origin == null) {
+			throw new IllegalArgumentException("origin is null");
+		}
+		if (destination == null) {
+			throw new IllegalArgumentException("destination is null");
+		}
+
+		// Staying put costs nothing, even for unknown locations
+		if (origin.equals(destination)) {
+			return 0;
+		}
+
+		// Pins the current graph for the whole query
+		final CompressedGraph graph = getGraph(network);
+
+		final int originNode = graph.getNodeId(origin);
+		final int destinationNode = graph.getNodeId(destination);
+		final DynamicShortestPathTree hubTree = getHubTree(network, graph,
+				origin);
+		double distance = Double.POSITIVE_INFINITY;
+		if (originNode >= 0 && destinationNode >= 0) {
+			distance = (hubTree != null) ? hubTree.getDistance(destinationNode)
+					: findShortestDistance(network, graph, originNode,
+							destinationNode);
+		}
+		if (distance == Double.POSITIVE_INFINITY) {
+			throw new RouteNotFoundRepositoryExeption(String.format(
+					"No route could be found between the %s and %s", origin,
+					destination));
+		}
+
+		return distance;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * findCheapestRoute(java.lang.String, java.lang.String, java.lang.String,
+	 * org.drmit.shortestpath.domain.model.VehicleProfile, double)
+	 */
+	@Override
+	public Route findCheapestRoute(String network, String origin,
+			String destination, VehicleProfile vehicleProfile, double fuelPrice)
+			throws RouteNotFoundRepositoryExeption, RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (origin == null) {
+			throw new IllegalArgumentException("origin is null");
+		}
+		if (destination == null) {
+			throw new IllegalArgumentException("destination is null");
+		}
+		if (vehicleProfile == null) {
+			throw new IllegalArgumentException("vehicleProfile is null");
+		}
+		if (!(fuelPrice >= 0)) {
+			throw new IllegalArgumentException("fuelPrice is negative");
+		}
+
+		// Staying put requires no legs, even for unknown locations
+		if (origin.equals(destination)) {
+			final List<Leg> legs = Collections.emptyList();
+			return new Route(origin, destination, legs);
+		}
+
+		// Pins the current graph for the whole query
+		final CompressedGraph graph = getGraph(network);
+
+		// Searches the costs of the vehicle, which the hierarchy is not built
+		// for
+		final int originNode = graph.getNodeId(origin);
+		final int destinationNode = graph.getNodeId(destination);
+		final DijkstraSearch search = getDijkstraSearch(graph);
+		if (originNode < 0
+				|| destinationNode < 0
+				|| !search.run(graph, originNode, destinationNode,
+						graph.getEdgeCosts(vehicleProfile), fuelPrice)) {
+			throw new RouteNotFoundRepositoryExeption(String.format(
+					"No route could be found between the %s and %s", origin,
+					destination));
+		}
+
+		return new Route(origin, destination, search.getLegs(graph,
+				destinationNode));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * findFastestRoute(java.lang.String, java.lang.String, java.lang.String,
+	 * double)
+	 */
+	@Override
+	public TimedRoute findFastestRoute(String network, String origin,
+			String destination, double departureTime)
+			throws RouteNotFoundRepositoryExeption, RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (origin == null) {
+			throw new IllegalArgumentException("origin is null");
+		}
+		if (destination == null) {
+			throw new IllegalArgumentException("destination is null");
+		}
+		if (Double.isNaN(departureTime) || Double.isInfinite(departureTime)) {
+			throw new IllegalArgumentException("departureTime is not finite");
+		}
+
+		// Staying put requires no legs, even for unknown locations
+		if (origin.equals(destination)) {
+			final List<Leg> legs = Collections.emptyList();
+			return new TimedRoute(origin, destination, legs, departureTime,
+					departureTime);
+		}
+
+		// Pins the current graph for the whole query
+		final CompressedGraph graph = getGraph(network);
+
+		// Searches by arrival time, which no hierarchy can speed up
+		final int originNode = graph.getNodeId(origin);
+		final int destinationNode = graph.getNodeId(destination);
+		final DijkstraSearch search = getDijkstraSearch(graph);
+		if (originNode < 0
+				|| destinationNode < 0
+				|| !search.runTimeDependent(graph, originNode,
+						destinationNode, departureTime, SECONDS_PER_HOUR
+								/ speed)) {
+			throw new RouteNotFoundRepositoryExeption(String.format(
+					"No route could be found between the %s and %s", origin,
+					destination));
+		}
+
+		return new TimedRoute(origin, destination, search.getLegs(graph,
+				destinationNode), departureTime,
+				search.getDistance(destinationNode));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * findKShortestRoutes(java.lang.String, java.lang.String,
+	 * java.lang.String, int)
+	 */
+	@Override
+	public List<Route> findKShortestRoutes(String network, String origin,
+			String destination, int k) throws RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (origin == null) {
+			throw new IllegalArgumentException("origin is null");
+		}
+		if (destination == null) {
+			throw new IllegalArgumentException("destination is null");
+		}
+		if (k <= 0) {
+			throw new IllegalArgumentException("k is not positive");
+		}
+
+		// Staying put is the only loopless route
+		if (origin.equals(destination)) {
+			final List<Leg> legs = Collections.emptyList();
+			return Collections.singletonList(new Route(origin, destination,
+					legs));
+		}
+
+		// Pins the current graph for the whole query
+		final CompressedGraph graph = getGraph(network);
+
+		final int originNode = graph.getNodeId(origin);
+		final int destinationNode = graph.getNodeId(destination);
+		if (originNode < 0 || destinationNode < 0) {
+			return Collections.emptyList();
+		}
+
+		final long deadline = System.nanoTime()
+				+ TimeUnit.MILLISECONDS.toNanos(alternativeRoutesTimeout);
+		final List<Route> routes = new ArrayList<Route>();
+		for (List<Leg> legs : new KShortestPathSearch(this, graph,
+				spurSearchExecutor, deadline).find(originNode,
+				destinationNode, k)) {
+			routes.add(new Route(origin, destination, legs));
+		}
+		return routes;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * findShortestRoutesFrom(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public ShortestPathTree findShortestRoutesFrom(String network,
+			String origin) throws RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (origin == null) {
+			throw new IllegalArgumentException("origin is null");
+		}
+
+		// Pins the current graph for the whole query
+		final CompressedGraph graph = getGraph(network);
+
+		final int originNode = graph.getNodeId(origin);
+		if (originNode < 0) {
+			return ShortestPathTree.of(origin);
+		}
+		final DynamicShortestPathTree hubTree = getHubTree(network, graph,
+				origin);
+		if (hubTree != null) {
+			return hubTree.toShortestPathTree();
+		}
+
+		// Settles every reachable node
+		final DijkstraSearch search = getDijkstraSearch(graph);
+		final int[] settled = new int[graph.getNodeCount()];
+		final int count = search.runAll(graph, originNode, settled);
+
+		// Lays the tree out in settling order, so predecessors come first
+		final int[] treeIndexes = new int[graph.getNodeCount()];
+		final String[] locations = new String[count];
+		final double[] distances = new double[count];
+		final int[] predecessors = new int[count];
+		final double[] legDistances = new double[count];
+		for (int i = 0; i < count; i++) {
+			final int node = settled[i];
+			final int edge = search.getPredecessorEdge(node);
+			treeIndexes[node] = i;
+			locations[i] = graph.getNodeName(node);
+			distances[i] = search.getDistance(node);
+			predecessors[i] = (edge < 0) ? -1 : treeIndexes[graph
+					.getEdgeSource(edge)];
+			legDistances[i] = (edge < 0) ? 0 : graph.getEdgeDistance(edge);
+		}
+
+		return new ShortestPathTree(origin, locations, distances,
+				predecessors, legDistances);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * findDistances(java.lang.String, java.util.List, java.util.List)
+	 */
+	@Override
+	public DistanceMatrix findDistances(String network, List<String> origins,
+			List<String> destinations) throws RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (origins == null) {
+			throw new IllegalArgumentException("origins is null");
+		}
+		if (destinations == null) {
+			throw new IllegalArgumentException("destinations is null");
+		}
+
+		// Pins the current graph for the whole query
+		final CompressedGraph graph = getGraph(network);
+
+		// Leaves the hubs out of the search, reading their rows off their trees
+		final int[] originNodes = new int[origins.size()];
+		final DynamicShortestPathTree[] originTrees = new DynamicShortestPathTree[originNodes.length];
+		for (int i = 0; i < originNodes.length; i++) {
+			originTrees[i] = getHubTree(network, graph, origins.get(i));
+			originNodes[i] = (originTrees[i] != null) ? -1 : graph
+					.getNodeId(origins.get(i));
+		}
+		final int[] destinationNodes = new int[destinations.size()];
+		for (int j = 0; j < destinationNodes.length; j++) {
+			destinationNodes[j] = graph.getNodeId(destinations.get(j));
+		}
+
+		final double[][] distances = findDistances(network, graph,
+				originNodes, destinationNodes);
+		for (int i = 0; i < originNodes.length; i++) {
+			if (originTrees[i] != null) {
+				for (int j = 0; j < destinationNodes.length; j++) {
+					if (destinationNodes[j] >= 0) {
+						distances[i][j] = originTrees[i]
+								.getDistance(destinationNodes[j]);
+					}
+				}
+			}
+		}
+
+		// Staying put costs nothing, even for unknown locations
+		for (int i = 0; i < originNodes.length; i++) {
+			for (int j = 0; j < destinationNodes.length; j++) {
+				if (origins.get(i).equals(destinations.get(j))) {
+					distances[i][j] = 0;
+				}
+			}
+		}
+
+		return new DistanceMatrix(origins, destinations, distances);
+	}
+
+	/**
+	 * Finds the shortest path length between every origin and every
+	 * destination node of the graph. By default, runs a single Dijkstra search
+	 * from each origin until all the destinations are settled.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @param graph
+	 *            the graph to search.
+	 * @param origins
+	 *            the origin node ids, negative for unknown locations.
+	 * @param destinations
+	 *            the destination node ids, negative for unknown locations.
+	 * @return the shortest path lengths indexed by origin and destination, or
+	 *         positive infinity where no path exists.
+	 */
+	protected double[][] findDistances(String network, CompressedGraph graph,
+			int[] origins, int[] destinations) {
+		final BitSet targets = new BitSet(graph.getNodeCount());
+		for (int destination : destinations) {
+			if (destination >= 0) {
+				targets.set(destination);
+			}
+		}
+
+		final DijkstraSearch search = getDijkstraSearch(graph);
+		final double[][] distances = new double[origins.length][destinations.length];
+		for (int i = 0; i < origins.length; i++) {
+			Arrays.fill(distances[i], Double.POSITIVE_INFINITY);
+			if (origins[i] < 0) {
+				continue;
+			}
+			search.run(graph, origins[i], targets);
+			for (int j = 0; j < destinations.length; j++) {
+				if (destinations[j] >= 0 && search.isReached(destinations[j])) {
+					distances[i][j] = search.getDistance(destinations[j]);
+				}
+			}
+		}
+		return distances;
+	}
+
+	/**
+	 * Finds the shortest path length between two distinct nodes of the graph.
+	 * By default, finds it as a distance matrix of a single origin and
+	 * destination.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @param graph
+	 *            the graph to search.
+	 * @param origin
+	 *            the origin node id.
+	 * @param destination
+	 *            the destination node id.
+	 * @return the shortest path length, or positive infinity if the
+	 *         destination is not reachable from the origin.
+	 */
+	protected double findShortestDistance(String network,
+			CompressedGraph graph, int origin, int destination) {
+		return findDistances(network, graph, new int[] { origin },
+				new int[] { destination })[0][0];
+	}
+
+	/**
+	 * Finds the shortest path between two distinct nodes of the graph.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @param graph
+	 *            the graph to search.
+	 * @param origin
+	 *            the origin node id.
+	 * @param destination
+	 *            the destination node id.
+	 * @return the legs of the shortest path, or null if the destination is not
+	 *         reachable from the origin.
+	 */
+	protected abstract List<Leg> findShortestPath(String network,
+			CompressedGraph graph, int origin, int destination);
+
+}
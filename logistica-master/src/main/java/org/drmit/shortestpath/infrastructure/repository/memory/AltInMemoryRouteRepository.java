@@ -0,0 +1,274 @@
+package org.drmit.shortestpath.infrastructure.repository.memory;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.infrastructure.repository.RepositoryExeption;
+import org.drmit.shortestpath.infrastructure.repository.RouteRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * AbstractInMemoryRouteRepository implementation using A* search guided by
+ * landmark distances (ALT).
+ * <p>
+ * The landmarks of a network are picked again in the background after every
+ * write to it. Since landmark bounds only hold for the graph they were
+ * computed on, queries on a graph the landmarks were not picked from are
+ * searched with plain Dijkstra until the new landmarks are ready.
+ *
+ * @author Leandro Ferreira
+ */
+public class AltInMemoryRouteRepository extends
+		AbstractInMemoryRouteRepository {
+
+	/** Logger. */
+	private static final Logger logger = LoggerFactory
+			.getLogger(AltInMemoryRouteRepository.class);
+
+	/** Landmarks guiding the queries, by network name. */
+	private volatile Map<String, Landmarks> landmarks = Collections
+			.emptyMap();
+
+	/** Number of landmarks picked per network. */
+	private volatile int landmarkCount = Landmarks.DEFAULT_COUNT;
+
+	/**
+	 * Single background thread picking the landmarks. At most one rebuild is
+	 * pending at any time, since each rebuild picks up the latest graphs.
+	 */
+	private final ThreadPoolExecutor rebuilder = new ThreadPoolExecutor(1, 1,
+			0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(1),
+			new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					final Thread thread = new Thread(runnable,
+							"landmark-rebuilder");
+					thread.setDaemon(true);
+					return thread;
+				}
+			}, new ThreadPoolExecutor.DiscardPolicy());
+
+	/** Picks the landmarks which are not current from the latest graphs. */
+	private final Runnable rebuild = new Runnable() {
+		@Override
+		public void run() {
+			for (String network : getNetworkNames()) {
+				if (!isLandmarksCurrent(network)) {
+					rebuild(network);
+				}
+			}
+		}
+	};
+
+	/**
+	 * Constructs a AltInMemoryRouteRepository object. The landmarks are
+	 * picked before the constructor returns.
+	 *
+	 * @param durableRepository
+	 *            the underlying durable route repository.
+	 * @throws IllegalArgumentException
+	 *             if durableRepository is null.
+	 * @throws RepositoryExeption
+	 *             if the legs could not be loaded from the durable repository.
+	 */
+	public AltInMemoryRouteRepository(RouteRepository durableRepository)
+			throws RepositoryExeption {
+		super(durableRepository);
+
+		final Map<String, Landmarks> built = new HashMap<String, Landmarks>();
+		for (String network : getNetworkNames()) {
+			built.put(network,
+					Landmarks.build(getGraph(network), landmarkCount));
+		}
+		landmarks = Collections.unmodifiableMap(built);
+	}
+
+	/**
+	 * Constructs a AltInMemoryRouteRepository object keeping snapshots of the
+	 * graphs in the given directory. The landmarks are picked in the
+	 * background, so that queries are answered from the snapshots right away,
+	 * searched with Dijkstra until the landmarks are ready.
+	 *
+	 * @param durableRepository
+	 *            the underlying durable route repository.
+	 * @param snapshotDirectory
+	 *            the directory the graph snapshots are kept in, or null.
+	 * @throws IllegalArgumentException
+	 *             if durableRepository is null.
+	 * @throws RepositoryExeption
+	 *             if the legs could not be loaded from the durable repository
+	 *             or the snapshot directory could not be created.
+	 */
+	public AltInMemoryRouteRepository(RouteRepository durableRepository,
+			File snapshotDirectory) throws RepositoryExeption {
+		super(durableRepository, snapshotDirectory);
+
+		rebuilder.execute(rebuild);
+	}
+
+	/**
+	 * Stops the spur search threads and the background thread, discarding
+	 * the pending rebuild and letting a rebuild in progress complete. The
+	 * repository must not be used afterwards.
+	 */
+	@Override
+	public void destroy() {
+		super.destroy();
+		rebuilder.shutdown();
+		rebuilder.getQueue().clear();
+	}
+
+	/**
+	 * Gets the number of landmarks picked per network.
+	 *
+	 * @return the number of landmarks.
+	 */
+	public int getLandmarkCount() {
+		return landmarkCount;
+	}
+
+	/**
+	 * Sets the number of landmarks picked per network, and picks them again
+	 * in the background. More landmarks give tighter bounds, at the cost of
+	 * two floats per location and landmark.
+	 *
+	 * @param landmarkCount
+	 *            the landmarkCount to set.
+	 * @throws IllegalArgumentException
+	 *             if landmarkCount is not positive.
+	 */
+	public void setLandmarkCount(int landmarkCount) {
+		if (landmarkCount <= 0) {
+			throw new IllegalArgumentException("landmarkCount is not positive");
+		}
+		this.landmarkCount = landmarkCount;
+		rebuilder.execute(rebuild);
+	}
+
+	/**
+	 * Returns true if the landmarks of a network were picked from its latest
+	 * graph, as many as set.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @return true if the landmarks are up to date.
+	 */
+	public boolean isLandmarksCurrent(String network) {
+		final Landmarks current = landmarks.get(network);
+		final CompressedGraph graph = getGraph(network);
+		return current != null
+				&& current.getGraph() == graph
+				&& current.getCount() == Math.min(landmarkCount,
+						graph.getNodeCount());
+	}
+
+	/**
+	 * Returns true if the landmarks of all the networks were picked from
+	 * their latest graphs.
+	 *
+	 * @return true if the landmarks are up to date.
+	 */
+	public boolean isLandmarksCurrent() {
+		for (String network : getNetworkNames()) {
+			if (!isLandmarksCurrent(network)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Picks the landmarks of a network from its latest graph and swaps them
+	 * in. Only called from the rebuilder thread.
+	 *
+	 * @param network
+	 *            the network name.
+	 */
+	private void rebuild(String network) {
+		try {
+			final long start = System.currentTimeMillis();
+			final Landmarks rebuilt = Landmarks.build(getGraph(network),
+					landmarkCount);
+
+			final Map<String, Landmarks> swapped = new HashMap<String, Landmarks>(
+					landmarks);
+			swapped.put(network, rebuilt);
+			landmarks = Collections.unmodifiableMap(swapped);
+			logger.info(String.format(
+					"%d landmarks of %s picked in %d ms", rebuilt.getCount(),
+					network, System.currentTimeMillis() - start));
+		} catch (RuntimeException e) {
+			logger.error(e.getMessage(), e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.memory.
+	 * AbstractInMemoryRouteRepository#graphChanged(java.lang.String,
+	 * java.util.Collection, long)
+	 */
+	@Override
+	protected void graphChanged(String network, Collection<Leg> legs,
+			long stamp) {
+		super.graphChanged(network, legs, stamp);
+		rebuilder.execute(rebuild);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.memory.
+	 * AbstractInMemoryRouteRepository
+	 * #findShortestPath(java.lang.String, org.drmit.shortestpath.infrastructure
+	 * .repository.memory.CompressedGraph, int, int)
+	 */
+	@Override
+	protected List<Leg> findShortestPath(String network,
+			CompressedGraph graph, int origin, int destination) {
+		final DijkstraSearch search = getDijkstraSearch(graph);
+		final Landmarks current = landmarks.get(network);
+		final boolean found;
+		if (current == null || current.getGraph() != graph) {
+			// The landmarks are not ready or were picked from another graph
+			found = search.run(graph, origin, destination);
+		} else {
+			found = search.run(graph, origin, destination, current);
+		}
+		return found ? search.getLegs(graph, destination) : null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.memory.
+	 * AbstractInMemoryRouteRepository
+	 * #findShortestDistance(java.lang.String, org.drmit.shortestpath
+	 * .infrastructure.repository.memory.CompressedGraph, int, int)
+	 */
+	@Override
+	protected double findShortestDistance(String network,
+			CompressedGraph graph, int origin, int destination) {
+		final Landmarks current = landmarks.get(network);
+		if (current == null || current.getGraph() != graph) {
+			// The landmarks are not ready or were picked from another graph
+			return super.findShortestDistance(network, graph, origin,
+					destination);
+		}
+		final DijkstraSearch search = getDijkstraSearch(graph);
+		return search.run(graph, origin, destination, current) ? search
+				.getDistance(destination) : Double.POSITIVE_INFINITY;
+	}
+
+}
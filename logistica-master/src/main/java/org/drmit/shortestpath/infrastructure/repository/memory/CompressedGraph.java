@@ -0,0 +1,1210 @@
+package org.drmit.shortestpath.infrastructure.repository.memory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.domain.model.TravelTimeProfile;
+import org.drmit.shortestpath.domain.model.VehicleProfile;
+
+/**
+ * Immutable compressed-sparse-row (CSR) representation of a logistics network.
+ * <p>
+ * Location names are interned to dense int ids and the outgoing legs of every
+ * location are stored contiguously in primitive arrays, so the edges of node
+ * <code>n</code> are the ids in the range
+ * <code>[getFirstEdge(n), getLastEdge(n))</code>. The breakpoints of the
+ * travel time profiles of the edges are packed the same way, so evaluating
+ * them does not allocate. The costs of the edges for a vehicle profile are
+ * computed once per graph and kept alongside it, and so are the incoming edges
+ * of every node, on first use.
+ * <p>
+ * The arrays are held in buffers, backed by the heap for graphs built from
+ * legs and by a memory-mapped file for graphs opened from a snapshot. Buffers
+ * are only read by absolute index, so the graph is safe to share between
+ * threads either way.
+ *
+ * @author Leandro Ferreira
+ */
+public class CompressedGraph {
+
+	/** Magic number identifying a snapshot file ("LGS1"). */
+	private static final int SNAPSHOT_MAGIC = 0x4C475331;
+
+	/** Version of the snapshot format. */
+	private static final int SNAPSHOT_VERSION = 2;
+
+	/** Bytes in an int. */
+	private static final int INT_BYTES = 4;
+
+	/** Bytes in a double. */
+	private static final int DOUBLE_BYTES = 8;
+
+	/** Location names indexed by node id. */
+	private final String[] names;
+
+	/** Node ids indexed by location name. */
+	private final Map<String, Integer> ids;
+
+	/** Index of the first outgoing edge of each node (length is n + 1). */
+	private final IntBuffer edgeOffsets;
+
+	/** Source node of each edge. */
+	private final IntBuffer edgeSources;
+
+	/** Target node of each edge. */
+	private final IntBuffer edgeTargets;
+
+	/** Distance covered by each edge. */
+	private final DoubleBuffer edgeDistances;
+
+	/**
+	 * Index of the first profile breakpoint of each edge (length is e + 1), or
+	 * null if no edge has a profile.
+	 */
+	private final IntBuffer profileOffsets;
+
+	/** Departure time of each profile breakpoint, or null. */
+	private final DoubleBuffer profileDepartureTimes;
+
+	/** Travel time of each profile breakpoint, or null. */
+	private final DoubleBuffer profileTravelTimes;
+
+	/** Toll charged for each edge, or null if no edge has a toll. */
+	private final DoubleBuffer edgeTolls;
+
+	/** Road class names indexed by road class id, or null. */
+	private final String[] roadClasses;
+
+	/**
+	 * Road class id of each edge, -1 for none, or null if no edge has a road
+	 * class.
+	 */
+	private final IntBuffer edgeRoadClasses;
+
+	/** Edge costs computed so far, by vehicle profile. */
+	private final ConcurrentMap<VehicleProfile, EdgeCosts> edgeCosts = new ConcurrentHashMap<VehicleProfile, EdgeCosts>();
+
+	/**
+	 * Index of the first incoming edge of each node (n + 1 entries) followed
+	 * by the incoming edge ids grouped by target node, or null until first
+	 * used.
+	 */
+	private volatile int[] incomingEdges = null;
+
+	/**
+	 * Constructs a CompressedGraph object.
+	 *
+	 * @param names
+	 *            location names indexed by node id.
+	 * @param ids
+	 *            node ids indexed by location name.
+	 * @param edgeOffsets
+	 *            index of the first outgoing edge of each node.
+	 * @param edgeSources
+	 *            source node of each edge.
+	 * @param edgeTargets
+	 *            target node of each edge.
+	 * @param edgeDistances
+	 *            distance covered by each edge.
+	 * @param profileOffsets
+	 *            index of the first profile breakpoint of each edge, or null.
+	 * @param profileDepartureTimes
+	 *            departure time of each profile breakpoint, or null.
+	 * @param profileTravelTimes
+	 *            travel time of each profile breakpoint, or null.
+	 * @param edgeTolls
+	 *            toll charged for each edge, or null.
+	 * @param roadClasses
+	 *            road class names indexed by road class id, or null.
+	 * @param edgeRoadClasses
+	 *            road class id of each edge, or null.
+	 */
+	private CompressedGraph(String[] names, Map<String, Integer> ids,
+			IntBuffer edgeOffsets, IntBuffer edgeSources,
+			IntBuffer edgeTargets, DoubleBuffer edgeDistances,
+			IntBuffer profileOffsets, DoubleBuffer profileDepartureTimes,
+			DoubleBuffer profileTravelTimes, DoubleBuffer edgeTolls,
+			String[] roadClasses, IntBuffer edgeRoadClasses) {
+		this.names = names;
+		this.ids = ids;
+		this.edgeOffsets = edgeOffsets;
+		this.edgeSources = edgeSources;
+		this.edgeTargets = edgeTargets;
+		this.edgeDistances = edgeDistances;
+		this.profileOffsets = profileOffsets;
+		this.profileDepartureTimes = profileDepartureTimes;
+		this.profileTravelTimes = profileTravelTimes;
+		this.edgeTolls = edgeTolls;
+		this.roadClasses = roadClasses;
+		this.edgeRoadClasses = edgeRoadClasses;
+	}
+
+	/**
+	 * Builds a compressed graph containing the given legs.
+	 *
+	 * @param legs
+	 *            the legs the graph consist in.
+	 * @return a compressed graph containing the given legs.
+	 * @throws IllegalArgumentException
+	 *             if legs is null.
+	 */
+	public static CompressedGraph build(Collection<Leg> legs) {
+		return build(legs, Collections.<String> emptyList());
+	}
+
+	/**
+	 * Builds a compressed graph containing the given legs, keeping the node
+	 * ids of a previous graph of the same network. Locations new to the
+	 * previous graph are assigned the following ids, so state indexed by the
+	 * node ids of the previous graph stays valid for the new one.
+	 *
+	 * @param legs
+	 *            the legs the graph consist in.
+	 * @param previous
+	 *            the graph whose node ids are kept, or null.
+	 * @return a compressed graph containing the given legs.
+	 * @throws IllegalArgumentException
+	 *             if legs is null.
+	 */
+	public static CompressedGraph build(Collection<Leg> legs,
+			CompressedGraph previous) {
+		return build(legs, (previous == null) ? Collections.<String> emptyList()
+				: Arrays.asList(previous.names));
+	}
+
+	/**
+	 * Builds a compressed graph containing the given legs, assigning the given
+	 * location names the first node ids, in order, whether or not the legs
+	 * reach them. The other locations are assigned the following ids.
+	 *
+	 * @param legs
+	 *            the legs the graph consist in.
+	 * @param names
+	 *            the location names assigned the first node ids.
+	 * @return a compressed graph containing the given legs.
+	 * @throws IllegalArgumentException
+	 *             if legs or names is null, or if names holds a name twice.
+	 */
+	public static CompressedGraph build(Collection<Leg> legs,
+			List<String> names) {
+		if (legs == null) {
+			throw new IllegalArgumentException("legs is null");
+		}
+		if (names == null) {
+			throw new IllegalArgumentException("names is null");
+		}
+
+		// Interns the location names, the given ones first
+		final Map<String, Integer> ids = new HashMap<String, Integer>();
+		for (String name : names) {
+			if (ids.containsKey(name)) {
+				throw new IllegalArgumentException("names holds " + name
+						+ " twice");
+			}
+			intern(ids, name);
+		}
+		final int edgeCount = legs.size();
+		final int[] sources = new int[edgeCount];
+		final int[] targets = new int[edgeCount];
+		final double[] distances = new double[edgeCount];
+		final TravelTimeProfile[] profiles = new TravelTimeProfile[edgeCount];
+		final double[] tolls = new double[edgeCount];
+		final Map<String, Integer> roadClassIds = new HashMap<String, Integer>();
+		final int[] roadClasses = new int[edgeCount];
+		int breakpointCount = 0;
+		boolean tolled = false;
+		int i = 0;
+		for (Leg leg : legs) {
+			sources[i] = intern(ids, leg.getOrigin());
+			targets[i] = intern(ids, leg.getDestination());
+			distances[i] = leg.getDistance();
+			profiles[i] = leg.getTravelTimeProfile();
+			if (profiles[i] != null) {
+				breakpointCount += profiles[i].getBreakpointCount();
+			}
+			tolls[i] = leg.getToll();
+			tolled |= tolls[i] > 0;
+			roadClasses[i] = (leg.getRoadClass() == null) ? -1 : intern(
+					roadClassIds, leg.getRoadClass());
+			i++;
+		}
+
+		final int nodeCount = ids.size();
+		final String[] nodeNames = toNames(ids);
+		final boolean classified = !roadClassIds.isEmpty();
+
+		// Counts the out degree of each node and turns it into offsets
+		final int[] edgeOffsets = new int[nodeCount + 1];
+		for (int e = 0; e < edgeCount; e++) {
+			edgeOffsets[sources[e] + 1]++;
+		}
+		for (int n = 0; n < nodeCount; n++) {
+			edgeOffsets[n + 1] += edgeOffsets[n];
+		}
+
+		// Scatters the edges into their rows
+		final int[] cursors = new int[nodeCount];
+		System.arraycopy(edgeOffsets, 0, cursors, 0, nodeCount);
+		final int[] edgeSources = new int[edgeCount];
+		final int[] edgeTargets = new int[edgeCount];
+		final double[] edgeDistances = new double[edgeCount];
+		final TravelTimeProfile[] edgeProfiles = new TravelTimeProfile[edgeCount];
+		final double[] edgeTolls = tolled ? new double[edgeCount] : null;
+		final int[] edgeRoadClasses = classified ? new int[edgeCount] : null;
+		for (int e = 0; e < edgeCount; e++) {
+			final int slot = cursors[sources[e]]++;
+			edgeSources[slot] = sources[e];
+			edgeTargets[slot] = targets[e];
+			edgeDistances[slot] = distances[e];
+			edgeProfiles[slot] = profiles[e];
+			if (tolled) {
+				edgeTolls[slot] = tolls[e];
+			}
+			if (classified) {
+				edgeRoadClasses[slot] = roadClasses[e];
+			}
+		}
+
+		// Packs the profile breakpoints in edge order
+		int[] profileOffsets = null;
+		double[] profileDepartureTimes = null;
+		double[] profileTravelTimes = null;
+		if (breakpointCount > 0) {
+			profileOffsets = new int[edgeCount + 1];
+			profileDepartureTimes = new double[breakpointCount];
+			profileTravelTimes = new double[breakpointCount];
+			for (int e = 0; e < edgeCount; e++) {
+				int offset = profileOffsets[e];
+				if (edgeProfiles[e] != null) {
+					final double[] departureTimes = edgeProfiles[e]
+							.getDepartureTimes();
+					final double[] travelTimes = edgeProfiles[e]
+							.getTravelTimes();
+					System.arraycopy(departureTimes, 0, profileDepartureTimes,
+							offset, departureTimes.length);
+					System.arraycopy(travelTimes, 0, profileTravelTimes,
+							offset, travelTimes.length);
+					offset += departureTimes.length;
+				}
+				profileOffsets[e + 1] = offset;
+			}
+		}
+
+		return new CompressedGraph(nodeNames, ids, IntBuffer.wrap(edgeOffsets),
+				IntBuffer.wrap(edgeSources), IntBuffer.wrap(edgeTargets),
+				DoubleBuffer.wrap(edgeDistances), wrap(profileOffsets),
+				wrap(profileDepartureTimes), wrap(profileTravelTimes),
+				wrap(edgeTolls), classified ? toNames(roadClassIds) : null,
+				wrap(edgeRoadClasses));
+	}
+
+	/**
+	 * Returns a graph holding the legs of this one with the given legs saved
+	 * into it, as the durable repositories save them: a leg replaces the one
+	 * between the same locations, or is added if there is none, and the last
+	 * of the legs between the same locations wins. The node ids of this graph
+	 * are kept. When only the distances, tolls or road classes of existing
+	 * legs change, the edge vectors are copied and the structure is shared;
+	 * otherwise the graph is rebuilt from its own legs.
+	 *
+	 * @param legs
+	 *            the saved legs.
+	 * @return the updated graph, or null if a saved leg joins two locations
+	 *         already joined by parallel legs, since which of them it
+	 *         replaces is not known.
+	 * @throws IllegalArgumentException
+	 *             if legs is null.
+	 */
+	public CompressedGraph update(Collection<Leg> legs) {
+		if (legs == null) {
+			throw new IllegalArgumentException("legs is null");
+		}
+
+		// Keeps the last leg saved between each pair of locations
+		final Map<List<String>, Leg> saved = new LinkedHashMap<List<String>, Leg>();
+		for (Leg leg : legs) {
+			saved.put(Arrays.asList(leg.getOrigin(), leg.getDestination()),
+					leg);
+		}
+
+		// Finds the edge each saved leg replaces
+		final int[] replaced = new int[saved.size()];
+		boolean inPlace = true;
+		int i = 0;
+		for (Leg leg : saved.values()) {
+			final int edge = findEdge(leg.getOrigin(), leg.getDestination());
+			if (edge == -2) {
+				return null;
+			}
+			replaced[i++] = edge;
+			inPlace &= edge >= 0 && isReplaceableInPlace(edge, leg);
+		}
+
+		if (!inPlace) {
+			// Rebuilds the graph from the legs which are not replaced
+			final BitSet replacedEdges = new BitSet();
+			for (int edge : replaced) {
+				if (edge >= 0) {
+					replacedEdges.set(edge);
+				}
+			}
+			final int edgeCount = getEdgeCount();
+			final List<Leg> updated = new ArrayList<Leg>(edgeCount
+					+ saved.size());
+			for (int edge = 0; edge < edgeCount; edge++) {
+				if (!replacedEdges.get(edge)) {
+					updated.add(toLeg(edge));
+				}
+			}
+			updated.addAll(saved.values());
+			return build(updated, this);
+		}
+
+		// Copies the edge vectors and overwrites the replaced edges
+		final double[] distances = toArray(edgeDistances);
+		final double[] tolls = (edgeTolls == null) ? null
+				: toArray(edgeTolls);
+		final int[] classes = (edgeRoadClasses == null) ? null
+				: toArray(edgeRoadClasses);
+		i = 0;
+		for (Leg leg : saved.values()) {
+			final int edge = replaced[i++];
+			distances[edge] = leg.getDistance();
+			if (tolls != null) {
+				tolls[edge] = leg.getToll();
+			}
+			if (classes != null) {
+				classes[edge] = (leg.getRoadClass() == null) ? -1 : Arrays
+						.asList(roadClasses).indexOf(leg.getRoadClass());
+			}
+		}
+		final CompressedGraph updated = new CompressedGraph(names, ids,
+				edgeOffsets, edgeSources, edgeTargets, wrap(distances),
+				profileOffsets, profileDepartureTimes, profileTravelTimes,
+				wrap(tolls), roadClasses, wrap(classes));
+		updated.incomingEdges = incomingEdges;
+		return updated;
+	}
+
+	/**
+	 * Finds the edge between two locations.
+	 *
+	 * @param origin
+	 *            the origin location name.
+	 * @param destination
+	 *            the destination location name.
+	 * @return the edge id, -1 if there is none or -2 if there are parallel
+	 *         edges.
+	 */
+	private int findEdge(String origin, String destination) {
+		final Integer source = ids.get(origin);
+		final Integer target = ids.get(destination);
+		if (source == null || target == null) {
+			return -1;
+		}
+		int found = -1;
+		for (int edge = getFirstEdge(source); edge < getLastEdge(source); edge++) {
+			if (edgeTargets.get(edge) == target) {
+				if (found >= 0) {
+					return -2;
+				}
+				found = edge;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Returns true if a leg can replace an edge by overwriting its distance,
+	 * toll and road class, that is if neither has a travel time profile and
+	 * the graph already holds tolls and the road class if the leg has them.
+	 *
+	 * @param edge
+	 *            the edge id.
+	 * @param leg
+	 *            the leg replacing the edge.
+	 * @return true if the edge can be replaced in place.
+	 */
+	private boolean isReplaceableInPlace(int edge, Leg leg) {
+		return leg.getTravelTimeProfile() == null
+				&& (profileOffsets == null || profileOffsets.get(edge) == profileOffsets
+						.get(edge + 1))
+				&& (leg.getToll() == 0 || edgeTolls != null)
+				&& (leg.getRoadClass() == null || (roadClasses != null && Arrays
+						.asList(roadClasses).contains(leg.getRoadClass())));
+	}
+
+	/**
+	 * Copies the elements of a buffer into an array.
+	 *
+	 * @param buffer
+	 *            the buffer.
+	 * @return the array.
+	 */
+	private static int[] toArray(IntBuffer buffer) {
+		final int[] array = new int[buffer.limit()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = buffer.get(i);
+		}
+		return array;
+	}
+
+	/**
+	 * Copies the elements of a buffer into an array.
+	 *
+	 * @param buffer
+	 *            the buffer.
+	 * @return the array.
+	 */
+	private static double[] toArray(DoubleBuffer buffer) {
+		final double[] array = new double[buffer.limit()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = buffer.get(i);
+		}
+		return array;
+	}
+
+	/**
+	 * Returns the id of the given name, assigning the next free id if the name
+	 * has not been seen yet.
+	 *
+	 * @param ids
+	 *            the ids assigned so far.
+	 * @param name
+	 *            the location name.
+	 * @return the id of the given name.
+	 */
+	private static int intern(Map<String, Integer> ids, String name) {
+		Integer id = ids.get(name);
+		if (id == null) {
+			id = ids.size();
+			ids.put(name, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the names indexed by the ids assigned to them.
+	 *
+	 * @param ids
+	 *            the ids assigned to the names.
+	 * @return the names indexed by id.
+	 */
+	private static String[] toNames(Map<String, Integer> ids) {
+		final String[] names = new String[ids.size()];
+		for (Map.Entry<String, Integer> entry : ids.entrySet()) {
+			names[entry.getValue()] = entry.getKey();
+		}
+		return names;
+	}
+
+	/**
+	 * Wraps an array into a buffer.
+	 *
+	 * @param array
+	 *            the array, or null.
+	 * @return a buffer backed by the array, or null if the array is null.
+	 */
+	private static IntBuffer wrap(int[] array) {
+		return (array == null) ? null : IntBuffer.wrap(array);
+	}
+
+	/**
+	 * Wraps an array into a buffer.
+	 *
+	 * @param array
+	 *            the array, or null.
+	 * @return a buffer backed by the array, or null if the array is null.
+	 */
+	private static DoubleBuffer wrap(double[] array) {
+		return (array == null) ? null : DoubleBuffer.wrap(array);
+	}
+
+	/**
+	 * Writes a snapshot of this graph to a file, without a network version.
+	 *
+	 * @param file
+	 *            the file to write to.
+	 * @throws IllegalArgumentException
+	 *             if file is null.
+	 * @throws IOException
+	 *             if the snapshot could not be written.
+	 * @see #write(File, long)
+	 */
+	public void write(File file) throws IOException {
+		write(file, 0);
+	}
+
+	/**
+	 * Writes a snapshot of this graph to a file, which {@link #map(File)}
+	 * opens without rebuilding the graph. The snapshot is written to a
+	 * temporary file first and then moved over the given one, so a snapshot
+	 * being read or a crash while writing never leaves a partial file behind.
+	 * <p>
+	 * The snapshot holds a header, which records the version of the network
+	 * the graph was built from, the location and road class names, padding
+	 * up to a multiple of 8 bytes, then the double arrays (distances, profile
+	 * breakpoints, tolls) and the int arrays (edge offsets, sources, targets,
+	 * profile offsets, road class ids) back to back, in big-endian order.
+	 * Absent arrays are signalled in the header and take no space.
+	 *
+	 * @param file
+	 *            the file to write to.
+	 * @param networkVersion
+	 *            the version of the network the graph was built from, as
+	 *            read back by {@link #readNetworkVersion(File)}.
+	 * @throws IllegalArgumentException
+	 *             if file is null.
+	 * @throws IOException
+	 *             if the snapshot could not be written.
+	 */
+	public void write(File file, long networkVersion) throws IOException {
+		if (file == null) {
+			throw new IllegalArgumentException("file is null");
+		}
+
+		final File temporary = new File(file.getPath() + ".tmp");
+		try (final DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(temporary)))) {
+			output.writeInt(SNAPSHOT_MAGIC);
+			output.writeInt(SNAPSHOT_VERSION);
+			output.writeLong(networkVersion);
+			output.writeInt(getNodeCount());
+			output.writeInt(getEdgeCount());
+			output.writeInt((profileOffsets == null) ? -1
+					: profileDepartureTimes.limit());
+			output.writeInt((edgeTolls == null) ? 0 : 1);
+			output.writeInt((roadClasses == null) ? -1 : roadClasses.length);
+			writeNames(output, names);
+			if (roadClasses != null) {
+				writeNames(output, roadClasses);
+			}
+			while (output.size() % DOUBLE_BYTES != 0) {
+				output.writeByte(0);
+			}
+
+			writeBuffer(output, edgeDistances);
+			if (profileOffsets != null) {
+				writeBuffer(output, profileDepartureTimes);
+				writeBuffer(output, profileTravelTimes);
+			}
+			if (edgeTolls != null) {
+				writeBuffer(output, edgeTolls);
+			}
+			writeBuffer(output, edgeOffsets);
+			writeBuffer(output, edgeSources);
+			writeBuffer(output, edgeTargets);
+			if (profileOffsets != null) {
+				writeBuffer(output, profileOffsets);
+			}
+			if (edgeRoadClasses != null) {
+				writeBuffer(output, edgeRoadClasses);
+			}
+		}
+		Files.move(temporary.toPath(), file.toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Writes names as their UTF-8 length followed by their UTF-8 bytes.
+	 *
+	 * @param output
+	 *            the stream to write to.
+	 * @param names
+	 *            the names to be written.
+	 * @throws IOException
+	 *             if the names could not be written.
+	 */
+	private static void writeNames(DataOutputStream output, String[] names)
+			throws IOException {
+		for (String name : names) {
+			final byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+			output.writeInt(bytes.length);
+			output.write(bytes);
+		}
+	}
+
+	/**
+	 * Writes the elements of a buffer.
+	 *
+	 * @param output
+	 *            the stream to write to.
+	 * @param buffer
+	 *            the buffer to be written.
+	 * @throws IOException
+	 *             if the buffer could not be written.
+	 */
+	private static void writeBuffer(DataOutputStream output, IntBuffer buffer)
+			throws IOException {
+		final int limit = buffer.limit();
+		for (int i = 0; i < limit; i++) {
+			output.writeInt(buffer.get(i));
+		}
+	}
+
+	/**
+	 * Writes the elements of a buffer.
+	 *
+	 * @param output
+	 *            the stream to write to.
+	 * @param buffer
+	 *            the buffer to be written.
+	 * @throws IOException
+	 *             if the buffer could not be written.
+	 */
+	private static void writeBuffer(DataOutputStream output,
+			DoubleBuffer buffer) throws IOException {
+		final int limit = buffer.limit();
+		for (int i = 0; i < limit; i++) {
+			output.writeDouble(buffer.get(i));
+		}
+	}
+
+	/**
+	 * Opens a graph from a snapshot written by {@link #write(File)}. The file
+	 * is mapped into memory and the graph reads its arrays straight from the
+	 * mapping, so only the names are copied to the heap and the pages are
+	 * loaded by the operating system as the searches touch them. The file may
+	 * be replaced by a newer snapshot while the graph is in use.
+	 *
+	 * @param file
+	 *            the snapshot file.
+	 * @return the graph held by the snapshot.
+	 * @throws IllegalArgumentException
+	 *             if file is null.
+	 * @throws IOException
+	 *             if the file could not be read, is not a snapshot or was
+	 *             written in another version of the format.
+	 */
+	public static CompressedGraph map(File file) throws IOException {
+		if (file == null) {
+			throw new IllegalArgumentException("file is null");
+		}
+
+		final MappedByteBuffer buffer;
+		try (final FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(file + " is too large to be mapped");
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size());
+		}
+
+		try {
+			if (buffer.getInt() != SNAPSHOT_MAGIC) {
+				throw new IOException(file + " is not a graph snapshot");
+			}
+			if (buffer.getInt() != SNAPSHOT_VERSION) {
+				throw new IOException(file
+						+ " was written in another snapshot version");
+			}
+			buffer.getLong();
+			final int nodeCount = buffer.getInt();
+			final int edgeCount = buffer.getInt();
+			final int breakpointCount = buffer.getInt();
+			final boolean tolled = buffer.getInt() != 0;
+			final int roadClassCount = buffer.getInt();
+			final String[] names = readNames(buffer, nodeCount);
+			final Map<String, Integer> ids = new HashMap<String, Integer>();
+			for (int n = 0; n < nodeCount; n++) {
+				ids.put(names[n], n);
+			}
+			final String[] roadClasses = (roadClassCount < 0) ? null
+					: readNames(buffer, roadClassCount);
+			int position = buffer.position();
+			position += (DOUBLE_BYTES - position % DOUBLE_BYTES)
+					% DOUBLE_BYTES;
+
+			// Slices the arrays in the order they were written
+			final DoubleBuffer edgeDistances = sliceDoubles(buffer, position,
+					edgeCount);
+			position += edgeCount * DOUBLE_BYTES;
+			DoubleBuffer profileDepartureTimes = null;
+			DoubleBuffer profileTravelTimes = null;
+			if (breakpointCount >= 0) {
+				profileDepartureTimes = sliceDoubles(buffer, position,
+						breakpointCount);
+				position += breakpointCount * DOUBLE_BYTES;
+				profileTravelTimes = sliceDoubles(buffer, position,
+						breakpointCount);
+				position += breakpointCount * DOUBLE_BYTES;
+			}
+			DoubleBuffer edgeTolls = null;
+			if (tolled) {
+				edgeTolls = sliceDoubles(buffer, position, edgeCount);
+				position += edgeCount * DOUBLE_BYTES;
+			}
+			final IntBuffer edgeOffsets = sliceInts(buffer, position,
+					nodeCount + 1);
+			position += (nodeCount + 1) * INT_BYTES;
+			final IntBuffer edgeSources = sliceInts(buffer, position,
+					edgeCount);
+			position += edgeCount * INT_BYTES;
+			final IntBuffer edgeTargets = sliceInts(buffer, position,
+					edgeCount);
+			position += edgeCount * INT_BYTES;
+			IntBuffer profileOffsets = null;
+			if (breakpointCount >= 0) {
+				profileOffsets = sliceInts(buffer, position, edgeCount + 1);
+				position += (edgeCount + 1) * INT_BYTES;
+			}
+			IntBuffer edgeRoadClasses = null;
+			if (roadClasses != null) {
+				edgeRoadClasses = sliceInts(buffer, position, edgeCount);
+			}
+
+			return new CompressedGraph(names, ids, edgeOffsets, edgeSources,
+					edgeTargets, edgeDistances, profileOffsets,
+					profileDepartureTimes, profileTravelTimes, edgeTolls,
+					roadClasses, edgeRoadClasses);
+		} catch (BufferUnderflowException | IndexOutOfBoundsException
+				| IllegalArgumentException | NegativeArraySizeException e) {
+			throw new IOException(file + " is truncated", e);
+		}
+	}
+
+	/**
+	 * Reads the version of the network a snapshot written by
+	 * {@link #write(File, long)} was built from, without mapping the graph.
+	 *
+	 * @param file
+	 *            the snapshot file.
+	 * @return the network version.
+	 * @throws IllegalArgumentException
+	 *             if file is null.
+	 * @throws IOException
+	 *             if the file could not be read, is not a snapshot or was
+	 *             written in another version of the format.
+	 */
+	public static long readNetworkVersion(File file) throws IOException {
+		if (file == null) {
+			throw new IllegalArgumentException("file is null");
+		}
+
+		try (final DataInputStream input = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(file)))) {
+			if (input.readInt() != SNAPSHOT_MAGIC) {
+				throw new IOException(file + " is not a graph snapshot");
+			}
+			if (input.readInt() != SNAPSHOT_VERSION) {
+				throw new IOException(file
+						+ " was written in another snapshot version");
+			}
+			return input.readLong();
+		} catch (EOFException e) {
+			throw new IOException(file + " is truncated", e);
+		}
+	}
+
+	/**
+	 * Reads names written by {@link #writeNames(DataOutputStream, String[])}.
+	 *
+	 * @param buffer
+	 *            the buffer to read from, positioned at the first name.
+	 * @param count
+	 *            the number of names.
+	 * @return the names read.
+	 */
+	private static String[] readNames(ByteBuffer buffer, int count) {
+		final String[] names = new String[count];
+		for (int i = 0; i < count; i++) {
+			final byte[] bytes = new byte[buffer.getInt()];
+			buffer.get(bytes);
+			names[i] = new String(bytes, StandardCharsets.UTF_8);
+		}
+		return names;
+	}
+
+	/**
+	 * Returns a view of a range of a buffer as ints.
+	 *
+	 * @param buffer
+	 *            the buffer.
+	 * @param position
+	 *            the position of the first int, in bytes.
+	 * @param count
+	 *            the number of ints.
+	 * @return a view of the range.
+	 */
+	private static IntBuffer sliceInts(ByteBuffer buffer, int position,
+			int count) {
+		return slice(buffer, position, count * INT_BYTES).asIntBuffer();
+	}
+
+	/**
+	 * Returns a view of a range of a buffer as doubles.
+	 *
+	 * @param buffer
+	 *            the buffer.
+	 * @param position
+	 *            the position of the first double, in bytes.
+	 * @param count
+	 *            the number of doubles.
+	 * @return a view of the range.
+	 */
+	private static DoubleBuffer sliceDoubles(ByteBuffer buffer, int position,
+			int count) {
+		return slice(buffer, position, count * DOUBLE_BYTES).asDoubleBuffer();
+	}
+
+	/**
+	 * Returns a view of a range of a buffer.
+	 *
+	 * @param buffer
+	 *            the buffer.
+	 * @param position
+	 *            the position of the range, in bytes.
+	 * @param size
+	 *            the size of the range, in bytes.
+	 * @return a view of the range.
+	 * @throws IndexOutOfBoundsException
+	 *             if the range is not within the buffer.
+	 */
+	private static ByteBuffer slice(ByteBuffer buffer, int position, int size) {
+		if (position < 0 || size < 0 || position > buffer.limit() - size) {
+			throw new IndexOutOfBoundsException("range is not within buffer");
+		}
+		final ByteBuffer duplicate = buffer.duplicate();
+		((Buffer) duplicate).position(position);
+		((Buffer) duplicate).limit(position + size);
+		return duplicate.slice();
+	}
+
+	/**
+	 * Gets the number of nodes in this graph.
+	 *
+	 * @return the number of nodes in this graph.
+	 */
+	public int getNodeCount() {
+		return names.length;
+	}
+
+	/**
+	 * Gets the number of edges in this graph.
+	 *
+	 * @return the number of edges in this graph.
+	 */
+	public int getEdgeCount() {
+		return edgeTargets.limit();
+	}
+
+	/**
+	 * Gets the id of the node with the given name.
+	 *
+	 * @param name
+	 *            the location name.
+	 * @return the node id, or -1 if the graph has no such location.
+	 */
+	public int getNodeId(String name) {
+		final Integer id = ids.get(name);
+		return (id == null) ? -1 : id;
+	}
+
+	/**
+	 * Gets the name of the given node.
+	 *
+	 * @param node
+	 *            the node id.
+	 * @return the location name.
+	 */
+	public String getNodeName(int node) {
+		return names[node];
+	}
+
+	/**
+	 * Gets the first outgoing edge of the given node.
+	 *
+	 * @param node
+	 *            the node id.
+	 * @return the id of the first outgoing edge.
+	 */
+	public int getFirstEdge(int node) {
+		return edgeOffsets.get(node);
+	}
+
+	/**
+	 * Gets the edge following the last outgoing edge of the given node.
+	 *
+	 * @param node
+	 *            the node id.
+	 * @return the exclusive upper bound of the outgoing edge ids.
+	 */
+	public int getLastEdge(int node) {
+		return edgeOffsets.get(node + 1);
+	}
+
+	/**
+	 * Returns true if every node of the given graph has the same id in this
+	 * graph, as for a graph built keeping its node ids.
+	 *
+	 * @param other
+	 *            the other graph.
+	 * @return true if this graph keeps the node ids of the other graph.
+	 */
+	public boolean keepsNodeIds(CompressedGraph other) {
+		if (other == this) {
+			return true;
+		}
+		if (other.names.length > names.length) {
+			return false;
+		}
+		for (int node = 0; node < other.names.length; node++) {
+			if (!names[node].equals(other.names[node])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the position of the first incoming edge of the given node. The
+	 * incoming edges are indexed on first use.
+	 *
+	 * @param node
+	 *            the node id.
+	 * @return the position of the first incoming edge.
+	 */
+	public int getFirstIncomingEdge(int node) {
+		return getIncomingEdges()[node];
+	}
+
+	/**
+	 * Gets the position following the last incoming edge of the given node.
+	 *
+	 * @param node
+	 *            the node id.
+	 * @return the exclusive upper bound of the incoming edge positions.
+	 */
+	public int getLastIncomingEdge(int node) {
+		return getIncomingEdges()[node + 1];
+	}
+
+	/**
+	 * Gets the incoming edge at the given position.
+	 *
+	 * @param position
+	 *            a position between the first and the last incoming edge of a
+	 *            node.
+	 * @return the edge id.
+	 */
+	public int getIncomingEdge(int position) {
+		return getIncomingEdges()[names.length + 1 + position];
+	}
+
+	/**
+	 * Gets the incoming edges of every node, indexing them on first use.
+	 * Racing threads build equal arrays, so either may be kept.
+	 *
+	 * @return the first incoming edge positions followed by the edge ids.
+	 */
+	private int[] getIncomingEdges() {
+		int[] incomingEdges = this.incomingEdges;
+		if (incomingEdges == null) {
+			final int nodeCount = names.length;
+			final int edgeCount = getEdgeCount();
+			incomingEdges = new int[nodeCount + 1 + edgeCount];
+
+			// Counts the in degree of each node and turns it into positions
+			for (int edge = 0; edge < edgeCount; edge++) {
+				incomingEdges[edgeTargets.get(edge) + 1]++;
+			}
+			for (int node = 0; node < nodeCount; node++) {
+				incomingEdges[node + 1] += incomingEdges[node];
+			}
+
+			// Scatters the edges into their rows
+			final int[] cursors = new int[nodeCount];
+			System.arraycopy(incomingEdges, 0, cursors, 0, nodeCount);
+			for (int edge = 0; edge < edgeCount; edge++) {
+				incomingEdges[nodeCount + 1
+						+ cursors[edgeTargets.get(edge)]++] = edge;
+			}
+			this.incomingEdges = incomingEdges;
+		}
+		return incomingEdges;
+	}
+
+	/**
+	 * Gets the source node of the given edge.
+	 *
+	 * @param edge
+	 *            the edge id.
+	 * @return the source node id.
+	 */
+	public int getEdgeSource(int edge) {
+		return edgeSources.get(edge);
+	}
+
+	/**
+	 * Gets the target node of the given edge.
+	 *
+	 * @param edge
+	 *            the edge id.
+	 * @return the target node id.
+	 */
+	public int getEdgeTarget(int edge) {
+		return edgeTargets.get(edge);
+	}
+
+	/**
+	 * Gets the distance covered by the given edge.
+	 *
+	 * @param edge
+	 *            the edge id.
+	 * @return the distance covered by the edge.
+	 */
+	public double getEdgeDistance(int edge) {
+		return edgeDistances.get(edge);
+	}
+
+	/**
+	 * Returns true if any edge of this graph has a travel time profile.
+	 *
+	 * @return true if the graph has travel time profiles.
+	 */
+	public boolean hasTravelTimeProfiles() {
+		return profileOffsets != null;
+	}
+
+	/**
+	 * Gets the travel time of the given edge when departing at the given time.
+	 * Edges without a profile take a time proportional to their distance.
+	 *
+	 * @param edge
+	 *            the edge id.
+	 * @param departureTime
+	 *            the departure time, in seconds since midnight of any day.
+	 * @param secondsPerDistance
+	 *            the travel time of a unit of distance along edges without a
+	 *            profile.
+	 * @return the travel time, in seconds.
+	 */
+	public double getEdgeTravelTime(int edge, double departureTime,
+			double secondsPerDistance) {
+		if (profileOffsets != null) {
+			final int from = profileOffsets.get(edge);
+			final int to = profileOffsets.get(edge + 1);
+			if (from < to) {
+				return TravelTimeProfile.evaluate(profileDepartureTimes,
+						profileTravelTimes, from, to, departureTime);
+			}
+		}
+		return edgeDistances.get(edge) * secondsPerDistance;
+	}
+
+	/**
+	 * Gets the costs of the edges for a vehicle profile. They are computed on
+	 * the first call for the profile and kept with the graph, so searches
+	 * never look up road classes or tolls.
+	 *
+	 * @param vehicleProfile
+	 *            the vehicle profile.
+	 * @return the edge costs.
+	 */
+	EdgeCosts getEdgeCosts(VehicleProfile vehicleProfile) {
+		EdgeCosts costs = edgeCosts.get(vehicleProfile);
+		if (costs == null) {
+			final int edgeCount = edgeDistances.limit();
+			final double[] fuelUses = new double[edgeCount];
+			final double[] tollCosts = new double[edgeCount];
+			for (int edge = 0; edge < edgeCount; edge++) {
+				fuelUses[edge] = vehicleProfile.getFuelUse(
+						edgeDistances.get(edge), getEdgeRoadClass(edge));
+				tollCosts[edge] = vehicleProfile.getTollCost(getEdgeToll(edge));
+			}
+			costs = new EdgeCosts(fuelUses, tollCosts);
+			final EdgeCosts existing = edgeCosts.putIfAbsent(vehicleProfile,
+					costs);
+			if (existing != null) {
+				costs = existing;
+			}
+		}
+		return costs;
+	}
+
+	/**
+	 * Gets the toll charged for the given edge.
+	 *
+	 * @param edge
+	 *            the edge id.
+	 * @return the toll, 0 if the edge has none.
+	 */
+	public double getEdgeToll(int edge) {
+		return (edgeTolls == null) ? 0 : edgeTolls.get(edge);
+	}
+
+	/**
+	 * Gets the road class of the given edge.
+	 *
+	 * @param edge
+	 *            the edge id.
+	 * @return the road class, or null if the edge has none.
+	 */
+	public String getEdgeRoadClass(int edge) {
+		if (edgeRoadClasses == null) {
+			return null;
+		}
+		final int roadClass = edgeRoadClasses.get(edge);
+		return (roadClass < 0) ? null : roadClasses[roadClass];
+	}
+
+	/**
+	 * Returns a leg constructed from the given edge.
+	 *
+	 * @param edge
+	 *            the edge id.
+	 * @return a leg constructed from the edge.
+	 */
+	public Leg toLeg(int edge) {
+		TravelTimeProfile profile = null;
+		if (profileOffsets != null) {
+			final int from = profileOffsets.get(edge);
+			final int to = profileOffsets.get(edge + 1);
+			if (from < to) {
+				final double[] departureTimes = new double[to - from];
+				final double[] travelTimes = new double[to - from];
+				for (int i = from; i < to; i++) {
+					departureTimes[i - from] = profileDepartureTimes.get(i);
+					travelTimes[i - from] = profileTravelTimes.get(i);
+				}
+				profile = new TravelTimeProfile(departureTimes, travelTimes);
+			}
+		}
+		return new Leg(names[edgeSources.get(edge)],
+				names[edgeTargets.get(edge)], edgeDistances.get(edge), profile,
+				getEdgeToll(edge), getEdgeRoadClass(edge));
+	}
+
+}
@@ -0,0 +1,975 @@
+package org.drmit.shortestpath.infrastructure.repository.memory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.infrastructure.metrics.RoutingMetrics;
+import org.drmit.shortestpath.infrastructure.metrics.RoutingStage;
+
+/**
+ * Immutable contraction hierarchy over a compressed graph.
+ * <p>
+ * Nodes are contracted one by one in order of importance, adding a shortcut
+ * edge between two neighbours whenever the contracted node lies on their only
+ * shortest connection. Queries then run a bidirectional Dijkstra search which
+ * only climbs towards more important nodes, and shortcuts are unpacked back
+ * into the original edges of the graph.
+ *
+ * @author Leandro Ferreira
+ */
+public class ContractionHierarchy {
+
+	/** Routing metrics. */
+	private static final RoutingMetrics metrics = RoutingMetrics.getInstance();
+
+	/** Maximum number of nodes settled by a single witness search. */
+	private static final int WITNESS_SETTLE_LIMIT = 500;
+
+	/** The graph the hierarchy was built from. */
+	private final CompressedGraph graph;
+
+	/** Contraction rank of each node. */
+	private final int[] ranks;
+
+	/** Source node of each edge. */
+	private final int[] edgeSources;
+
+	/** Target node of each edge. */
+	private final int[] edgeTargets;
+
+	/** Weight of each edge. */
+	private final double[] edgeWeights;
+
+	/**
+	 * First half of each shortcut, or the original graph edge encoded as
+	 * <code>-1 - edge</code> for edges that are not shortcuts.
+	 */
+	private final int[] edgeFirstChildren;
+
+	/** Second half of each shortcut, or -1 for edges that are not shortcuts. */
+	private final int[] edgeSecondChildren;
+
+	/** Offsets of the upward edges leaving each node. */
+	private final int[] upwardOffsets;
+
+	/** Upward edges leaving each node. */
+	private final int[] upwardEdges;
+
+	/** Offsets of the upward edges entering each node, reversed. */
+	private final int[] downwardOffsets;
+
+	/** Upward edges entering each node, reversed. */
+	private final int[] downwardEdges;
+
+	/**
+	 * Constructs a ContractionHierarchy object.
+	 *
+	 * @param graph
+	 *            the graph the hierarchy was built from.
+	 * @param edges
+	 *            the original and shortcut edges.
+	 * @param ranks
+	 *            contraction rank of each node.
+	 */
+	private ContractionHierarchy(CompressedGraph graph, EdgeList edges,
+			int[] ranks) {
+		this.graph = graph;
+		this.ranks = ranks;
+		final int edgeCount = edges.size;
+		edgeSources = Arrays.copyOf(edges.sources, edgeCount);
+		edgeTargets = Arrays.copyOf(edges.targets, edgeCount);
+		edgeWeights = Arrays.copyOf(edges.weights, edgeCount);
+		edgeFirstChildren = Arrays.copyOf(edges.firstChildren, edgeCount);
+		edgeSecondChildren = Arrays.copyOf(edges.secondChildren, edgeCount);
+
+		// Splits the edges into upward ones, indexed by their source, and
+		// downward ones, indexed by their target
+		final int nodeCount = graph.getNodeCount();
+		upwardOffsets = new int[nodeCount + 1];
+		downwardOffsets = new int[nodeCount + 1];
+		for (int e = 0; e < edgeCount; e++) {
+			if (ranks[edgeSources[e]] < ranks[edgeTargets[e]]) {
+				upwardOffsets[edgeSources[e] + 1]++;
+			} else {
+				downwardOffsets[edgeTargets[e] + 1]++;
+			}
+		}
+		for (int n = 0; n < nodeCount; n++) {
+			upwardOffsets[n + 1] += upwardOffsets[n];
+			downwardOffsets[n + 1] += downwardOffsets[n];
+		}
+		upwardEdges = new int[upwardOffsets[nodeCount]];
+		downwardEdges = new int[downwardOffsets[nodeCount]];
+		final int[] upwardCursors = Arrays.copyOf(upwardOffsets, nodeCount);
+		final int[] downwardCursors = Arrays
+				.copyOf(downwardOffsets, nodeCount);
+		for (int e = 0; e < edgeCount; e++) {
+			if (ranks[edgeSources[e]] < ranks[edgeTargets[e]]) {
+				upwardEdges[upwardCursors[edgeSources[e]]++] = e;
+			} else {
+				downwardEdges[downwardCursors[edgeTargets[e]]++] = e;
+			}
+		}
+	}
+
+	/**
+	 * Builds a contraction hierarchy over the given graph.
+	 *
+	 * @param graph
+	 *            the graph to contract.
+	 * @return the contraction hierarchy.
+	 * @throws IllegalArgumentException
+	 *             if graph is null.
+	 */
+	public static ContractionHierarchy build(CompressedGraph graph) {
+		if (graph == null) {
+			throw new IllegalArgumentException("graph is null");
+		}
+		return new Builder(graph).build();
+	}
+
+	/**
+	 * Gets the graph the hierarchy was built from.
+	 *
+	 * @return the graph the hierarchy was built from.
+	 */
+	public CompressedGraph getGraph() {
+		return graph;
+	}
+
+	/**
+	 * Gets the contraction rank of a node, higher for more important nodes.
+	 *
+	 * @param node
+	 *            the node id.
+	 * @return the contraction rank.
+	 */
+	int getRank(int node) {
+		return ranks[node];
+	}
+
+	/**
+	 * Gets the position of the first upward edge leaving a node.
+	 *
+	 * @param node
+	 *            the node id.
+	 * @return the position of the first upward edge.
+	 */
+	int getFirstUpwardEdge(int node) {
+		return upwardOffsets[node];
+	}
+
+	/**
+	 * Gets the position past the last upward edge leaving a node.
+	 *
+	 * @param node
+	 *            the node id.
+	 * @return the position past the last upward edge.
+	 */
+	int getLastUpwardEdge(int node) {
+		return upwardOffsets[node + 1];
+	}
+
+	/**
+	 * Gets an upward edge leaving a node, climbing to a more important node.
+	 *
+	 * @param position
+	 *            the position, between getFirstUpwardEdge and
+	 *            getLastUpwardEdge of the node.
+	 * @return the edge id.
+	 */
+	int getUpwardEdge(int position) {
+		return upwardEdges[position];
+	}
+
+	/**
+	 * Gets the position of the first downward edge entering a node.
+	 *
+	 * @param node
+	 *            the node id.
+	 * @return the position of the first downward edge.
+	 */
+	int getFirstDownwardEdge(int node) {
+		return downwardOffsets[node];
+	}
+
+	/**
+	 * Gets the position past the last downward edge entering a node.
+	 *
+	 * @param node
+	 *            the node id.
+	 * @return the position past the last downward edge.
+	 */
+	int getLastDownwardEdge(int node) {
+		return downwardOffsets[node + 1];
+	}
+
+	/**
+	 * Gets a downward edge entering a node, coming from a more important
+	 * node.
+	 *
+	 * @param position
+	 *            the position, between getFirstDownwardEdge and
+	 *            getLastDownwardEdge of the node.
+	 * @return the edge id.
+	 */
+	int getDownwardEdge(int position) {
+		return downwardEdges[position];
+	}
+
+	/**
+	 * Gets the source node of an original or shortcut edge.
+	 *
+	 * @param edge
+	 *            the edge id.
+	 * @return the source node id.
+	 */
+	int getEdgeSource(int edge) {
+		return edgeSources[edge];
+	}
+
+	/**
+	 * Gets the target node of an original or shortcut edge.
+	 *
+	 * @param edge
+	 *            the edge id.
+	 * @return the target node id.
+	 */
+	int getEdgeTarget(int edge) {
+		return edgeTargets[edge];
+	}
+
+	/**
+	 * Gets the weight of an original or shortcut edge.
+	 *
+	 * @param edge
+	 *            the edge id.
+	 * @return the edge weight.
+	 */
+	double getEdgeWeight(int edge) {
+		return edgeWeights[edge];
+	}
+
+	/**
+	 * Gets the number of shortcuts added by the contraction.
+	 *
+	 * @return the number of shortcuts.
+	 */
+	public int getShortcutCount() {
+		int shortcuts = 0;
+		for (int e = 0; e < edgeSecondChildren.length; e++) {
+			if (edgeSecondChildren[e] >= 0) {
+				shortcuts++;
+			}
+		}
+		return shortcuts;
+	}
+
+	/**
+	 * Creates the search state needed to query this hierarchy. The state can
+	 * be reused for any hierarchy with no more nodes than this one.
+	 *
+	 * @return a new query state.
+	 */
+	public Query newQuery() {
+		return new Query(graph.getNodeCount());
+	}
+
+	/**
+	 * Finds the shortest path between two nodes of the graph.
+	 *
+	 * @param query
+	 *            the search state to use.
+	 * @param origin
+	 *            the origin node id.
+	 * @param destination
+	 *            the destination node id.
+	 * @return the legs of the shortest path, or null if the destination is not
+	 *         reachable from the origin.
+	 */
+	public List<Leg> findShortestPath(Query query, int origin, int destination) {
+		final long start = System.nanoTime();
+		int settledCount = 0;
+		int relaxedCount = 0;
+		final Direction forward = query.forward;
+		final Direction backward = query.backward;
+		forward.start(origin);
+		backward.start(destination);
+
+		double best = Double.POSITIVE_INFINITY;
+		int meeting = -1;
+		boolean progressed = true;
+		while (progressed) {
+			progressed = false;
+
+			// Climbs from the origin
+			if (!forward.queue.isEmpty() && forward.queue.peekKey() < best) {
+				final int node = forward.queue.poll();
+				final double distance = forward.distances[node];
+				settledCount++;
+				relaxedCount += upwardOffsets[node + 1] - upwardOffsets[node];
+				for (int i = upwardOffsets[node]; i < upwardOffsets[node + 1]; i++) {
+					final int edge = upwardEdges[i];
+					final int next = edgeTargets[edge];
+					final double nextDistance = distance + edgeWeights[edge];
+					if (forward.reach(next, nextDistance, edge)
+							&& backward.isReached(next)
+							&& nextDistance + backward.distances[next] < best) {
+						best = nextDistance + backward.distances[next];
+						meeting = next;
+					}
+				}
+				if (backward.isReached(node)
+						&& distance + backward.distances[node] < best) {
+					best = distance + backward.distances[node];
+					meeting = node;
+				}
+				progressed = true;
+			}
+
+			// Climbs from the destination
+			if (!backward.queue.isEmpty() && backward.queue.peekKey() < best) {
+				final int node = backward.queue.poll();
+				final double distance = backward.distances[node];
+				settledCount++;
+				relaxedCount += downwardOffsets[node + 1] - downwardOffsets[node];
+				for (int i = downwardOffsets[node]; i < downwardOffsets[node + 1]; i++) {
+					final int edge = downwardEdges[i];
+					final int next = edgeSources[edge];
+					final double nextDistance = distance + edgeWeights[edge];
+					if (backward.reach(next, nextDistance, edge)
+							&& forward.isReached(next)
+							&& nextDistance + forward.distances[next] < best) {
+						best = nextDistance + forward.distances[next];
+						meeting = next;
+					}
+				}
+				if (forward.isReached(node)
+						&& distance + forward.distances[node] < best) {
+					best = distance + forward.distances[node];
+					meeting = node;
+				}
+				progressed = true;
+			}
+		}
+
+		metrics.recordSince(RoutingStage.SEARCH, start);
+		metrics.recordSearch(settledCount, relaxedCount);
+		if (meeting < 0) {
+			return null;
+		}
+
+		// Collects the hierarchy edges from the origin to the destination
+		final List<Integer> path = new ArrayList<Integer>();
+		for (int node = meeting; forward.predecessorEdges[node] >= 0; node = edgeSources[forward.predecessorEdges[node]]) {
+			path.add(forward.predecessorEdges[node]);
+		}
+		final List<Integer> reversed = new ArrayList<Integer>(path.size());
+		for (int i = path.size() - 1; i >= 0; i--) {
+			reversed.add(path.get(i));
+		}
+		for (int node = meeting; backward.predecessorEdges[node] >= 0; node = edgeTargets[backward.predecessorEdges[node]]) {
+			reversed.add(backward.predecessorEdges[node]);
+		}
+
+		// Unpacks the shortcuts
+		final long unpackStart = System.nanoTime();
+		final List<Leg> legs = new ArrayList<Leg>();
+		for (int edge : reversed) {
+			unpack(edge, legs);
+		}
+		metrics.recordSince(RoutingStage.TO_ROUTE, unpackStart);
+		return legs;
+	}
+
+	/**
+	 * Finds the shortest path length between every origin and every
+	 * destination node using buckets: an upward search from each destination
+	 * leaves its distance at every node it settles, and a single upward search
+	 * from each origin then scans the buckets of the nodes it settles.
+	 *
+	 * @param query
+	 *            the search state to use.
+	 * @param origins
+	 *            the origin node ids, negative for unknown locations.
+	 * @param destinations
+	 *            the destination node ids, negative for unknown locations.
+	 * @return the shortest path lengths indexed by origin and destination, or
+	 *         positive infinity where no path exists.
+	 */
+	public double[][] findDistances(Query query, int[] origins,
+			int[] destinations) {
+		final int nodeCount = graph.getNodeCount();
+		final int[] settled = new int[nodeCount];
+
+		// Climbs from each destination, filling the buckets. Each entry is
+		// kept as an edge from the settled node to the destination index
+		final EdgeList buckets = new EdgeList();
+		for (int j = 0; j < destinations.length; j++) {
+			if (destinations[j] < 0) {
+				continue;
+			}
+			final int count = climb(query.backward, false, destinations[j],
+					settled);
+			for (int k = 0; k < count; k++) {
+				final int node = settled[k];
+				buckets.add(node, j, query.backward.distances[node], -1, -1);
+			}
+		}
+
+		// Groups the bucket entries by node
+		final int[] bucketOffsets = new int[nodeCount + 1];
+		for (int b = 0; b < buckets.size; b++) {
+			bucketOffsets[buckets.sources[b] + 1]++;
+		}
+		for (int n = 0; n < nodeCount; n++) {
+			bucketOffsets[n + 1] += bucketOffsets[n];
+		}
+		final int[] bucketEntries = new int[buckets.size];
+		final int[] bucketCursors = Arrays.copyOf(bucketOffsets, nodeCount);
+		for (int b = 0; b < buckets.size; b++) {
+			bucketEntries[bucketCursors[buckets.sources[b]]++] = b;
+		}
+
+		// Climbs from each origin, scanning the buckets of the settled nodes
+		final double[][] distances = new double[origins.length][destinations.length];
+		for (int i = 0; i < origins.length; i++) {
+			final double[] row = distances[i];
+			Arrays.fill(row, Double.POSITIVE_INFINITY);
+			if (origins[i] < 0) {
+				continue;
+			}
+			final int count = climb(query.forward, true, origins[i], settled);
+			for (int k = 0; k < count; k++) {
+				final int node = settled[k];
+				final double distance = query.forward.distances[node];
+				for (int e = bucketOffsets[node]; e < bucketOffsets[node + 1]; e++) {
+					final int b = bucketEntries[e];
+					final double candidate = distance + buckets.weights[b];
+					if (candidate < row[buckets.targets[b]]) {
+						row[buckets.targets[b]] = candidate;
+					}
+				}
+			}
+		}
+		return distances;
+	}
+
+	/**
+	 * Settles every node reachable from the root by climbing the hierarchy,
+	 * either along upward edges or against downward ones.
+	 *
+	 * @param direction
+	 *            the search state to use.
+	 * @param upward
+	 *            true to follow upward edges, false to follow downward edges
+	 *            backwards.
+	 * @param root
+	 *            the node the search starts from.
+	 * @param settled
+	 *            receives the settled nodes, in settling order.
+	 * @return the number of settled nodes.
+	 */
+	private int climb(Direction direction, boolean upward, int root,
+			int[] settled) {
+		final int[] offsets = upward ? upwardOffsets : downwardOffsets;
+		final int[] edges = upward ? upwardEdges : downwardEdges;
+		final int[] neighbours = upward ? edgeTargets : edgeSources;
+
+		direction.start(root);
+		int count = 0;
+		while (!direction.queue.isEmpty()) {
+			final int node = direction.queue.poll();
+			settled[count++] = node;
+			final double distance = direction.distances[node];
+			for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+				final int edge = edges[i];
+				direction.reach(neighbours[edge], distance + edgeWeights[edge],
+						edge);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Appends the original legs an edge stands for.
+	 *
+	 * @param edge
+	 *            the hierarchy edge.
+	 * @param legs
+	 *            the list to append to.
+	 */
+	private void unpack(int edge, List<Leg> legs) {
+		// Unpacks iteratively to cope with arbitrarily deep shortcuts
+		int[] pending = new int[64];
+		int size = 0;
+		pending[size++] = edge;
+		while (size > 0) {
+			final int current = pending[--size];
+			if (edgeSecondChildren[current] < 0) {
+				legs.add(graph.toLeg(-1 - edgeFirstChildren[current]));
+			} else {
+				if (size + 2 > pending.length) {
+					pending = Arrays.copyOf(pending, pending.length * 2);
+				}
+				pending[size++] = edgeSecondChildren[current];
+				pending[size++] = edgeFirstChildren[current];
+			}
+		}
+	}
+
+	/**
+	 * Reusable search state of a hierarchy query. Instances are not thread
+	 * safe and are meant to be confined to a single thread.
+	 */
+	public static final class Query {
+
+		/** Forward search state. */
+		private final Direction forward;
+
+		/** Backward search state. */
+		private final Direction backward;
+
+		/**
+		 * Constructs a Query object.
+		 *
+		 * @param capacity
+		 *            the number of nodes the query can handle.
+		 */
+		private Query(int capacity) {
+			forward = new Direction(capacity);
+			backward = new Direction(capacity);
+		}
+
+		/**
+		 * Gets the number of nodes the query can handle.
+		 *
+		 * @return the query capacity.
+		 */
+		public int capacity() {
+			return forward.stamps.length;
+		}
+
+	}
+
+	/**
+	 * State of one direction of a query.
+	 */
+	private static final class Direction {
+
+		/** Tentative distance of each reached node. */
+		private final double[] distances;
+
+		/** Edge through which each reached node was reached, or -1. */
+		private final int[] predecessorEdges;
+
+		/** Generation in which each node was last reached. */
+		private final int[] stamps;
+
+		/** Queue of reached but not yet settled nodes. */
+		private final IndexedMinHeap queue;
+
+		/** Current generation. */
+		private int generation = 0;
+
+		/**
+		 * Constructs a Direction object.
+		 *
+		 * @param capacity
+		 *            the number of nodes the search can handle.
+		 */
+		Direction(int capacity) {
+			distances = new double[capacity];
+			predecessorEdges = new int[capacity];
+			stamps = new int[capacity];
+			queue = new IndexedMinHeap(capacity);
+		}
+
+		/**
+		 * Starts a new search from the given node.
+		 *
+		 * @param root
+		 *            the node the search starts from.
+		 */
+		void start(int root) {
+			if (++generation == Integer.MAX_VALUE) {
+				Arrays.fill(stamps, 0);
+				generation = 1;
+			}
+			queue.clear();
+			reach(root, 0, -1);
+		}
+
+		/**
+		 * Returns true if the node was reached by the current search.
+		 *
+		 * @param node
+		 *            the node id.
+		 * @return true if the node was reached.
+		 */
+		boolean isReached(int node) {
+			return stamps[node] == generation;
+		}
+
+		/**
+		 * Records a tentative distance for the node if it improves the known
+		 * one.
+		 *
+		 * @param node
+		 *            the node id.
+		 * @param distance
+		 *            the tentative distance.
+		 * @param edge
+		 *            the edge through which the node was reached.
+		 * @return true if the tentative distance was improved.
+		 */
+		boolean reach(int node, double distance, int edge) {
+			if (stamps[node] == generation && distances[node] <= distance) {
+				return false;
+			}
+			stamps[node] = generation;
+			distances[node] = distance;
+			predecessorEdges[node] = edge;
+			queue.insertOrDecrease(node, distance);
+			return true;
+		}
+
+	}
+
+	/**
+	 * Growable edge storage used while contracting.
+	 */
+	private static final class EdgeList {
+
+		/** Source node of each edge. */
+		int[] sources = new int[16];
+
+		/** Target node of each edge. */
+		int[] targets = new int[16];
+
+		/** Weight of each edge. */
+		double[] weights = new double[16];
+
+		/** First child of each edge. */
+		int[] firstChildren = new int[16];
+
+		/** Second child of each edge. */
+		int[] secondChildren = new int[16];
+
+		/** Number of edges. */
+		int size = 0;
+
+		/**
+		 * Appends an edge.
+		 *
+		 * @param source
+		 *            the source node.
+		 * @param target
+		 *            the target node.
+		 * @param weight
+		 *            the edge weight.
+		 * @param firstChild
+		 *            the first child.
+		 * @param secondChild
+		 *            the second child.
+		 * @return the edge id.
+		 */
+		int add(int source, int target, double weight, int firstChild,
+				int secondChild) {
+			if (size == sources.length) {
+				final int capacity = size * 2;
+				sources = Arrays.copyOf(sources, capacity);
+				targets = Arrays.copyOf(targets, capacity);
+				weights = Arrays.copyOf(weights, capacity);
+				firstChildren = Arrays.copyOf(firstChildren, capacity);
+				secondChildren = Arrays.copyOf(secondChildren, capacity);
+			}
+			sources[size] = source;
+			targets[size] = target;
+			weights[size] = weight;
+			firstChildren[size] = firstChild;
+			secondChildren[size] = secondChild;
+			return size++;
+		}
+
+	}
+
+	/**
+	 * Growable list of edge ids.
+	 */
+	private static final class EdgeIds {
+
+		/** Edge ids. */
+		int[] values = new int[4];
+
+		/** Number of edge ids. */
+		int size = 0;
+
+		/**
+		 * Appends an edge id.
+		 *
+		 * @param value
+		 *            the edge id.
+		 */
+		void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+	}
+
+	/**
+	 * Contracts the nodes of a graph.
+	 */
+	private static final class Builder {
+
+		/** The graph to contract. */
+		private final CompressedGraph graph;
+
+		/** Number of nodes. */
+		private final int nodeCount;
+
+		/** Original and shortcut edges. */
+		private final EdgeList edges = new EdgeList();
+
+		/** Edges leaving each node. */
+		private final EdgeIds[] outgoing;
+
+		/** Edges entering each node. */
+		private final EdgeIds[] incoming;
+
+		/** Contraction rank of each node, or -1 while not contracted. */
+		private final int[] ranks;
+
+		/** Number of contracted neighbours of each node. */
+		private final int[] contractedNeighbours;
+
+		/** Witness search distances. */
+		private final double[] witnessDistances;
+
+		/** Witness search generation stamps. */
+		private final int[] witnessStamps;
+
+		/** Witness search queue. */
+		private final IndexedMinHeap witnessQueue;
+
+		/** Witness search generation. */
+		private int witnessGeneration = 0;
+
+		/**
+		 * Constructs a Builder object.
+		 *
+		 * @param graph
+		 *            the graph to contract.
+		 */
+		Builder(CompressedGraph graph) {
+			this.graph = graph;
+			nodeCount = graph.getNodeCount();
+			outgoing = new EdgeIds[nodeCount];
+			incoming = new EdgeIds[nodeCount];
+			for (int n = 0; n < nodeCount; n++) {
+				outgoing[n] = new EdgeIds();
+				incoming[n] = new EdgeIds();
+			}
+			ranks = new int[nodeCount];
+			Arrays.fill(ranks, -1);
+			contractedNeighbours = new int[nodeCount];
+			witnessDistances = new double[nodeCount];
+			witnessStamps = new int[nodeCount];
+			witnessQueue = new IndexedMinHeap(nodeCount);
+		}
+
+		/**
+		 * Contracts every node and builds the hierarchy.
+		 *
+		 * @return the contraction hierarchy.
+		 */
+		ContractionHierarchy build() {
+			addOriginalEdges();
+
+			// Orders the nodes by their initial priority
+			final IndexedMinHeap order = new IndexedMinHeap(nodeCount);
+			for (int n = 0; n < nodeCount; n++) {
+				order.insertOrDecrease(n, contract(n, false));
+			}
+
+			// Contracts the least important node, lazily refreshing priorities
+			int rank = 0;
+			while (!order.isEmpty()) {
+				final int node = order.poll();
+				final double priority = contract(node, false);
+				if (!order.isEmpty() && priority > order.peekKey()) {
+					order.insertOrDecrease(node, priority);
+					continue;
+				}
+				contract(node, true);
+				ranks[node] = rank++;
+			}
+
+			return new ContractionHierarchy(graph, edges, ranks);
+		}
+
+		/**
+		 * Copies the original edges, keeping only the shortest of parallel
+		 * edges and dropping loops.
+		 */
+		private void addOriginalEdges() {
+			final int[] lastEdges = new int[nodeCount];
+			Arrays.fill(lastEdges, -1);
+			for (int node = 0; node < nodeCount; node++) {
+				for (int edge = graph.getFirstEdge(node), last = graph
+						.getLastEdge(node); edge < last; edge++) {
+					final int target = graph.getEdgeTarget(edge);
+					final double weight = graph.getEdgeDistance(edge);
+					if (target == node) {
+						continue;
+					}
+					final int existing = lastEdges[target];
+					if (existing >= 0 && edges.sources[existing] == node) {
+						if (weight < edges.weights[existing]) {
+							edges.weights[existing] = weight;
+							edges.firstChildren[existing] = -1 - edge;
+						}
+						continue;
+					}
+					final int id = edges.add(node, target, weight, -1 - edge,
+							-1);
+					lastEdges[target] = id;
+					outgoing[node].add(id);
+					incoming[target].add(id);
+				}
+			}
+		}
+
+		/**
+		 * Simulates or performs the contraction of a node.
+		 *
+		 * @param node
+		 *            the node to contract.
+		 * @param commit
+		 *            true to add the shortcuts, false to only count them.
+		 * @return the node priority, given by its edge difference plus its
+		 *         number of contracted neighbours.
+		 */
+		private double contract(int node, boolean commit) {
+			int shortcuts = 0;
+			int removed = 0;
+			final EdgeIds in = incoming[node];
+			final EdgeIds out = outgoing[node];
+
+			for (int i = 0; i < in.size; i++) {
+				final int inEdge = in.values[i];
+				final int source = edges.sources[inEdge];
+				if (ranks[source] >= 0) {
+					continue;
+				}
+				removed++;
+
+				// Finds the longest candidate shortcut through the node, if any,
+				// zero-length ones included
+				double limit = -1;
+				for (int j = 0; j < out.size; j++) {
+					final int target = edges.targets[out.values[j]];
+					if (ranks[target] < 0 && target != source) {
+						limit = Math.max(limit, edges.weights[inEdge]
+								+ edges.weights[out.values[j]]);
+					}
+				}
+				if (limit < 0) {
+					continue;
+				}
+
+				// Looks for paths avoiding the node which are at least as short
+				witnessSearch(source, node, limit);
+				for (int j = 0; j < out.size; j++) {
+					final int outEdge = out.values[j];
+					final int target = edges.targets[outEdge];
+					if (ranks[target] >= 0 || target == source) {
+						continue;
+					}
+					final double weight = edges.weights[inEdge]
+							+ edges.weights[outEdge];
+					if (witnessStamps[target] == witnessGeneration
+							&& witnessDistances[target] <= weight) {
+						continue;
+					}
+					shortcuts++;
+					if (commit) {
+						final int shortcut = edges.add(source, target, weight,
+								inEdge, outEdge);
+						outgoing[source].add(shortcut);
+						incoming[target].add(shortcut);
+					}
+				}
+			}
+			for (int j = 0; j < out.size; j++) {
+				if (ranks[edges.targets[out.values[j]]] < 0) {
+					removed++;
+				}
+			}
+
+			if (commit) {
+				for (int i = 0; i < in.size; i++) {
+					contractedNeighbours[edges.sources[in.values[i]]]++;
+				}
+				for (int j = 0; j < out.size; j++) {
+					contractedNeighbours[edges.targets[out.values[j]]]++;
+				}
+			}
+
+			return shortcuts - removed + contractedNeighbours[node];
+		}
+
+		/**
+		 * Runs a bounded Dijkstra search from the source over uncontracted
+		 * nodes, avoiding the given node.
+		 *
+		 * @param source
+		 *            the node the search starts from.
+		 * @param avoided
+		 *            the node being contracted.
+		 * @param limit
+		 *            the distance beyond which the search stops.
+		 */
+		private void witnessSearch(int source, int avoided, double limit) {
+			if (++witnessGeneration == Integer.MAX_VALUE) {
+				Arrays.fill(witnessStamps, 0);
+				witnessGeneration = 1;
+			}
+			witnessQueue.clear();
+			witnessStamps[source] = witnessGeneration;
+			witnessDistances[source] = 0;
+			witnessQueue.insertOrDecrease(source, 0);
+
+			int settled = 0;
+			while (!witnessQueue.isEmpty() && settled++ < WITNESS_SETTLE_LIMIT) {
+				if (witnessQueue.peekKey() > limit) {
+					break;
+				}
+				final int node = witnessQueue.poll();
+				final EdgeIds out = outgoing[node];
+				for (int i = 0; i < out.size; i++) {
+					final int edge = out.values[i];
+					final int next = edges.targets[edge];
+					if (next == avoided || ranks[next] >= 0) {
+						continue;
+					}
+					final double distance = witnessDistances[node]
+							+ edges.weights[edge];
+					if (witnessStamps[next] != witnessGeneration
+							|| distance < witnessDistances[next]) {
+						witnessStamps[next] = witnessGeneration;
+						witnessDistances[next] = distance;
+						witnessQueue.insertOrDecrease(next, distance);
+					}
+				}
+			}
+		}
+
+	}
+
+}
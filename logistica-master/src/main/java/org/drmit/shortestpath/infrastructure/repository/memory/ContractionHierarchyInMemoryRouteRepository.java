@@ -0,0 +1,469 @@
+package org.drmit.shortestpath.infrastructure.repository.memory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.infrastructure.repository.RepositoryExeption;
+import org.drmit.shortestpath.infrastructure.repository.RouteRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * AbstractInMemoryRouteRepository implementation answering queries from a
+ * contraction hierarchy per network.
+ * <p>
+ * The hierarchy of a network is rebuilt in the background after every write to
+ * it. Until the new hierarchy is ready, queries keep being answered from the
+ * previous one and the graph it was built from, and listeners are only
+ * notified of the changes of a write once a hierarchy holding them is swapped
+ * in. Networks written for the first time are searched with Dijkstra until
+ * their first hierarchy is ready.
+ * <p>
+ * Optionally, hub labels are derived from each hierarchy, so that the length
+ * of the shortest route between two locations is found by merging two sorted
+ * labels instead of searching.
+ *
+ * @author Leandro Ferreira
+ */
+public class ContractionHierarchyInMemoryRouteRepository extends
+		AbstractInMemoryRouteRepository {
+
+	/** Logger. */
+	private static final Logger logger = LoggerFactory
+			.getLogger(ContractionHierarchyInMemoryRouteRepository.class);
+
+	/** Hierarchies queries are answered from, by network name. */
+	private volatile Map<String, ContractionHierarchy> hierarchies;
+
+	/**
+	 * Stamp of the load of the graph each hierarchy was built from, by network
+	 * name, guarded by the pending changes.
+	 */
+	private final Map<String, Long> hierarchyStamps = new HashMap<String, Long>();
+
+	/**
+	 * Changes the hierarchies do not hold yet, by network name, guarded by
+	 * itself.
+	 */
+	private final Map<String, List<PendingChange>> pendingChanges = new HashMap<String, List<PendingChange>>();
+
+	/** Hub labels derived from the hierarchies, by network name. */
+	private volatile Map<String, HubLabels> hubLabels = Collections
+			.emptyMap();
+
+	/** True if hub labels are derived from the hierarchies. */
+	private volatile boolean hubLabeling = false;
+
+	/** Query state confined to each querying thread. */
+	private final ThreadLocal<ContractionHierarchy.Query> queries = new ThreadLocal<ContractionHierarchy.Query>();
+
+	/**
+	 * Single background thread rebuilding the hierarchies. At most one rebuild
+	 * is pending at any time, since each rebuild picks up the latest graphs.
+	 */
+	private final ThreadPoolExecutor rebuilder = new ThreadPoolExecutor(1, 1,
+			0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(1),
+			new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					final Thread thread = new Thread(runnable,
+							"contraction-hierarchy-rebuilder");
+					thread.setDaemon(true);
+					return thread;
+				}
+			}, new ThreadPoolExecutor.DiscardPolicy());
+
+	/**
+	 * Rebuilds the hierarchies which are not current from the latest graphs,
+	 * and the hub labels which are not current from the hierarchies.
+	 */
+	private final Runnable rebuild = new Runnable() {
+		@Override
+		public void run() {
+			if (!hubLabeling && !hubLabels.isEmpty()) {
+				hubLabels = Collections.emptyMap();
+			}
+			for (String network : getNetworkNames()) {
+				if (!isHierarchyCurrent(network)) {
+					rebuild(network);
+				}
+				if (hubLabeling && !isHubLabelsCurrent(network)) {
+					label(network);
+				}
+			}
+		}
+	};
+
+	/**
+	 * Constructs a ContractionHierarchyInMemoryRouteRepository object. The
+	 * first hierarchy is built before the constructor returns.
+	 *
+	 * @param durableRepository
+	 *            the underlying durable route repository.
+	 * @throws IllegalArgumentException
+	 *             if durableRepository is null.
+	 * @throws RepositoryExeption
+	 *             if the legs could not be loaded from the durable repository.
+	 */
+	public ContractionHierarchyInMemoryRouteRepository(
+			RouteRepository durableRepository) throws RepositoryExeption {
+		super(durableRepository);
+
+		final Map<String, ContractionHierarchy> built = new HashMap<String, ContractionHierarchy>();
+		final GraphVersion version = getVersion();
+		for (String network : version.getNetworkNames()) {
+			built.put(network,
+					ContractionHierarchy.build(version.getGraph(network)));
+			hierarchyStamps.put(network, version.getStamp(network));
+		}
+		hierarchies = Collections.unmodifiableMap(built);
+	}
+
+	/**
+	 * Constructs a ContractionHierarchyInMemoryRouteRepository object keeping
+	 * snapshots of the graphs in the given directory. The hierarchies are
+	 * built in the background, so that queries are answered from the
+	 * snapshots right away, searched with Dijkstra until the hierarchies are
+	 * ready.
+	 *
+	 * @param durableRepository
+	 *            the underlying durable route repository.
+	 * @param snapshotDirectory
+	 *            the directory the graph snapshots are kept in, or null.
+	 * @throws IllegalArgumentException
+	 *             if durableRepository is null.
+	 * @throws RepositoryExeption
+	 *             if the legs could not be loaded from the durable repository
+	 *             or the snapshot directory could not be created.
+	 */
+	public ContractionHierarchyInMemoryRouteRepository(
+			RouteRepository durableRepository, File snapshotDirectory)
+			throws RepositoryExeption {
+		super(durableRepository, snapshotDirectory);
+
+		hierarchies = Collections.emptyMap();
+		rebuilder.execute(rebuild);
+	}
+
+	/**
+	 * Stops the spur search threads and the background thread, discarding
+	 * the pending rebuild and letting a rebuild in progress complete. The
+	 * repository must not be used afterwards.
+	 */
+	@Override
+	public void destroy() {
+		super.destroy();
+		rebuilder.shutdown();
+		rebuilder.getQueue().clear();
+	}
+
+	/**
+	 * Rebuilds the hierarchy of a network from its latest graph and swaps it
+	 * in, notifying the listeners of the changes it holds. Only called from
+	 * the rebuilder thread.
+	 *
+	 * @param network
+	 *            the network name.
+	 */
+	private void rebuild(String network) {
+		try {
+			final long start = System.currentTimeMillis();
+			final GraphVersion version = getVersion();
+			final long stamp = version.getStamp(network);
+			final ContractionHierarchy rebuilt = ContractionHierarchy
+					.build(version.getGraph(network));
+
+			final List<PendingChange> visible = new ArrayList<PendingChange>();
+			synchronized (pendingChanges) {
+				final Map<String, ContractionHierarchy> swapped = new HashMap<String, ContractionHierarchy>(
+						hierarchies);
+				swapped.put(network, rebuilt);
+				hierarchies = Collections.unmodifiableMap(swapped);
+				hierarchyStamps.put(network, stamp);
+
+				// Takes the changes the new hierarchy holds
+				final List<PendingChange> pending = pendingChanges
+						.get(network);
+				if (pending != null) {
+					final Iterator<PendingChange> changes = pending.iterator();
+					while (changes.hasNext()) {
+						final PendingChange change = changes.next();
+						if (change.stamp <= stamp) {
+							visible.add(change);
+							changes.remove();
+						}
+					}
+					if (pending.isEmpty()) {
+						pendingChanges.remove(network);
+					}
+				}
+			}
+			for (PendingChange change : visible) {
+				fireRoutesChanged(network, change.legs);
+			}
+			logger.info(String.format(
+					"Contraction hierarchy of %s rebuilt in %d ms (%d shortcuts)",
+					network, System.currentTimeMillis() - start,
+					rebuilt.getShortcutCount()));
+		} catch (RuntimeException e) {
+			logger.error(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Derives the hub labels of a network from its current hierarchy and swaps
+	 * them in. Only called from the rebuilder thread.
+	 *
+	 * @param network
+	 *            the network name.
+	 */
+	private void label(String network) {
+		final ContractionHierarchy hierarchy = hierarchies.get(network);
+		if (hierarchy == null) {
+			return;
+		}
+		try {
+			final long start = System.currentTimeMillis();
+			final HubLabels labelled = HubLabels.build(hierarchy);
+
+			final Map<String, HubLabels> swapped = new HashMap<String, HubLabels>(
+					hubLabels);
+			swapped.put(network, labelled);
+			hubLabels = Collections.unmodifiableMap(swapped);
+			logger.info(String.format(
+					"Hub labels of %s built in %d ms (%d bytes)", network,
+					System.currentTimeMillis() - start, labelled.getSize()));
+		} catch (RuntimeException e) {
+			logger.error(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Returns true if hub labels are derived from the hierarchies.
+	 *
+	 * @return true if hub labels are derived from the hierarchies.
+	 */
+	public boolean isHubLabeling() {
+		return hubLabeling;
+	}
+
+	/**
+	 * Sets whether hub labels are derived from the hierarchies, and derives or
+	 * drops them in the background. The labels answer shortest distance
+	 * queries without searching, at the cost of memory off the heap, often
+	 * hundreds of entries per location.
+	 *
+	 * @param hubLabeling
+	 *            true to derive hub labels from the hierarchies.
+	 */
+	public void setHubLabeling(boolean hubLabeling) {
+		this.hubLabeling = hubLabeling;
+		rebuilder.execute(rebuild);
+	}
+
+	/**
+	 * Returns true if the hub labels of a network were derived from its latest
+	 * graph.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @return true if the hub labels are up to date.
+	 */
+	public boolean isHubLabelsCurrent(String network) {
+		final HubLabels labels = hubLabels.get(network);
+		return labels != null && labels.getGraph() == getLatestGraph(network);
+	}
+
+	/**
+	 * Returns true if the hierarchy of a network was built from its latest
+	 * graph.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @return true if the hierarchy is up to date.
+	 */
+	public boolean isHierarchyCurrent(String network) {
+		final ContractionHierarchy hierarchy = hierarchies.get(network);
+		return hierarchy != null
+				&& hierarchy.getGraph() == getLatestGraph(network);
+	}
+
+	/**
+	 * Returns true if the hierarchies of all the networks were built from
+	 * their latest graphs.
+	 *
+	 * @return true if the hierarchies are up to date.
+	 */
+	public boolean isHierarchyCurrent() {
+		for (String network : getNetworkNames()) {
+			if (!isHierarchyCurrent(network)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.memory.
+	 * AbstractInMemoryRouteRepository#getGraph(java.lang.String)
+	 */
+	@Override
+	protected CompressedGraph getGraph(String network) {
+		// Queries stay on the graph the current hierarchy was built from
+		final ContractionHierarchy hierarchy = hierarchies.get(network);
+		return hierarchy == null ? getLatestGraph(network) : hierarchy
+				.getGraph();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.memory.
+	 * AbstractInMemoryRouteRepository#graphChanged(java.lang.String,
+	 * java.util.Collection, long)
+	 */
+	@Override
+	protected void graphChanged(String network, Collection<Leg> legs,
+			long stamp) {
+		final List<Leg> changed = (legs == null) ? null : new ArrayList<Leg>(
+				legs);
+		final boolean visible;
+		synchronized (pendingChanges) {
+			// Queries see the latest graph of networks without a hierarchy
+			final Long hierarchyStamp = hierarchyStamps.get(network);
+			visible = hierarchyStamp == null || hierarchyStamp >= stamp;
+			if (hierarchyStamp == null || hierarchyStamp < stamp) {
+				List<PendingChange> pending = pendingChanges.get(network);
+				if (pending == null) {
+					pending = new ArrayList<PendingChange>();
+					pendingChanges.put(network, pending);
+				}
+				pending.add(new PendingChange(stamp, changed));
+			}
+		}
+		if (visible) {
+			fireRoutesChanged(network, changed);
+		}
+		rebuilder.execute(rebuild);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.memory.
+	 * AbstractInMemoryRouteRepository
+	 * #findDistances(java.lang.String, org.drmit.shortestpath.infrastructure
+	 * .repository.memory.CompressedGraph, int[], int[])
+	 */
+	@Override
+	protected double[][] findDistances(String network, CompressedGraph graph,
+			int[] origins, int[] destinations) {
+		final ContractionHierarchy current = hierarchies.get(network);
+		if (current == null || current.getGraph() != graph) {
+			// The hierarchy is not ready or was swapped after the graph was pinned
+			return super.findDistances(network, graph, origins, destinations);
+		}
+		return current.findDistances(getQuery(current), origins, destinations);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.memory.
+	 * AbstractInMemoryRouteRepository
+	 * #findShortestDistance(java.lang.String, org.drmit.shortestpath
+	 * .infrastructure.repository.memory.CompressedGraph, int, int)
+	 */
+	@Override
+	protected double findShortestDistance(String network,
+			CompressedGraph graph, int origin, int destination) {
+		final HubLabels labels = hubLabels.get(network);
+		if (!hubLabeling || labels == null || labels.getGraph() != graph) {
+			// The labels are off, not ready or were derived from another graph
+			return super.findShortestDistance(network, graph, origin,
+					destination);
+		}
+		return labels.getDistance(origin, destination);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.memory.
+	 * AbstractInMemoryRouteRepository
+	 * #findShortestPath(java.lang.String, org.drmit.shortestpath.infrastructure
+	 * .repository.memory.CompressedGraph, int, int)
+	 */
+	@Override
+	protected List<Leg> findShortestPath(String network,
+			CompressedGraph graph, int origin, int destination) {
+		final ContractionHierarchy current = hierarchies.get(network);
+		if (current == null || current.getGraph() != graph) {
+			// The hierarchy is not ready or was swapped after the graph was pinned
+			final DijkstraSearch search = getDijkstraSearch(graph);
+			return search.run(graph, origin, destination) ? search.getLegs(
+					graph, destination) : null;
+		}
+
+		return current.findShortestPath(getQuery(current), origin,
+				destination);
+	}
+
+	/**
+	 * Gets the query state of the current thread, sized for the given
+	 * hierarchy.
+	 *
+	 * @param hierarchy
+	 *            the hierarchy to be queried.
+	 * @return the query state of the current thread.
+	 */
+	private ContractionHierarchy.Query getQuery(ContractionHierarchy hierarchy) {
+		ContractionHierarchy.Query query = queries.get();
+		if (query == null
+				|| query.capacity() < hierarchy.getGraph().getNodeCount()) {
+			query = hierarchy.newQuery();
+			queries.set(query);
+		}
+		return query;
+	}
+
+	/**
+	 * Change to a network the hierarchies do not hold yet.
+	 */
+	private static final class PendingChange {
+
+		/** Stamp of the load holding the change. */
+		private final long stamp;
+
+		/** Legs saved by the change, or null for any leg. */
+		private final Collection<Leg> legs;
+
+		/**
+		 * Constructs a PendingChange object.
+		 *
+		 * @param stamp
+		 *            the stamp of the load holding the change.
+		 * @param legs
+		 *            the legs saved by the change, or null for any leg.
+		 */
+		private PendingChange(long stamp, Collection<Leg> legs) {
+			this.stamp = stamp;
+			this.legs = legs;
+		}
+
+	}
+
+}
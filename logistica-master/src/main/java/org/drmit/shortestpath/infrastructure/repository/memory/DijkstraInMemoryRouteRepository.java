@@ -0,0 +1,68 @@
+package org.drmit.shortestpath.infrastructure.repository.memory;
+
+import java.io.File;
+import java.util.List;
+
+import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.infrastructure.repository.RepositoryExeption;
+import org.drmit.shortestpath.infrastructure.repository.RouteRepository;
+
+/**
+ * AbstractInMemoryRouteRepository implementation using the Dijkstra algorithm.
+ *
+ * @author Leandro Ferreira
+ */
+public class DijkstraInMemoryRouteRepository extends
+		AbstractInMemoryRouteRepository {
+
+	/**
+	 * Constructs a DijkstraInMemoryRouteRepository object.
+	 *
+	 * @param durableRepository
+	 *            the underlying durable route repository.
+	 * @throws IllegalArgumentException
+	 *             if durableRepository is null.
+	 * @throws RepositoryExeption
+	 *             if the legs could not be loaded from the durable repository.
+	 */
+	public DijkstraInMemoryRouteRepository(RouteRepository durableRepository)
+			throws RepositoryExeption {
+		super(durableRepository);
+	}
+
+	/**
+	 * Constructs a DijkstraInMemoryRouteRepository object keeping snapshots of
+	 * the graphs in the given directory.
+	 *
+	 * @param durableRepository
+	 *            the underlying durable route repository.
+	 * @param snapshotDirectory
+	 *            the directory the graph snapshots are kept in, or null.
+	 * @throws IllegalArgumentException
+	 *             if durableRepository is null.
+	 * @throws RepositoryExeption
+	 *             if the legs could not be loaded from the durable repository
+	 *             or the snapshot directory could not be created.
+	 */
+	public DijkstraInMemoryRouteRepository(RouteRepository durableRepository,
+			File snapshotDirectory) throws RepositoryExeption {
+		super(durableRepository, snapshotDirectory);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.memory.
+	 * AbstractInMemoryRouteRepository
+	 * #findShortestPath(java.lang.String, org.drmit.shortestpath.infrastructure
+	 * .repository.memory.CompressedGraph, int, int)
+	 */
+	@Override
+	protected List<Leg> findShortestPath(String network,
+			CompressedGraph graph, int origin, int destination) {
+		final DijkstraSearch search = getDijkstraSearch(graph);
+		return search.run(graph, origin, destination) ? search.getLegs(graph,
+				destination) : null;
+	}
+
+}
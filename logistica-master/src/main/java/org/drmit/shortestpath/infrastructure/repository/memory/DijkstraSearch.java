@@ -0,0 +1,445 @@
+package org.drmit.shortestpath.infrastructure.repository.memory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.infrastructure.metrics.RoutingMetrics;
+import org.drmit.shortestpath.infrastructure.metrics.RoutingStage;
+
+/**
+ * Reusable Dijkstra search over a compressed graph.
+ * <p>
+ * The search state is kept in preallocated primitive arrays that are lazily
+ * invalidated through a generation stamp, so running a query neither allocates
+ * nor clears arrays proportional to the graph size. Instances are not thread
+ * safe and are meant to be confined to a single thread.
+ * <p>
+ * Time-dependent searches reuse the same state, keeping arrival times instead
+ * of distances. Since travel time profiles are FIFO, settling nodes by
+ * earliest arrival yields the fastest routes for the given departure time.
+ * <p>
+ * Searches guided by landmarks queue nodes by their distance plus a lower
+ * bound on their distance to the target (A*). The bounds are admissible but,
+ * rounded as they are, not always consistent, so a node reached again by a
+ * shorter path after being settled is queued once more.
+ *
+ * @author Leandro Ferreira
+ */
+class DijkstraSearch {
+
+	/** Routing metrics. */
+	private static final RoutingMetrics metrics = RoutingMetrics.getInstance();
+
+	/** Tentative distance of each reached node. */
+	private final double[] distances;
+
+	/** Edge through which each reached node was reached, or -1. */
+	private final int[] predecessorEdges;
+
+	/** Generation in which each node was last reached. */
+	private final int[] stamps;
+
+	/** Queue of reached but not yet settled nodes. */
+	private final IndexedMinHeap queue;
+
+	/** Current generation. */
+	private int generation = 0;
+
+	/** Start of the current search, in System.nanoTime() terms. */
+	private long startNanos = 0;
+
+	/** Number of nodes settled by the current search. */
+	private int settledCount = 0;
+
+	/** Number of edges relaxed by the current search. */
+	private int relaxedCount = 0;
+
+	/** Edge costs minimized by the current search, or null for distances. */
+	private EdgeCosts edgeCosts = null;
+
+	/** Fuel price the edge costs are evaluated at. */
+	private double fuelPrice = 0;
+
+	/** Landmarks guiding the current search, or null. */
+	private Landmarks landmarks = null;
+
+	/** Target node the landmarks guide the current search to. */
+	private int target = -1;
+
+	/**
+	 * Constructs a DijkstraSearch object.
+	 *
+	 * @param capacity
+	 *            the number of nodes the search can handle.
+	 */
+	DijkstraSearch(int capacity) {
+		distances = new double[capacity];
+		predecessorEdges = new int[capacity];
+		stamps = new int[capacity];
+		queue = new IndexedMinHeap(capacity);
+	}
+
+	/**
+	 * Gets the number of nodes the search can handle.
+	 *
+	 * @return the search capacity.
+	 */
+	int capacity() {
+		return stamps.length;
+	}
+
+	/**
+	 * Runs the search from the source node until the target node is settled.
+	 *
+	 * @param graph
+	 *            the graph to search.
+	 * @param source
+	 *            the source node id.
+	 * @param target
+	 *            the target node id.
+	 * @return true if the target node is reachable from the source node.
+	 */
+	boolean run(CompressedGraph graph, int source, int target) {
+		return run(graph, source, target, null, null);
+	}
+
+	/**
+	 * Runs the search from the source node until the target node is settled,
+	 * without entering the banned nodes or following the banned edges.
+	 *
+	 * @param graph
+	 *            the graph to search.
+	 * @param source
+	 *            the source node id.
+	 * @param target
+	 *            the target node id.
+	 * @param bannedNodes
+	 *            the nodes which may not be entered, or null.
+	 * @param bannedEdges
+	 *            the edges which may not be followed, or null.
+	 * @return true if the target node is reachable from the source node.
+	 */
+	boolean run(CompressedGraph graph, int source, int target,
+			BitSet bannedNodes, BitSet bannedEdges) {
+		start(source, 0);
+		boolean found = false;
+		while (!found && !queue.isEmpty()) {
+			found = settleNext(graph, bannedNodes, bannedEdges) == target;
+		}
+		finish();
+		return found;
+	}
+
+	/**
+	 * Runs the search from the source node until the target node is settled,
+	 * minimizing the cost of the edges for a vehicle profile instead of their
+	 * distance. Afterwards, the distance of a node is its cost.
+	 *
+	 * @param graph
+	 *            the graph to search.
+	 * @param source
+	 *            the source node id.
+	 * @param target
+	 *            the target node id.
+	 * @param edgeCosts
+	 *            the edge costs for the vehicle profile.
+	 * @param fuelPrice
+	 *            fuel price per liter.
+	 * @return true if the target node is reachable from the source node.
+	 */
+	boolean run(CompressedGraph graph, int source, int target,
+			EdgeCosts edgeCosts, double fuelPrice) {
+		start(source, 0);
+		this.edgeCosts = edgeCosts;
+		this.fuelPrice = fuelPrice;
+		boolean found = false;
+		while (!found && !queue.isEmpty()) {
+			found = settleNext(graph, null, null) == target;
+		}
+		finish();
+		return found;
+	}
+
+	/**
+	 * Runs an A* search from the source node until the target node is
+	 * settled, guided by the lower bounds the landmarks give on the distance
+	 * to the target.
+	 *
+	 * @param graph
+	 *            the graph to search, which the landmarks were picked from.
+	 * @param source
+	 *            the source node id.
+	 * @param target
+	 *            the target node id.
+	 * @param landmarks
+	 *            the landmarks of the graph.
+	 * @return true if the target node is reachable from the source node.
+	 */
+	boolean run(CompressedGraph graph, int source, int target,
+			Landmarks landmarks) {
+		start(source, 0);
+		this.landmarks = landmarks;
+		this.target = target;
+		boolean found = false;
+		while (!found && !queue.isEmpty()) {
+			found = settleNext(graph, null, null) == target;
+		}
+		finish();
+		return found;
+	}
+
+	/**
+	 * Runs a time-dependent search from the source node until the target node
+	 * is settled. Afterwards, the distance of a node is its earliest arrival
+	 * time.
+	 *
+	 * @param graph
+	 *            the graph to search.
+	 * @param source
+	 *            the source node id.
+	 * @param target
+	 *            the target node id.
+	 * @param departureTime
+	 *            the departure time from the source node, in seconds.
+	 * @param secondsPerDistance
+	 *            the travel time of a unit of distance along edges without a
+	 *            travel time profile.
+	 * @return true if the target node is reachable from the source node.
+	 */
+	boolean runTimeDependent(CompressedGraph graph, int source, int target,
+			double departureTime, double secondsPerDistance) {
+		start(source, departureTime);
+		boolean found = false;
+		while (!found && !queue.isEmpty()) {
+			found = settleNextTimeDependent(graph, secondsPerDistance) == target;
+		}
+		finish();
+		return found;
+	}
+
+	/**
+	 * Runs the search from the source node until every target node is
+	 * settled, or until every reachable node is. Afterwards, a target node is
+	 * reached if and only if it is reachable from the source node.
+	 *
+	 * @param graph
+	 *            the graph to search.
+	 * @param source
+	 *            the source node id.
+	 * @param targets
+	 *            the target node ids.
+	 */
+	void run(CompressedGraph graph, int source, BitSet targets) {
+		start(source, 0);
+		int remaining = targets.cardinality();
+		while (remaining > 0 && !queue.isEmpty()) {
+			if (targets.get(settleNext(graph, null, null))) {
+				remaining--;
+			}
+		}
+		finish();
+	}
+
+	/**
+	 * Runs the search from the source node until every reachable node is
+	 * settled.
+	 *
+	 * @param graph
+	 *            the graph to search.
+	 * @param source
+	 *            the source node id.
+	 * @param settled
+	 *            receives the settled node ids, in settling order. Must hold
+	 *            as many ids as the graph has nodes.
+	 * @return the number of settled nodes.
+	 */
+	int runAll(CompressedGraph graph, int source, int[] settled) {
+		start(source, 0);
+		int count = 0;
+		while (!queue.isEmpty()) {
+			settled[count++] = settleNext(graph, null, null);
+		}
+		finish();
+		return count;
+	}
+
+	/**
+	 * Starts a new search from the source node.
+	 *
+	 * @param source
+	 *            the source node id.
+	 * @param distance
+	 *            the distance, or departure time, of the source node.
+	 */
+	private void start(int source, double distance) {
+		// Starts a new generation
+		if (++generation == Integer.MAX_VALUE) {
+			Arrays.fill(stamps, 0);
+			generation = 1;
+		}
+		queue.clear();
+		startNanos = System.nanoTime();
+		settledCount = 0;
+		relaxedCount = 0;
+		edgeCosts = null;
+		landmarks = null;
+
+		reach(source, distance, -1);
+	}
+
+	/**
+	 * Reports the latency and size of the current search to the routing
+	 * metrics.
+	 */
+	private void finish() {
+		metrics.recordSince(RoutingStage.SEARCH, startNanos);
+		metrics.recordSearch(settledCount, relaxedCount);
+	}
+
+	/**
+	 * Settles the closest queued node and relaxes its outgoing edges.
+	 *
+	 * @param graph
+	 *            the graph to search.
+	 * @param bannedNodes
+	 *            the nodes which may not be entered, or null.
+	 * @param bannedEdges
+	 *            the edges which may not be followed, or null.
+	 * @return the settled node id.
+	 */
+	private int settleNext(CompressedGraph graph, BitSet bannedNodes,
+			BitSet bannedEdges) {
+		final int node = queue.poll();
+		settledCount++;
+
+		// Relaxes the outgoing edges
+		final double distance = distances[node];
+		final int first = graph.getFirstEdge(node);
+		final int last = graph.getLastEdge(node);
+		relaxedCount += last - first;
+		for (int edge = first; edge < last; edge++) {
+			final int next = graph.getEdgeTarget(edge);
+			if ((bannedEdges != null && bannedEdges.get(edge))
+					|| (bannedNodes != null && bannedNodes.get(next))) {
+				continue;
+			}
+			final double nextDistance = distance
+					+ (edgeCosts == null ? graph.getEdgeDistance(edge)
+							: edgeCosts.getCost(edge, fuelPrice));
+			if (stamps[next] != generation || nextDistance < distances[next]) {
+				reach(next, nextDistance, edge);
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * Settles the earliest queued node and relaxes its outgoing edges with the
+	 * travel times at its arrival time.
+	 *
+	 * @param graph
+	 *            the graph to search.
+	 * @param secondsPerDistance
+	 *            the travel time of a unit of distance along edges without a
+	 *            travel time profile.
+	 * @return the settled node id.
+	 */
+	private int settleNextTimeDependent(CompressedGraph graph,
+			double secondsPerDistance) {
+		final int node = queue.poll();
+		settledCount++;
+
+		// Relaxes the outgoing edges
+		final double arrival = distances[node];
+		final int first = graph.getFirstEdge(node);
+		final int last = graph.getLastEdge(node);
+		relaxedCount += last - first;
+		for (int edge = first; edge < last; edge++) {
+			final int next = graph.getEdgeTarget(edge);
+			final double nextArrival = arrival
+					+ graph.getEdgeTravelTime(edge, arrival, secondsPerDistance);
+			if (stamps[next] != generation || nextArrival < distances[next]) {
+				reach(next, nextArrival, edge);
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * Records a tentative distance for the node and queues it.
+	 *
+	 * @param node
+	 *            the node id.
+	 * @param distance
+	 *            the tentative distance.
+	 * @param predecessorEdge
+	 *            the edge through which the node was reached.
+	 */
+	private void reach(int node, double distance, int predecessorEdge) {
+		stamps[node] = generation;
+		distances[node] = distance;
+		predecessorEdges[node] = predecessorEdge;
+		queue.insertOrDecrease(node, (landmarks == null) ? distance : distance
+				+ landmarks.getLowerBound(node, target));
+	}
+
+	/**
+	 * Returns true if the node was reached by the last search.
+	 *
+	 * @param node
+	 *            the node id.
+	 * @return true if the node was reached by the last search.
+	 */
+	boolean isReached(int node) {
+		return stamps[node] == generation;
+	}
+
+	/**
+	 * Gets the distance of the node computed by the last search.
+	 *
+	 * @param node
+	 *            the node id.
+	 * @return the distance of the node.
+	 */
+	double getDistance(int node) {
+		return distances[node];
+	}
+
+	/**
+	 * Gets the edge through which the node was reached by the last search.
+	 *
+	 * @param node
+	 *            a node reached by the last search.
+	 * @return the predecessor edge id, or -1 for the source node.
+	 */
+	int getPredecessorEdge(int node) {
+		return predecessorEdges[node];
+	}
+
+	/**
+	 * Gets the legs of the shortest path found by the last search from its
+	 * source to the given node.
+	 *
+	 * @param graph
+	 *            the searched graph.
+	 * @param node
+	 *            a node settled by the last search.
+	 * @return the legs of the shortest path, in travel order.
+	 */
+	List<Leg> getLegs(CompressedGraph graph, int node) {
+		final long start = System.nanoTime();
+		final List<Leg> legs = new ArrayList<Leg>();
+		for (int edge = predecessorEdges[node]; edge >= 0; edge = predecessorEdges[graph
+				.getEdgeSource(edge)]) {
+			legs.add(graph.toLeg(edge));
+		}
+		Collections.reverse(legs);
+		metrics.recordSince(RoutingStage.TO_ROUTE, start);
+		return legs;
+	}
+
+}
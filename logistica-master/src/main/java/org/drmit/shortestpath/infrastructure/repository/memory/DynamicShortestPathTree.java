@@ -0,0 +1,442 @@
+package org.drmit.shortestpath.infrastructure.repository.memory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.domain.model.ShortestPathTree;
+import org.drmit.shortestpath.infrastructure.metrics.RoutingMetrics;
+import org.drmit.shortestpath.infrastructure.metrics.RoutingStage;
+
+/**
+ * Shortest path tree of an origin kept up to date across the graphs of a
+ * network by incremental repairs, in the style of Ramalingam and Reps.
+ * <p>
+ * Instead of searching the whole graph again after legs are saved, a repair
+ * only revisits the locations whose distance may have changed. The subtrees
+ * hanging from tree edges made longer are detached and reattached to their
+ * closest neighbours outside of them, the locations reached by a shorter leg
+ * are lowered, and both are propagated with a Dijkstra search which only
+ * goes on through locations whose distance decreases. The work is thus
+ * proportional to the part of the tree that changed, not to the graph.
+ * <p>
+ * Instances are immutable: a repair works on a copy of the distances and
+ * returns a new tree, so readers never see a tree half repaired. Repairs
+ * rely on the new graph keeping the node ids of the previous one, and fall
+ * back to a full search when it does not.
+ *
+ * @author Leandro Ferreira
+ */
+final class DynamicShortestPathTree {
+
+	/** Routing metrics. */
+	private static final RoutingMetrics metrics = RoutingMetrics.getInstance();
+
+	/** Tree origin. */
+	private final String origin;
+
+	/** Graph the tree is exact for. */
+	private final CompressedGraph graph;
+
+	/** Origin node id, or -1 if the graph has no such location. */
+	private final int originNode;
+
+	/** Shortest path length to each node, or positive infinity. */
+	private final double[] distances;
+
+	/** Node preceding each node, or -1 for the origin and unreachable nodes. */
+	private final int[] predecessors;
+
+	/** Tree laid out in distance order, built on first use. */
+	private volatile ShortestPathTree tree = null;
+
+	/**
+	 * Constructs a DynamicShortestPathTree object.
+	 *
+	 * @param origin
+	 *            the tree origin.
+	 * @param graph
+	 *            the graph the tree is exact for.
+	 * @param distances
+	 *            the shortest path length to each node.
+	 * @param predecessors
+	 *            the node preceding each node.
+	 */
+	private DynamicShortestPathTree(String origin, CompressedGraph graph,
+			double[] distances, int[] predecessors) {
+		this.origin = origin;
+		this.graph = graph;
+		this.originNode = graph.getNodeId(origin);
+		this.distances = distances;
+		this.predecessors = predecessors;
+	}
+
+	/**
+	 * Builds the shortest path tree of an origin with a full search.
+	 *
+	 * @param graph
+	 *            the graph to search.
+	 * @param origin
+	 *            the tree origin.
+	 * @return the shortest path tree of the origin.
+	 * @throws IllegalArgumentException
+	 *             if graph or origin is null.
+	 */
+	static DynamicShortestPathTree build(CompressedGraph graph, String origin) {
+		if (graph == null) {
+			throw new IllegalArgumentException("graph is null");
+		}
+		if (origin == null) {
+			throw new IllegalArgumentException("origin is null");
+		}
+
+		final long start = System.nanoTime();
+		final int nodeCount = graph.getNodeCount();
+		final double[] distances = new double[nodeCount];
+		final int[] predecessors = new int[nodeCount];
+		Arrays.fill(distances, Double.POSITIVE_INFINITY);
+		Arrays.fill(predecessors, -1);
+
+		final int originNode = graph.getNodeId(origin);
+		if (originNode >= 0) {
+			final IndexedMinHeap queue = new IndexedMinHeap(nodeCount);
+			distances[originNode] = 0;
+			queue.insertOrDecrease(originNode, 0);
+			propagate(graph, distances, predecessors, queue);
+		}
+		metrics.recordSince(RoutingStage.SEARCH, start);
+
+		return new DynamicShortestPathTree(origin, graph, distances,
+				predecessors);
+	}
+
+	/**
+	 * Repairs the tree for the next graph of the network.
+	 *
+	 * @param next
+	 *            the next graph, holding the saved legs.
+	 * @param legs
+	 *            the legs saved since this tree, or null if any leg may have
+	 *            changed.
+	 * @return the tree exact for the next graph, once every leg it changed is
+	 *         repaired.
+	 * @throws IllegalArgumentException
+	 *             if next is null.
+	 */
+	DynamicShortestPathTree update(CompressedGraph next, Collection<Leg> legs) {
+		if (next == null) {
+			throw new IllegalArgumentException("next is null");
+		}
+		if (legs == null || originNode < 0 || !next.keepsNodeIds(graph)) {
+			return build(next, origin);
+		}
+
+		final long start = System.nanoTime();
+		final int nodeCount = next.getNodeCount();
+		final double[] distances = Arrays.copyOf(this.distances, nodeCount);
+		final int[] predecessors = Arrays.copyOf(this.predecessors, nodeCount);
+		Arrays.fill(distances, this.distances.length, nodeCount,
+				Double.POSITIVE_INFINITY);
+		Arrays.fill(predecessors, this.predecessors.length, nodeCount, -1);
+
+		// Detaches the subtrees hanging from the tree edges made longer
+		final BitSet detached = new BitSet(nodeCount);
+		final List<Integer> detachedNodes = new ArrayList<Integer>();
+		for (Leg leg : legs) {
+			final int source = next.getNodeId(leg.getOrigin());
+			final int target = next.getNodeId(leg.getDestination());
+			if (source >= 0
+					&& target >= 0
+					&& predecessors[target] == source
+					&& !detached.get(target)
+					&& distances[source] + getDistance(next, source, target) > distances[target]) {
+				detach(next, predecessors, target, detached, detachedNodes);
+			}
+		}
+
+		// Reattaches the detached nodes to their closest attached neighbours
+		final IndexedMinHeap queue = new IndexedMinHeap(nodeCount);
+		for (int node : detachedNodes) {
+			distances[node] = Double.POSITIVE_INFINITY;
+			predecessors[node] = -1;
+		}
+		for (int node : detachedNodes) {
+			final int last = next.getLastIncomingEdge(node);
+			for (int i = next.getFirstIncomingEdge(node); i < last; i++) {
+				final int edge = next.getIncomingEdge(i);
+				final int source = next.getEdgeSource(edge);
+				final double distance = distances[source]
+						+ next.getEdgeDistance(edge);
+				if (!detached.get(source) && distance < distances[node]) {
+					distances[node] = distance;
+					predecessors[node] = source;
+				}
+			}
+			if (distances[node] < Double.POSITIVE_INFINITY) {
+				queue.insertOrDecrease(node, distances[node]);
+			}
+		}
+
+		// Lowers the nodes reached by shorter legs
+		for (Leg leg : legs) {
+			final int source = next.getNodeId(leg.getOrigin());
+			final int target = next.getNodeId(leg.getDestination());
+			if (source < 0 || target < 0) {
+				continue;
+			}
+			final double distance = distances[source]
+					+ getDistance(next, source, target);
+			if (distance < distances[target]) {
+				distances[target] = distance;
+				predecessors[target] = source;
+				queue.insertOrDecrease(target, distance);
+			}
+		}
+
+		propagate(next, distances, predecessors, queue);
+		metrics.recordSince(RoutingStage.REPAIR, start);
+
+		return new DynamicShortestPathTree(origin, next, distances,
+				predecessors);
+	}
+
+	/**
+	 * Marks a node and every node whose tree path goes through it as
+	 * detached.
+	 *
+	 * @param graph
+	 *            the graph.
+	 * @param predecessors
+	 *            the node preceding each node.
+	 * @param root
+	 *            the root of the subtree.
+	 * @param detached
+	 *            the nodes detached so far.
+	 * @param detachedNodes
+	 *            receives the newly detached nodes.
+	 */
+	private static void detach(CompressedGraph graph, int[] predecessors,
+			int root, BitSet detached, List<Integer> detachedNodes) {
+		final int first = detachedNodes.size();
+		detached.set(root);
+		detachedNodes.add(root);
+
+		// Walks the tree edges down, the children of a node being among the
+		// targets of its outgoing edges
+		for (int i = first; i < detachedNodes.size(); i++) {
+			final int node = detachedNodes.get(i);
+			final int last = graph.getLastEdge(node);
+			for (int edge = graph.getFirstEdge(node); edge < last; edge++) {
+				final int child = graph.getEdgeTarget(edge);
+				if (predecessors[child] == node && !detached.get(child)) {
+					detached.set(child);
+					detachedNodes.add(child);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Settles the queued nodes in distance order, lowering and queuing the
+	 * nodes their outgoing edges lead closer to.
+	 *
+	 * @param graph
+	 *            the graph.
+	 * @param distances
+	 *            the shortest path length to each node found so far.
+	 * @param predecessors
+	 *            the node preceding each node.
+	 * @param queue
+	 *            the nodes whose distance was lowered.
+	 */
+	private static void propagate(CompressedGraph graph, double[] distances,
+			int[] predecessors, IndexedMinHeap queue) {
+		while (!queue.isEmpty()) {
+			final int node = queue.poll();
+			final double distance = distances[node];
+			final int last = graph.getLastEdge(node);
+			for (int edge = graph.getFirstEdge(node); edge < last; edge++) {
+				final int next = graph.getEdgeTarget(edge);
+				final double nextDistance = distance
+						+ graph.getEdgeDistance(edge);
+				if (nextDistance < distances[next]) {
+					distances[next] = nextDistance;
+					predecessors[next] = node;
+					queue.insertOrDecrease(next, nextDistance);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the shortest edge between two nodes.
+	 *
+	 * @param graph
+	 *            the graph.
+	 * @param source
+	 *            the source node id.
+	 * @param target
+	 *            the target node id.
+	 * @return the edge id, or -1 if the nodes are not adjacent.
+	 */
+	private static int getEdge(CompressedGraph graph, int source, int target) {
+		int shortest = -1;
+		final int last = graph.getLastEdge(source);
+		for (int edge = graph.getFirstEdge(source); edge < last; edge++) {
+			if (graph.getEdgeTarget(edge) == target
+					&& (shortest < 0 || graph.getEdgeDistance(edge) < graph
+							.getEdgeDistance(shortest))) {
+				shortest = edge;
+			}
+		}
+		return shortest;
+	}
+
+	/**
+	 * Gets the distance of the shortest edge between two nodes.
+	 *
+	 * @param graph
+	 *            the graph.
+	 * @param source
+	 *            the source node id.
+	 * @param target
+	 *            the target node id.
+	 * @return the edge distance, or positive infinity if the nodes are not
+	 *         adjacent.
+	 */
+	private static double getDistance(CompressedGraph graph, int source,
+			int target) {
+		final int edge = getEdge(graph, source, target);
+		return (edge < 0) ? Double.POSITIVE_INFINITY : graph
+				.getEdgeDistance(edge);
+	}
+
+	/**
+	 * Gets the tree origin.
+	 *
+	 * @return the tree origin.
+	 */
+	String getOrigin() {
+		return origin;
+	}
+
+	/**
+	 * Gets the graph the tree is exact for.
+	 *
+	 * @return the graph.
+	 */
+	CompressedGraph getGraph() {
+		return graph;
+	}
+
+	/**
+	 * Gets the shortest path length from the origin to a node.
+	 *
+	 * @param node
+	 *            the node id.
+	 * @return the shortest path length, or positive infinity if the node is
+	 *         not reachable.
+	 */
+	double getDistance(int node) {
+		return distances[node];
+	}
+
+	/**
+	 * Gets the legs of the shortest path from the origin to a node.
+	 *
+	 * @param node
+	 *            the node id.
+	 * @return the legs of the shortest path, in travel order, or null if the
+	 *         node is not reachable.
+	 */
+	List<Leg> getLegs(int node) {
+		if (distances[node] == Double.POSITIVE_INFINITY) {
+			return null;
+		}
+		final List<Leg> legs = new ArrayList<Leg>();
+		for (int i = node; predecessors[i] >= 0; i = predecessors[i]) {
+			legs.add(graph.toLeg(getEdge(graph, predecessors[i], i)));
+		}
+		Collections.reverse(legs);
+		return legs;
+	}
+
+	/**
+	 * Lays the tree out as a shortest path tree, in ascending distance order
+	 * and with predecessors first.
+	 *
+	 * @return the shortest path tree.
+	 */
+	ShortestPathTree toShortestPathTree() {
+		ShortestPathTree tree = this.tree;
+		if (tree != null) {
+			return tree;
+		}
+		if (originNode < 0) {
+			tree = ShortestPathTree.of(origin);
+			this.tree = tree;
+			return tree;
+		}
+
+		// Orders the reachable nodes by distance, then by depth, since legs
+		// may be zero long
+		final int[] depths = new int[distances.length];
+		Arrays.fill(depths, -1);
+		depths[originNode] = 0;
+		final int[] path = new int[distances.length];
+		final List<Integer> nodes = new ArrayList<Integer>();
+		for (int node = 0; node < distances.length; node++) {
+			if (distances[node] < Double.POSITIVE_INFINITY) {
+				nodes.add(node);
+
+				// Walks up to the closest node of known depth
+				int length = 0;
+				int i = node;
+				while (depths[i] < 0) {
+					path[length++] = i;
+					i = predecessors[i];
+				}
+				while (length > 0) {
+					final int child = path[--length];
+					depths[child] = depths[predecessors[child]] + 1;
+				}
+			}
+		}
+		Collections.sort(nodes, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				final int order = Double.compare(distances[a], distances[b]);
+				return (order != 0) ? order : depths[a] - depths[b];
+			}
+		});
+
+		final int count = nodes.size();
+		final int[] treeIndexes = new int[distances.length];
+		final String[] locations = new String[count];
+		final double[] treeDistances = new double[count];
+		final int[] treePredecessors = new int[count];
+		final double[] legDistances = new double[count];
+		for (int i = 0; i < count; i++) {
+			final int node = nodes.get(i);
+			final int predecessor = predecessors[node];
+			treeIndexes[node] = i;
+			locations[i] = graph.getNodeName(node);
+			treeDistances[i] = distances[node];
+			treePredecessors[i] = (predecessor < 0) ? -1
+					: treeIndexes[predecessor];
+			legDistances[i] = (predecessor < 0) ? 0 : getDistance(graph,
+					predecessor, node);
+		}
+
+		tree = new ShortestPathTree(origin, locations, treeDistances,
+				treePredecessors, legDistances);
+		this.tree = tree;
+		return tree;
+	}
+
+}
@@ -0,0 +1,44 @@
+package org.drmit.shortestpath.infrastructure.repository.memory;
+
+/**
+ * Costs of the edges of a compressed graph for a vehicle profile, split into
+ * the fuel each edge takes and its weighted toll, so that the fuel price may
+ * change from query to query without recomputing them.
+ *
+ * @author Leandro Ferreira
+ */
+final class EdgeCosts {
+
+	/** Fuel taken by each edge, in liters. */
+	private final double[] fuelUses;
+
+	/** Weighted toll of each edge. */
+	private final double[] tollCosts;
+
+	/**
+	 * Constructs an EdgeCosts object.
+	 *
+	 * @param fuelUses
+	 *            fuel taken by each edge, in liters.
+	 * @param tollCosts
+	 *            weighted toll of each edge.
+	 */
+	EdgeCosts(double[] fuelUses, double[] tollCosts) {
+		this.fuelUses = fuelUses;
+		this.tollCosts = tollCosts;
+	}
+
+	/**
+	 * Gets the cost of an edge.
+	 *
+	 * @param edge
+	 *            the edge id.
+	 * @param fuelPrice
+	 *            fuel price per liter.
+	 * @return the fuel cost plus the weighted toll of the edge.
+	 */
+	double getCost(int edge, double fuelPrice) {
+		return fuelPrice * fuelUses[edge] + tollCosts[edge];
+	}
+
+}
@@ -0,0 +1,186 @@
+package org.drmit.shortestpath.infrastructure.repository.memory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable version of the graphs of all the networks of an in-memory
+ * repository.
+ * <p>
+ * A write to a network never changes a version: it builds the graph of the
+ * network off to the side and publishes the next version, holding the new
+ * graph and sharing the graphs of the other networks. Queries pin the version
+ * current when they start, so they see either the network before the write or
+ * the whole network after it, never a part of it.
+ * <p>
+ * Each graph is stamped with the load it came from. Loads are stamped before
+ * they read the durable repository, so a graph with a higher stamp reflects
+ * at least the same writes, and a slower load finishing last never replaces
+ * the graph of a later one. Each graph also records the version of its network
+ * in the durable repository it holds the writes of, so that a write finding
+ * no other write since can apply its legs to the graph rather than load it.
+ *
+ * @author Leandro Ferreira
+ */
+public final class GraphVersion {
+
+	/** Version number, incremented by every published graph. */
+	private final long version;
+
+	/** Graphs by network name. */
+	private final Map<String, CompressedGraph> graphs;
+
+	/** Stamp of the load each graph came from, by network name. */
+	private final Map<String, Long> stamps;
+
+	/**
+	 * Version of each network in the durable repository its graph holds the
+	 * writes of, by network name.
+	 */
+	private final Map<String, Long> networkVersions;
+
+	/**
+	 * Constructs a GraphVersion object.
+	 *
+	 * @param version
+	 *            the version number.
+	 * @param graphs
+	 *            the graphs by network name, not copied.
+	 * @param stamps
+	 *            the stamp of the load each graph came from, not copied.
+	 * @param networkVersions
+	 *            the version of each network its graph holds the writes of,
+	 *            not copied.
+	 */
+	private GraphVersion(long version, Map<String, CompressedGraph> graphs,
+			Map<String, Long> stamps, Map<String, Long> networkVersions) {
+		this.version = version;
+		this.graphs = graphs;
+		this.stamps = stamps;
+		this.networkVersions = networkVersions;
+	}
+
+	/**
+	 * Creates the first version, holding the graphs loaded at startup.
+	 *
+	 * @param graphs
+	 *            the graphs by network name. The map is copied.
+	 * @param networkVersions
+	 *            the version of each network its graph holds the writes of,
+	 *            by network name. The map is copied.
+	 * @return the first version.
+	 * @throws IllegalArgumentException
+	 *             if graphs or networkVersions is null.
+	 */
+	public static GraphVersion initial(Map<String, CompressedGraph> graphs,
+			Map<String, Long> networkVersions) {
+		if (graphs == null) {
+			throw new IllegalArgumentException("graphs is null");
+		}
+		if (networkVersions == null) {
+			throw new IllegalArgumentException("networkVersions is null");
+		}
+		return new GraphVersion(0,
+				Collections.unmodifiableMap(new HashMap<String, CompressedGraph>(
+						graphs)), Collections.<String, Long> emptyMap(),
+				Collections.unmodifiableMap(new HashMap<String, Long>(
+						networkVersions)));
+	}
+
+	/**
+	 * Returns the next version, holding the given graph of a network and the
+	 * graphs of this version for the other networks.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @param graph
+	 *            the new graph of the network.
+	 * @param stamp
+	 *            the stamp of the load the graph came from.
+	 * @param networkVersion
+	 *            the version of the network the graph holds the writes of.
+	 * @return the next version.
+	 * @throws IllegalArgumentException
+	 *             if network or graph is null.
+	 */
+	public GraphVersion next(String network, CompressedGraph graph,
+			long stamp, long networkVersion) {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (graph == null) {
+			throw new IllegalArgumentException("graph is null");
+		}
+
+		final Map<String, CompressedGraph> nextGraphs = new HashMap<String, CompressedGraph>(
+				graphs);
+		nextGraphs.put(network, graph);
+		final Map<String, Long> nextStamps = new HashMap<String, Long>(stamps);
+		nextStamps.put(network, stamp);
+		final Map<String, Long> nextNetworkVersions = new HashMap<String, Long>(
+				networkVersions);
+		nextNetworkVersions.put(network, networkVersion);
+		return new GraphVersion(version + 1,
+				Collections.unmodifiableMap(nextGraphs),
+				Collections.unmodifiableMap(nextStamps),
+				Collections.unmodifiableMap(nextNetworkVersions));
+	}
+
+	/**
+	 * Gets the version number.
+	 *
+	 * @return the version number, 0 for the graphs loaded at startup.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Gets the names of the networks of this version.
+	 *
+	 * @return an unmodifiable set of the network names.
+	 */
+	public Set<String> getNetworkNames() {
+		return graphs.keySet();
+	}
+
+	/**
+	 * Gets the graph of a network.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @return the graph, or null if this version has no such network.
+	 */
+	public CompressedGraph getGraph(String network) {
+		return graphs.get(network);
+	}
+
+	/**
+	 * Gets the stamp of the load the graph of a network came from.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @return the stamp, 0 for graphs loaded at startup.
+	 */
+	public long getStamp(String network) {
+		final Long stamp = stamps.get(network);
+		return (stamp == null) ? 0 : stamp;
+	}
+
+	/**
+	 * Gets the version of a network in the durable repository its graph holds
+	 * the writes of.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @return the network version, 0 if unknown. The graph may hold later
+	 *         writes as well, but never fewer.
+	 */
+	public long getNetworkVersion(String network) {
+		final Long networkVersion = networkVersions.get(network);
+		return (networkVersion == null) ? 0 : networkVersion;
+	}
+
+}
@@ -0,0 +1,551 @@
+package org.drmit.shortestpath.infrastructure.repository.memory;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import org.drmit.shortestpath.infrastructure.metrics.RoutingMetrics;
+import org.drmit.shortestpath.infrastructure.metrics.RoutingStage;
+
+/**
+ * Immutable hub labels of a compressed graph, derived from its contraction
+ * hierarchy.
+ * <p>
+ * Every node keeps a forward label, the hubs it reaches by climbing the
+ * hierarchy with their distances, and a backward label, the hubs reaching it
+ * the same way. Every shortest path goes through a hub in both the forward
+ * label of its origin and the backward label of its destination, so the
+ * distance between two nodes is found by merging two labels sorted by hub
+ * rank, without any search. Entries whose distance is longer than a path
+ * through another hub of the labels are pruned while building them.
+ * <p>
+ * The labels are kept off the heap, in a direct buffer read by absolute index.
+ * Each entry is the rank difference to the previous hub of the label, as a
+ * variable length integer whose lowest bit tells whether the distance follows
+ * as a float or as a double, so integral distances take four bytes.
+ *
+ * @author Leandro Ferreira
+ */
+final class HubLabels {
+
+	/** Routing metrics. */
+	private static final RoutingMetrics metrics = RoutingMetrics.getInstance();
+
+	/** Bytes in an int. */
+	private static final int INT_BYTES = 4;
+
+	/** Bytes in a float. */
+	private static final int FLOAT_BYTES = 4;
+
+	/** Bytes in a double. */
+	private static final int DOUBLE_BYTES = 8;
+
+	/** Bits of the length kept below the key read by readKey. */
+	private static final int LENGTH_BITS = 3;
+
+	/** Graph the labels were built from. */
+	private final CompressedGraph graph;
+
+	/** Offset of the forward label of each node (length is n + 1). */
+	private final IntBuffer forwardOffsets;
+
+	/** Offset of the backward label of each node (length is n + 1). */
+	private final IntBuffer backwardOffsets;
+
+	/** Encoded entries of every label. */
+	private final ByteBuffer labels;
+
+	/**
+	 * Constructs a HubLabels object.
+	 *
+	 * @param graph
+	 *            the graph the labels were built from.
+	 * @param forwardOffsets
+	 *            the offset of the forward label of each node.
+	 * @param backwardOffsets
+	 *            the offset of the backward label of each node.
+	 * @param labels
+	 *            the encoded entries of every label.
+	 */
+	private HubLabels(CompressedGraph graph, IntBuffer forwardOffsets,
+			IntBuffer backwardOffsets, ByteBuffer labels) {
+		this.graph = graph;
+		this.forwardOffsets = forwardOffsets;
+		this.backwardOffsets = backwardOffsets;
+		this.labels = labels;
+	}
+
+	/**
+	 * Builds the hub labels of the graph a contraction hierarchy was built
+	 * from. Nodes are labelled from the most important one down, each label
+	 * merging the labels of the nodes one hierarchy edge above.
+	 *
+	 * @param hierarchy
+	 *            the contraction hierarchy.
+	 * @return the hub labels.
+	 * @throws IllegalArgumentException
+	 *             if hierarchy is null.
+	 * @throws IllegalStateException
+	 *             if the labels do not fit in a single buffer.
+	 */
+	static HubLabels build(ContractionHierarchy hierarchy) {
+		if (hierarchy == null) {
+			throw new IllegalArgumentException("hierarchy is null");
+		}
+
+		final CompressedGraph graph = hierarchy.getGraph();
+		final int nodeCount = graph.getNodeCount();
+		final int[] nodesByRank = new int[nodeCount];
+		for (int node = 0; node < nodeCount; node++) {
+			nodesByRank[hierarchy.getRank(node)] = node;
+		}
+
+		final Label[] forward = new Label[nodeCount];
+		final Label[] backward = new Label[nodeCount];
+		final Merger merger = new Merger(nodeCount);
+		for (int rank = nodeCount - 1; rank >= 0; rank--) {
+			final int node = nodesByRank[rank];
+
+			// Climbs one upward edge, then follows the label above
+			merger.start(rank);
+			for (int i = hierarchy.getFirstUpwardEdge(node), last = hierarchy
+					.getLastUpwardEdge(node); i < last; i++) {
+				final int edge = hierarchy.getUpwardEdge(i);
+				merger.add(forward[hierarchy.getEdgeTarget(edge)],
+						hierarchy.getEdgeWeight(edge));
+			}
+
+			// Drops the hubs reached more directly through another one
+			forward[node] = merger.finish().prune(rank, backward, nodesByRank,
+					true);
+
+			// Climbs one downward edge backwards, then follows the label above
+			merger.start(rank);
+			for (int i = hierarchy.getFirstDownwardEdge(node), last = hierarchy
+					.getLastDownwardEdge(node); i < last; i++) {
+				final int edge = hierarchy.getDownwardEdge(i);
+				merger.add(backward[hierarchy.getEdgeSource(edge)],
+						hierarchy.getEdgeWeight(edge));
+			}
+			backward[node] = merger.finish().prune(rank, forward, nodesByRank,
+					false);
+		}
+
+		// Encodes the labels off the heap
+		long size = 0;
+		for (int node = 0; node < nodeCount; node++) {
+			size += forward[node].getEncodedSize()
+					+ backward[node].getEncodedSize();
+		}
+		if (size > Integer.MAX_VALUE) {
+			throw new IllegalStateException(String.format(
+					"Hub labels of %d bytes do not fit in a buffer", size));
+		}
+		final ByteBuffer labels = ByteBuffer.allocateDirect((int) size);
+		final IntBuffer forwardOffsets = ByteBuffer
+				.allocateDirect((nodeCount + 1) * INT_BYTES).asIntBuffer();
+		final IntBuffer backwardOffsets = ByteBuffer
+				.allocateDirect((nodeCount + 1) * INT_BYTES).asIntBuffer();
+		for (int node = 0; node < nodeCount; node++) {
+			forwardOffsets.put(node, labels.position());
+			forward[node].encode(labels);
+			forward[node] = null;
+		}
+		forwardOffsets.put(nodeCount, labels.position());
+		for (int node = 0; node < nodeCount; node++) {
+			backwardOffsets.put(node, labels.position());
+			backward[node].encode(labels);
+			backward[node] = null;
+		}
+		backwardOffsets.put(nodeCount, labels.position());
+
+		return new HubLabels(graph, forwardOffsets, backwardOffsets, labels);
+	}
+
+	/**
+	 * Gets the graph the labels were built from.
+	 *
+	 * @return the graph.
+	 */
+	CompressedGraph getGraph() {
+		return graph;
+	}
+
+	/**
+	 * Gets the number of bytes taken by the encoded labels.
+	 *
+	 * @return the size of the labels, in bytes.
+	 */
+	int getSize() {
+		return labels.capacity();
+	}
+
+	/**
+	 * Gets the shortest path length between two nodes, merging the forward
+	 * label of the origin with the backward label of the destination.
+	 *
+	 * @param origin
+	 *            the origin node id.
+	 * @param destination
+	 *            the destination node id.
+	 * @return the shortest path length, or positive infinity if the
+	 *         destination is not reachable from the origin.
+	 */
+	double getDistance(int origin, int destination) {
+		final long start = System.nanoTime();
+		int forwardPosition = forwardOffsets.get(origin);
+		final int forwardEnd = forwardOffsets.get(origin + 1);
+		int backwardPosition = backwardOffsets.get(destination);
+		final int backwardEnd = backwardOffsets.get(destination + 1);
+
+		double best = Double.POSITIVE_INFINITY;
+		int forwardRank = 0;
+		int backwardRank = 0;
+		double forwardDistance = 0;
+		double backwardDistance = 0;
+		boolean forwardRead = false;
+		boolean backwardRead = false;
+		while (true) {
+			// Reads the next entry of each label whose entry was consumed
+			if (!forwardRead) {
+				if (forwardPosition == forwardEnd) {
+					break;
+				}
+				final long key = readKey(forwardPosition);
+				forwardPosition += (int) (key & ((1 << LENGTH_BITS) - 1));
+				forwardRank += (int) (key >>> (LENGTH_BITS + 1));
+				forwardDistance = readDistance(forwardPosition, key);
+				forwardPosition += getDistanceSize(key);
+				forwardRead = true;
+			}
+			if (!backwardRead) {
+				if (backwardPosition == backwardEnd) {
+					break;
+				}
+				final long key = readKey(backwardPosition);
+				backwardPosition += (int) (key & ((1 << LENGTH_BITS) - 1));
+				backwardRank += (int) (key >>> (LENGTH_BITS + 1));
+				backwardDistance = readDistance(backwardPosition, key);
+				backwardPosition += getDistanceSize(key);
+				backwardRead = true;
+			}
+
+			// Advances the label behind, or both on a common hub
+			if (forwardRank < backwardRank) {
+				forwardRead = false;
+			} else if (forwardRank > backwardRank) {
+				backwardRead = false;
+			} else {
+				best = Math.min(best, forwardDistance + backwardDistance);
+				forwardRead = false;
+				backwardRead = false;
+			}
+		}
+		metrics.recordSince(RoutingStage.SEARCH, start);
+		return best;
+	}
+
+	/**
+	 * Reads the variable length key of an entry.
+	 *
+	 * @param position
+	 *            the position of the entry.
+	 * @return the key, shifted left by LENGTH_BITS above the number of bytes
+	 *         it took.
+	 */
+	private long readKey(int position) {
+		long key = 0;
+		int length = 0;
+		byte b;
+		do {
+			b = labels.get(position + length);
+			key |= (long) (b & 0x7F) << (7 * length);
+			length++;
+		} while (b < 0);
+		return (key << LENGTH_BITS) | length;
+	}
+
+	/**
+	 * Reads the distance of an entry.
+	 *
+	 * @param position
+	 *            the position of the distance.
+	 * @param key
+	 *            the key of the entry, as returned by readKey.
+	 * @return the distance.
+	 */
+	private double readDistance(int position, long key) {
+		return ((key >>> LENGTH_BITS) & 1) != 0 ? labels.getFloat(position)
+				: labels.getDouble(position);
+	}
+
+	/**
+	 * Gets the number of bytes taken by the distance of an entry.
+	 *
+	 * @param key
+	 *            the key of the entry, as returned by readKey.
+	 * @return the size of the distance, in bytes.
+	 */
+	private static int getDistanceSize(long key) {
+		return ((key >>> LENGTH_BITS) & 1) != 0 ? FLOAT_BYTES : DOUBLE_BYTES;
+	}
+
+	/**
+	 * Label under construction, held on the heap: hub ranks in ascending order
+	 * and their distances.
+	 */
+	private static final class Label {
+
+		/** Hub ranks, ascending. */
+		private final int[] ranks;
+
+		/** Distance of each hub. */
+		private final double[] distances;
+
+		/**
+		 * Constructs a Label object.
+		 *
+		 * @param ranks
+		 *            the hub ranks, ascending.
+		 * @param distances
+		 *            the distance of each hub.
+		 */
+		Label(int[] ranks, double[] distances) {
+			this.ranks = ranks;
+			this.distances = distances;
+		}
+
+		/**
+		 * Drops the entries whose distance is longer than a path through
+		 * another hub of the label, found by merging it with the final labels
+		 * of the hubs, which rank higher.
+		 *
+		 * @param rank
+		 *            the rank of the labelled node.
+		 * @param opposite
+		 *            the labels of the opposite direction, by node id.
+		 * @param nodesByRank
+		 *            the node id of each rank.
+		 * @param forward
+		 *            true for a forward label, false for a backward one.
+		 * @return the pruned label.
+		 */
+		Label prune(int rank, Label[] opposite, int[] nodesByRank,
+				boolean forward) {
+			final int[] keptRanks = new int[ranks.length];
+			final double[] keptDistances = new double[ranks.length];
+			int kept = 0;
+			for (int i = 0; i < ranks.length; i++) {
+				if (ranks[i] != rank) {
+					final Label hub = opposite[nodesByRank[ranks[i]]];
+					final double shortest = forward ? merge(this, hub) : merge(
+							hub, this);
+					if (shortest < distances[i]) {
+						continue;
+					}
+				}
+				keptRanks[kept] = ranks[i];
+				keptDistances[kept] = distances[i];
+				kept++;
+			}
+			return new Label(Arrays.copyOf(keptRanks, kept), Arrays.copyOf(
+					keptDistances, kept));
+		}
+
+		/**
+		 * Merges a forward label with a backward label.
+		 *
+		 * @param forward
+		 *            the forward label.
+		 * @param backward
+		 *            the backward label.
+		 * @return the shortest distance through a common hub, or positive
+		 *         infinity if they have none.
+		 */
+		static double merge(Label forward, Label backward) {
+			double best = Double.POSITIVE_INFINITY;
+			int i = 0;
+			int j = 0;
+			while (i < forward.ranks.length && j < backward.ranks.length) {
+				if (forward.ranks[i] < backward.ranks[j]) {
+					i++;
+				} else if (forward.ranks[i] > backward.ranks[j]) {
+					j++;
+				} else {
+					best = Math.min(best, forward.distances[i]
+							+ backward.distances[j]);
+					i++;
+					j++;
+				}
+			}
+			return best;
+		}
+
+		/**
+		 * Gets the number of bytes the label takes once encoded.
+		 *
+		 * @return the encoded size, in bytes.
+		 */
+		long getEncodedSize() {
+			long size = 0;
+			int previous = 0;
+			for (int i = 0; i < ranks.length; i++) {
+				final long key = getKey(ranks[i] - previous, distances[i]);
+				size += getKeySize(key) + getDistanceSize(key << LENGTH_BITS);
+				previous = ranks[i];
+			}
+			return size;
+		}
+
+		/**
+		 * Writes the encoded label at the position of a buffer.
+		 *
+		 * @param buffer
+		 *            the buffer.
+		 */
+		void encode(ByteBuffer buffer) {
+			int previous = 0;
+			for (int i = 0; i < ranks.length; i++) {
+				long key = getKey(ranks[i] - previous, distances[i]);
+				final boolean single = (key & 1) != 0;
+				while (key >= 0x80) {
+					buffer.put((byte) ((key & 0x7F) | 0x80));
+					key >>>= 7;
+				}
+				buffer.put((byte) key);
+				if (single) {
+					buffer.putFloat((float) distances[i]);
+				} else {
+					buffer.putDouble(distances[i]);
+				}
+				previous = ranks[i];
+			}
+		}
+
+		/**
+		 * Gets the key of an entry.
+		 *
+		 * @param delta
+		 *            the rank difference to the previous hub.
+		 * @param distance
+		 *            the distance of the hub.
+		 * @return the key, whose lowest bit is set if the distance is exactly
+		 *         a float.
+		 */
+		private static long getKey(int delta, double distance) {
+			final boolean single = (double) (float) distance == distance;
+			return ((long) delta << 1) | (single ? 1 : 0);
+		}
+
+		/**
+		 * Gets the number of bytes taken by a key.
+		 *
+		 * @param key
+		 *            the key.
+		 * @return the size of the key, in bytes.
+		 */
+		private static int getKeySize(long key) {
+			int size = 1;
+			while (key >= 0x80) {
+				key >>>= 7;
+				size++;
+			}
+			return size;
+		}
+
+	}
+
+	/**
+	 * Reusable state merging the labels above a node into its label.
+	 */
+	private static final class Merger {
+
+		/** Tentative distance of each hub, by rank. */
+		private final double[] distances;
+
+		/** Generation in which each hub was last reached, by rank. */
+		private final int[] stamps;
+
+		/** Hubs reached in the current generation. */
+		private final int[] reached;
+
+		/** Number of hubs reached in the current generation. */
+		private int count = 0;
+
+		/** Current generation. */
+		private int generation = 0;
+
+		/**
+		 * Constructs a Merger object.
+		 *
+		 * @param nodeCount
+		 *            the number of nodes.
+		 */
+		Merger(int nodeCount) {
+			distances = new double[nodeCount];
+			stamps = new int[nodeCount];
+			reached = new int[nodeCount];
+		}
+
+		/**
+		 * Starts the label of a node, which is its own hub.
+		 *
+		 * @param rank
+		 *            the rank of the node.
+		 */
+		void start(int rank) {
+			generation++;
+			count = 0;
+			reach(rank, 0);
+		}
+
+		/**
+		 * Adds the hubs of a label one edge away.
+		 *
+		 * @param label
+		 *            the label.
+		 * @param weight
+		 *            the weight of the edge.
+		 */
+		void add(Label label, double weight) {
+			for (int i = 0; i < label.ranks.length; i++) {
+				reach(label.ranks[i], weight + label.distances[i]);
+			}
+		}
+
+		/**
+		 * Records a tentative distance for a hub if it improves the known one.
+		 *
+		 * @param rank
+		 *            the rank of the hub.
+		 * @param distance
+		 *            the tentative distance.
+		 */
+		private void reach(int rank, double distance) {
+			if (stamps[rank] != generation) {
+				stamps[rank] = generation;
+				distances[rank] = distance;
+				reached[count++] = rank;
+			} else if (distance < distances[rank]) {
+				distances[rank] = distance;
+			}
+		}
+
+		/**
+		 * Finishes the label.
+		 *
+		 * @return the hubs reached, in ascending rank order.
+		 */
+		Label finish() {
+			final int[] ranks = Arrays.copyOf(reached, count);
+			Arrays.sort(ranks);
+			final double[] hubDistances = new double[count];
+			for (int i = 0; i < count; i++) {
+				hubDistances[i] = distances[ranks[i]];
+			}
+			return new Label(ranks, hubDistances);
+		}
+
+	}
+
+}
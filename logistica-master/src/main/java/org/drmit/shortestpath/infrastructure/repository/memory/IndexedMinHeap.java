@@ -0,0 +1,179 @@
+package org.drmit.shortestpath.infrastructure.repository.memory;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of node ids keyed by a double priority, supporting
+ * decrease-key. All storage is preallocated, so no object is created while the
+ * heap is in use.
+ *
+ * @author Leandro Ferreira
+ */
+class IndexedMinHeap {
+
+	/** Nodes in heap order. */
+	private final int[] heap;
+
+	/** Position of each node in the heap, or -1 if it is not queued. */
+	private final int[] positions;
+
+	/** Priority of each queued node. */
+	private final double[] keys;
+
+	/** Number of queued nodes. */
+	private int size = 0;
+
+	/**
+	 * Constructs an IndexedMinHeap object.
+	 *
+	 * @param capacity
+	 *            the number of distinct node ids the heap can hold.
+	 */
+	IndexedMinHeap(int capacity) {
+		heap = new int[capacity];
+		positions = new int[capacity];
+		keys = new double[capacity];
+		Arrays.fill(positions, -1);
+	}
+
+	/**
+	 * Gets the number of distinct node ids the heap can hold.
+	 *
+	 * @return the heap capacity.
+	 */
+	int capacity() {
+		return heap.length;
+	}
+
+	/**
+	 * Removes all the queued nodes.
+	 */
+	void clear() {
+		for (int i = 0; i < size; i++) {
+			positions[heap[i]] = -1;
+		}
+		size = 0;
+	}
+
+	/**
+	 * Returns true if no node is queued.
+	 *
+	 * @return true if no node is queued.
+	 */
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns true if the node is queued.
+	 *
+	 * @param node
+	 *            the node id.
+	 * @return true if the node is queued.
+	 */
+	boolean contains(int node) {
+		return positions[node] >= 0;
+	}
+
+	/**
+	 * Gets the smallest queued priority.
+	 *
+	 * @return the smallest queued priority.
+	 */
+	double peekKey() {
+		return keys[heap[0]];
+	}
+
+	/**
+	 * Queues a node, or lowers its priority if it is already queued with a
+	 * greater one.
+	 *
+	 * @param node
+	 *            the node id.
+	 * @param key
+	 *            the node priority.
+	 */
+	void insertOrDecrease(int node, double key) {
+		int position = positions[node];
+		if (position < 0) {
+			position = size++;
+			heap[position] = node;
+			positions[node] = position;
+		} else if (key >= keys[node]) {
+			return;
+		}
+		keys[node] = key;
+		siftUp(position);
+	}
+
+	/**
+	 * Removes and returns the node with the smallest priority.
+	 *
+	 * @return the node with the smallest priority.
+	 */
+	int poll() {
+		final int node = heap[0];
+		positions[node] = -1;
+		size--;
+		if (size > 0) {
+			final int last = heap[size];
+			heap[0] = last;
+			positions[last] = 0;
+			siftDown(0);
+		}
+		return node;
+	}
+
+	/**
+	 * Moves the node at the given position up until the heap order holds.
+	 *
+	 * @param position
+	 *            the heap position.
+	 */
+	private void siftUp(int position) {
+		final int node = heap[position];
+		final double key = keys[node];
+		while (position > 0) {
+			final int parentPosition = (position - 1) >>> 1;
+			final int parent = heap[parentPosition];
+			if (keys[parent] <= key) {
+				break;
+			}
+			heap[position] = parent;
+			positions[parent] = position;
+			position = parentPosition;
+		}
+		heap[position] = node;
+		positions[node] = position;
+	}
+
+	/**
+	 * Moves the node at the given position down until the heap order holds.
+	 *
+	 * @param position
+	 *            the heap position.
+	 */
+	private void siftDown(int position) {
+		final int node = heap[position];
+		final double key = keys[node];
+		final int half = size >>> 1;
+		while (position < half) {
+			int childPosition = (position << 1) + 1;
+			int child = heap[childPosition];
+			final int rightPosition = childPosition + 1;
+			if (rightPosition < size && keys[heap[rightPosition]] < keys[child]) {
+				childPosition = rightPosition;
+				child = heap[childPosition];
+			}
+			if (key <= keys[child]) {
+				break;
+			}
+			heap[position] = child;
+			positions[child] = position;
+			position = childPosition;
+		}
+		heap[position] = node;
+		positions[node] = position;
+	}
+
+}
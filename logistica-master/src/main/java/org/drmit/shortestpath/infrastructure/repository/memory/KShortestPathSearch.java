@@ -0,0 +1,345 @@
+package org.drmit.shortestpath.infrastructure.repository.memory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.drmit.shortestpath.domain.model.Leg;
+
+/**
+ * Yen's search for the k shortest loopless paths between two nodes of a
+ * compressed graph.
+ * <p>
+ * Each round deviates from the last path found at every one of its nodes. The
+ * spur searches of a round are independent of each other, so they run in
+ * parallel on the given executor, each with the Dijkstra search state of the
+ * thread it runs on. The search stops at its deadline and returns the paths
+ * found by then, which are always the shortest ones.
+ *
+ * @author Leandro Ferreira
+ * @see <a href="http://www.jstor.org/stable/2629312">Yen, J. Y. Finding the K
+ *      Shortest Loopless Paths in a Network</a>
+ */
+class KShortestPathSearch {
+
+	/** Repository providing the Dijkstra search state of each thread. */
+	private final AbstractInMemoryRouteRepository repository;
+
+	/** Graph to search. */
+	private final CompressedGraph graph;
+
+	/** Executor running the spur searches. */
+	private final ExecutorService executor;
+
+	/** Deadline, in System.nanoTime() terms. */
+	private final long deadline;
+
+	/**
+	 * Constructs a KShortestPathSearch object.
+	 *
+	 * @param repository
+	 *            the repository providing the Dijkstra search state of each
+	 *            thread.
+	 * @param graph
+	 *            the graph to search.
+	 * @param executor
+	 *            the executor running the spur searches.
+	 * @param deadline
+	 *            the deadline, in System.nanoTime() terms.
+	 */
+	KShortestPathSearch(AbstractInMemoryRouteRepository repository,
+			CompressedGraph graph, ExecutorService executor, long deadline) {
+		this.repository = repository;
+		this.graph = graph;
+		this.executor = executor;
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Finds up to k shortest loopless paths between two distinct nodes.
+	 *
+	 * @param source
+	 *            the source node id.
+	 * @param target
+	 *            the target node id.
+	 * @param k
+	 *            the maximum number of paths.
+	 * @return the legs of each path found, shortest first. Fewer than k paths
+	 *         are returned if there are no more, or if the deadline elapsed.
+	 */
+	List<List<Leg>> find(int source, int target, int k) {
+		final DijkstraSearch search = repository.getDijkstraSearch(graph);
+		if (!search.run(graph, source, target)) {
+			return Collections.emptyList();
+		}
+
+		// Paths found, and candidates for the next one
+		final List<Path> paths = new ArrayList<Path>();
+		paths.add(new Path(new int[0], getEdges(search, source, target)));
+		final PriorityQueue<Path> candidates = new PriorityQueue<Path>();
+		final Set<Path> seen = new HashSet<Path>(paths);
+
+		while (paths.size() < k && System.nanoTime() < deadline) {
+			// Deviates from the last path at each of its nodes
+			final Path previous = paths.get(paths.size() - 1);
+			final List<Path> found = Collections
+					.unmodifiableList(new ArrayList<Path>(paths));
+			final List<Future<Path>> spurs = new ArrayList<Future<Path>>(
+					previous.edges.length);
+			for (int i = 0; i < previous.edges.length; i++) {
+				spurs.add(executor.submit(new SpurSearch(found, previous, i,
+						target)));
+			}
+
+			// Collects the candidates until the deadline
+			try {
+				for (Future<Path> spur : spurs) {
+					final Path candidate = spur.get(
+							deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+					if (candidate != null && seen.add(candidate)) {
+						candidates.add(candidate);
+					}
+				}
+			} catch (TimeoutException e) {
+				cancel(spurs);
+				break;
+			} catch (InterruptedException e) {
+				cancel(spurs);
+				Thread.currentThread().interrupt();
+				break;
+			} catch (ExecutionException e) {
+				cancel(spurs);
+				throw new IllegalStateException("Spur search failed",
+						e.getCause());
+			}
+
+			final Path next = candidates.poll();
+			if (next == null) {
+				break;
+			}
+			paths.add(next);
+		}
+
+		// Converts the paths into legs
+		final List<List<Leg>> legs = new ArrayList<List<Leg>>(paths.size());
+		for (Path path : paths) {
+			final List<Leg> pathLegs = new ArrayList<Leg>(path.edges.length);
+			for (int edge : path.edges) {
+				pathLegs.add(graph.toLeg(edge));
+			}
+			legs.add(pathLegs);
+		}
+		return legs;
+	}
+
+	/**
+	 * Cancels the spur searches which have not completed.
+	 *
+	 * @param spurs
+	 *            the spur searches.
+	 */
+	private static void cancel(List<Future<Path>> spurs) {
+		for (Future<Path> spur : spurs) {
+			spur.cancel(false);
+		}
+	}
+
+	/**
+	 * Gets the edges of the path found by the last search of the given state,
+	 * from its source to the given node.
+	 *
+	 * @param search
+	 *            the search state.
+	 * @param source
+	 *            the source node id of the search.
+	 * @param node
+	 *            a node settled by the search.
+	 * @return the edge ids, in travel order.
+	 */
+	private int[] getEdges(DijkstraSearch search, int source, int node) {
+		int length = 0;
+		for (int n = node; n != source; n = graph.getEdgeSource(search
+				.getPredecessorEdge(n))) {
+			length++;
+		}
+		final int[] edges = new int[length];
+		for (int n = node; n != source; n = graph.getEdgeSource(edges[length])) {
+			edges[--length] = search.getPredecessorEdge(n);
+		}
+		return edges;
+	}
+
+	/**
+	 * Search of the cheapest deviation from a path at one of its nodes.
+	 */
+	private final class SpurSearch implements Callable<Path> {
+
+		/** Paths found so far. */
+		private final List<Path> found;
+
+		/** Path deviated from. */
+		private final Path previous;
+
+		/** Index of the edge of the previous path leaving the spur node. */
+		private final int spurIndex;
+
+		/** Target node id. */
+		private final int target;
+
+		/**
+		 * Constructs a SpurSearch object.
+		 *
+		 * @param found
+		 *            the paths found so far.
+		 * @param previous
+		 *            the path deviated from.
+		 * @param spurIndex
+		 *            the index of the edge of the previous path leaving the
+		 *            spur node.
+		 * @param target
+		 *            the target node id.
+		 */
+		SpurSearch(List<Path> found, Path previous, int spurIndex, int target) {
+			this.found = found;
+			this.previous = previous;
+			this.spurIndex = spurIndex;
+			this.target = target;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.concurrent.Callable#call()
+		 */
+		@Override
+		public Path call() {
+			if (System.nanoTime() >= deadline) {
+				return null;
+			}
+			final int[] root = Arrays.copyOf(previous.edges, spurIndex);
+			final int spurNode = graph.getEdgeSource(previous.edges[spurIndex]);
+
+			// Bans the edges to the next node of every path sharing the root,
+			// parallel edges included, so that alternatives differ in locations
+			final BitSet bannedEdges = new BitSet(graph.getEdgeCount());
+			for (Path path : found) {
+				if (path.startsWith(root)) {
+					final int next = graph.getEdgeTarget(path.edges[spurIndex]);
+					for (int edge = graph.getFirstEdge(spurNode), last = graph
+							.getLastEdge(spurNode); edge < last; edge++) {
+						if (graph.getEdgeTarget(edge) == next) {
+							bannedEdges.set(edge);
+						}
+					}
+				}
+			}
+
+			// Bans the root nodes, so that the path stays loopless
+			final BitSet bannedNodes = new BitSet(graph.getNodeCount());
+			for (int edge : root) {
+				bannedNodes.set(graph.getEdgeSource(edge));
+			}
+
+			final DijkstraSearch search = repository.getDijkstraSearch(graph);
+			if (!search.run(graph, spurNode, target, bannedNodes, bannedEdges)) {
+				return null;
+			}
+			return new Path(root, getEdges(search, spurNode, target));
+		}
+
+	}
+
+	/**
+	 * Path made of edge ids, ordered by length.
+	 */
+	private final class Path implements Comparable<Path> {
+
+		/** Edge ids, in travel order. */
+		private final int[] edges;
+
+		/** Path length. */
+		private final double length;
+
+		/**
+		 * Constructs a Path object joining two sequences of edges.
+		 *
+		 * @param root
+		 *            the leading edges.
+		 * @param spur
+		 *            the trailing edges.
+		 */
+		Path(int[] root, int[] spur) {
+			edges = Arrays.copyOf(root, root.length + spur.length);
+			System.arraycopy(spur, 0, edges, root.length, spur.length);
+			double sum = 0;
+			for (int edge : edges) {
+				sum += graph.getEdgeDistance(edge);
+			}
+			length = sum;
+		}
+
+		/**
+		 * Returns true if the path starts with the given edges.
+		 *
+		 * @param prefix
+		 *            the edge ids.
+		 * @return true if the path starts with the edges.
+		 */
+		boolean startsWith(int[] prefix) {
+			if (edges.length <= prefix.length) {
+				return false;
+			}
+			for (int i = 0; i < prefix.length; i++) {
+				if (edges[i] != prefix[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Comparable#compareTo(java.lang.Object)
+		 */
+		@Override
+		public int compareTo(Path other) {
+			final int comparison = Double.compare(length, other.length);
+			return comparison != 0 ? comparison : Integer.compare(
+					edges.length, other.edges.length);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(edges);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Path && Arrays.equals(edges, ((Path) obj).edges);
+		}
+
+	}
+
+}
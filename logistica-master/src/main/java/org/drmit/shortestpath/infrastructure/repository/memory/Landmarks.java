@@ -0,0 +1,264 @@
+package org.drmit.shortestpath.infrastructure.repository.memory;
+
+import java.util.Arrays;
+
+/**
+ * Distances from and to a few landmark nodes of a compressed graph, giving
+ * lower bounds on the distance between any two nodes by the triangle
+ * inequality (ALT).
+ * <p>
+ * For a landmark L, the distance from v to t is at least d(L, t) - d(L, v)
+ * and at least d(v, L) - d(t, L). The largest of these bounds over the
+ * landmarks is a feasible A* potential towards t which needs no coordinates,
+ * so it guides searches over abstract location names. Landmarks are picked
+ * by the farthest heuristic: each one is the node farthest, going there and
+ * back, from the landmarks picked before it, nodes out of their reach both
+ * ways first, which spreads them over the border of the graph and over all
+ * its components.
+ * <p>
+ * The distances are kept as floats, node by node, so the bounds of a node
+ * are read from adjacent memory. The float rounding is made up for by a
+ * slack subtracted from every bound, which keeps them admissible.
+ *
+ * @author Leandro Ferreira
+ */
+final class Landmarks {
+
+	/** Default number of landmarks. */
+	static final int DEFAULT_COUNT = 16;
+
+	/** Graph the landmarks were picked from. */
+	private final CompressedGraph graph;
+
+	/** Landmark node ids. */
+	private final int[] nodes;
+
+	/** Distance from each landmark to each node, indexed node by node. */
+	private final float[] distancesFrom;
+
+	/** Distance from each node to each landmark, indexed node by node. */
+	private final float[] distancesTo;
+
+	/** Bound on the float rounding of a difference of distances. */
+	private final double slack;
+
+	/**
+	 * Constructs a Landmarks object.
+	 *
+	 * @param graph
+	 *            the graph the landmarks were picked from.
+	 * @param nodes
+	 *            the landmark node ids.
+	 * @param distancesFrom
+	 *            the distance from each landmark to each node.
+	 * @param distancesTo
+	 *            the distance from each node to each landmark.
+	 * @param slack
+	 *            the bound on the float rounding of a difference of
+	 *            distances.
+	 */
+	private Landmarks(CompressedGraph graph, int[] nodes,
+			float[] distancesFrom, float[] distancesTo, double slack) {
+		this.graph = graph;
+		this.nodes = nodes;
+		this.distancesFrom = distancesFrom;
+		this.distancesTo = distancesTo;
+		this.slack = slack;
+	}
+
+	/**
+	 * Picks landmarks from a graph and computes the distances from and to
+	 * them.
+	 *
+	 * @param graph
+	 *            the graph.
+	 * @param count
+	 *            the number of landmarks to pick. Fewer are picked from graphs
+	 *            with fewer nodes.
+	 * @return the landmarks of the graph.
+	 * @throws IllegalArgumentException
+	 *             if graph is null or count is not positive.
+	 */
+	static Landmarks build(CompressedGraph graph, int count) {
+		if (graph == null) {
+			throw new IllegalArgumentException("graph is null");
+		}
+		if (count <= 0) {
+			throw new IllegalArgumentException("count is not positive");
+		}
+
+		final int nodeCount = graph.getNodeCount();
+		count = Math.min(count, nodeCount);
+		final int[] nodes = new int[count];
+		final float[] distancesFrom = new float[nodeCount * count];
+		final float[] distancesTo = new float[nodeCount * count];
+		final IndexedMinHeap queue = new IndexedMinHeap(nodeCount);
+		final double[] forward = new double[nodeCount];
+		final double[] backward = new double[nodeCount];
+
+		// Starts from the node farthest from an arbitrary one
+		final double[] spans = new double[nodeCount];
+		if (count > 0) {
+			search(graph, 0, false, forward, queue);
+			for (int node = 0; node < nodeCount; node++) {
+				spans[node] = (forward[node] == Double.POSITIVE_INFINITY) ? 0
+						: forward[node];
+			}
+		}
+
+		double longest = 0;
+		for (int i = 0; i < count; i++) {
+			// Picks the node farthest from the landmarks picked so far, those
+			// out of their reach first
+			int landmark = 0;
+			for (int node = 1; node < nodeCount; node++) {
+				if (spans[node] > spans[landmark]) {
+					landmark = node;
+				}
+			}
+			nodes[i] = landmark;
+
+			search(graph, landmark, false, forward, queue);
+			search(graph, landmark, true, backward, queue);
+			for (int node = 0; node < nodeCount; node++) {
+				distancesFrom[node * count + i] = (float) forward[node];
+				distancesTo[node * count + i] = (float) backward[node];
+				final double span = span(forward[node], backward[node]);
+				spans[node] = (i == 0) ? span : Math.min(spans[node], span);
+				if (forward[node] < Double.POSITIVE_INFINITY) {
+					longest = Math.max(longest, forward[node]);
+				}
+				if (backward[node] < Double.POSITIVE_INFINITY) {
+					longest = Math.max(longest, backward[node]);
+				}
+			}
+			spans[landmark] = -1;
+		}
+
+		return new Landmarks(graph, nodes, distancesFrom, distancesTo,
+				2 * Math.ulp((float) longest));
+	}
+
+	/**
+	 * Gets how far a node is from a landmark, going there and back.
+	 *
+	 * @param forward
+	 *            the distance from the landmark to the node.
+	 * @param backward
+	 *            the distance from the node to the landmark.
+	 * @return the sum of the finite distances, or positive infinity if the
+	 *         node is out of reach both ways.
+	 */
+	private static double span(double forward, double backward) {
+		if (forward == Double.POSITIVE_INFINITY) {
+			return backward;
+		}
+		return (backward == Double.POSITIVE_INFINITY) ? forward : forward
+				+ backward;
+	}
+
+	/**
+	 * Computes the distances from a node to every node, or from every node to
+	 * it.
+	 *
+	 * @param graph
+	 *            the graph.
+	 * @param source
+	 *            the source node id.
+	 * @param reverse
+	 *            true to follow the edges backwards.
+	 * @param distances
+	 *            receives the distance of each node, or positive infinity.
+	 * @param queue
+	 *            an empty queue.
+	 */
+	private static void search(CompressedGraph graph, int source,
+			boolean reverse, double[] distances, IndexedMinHeap queue) {
+		Arrays.fill(distances, Double.POSITIVE_INFINITY);
+		distances[source] = 0;
+		queue.insertOrDecrease(source, 0);
+		while (!queue.isEmpty()) {
+			final int node = queue.poll();
+			final int first = reverse ? graph.getFirstIncomingEdge(node)
+					: graph.getFirstEdge(node);
+			final int last = reverse ? graph.getLastIncomingEdge(node) : graph
+					.getLastEdge(node);
+			for (int i = first; i < last; i++) {
+				final int edge = reverse ? graph.getIncomingEdge(i) : i;
+				final int next = reverse ? graph.getEdgeSource(edge) : graph
+						.getEdgeTarget(edge);
+				final double distance = distances[node]
+						+ graph.getEdgeDistance(edge);
+				if (distance < distances[next]) {
+					distances[next] = distance;
+					queue.insertOrDecrease(next, distance);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the graph the landmarks were picked from.
+	 *
+	 * @return the graph.
+	 */
+	CompressedGraph getGraph() {
+		return graph;
+	}
+
+	/**
+	 * Gets the number of landmarks.
+	 *
+	 * @return the number of landmarks.
+	 */
+	int getCount() {
+		return nodes.length;
+	}
+
+	/**
+	 * Gets a landmark node.
+	 *
+	 * @param index
+	 *            the landmark index.
+	 * @return the landmark node id.
+	 */
+	int getNode(int index) {
+		return nodes[index];
+	}
+
+	/**
+	 * Gets a lower bound on the distance between two nodes.
+	 *
+	 * @param node
+	 *            the node id.
+	 * @param target
+	 *            the target node id.
+	 * @return a lower bound on the shortest path length from the node to the
+	 *         target, 0 if no landmark gives one.
+	 */
+	double getLowerBound(int node, int target) {
+		final int count = nodes.length;
+		final int nodeOffset = node * count;
+		final int targetOffset = target * count;
+		double bound = 0;
+		for (int i = 0; i < count; i++) {
+			// d(v, t) >= d(L, t) - d(L, v)
+			final float fromNode = distancesFrom[nodeOffset + i];
+			final float fromTarget = distancesFrom[targetOffset + i];
+			if (fromNode != Float.POSITIVE_INFINITY
+					&& fromTarget != Float.POSITIVE_INFINITY) {
+				bound = Math.max(bound, (double) fromTarget - fromNode);
+			}
+
+			// d(v, t) >= d(v, L) - d(t, L)
+			final float toNode = distancesTo[nodeOffset + i];
+			final float toTarget = distancesTo[targetOffset + i];
+			if (toNode != Float.POSITIVE_INFINITY
+					&& toTarget != Float.POSITIVE_INFINITY) {
+				bound = Math.max(bound, (double) toNode - toTarget);
+			}
+		}
+		return Math.max(0, bound - slack);
+	}
+
+}
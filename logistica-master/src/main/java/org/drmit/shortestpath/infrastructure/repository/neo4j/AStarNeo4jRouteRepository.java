@@ -0,0 +1,137 @@
+package org.drmit.shortestpath.infrastructure.repository.neo4j;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.neo4j.graphalgo.CommonEvaluators;
+import org.neo4j.graphalgo.CostEvaluator;
+import org.neo4j.graphalgo.EstimateEvaluator;
+import org.neo4j.graphalgo.GraphAlgoFactory;
+import org.neo4j.graphalgo.PathFinder;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.PathExpanders;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.tooling.GlobalGraphOperations;
+import org.drmit.shortestpath.infrastructure.repository.RepositoryExeption;
+
+/**
+ * AbstractNeo4jRouteRepository implementation using the A* algorithm, guided by
+ * the optional coordinates stored on location nodes.
+ * <p>
+ * The A* search of Neo4j never reopens a node, so it is only exact with a
+ * consistent estimate. A network is therefore searched with A* only if every
+ * one of its locations has coordinates, and with the Dijkstra algorithm
+ * otherwise, rather than estimating the locations without coordinates at zero.
+ * Whether a network is fully located is cached by network version.
+ * 
+ * @author Leandro Ferreira
+ * @see CoordinatesEstimateEvaluator
+ */
+public class AStarNeo4jRouteRepository extends AbstractNeo4jRouteRepository {
+
+	/** Distance evaluator */
+	final CostEvaluator<Double> costEvaluator = CommonEvaluators
+			.doubleCostEvaluator(DISTANCE_PROPERTY_KEY);
+
+	/** Remaining distance estimator */
+	final EstimateEvaluator<Double> estimateEvaluator = new CoordinatesEstimateEvaluator(
+			LATITUDE_PROPERTY_KEY, LONGITUDE_PROPERTY_KEY);
+
+	/** Versions of the networks found fully located, by network name. */
+	private final ConcurrentMap<String, Long> locatedNetworks = new ConcurrentHashMap<String, Long>();
+
+	/** Versions of the networks found not fully located, by network name. */
+	private final ConcurrentMap<String, Long> unlocatedNetworks = new ConcurrentHashMap<String, Long>();
+
+	/**
+	 * Constructs a AStarNeo4jRouteRepository object.
+	 * 
+	 * @param graphDatabase
+	 *            the graphDatabase to use.
+	 * @throws IllegalArgumentException
+	 *             if graphDatabase is null.
+	 */
+	public AStarNeo4jRouteRepository(GraphDatabaseService graphDatabase) {
+		super(graphDatabase);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.drmit.shortestpath.infrastructure.repository.neo4j.
+	 * AbstractNeo4jRouteRepository#saveCoordinates(java.lang.String, double,
+	 * double)
+	 */
+	@Override
+	public void saveCoordinates(String name, double latitude, double longitude)
+			throws RepositoryExeption {
+		super.saveCoordinates(name, latitude, longitude);
+
+		// The networks of the location may now be fully located
+		unlocatedNetworks.clear();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.drmit.shortestpath.infrastructure.repository.neo4j.
+	 * AbstractNeo4jRouteRepository
+	 * #getPathFinder(org.neo4j.graphdb.RelationshipType)
+	 */
+	@Override
+	protected PathFinder<? extends Path> getPathFinder(
+			RelationshipType relationshipType) {
+		final String network = relationshipType.name().substring(
+				NETWORK_RELATIONSHIP_TYPE_PREFIX.length());
+		if (!isLocated(network)) {
+			// Uses the Dijkstra algorithm, lacking a consistent estimate
+			return GraphAlgoFactory.dijkstra(PathExpanders
+					.forTypeAndDirection(relationshipType, Direction.OUTGOING),
+					costEvaluator);
+		}
+
+		// Uses the A* algorithm to find the cheapest path
+		return GraphAlgoFactory.aStar(PathExpanders.forTypeAndDirection(
+				relationshipType, Direction.OUTGOING), costEvaluator,
+				estimateEvaluator);
+	}
+
+	/**
+	 * Returns true if every location of a network has coordinates, within the
+	 * current transaction. The locations are only checked again once the
+	 * network version changed, or, for a network not fully located, once
+	 * coordinates were saved.
+	 * 
+	 * @param network
+	 *            the network name.
+	 * @return true if the network is fully located.
+	 */
+	private boolean isLocated(String network) {
+		final Node versionNode = NetworkVersioning.findVersionNode(
+				getGraphDatabase(), network);
+		final Long version = (versionNode == null) ? 0L : (Long) versionNode
+				.getProperty(VERSION_PROPERTY_KEY);
+		if (version.equals(locatedNetworks.get(network))) {
+			return true;
+		}
+		if (version.equals(unlocatedNetworks.get(network))) {
+			return false;
+		}
+
+		// Checks the coordinates of every location of the network
+		for (Node node : GlobalGraphOperations.at(getGraphDatabase())
+				.getAllNodesWithLabel(getLabel(network))) {
+			if (!node.hasProperty(LATITUDE_PROPERTY_KEY)
+					|| !node.hasProperty(LONGITUDE_PROPERTY_KEY)) {
+				unlocatedNetworks.put(network, version);
+				return false;
+			}
+		}
+		locatedNetworks.put(network, version);
+		return true;
+	}
+
+}
@@ -23,19 +23,58 @@
  */
 package org.drmit.shortestpath.infrastructure.repository.neo4j;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.lang.ObjectUtils;
+import org.neo4j.graphalgo.CommonEvaluators;
+import org.neo4j.graphalgo.GraphAlgoFactory;
 import org.neo4j.graphalgo.PathFinder;
+import org.neo4j.graphalgo.impl.shortestpath.SingleSourceShortestPathDijkstra;
+import org.neo4j.graphalgo.impl.util.DoubleAdder;
+import org.neo4j.graphalgo.impl.util.DoubleComparator;
+import org.neo4j.graphalgo.impl.util.DoubleEvaluator;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicLabel;
+import org.neo4j.graphdb.DynamicRelationshipType;
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.PathExpanders;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.RelationshipType;
 import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
 import org.neo4j.graphdb.index.Index;
+import org.neo4j.graphdb.index.IndexHits;
+import org.neo4j.graphdb.index.RelationshipIndex;
+import org.neo4j.tooling.GlobalGraphOperations;
+import org.drmit.shortestpath.domain.model.DistanceMatrix;
 import org.drmit.shortestpath.domain.model.Route;
 import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.domain.model.ShortestPathTree;
+import org.drmit.shortestpath.domain.model.TimedRoute;
+import org.drmit.shortestpath.domain.model.TravelTimeProfile;
+import org.drmit.shortestpath.domain.model.VehicleProfile;
+import org.drmit.shortestpath.infrastructure.metrics.RoutingMetrics;
+import org.drmit.shortestpath.infrastructure.metrics.RoutingStage;
 import org.drmit.shortestpath.infrastructure.repository.RepositoryExeption;
 import org.drmit.shortestpath.infrastructure.repository.RouteNotFoundRepositoryExeption;
 import org.drmit.shortestpath.infrastructure.repository.RouteRepository;
@@ -45,8 +84,28 @@ import org.springframework.stereotype.Repository;
 /**
  * This class provides a skeletal implementation of the RouteRepository
  * interface using the Neo4j database.
+ * <p>
+ * Location nodes are shared by all the networks and indexed by name. The legs
+ * of each network are stored as relationships of a type of its own, and the
+ * nodes they connect are labeled with the network, so searches only expand the
+ * legs of the network they run in.
+ * <p>
+ * Legs are also indexed by network, so that the leg between two locations of a
+ * network is found without scanning their relationships, and saving a leg that
+ * already exists updates it instead of adding a parallel relationship.
+ * <p>
+ * The ids of the location nodes are cached by name, loaded when the repository
+ * is constructed and kept up to date by a transaction event handler as any
+ * transaction on the database commits, whichever repository or writer runs it,
+ * so that looking a location up is a hash probe rather than an index query,
+ * and an unknown location is missed without querying the index at all.
+ * Locations are never created by searches.
+ * <p>
+ * Network versions are incremented by a single handler per database, shared by
+ * every repository constructed on it.
  * 
  * @author Leandro Ferreira
+ * @see NetworkVersioning
  * @see <a href="http://www.neo4j.org/">Neo4j - The World's Leading Graph
  *      Database</a>
  */
@@ -56,23 +115,101 @@ public abstract class AbstractNeo4jRouteRepository implements RouteRepository {
 	/** Leg index name. */
 	public static final String LEGS_INDEX_NAME = "legs";
 
+	/** Leg relationship index name. */
+	public static final String CONNECTIONS_INDEX_NAME = "connections";
+
+	/** Network version node index name. */
+	public static final String NETWORK_VERSIONS_INDEX_NAME = "networkVersions";
+
 	/** Name property key. */
 	public static final String NAME_PROPERTY_KEY = "name";
 
 	/** Distance property key. */
 	public static final String DISTANCE_PROPERTY_KEY = "distance";
 
+	/** Network property key. */
+	public static final String NETWORK_PROPERTY_KEY = "network";
+
+	/** Network version property key. */
+	public static final String VERSION_PROPERTY_KEY = "version";
+
+	/** Travel time profile departure times property key. */
+	public static final String PROFILE_DEPARTURE_TIMES_PROPERTY_KEY = "profileDepartureTimes";
+
+	/** Travel time profile travel times property key. */
+	public static final String PROFILE_TRAVEL_TIMES_PROPERTY_KEY = "profileTravelTimes";
+
+	/** Toll property key. */
+	public static final String TOLL_PROPERTY_KEY = "toll";
+
+	/** Road class property key. */
+	public static final String ROAD_CLASS_PROPERTY_KEY = "roadClass";
+
+	/** Latitude property key. */
+	public static final String LATITUDE_PROPERTY_KEY = "latitude";
+
+	/** Longitude property key. */
+	public static final String LONGITUDE_PROPERTY_KEY = "longitude";
+
 	/** Relationship types between locations. */
 	public static enum LocationRelationshipType implements RelationshipType {
 		CONNECTED
 	}
 
+	/** Prefix of the relationship type of the legs of each network. */
+	public static final String NETWORK_RELATIONSHIP_TYPE_PREFIX = LocationRelationshipType.CONNECTED
+			.name() + ":";
+
+	/** Prefix of the label of the locations of each network. */
+	public static final String NETWORK_LABEL_PREFIX = "Network:";
+
+	/** Default number of legs committed per transaction by an import. */
+	public static final int DEFAULT_IMPORT_BATCH_SIZE = 10000;
+
+	/** Default time allowed to find alternative routes, in milliseconds. */
+	public static final long DEFAULT_ALTERNATIVE_ROUTES_TIMEOUT = 1000;
+
+	/** Seconds per hour. */
+	private static final double SECONDS_PER_HOUR = 3600;
+
+	/** Default speed along legs without a travel time profile. */
+	public static final double DEFAULT_SPEED = 60;
+
+	/** Routing metrics. */
+	private static final RoutingMetrics metrics = RoutingMetrics.getInstance();
+
 	/** Underlying graph database. */
 	private GraphDatabaseService graphDatabase = null;
 
 	/** Index for legs lookup and querying. */
 	private Index<Node> legsIndex = null;
 
+	/** Index of the leg relationships, by network. */
+	private RelationshipIndex connectionsIndex = null;
+
+	/** Number of legs committed per transaction by an import. */
+	private int importBatchSize = DEFAULT_IMPORT_BATCH_SIZE;
+
+	/** Time allowed to find alternative routes, in milliseconds. */
+	private volatile long alternativeRoutesTimeout = DEFAULT_ALTERNATIVE_ROUTES_TIMEOUT;
+
+	/**
+	 * Speed along legs without a travel time profile, in distance units per
+	 * hour.
+	 */
+	private volatile double speed = DEFAULT_SPEED;
+
+	/** Ids of the committed location nodes, by name. */
+	private final ConcurrentMap<String, Long> nodeIds = new ConcurrentHashMap<String, Long>();
+
+	/** Handler keeping the node ids up to date as transactions commit. */
+	private final TransactionEventHandler<Object> nodeIdsHandler = new TransactionEventHandler.Adapter<Object>() {
+		@Override
+		public void afterCommit(TransactionData data, Object state) {
+			updateNodeIds(data);
+		}
+	};
+
 	/**
 	 * Constructs a AbstractNeo4jRouteRepository object.
 	 * 
@@ -86,15 +223,43 @@ public abstract class AbstractNeo4jRouteRepository implements RouteRepository {
 		// Sets the graph database
 		setGraphDatabase(graphDatabase);
 
+		// Versions the networks written by any transaction, once per database
+		NetworkVersioning.register(graphDatabase);
+
+		// Follows the locations committed from now on, before caching the
+		// existing ones, so that none is missed in between
+		graphDatabase.registerTransactionEventHandler(nodeIdsHandler);
+
 		try (final Transaction tx = graphDatabase.beginTx()) {
 			// Gets the index for Nodes with the specified name
 			setLegsIndex(graphDatabase.index().forNodes(LEGS_INDEX_NAME));
 
+			// Gets the index for Relationships with the specified name
+			setConnectionsIndex(graphDatabase.index().forRelationships(
+					CONNECTIONS_INDEX_NAME));
+
+			// Caches the ids of the existing locations
+			for (Node node : GlobalGraphOperations.at(graphDatabase)
+					.getAllNodes()) {
+				final Object name = node.getProperty(NAME_PROPERTY_KEY, null);
+				if (name instanceof String) {
+					nodeIds.put((String) name, node.getId());
+				}
+			}
+
 			// Commits the transaction
 			tx.success();
 		}
 	}
 
+	/**
+	 * Stops following the locations committed to the graph database. The
+	 * repository must not be used afterwards.
+	 */
+	public void destroy() {
+		graphDatabase.unregisterTransactionEventHandler(nodeIdsHandler);
+	}
+
 	/**
 	 * Gets the underlying graph database.
 	 * 
@@ -143,27 +308,136 @@ public abstract class AbstractNeo4jRouteRepository implements RouteRepository {
 		this.legsIndex = legsIndex;
 	}
 
+	/**
+	 * Gets the index of the leg relationships, by network.
+	 * 
+	 * @return the index of the leg relationships.
+	 */
+	public RelationshipIndex getConnectionsIndex() {
+		return connectionsIndex;
+	}
+
+	/**
+	 * Sets the index of the leg relationships, by network.
+	 * 
+	 * @param connectionsIndex
+	 *            the connectionsIndex to set.
+	 * @throws IllegalArgumentException
+	 *             if connectionsIndex is null.
+	 */
+	private void setConnectionsIndex(RelationshipIndex connectionsIndex) {
+		if (connectionsIndex == null) {
+			throw new IllegalArgumentException("connectionsIndex is null");
+		}
+		this.connectionsIndex = connectionsIndex;
+	}
+
+	/**
+	 * Gets the number of legs committed per transaction by an import.
+	 * 
+	 * @return the import batch size.
+	 */
+	public int getImportBatchSize() {
+		return importBatchSize;
+	}
+
+	/**
+	 * Sets the number of legs committed per transaction by an import.
+	 * 
+	 * @param importBatchSize
+	 *            the importBatchSize to set.
+	 * @throws IllegalArgumentException
+	 *             if importBatchSize is not positive.
+	 */
+	public void setImportBatchSize(int importBatchSize) {
+		if (importBatchSize <= 0) {
+			throw new IllegalArgumentException(
+					"importBatchSize is not positive");
+		}
+		this.importBatchSize = importBatchSize;
+	}
+
+	/**
+	 * Gets the time allowed to find alternative routes.
+	 * 
+	 * @return the timeout, in milliseconds.
+	 */
+	public long getAlternativeRoutesTimeout() {
+		return alternativeRoutesTimeout;
+	}
+
+	/**
+	 * Sets the time allowed to find alternative routes. Once it elapses, the
+	 * routes found so far are returned.
+	 * 
+	 * @param alternativeRoutesTimeout
+	 *            the timeout to set, in milliseconds.
+	 * @throws IllegalArgumentException
+	 *             if alternativeRoutesTimeout is not positive.
+	 */
+	public void setAlternativeRoutesTimeout(long alternativeRoutesTimeout) {
+		if (alternativeRoutesTimeout <= 0) {
+			throw new IllegalArgumentException(
+					"alternativeRoutesTimeout is not positive");
+		}
+		this.alternativeRoutesTimeout = alternativeRoutesTimeout;
+	}
+
+	/**
+	 * Gets the speed along legs without a travel time profile.
+	 * 
+	 * @return the speed, in distance units per hour.
+	 */
+	public double getSpeed() {
+		return speed;
+	}
+
+	/**
+	 * Sets the speed along legs without a travel time profile, used by
+	 * fastest route searches.
+	 * 
+	 * @param speed
+	 *            the speed to set, in distance units per hour.
+	 * @throws IllegalArgumentException
+	 *             if speed is not positive.
+	 */
+	public void setSpeed(double speed) {
+		if (!(speed > 0)) {
+			throw new IllegalArgumentException("speed is not positive");
+		}
+		this.speed = speed;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
 	 * @see
 	 * org.drmit.poc.dijkstra.infrastructure.repository.RouteRepository#saveLeg
-	 * (org.drmit.poc.dijkstra.domain.model.RouteLeg)
+	 * (java.lang.String, org.drmit.poc.dijkstra.domain.model.RouteLeg)
 	 */
 	@Override
-	public void saveLeg(Leg leg) throws RepositoryExeption {
+	public void saveLeg(String network, Leg leg) throws RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
 		if (leg == null) {
 			throw new IllegalArgumentException("leg is null");
 
 		}
 
+		final Map<String, Long> legNodeIds = new HashMap<String, Long>();
+
+		final long start = System.nanoTime();
 		try (final Transaction tx = graphDatabase.beginTx()) {
 			// Persists the Leg into the repository
-			persist(leg);
+			persist(network, leg, legNodeIds);
 
 			// Commits the transaction
 			tx.success();
 		}
+		metrics.recordSince(RoutingStage.PERSIST, start);
+
+		publishNodeIds(legNodeIds);
 	}
 
 	/*
@@ -171,163 +445,1334 @@ public abstract class AbstractNeo4jRouteRepository implements RouteRepository {
 	 * 
 	 * @see
 	 * org.drmit.poc.dijkstra.infrastructure.repository.RouteRepository#saveLegs
-	 * (java.util.List)
+	 * (java.lang.String, java.util.List)
 	 */
 	@Override
-	public void saveLegs(List<Leg> legs) throws RepositoryExeption {
+	public void saveLegs(String network, List<Leg> legs)
+			throws RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
 		if (legs == null) {
 			throw new IllegalArgumentException("leg is null");
 		}
 
+		final Map<String, Long> legNodeIds = new HashMap<String, Long>();
+
+		final long start = System.nanoTime();
 		try (final Transaction tx = graphDatabase.beginTx()) {
 			// Persists all given Legs into the repository
 			for (Leg leg : legs) {
-				persist(leg);
+				persist(network, leg, legNodeIds);
 			}
 
 			// Commits the transaction
 			tx.success();
 		}
+		metrics.recordSince(RoutingStage.PERSIST, start);
+
+		publishNodeIds(legNodeIds);
 	}
 
 	/**
-	 * Persists a Leg into the repository. If the Leg already exists in the
-	 * Repository, it will be updated.
+	 * Persists a Leg into a network of the repository. If the Leg already
+	 * exists in the Repository, it will be updated.
 	 * 
+	 * @param network
+	 *            the network name.
 	 * @param leg
 	 *            the leg to be saved.
+	 * @param nodeIds
+	 *            the ids of the nodes resolved by the current transaction, by
+	 *            name.
 	 * @throws RepositoryExeption
 	 *             if a repository access error occurs.
 	 */
-	protected void persist(Leg leg) throws RepositoryExeption {
+	protected void persist(String network, Leg leg, Map<String, Long> nodeIds)
+			throws RepositoryExeption {
 		if (leg == null) {
 			throw new IllegalArgumentException("leg is null");
 		}
 
-		// Creates a relationship between the origin and the destination
-		final Relationship relationship = getNode(leg.getOrigin())
-				.createRelationshipTo(getNode(leg.getDestination()),
-						LocationRelationshipType.CONNECTED);
+		// Adds both locations to the network
+		final Label label = getLabel(network);
+		final Node origin = resolveNode(leg.getOrigin(), label, nodeIds);
+		final Node destination = resolveNode(leg.getDestination(), label,
+				nodeIds);
+
+		// Creates or updates the relationship between the locations
+		connect(network, getRelationshipType(network), origin, destination,
+				leg);
+	}
+
+	/**
+	 * Connects two locations of a network within the current transaction. If
+	 * they are already connected, the existing relationship is updated.
+	 * 
+	 * @param network
+	 *            the network name.
+	 * @param relationshipType
+	 *            the relationship type of the network.
+	 * @param origin
+	 *            the origin node.
+	 * @param destination
+	 *            the destination node.
+	 * @param leg
+	 *            the leg connecting the locations.
+	 */
+	private void connect(String network, RelationshipType relationshipType,
+			Node origin, Node destination, Leg leg) {
+		Relationship relationship = findRelationship(network, origin,
+				destination);
+		if (relationship == null) {
+			// Creates a relationship between the origin and the destination
+			relationship = origin.createRelationshipTo(destination,
+					relationshipType);
+			connectionsIndex.add(relationship, NETWORK_PROPERTY_KEY, network);
+		}
+		setLegProperties(relationship, leg);
+	}
+
+	/**
+	 * Sets the distance, the travel time profile, the toll and the road class
+	 * of a leg on its relationship. Profiles are stored as a pair of primitive
+	 * arrays, and the optional attributes are only stored when present.
+	 * 
+	 * @param relationship
+	 *            the leg relationship.
+	 * @param leg
+	 *            the leg.
+	 */
+	private static void setLegProperties(Relationship relationship, Leg leg) {
 		relationship.setProperty(DISTANCE_PROPERTY_KEY, leg.getDistance());
+		final TravelTimeProfile profile = leg.getTravelTimeProfile();
+		if (profile != null) {
+			relationship.setProperty(PROFILE_DEPARTURE_TIMES_PROPERTY_KEY,
+					profile.getDepartureTimes());
+			relationship.setProperty(PROFILE_TRAVEL_TIMES_PROPERTY_KEY,
+					profile.getTravelTimes());
+		} else if (relationship
+				.hasProperty(PROFILE_DEPARTURE_TIMES_PROPERTY_KEY)) {
+			relationship.removeProperty(PROFILE_DEPARTURE_TIMES_PROPERTY_KEY);
+			relationship.removeProperty(PROFILE_TRAVEL_TIMES_PROPERTY_KEY);
+		}
+		if (leg.getToll() > 0) {
+			relationship.setProperty(TOLL_PROPERTY_KEY, leg.getToll());
+		} else if (relationship.hasProperty(TOLL_PROPERTY_KEY)) {
+			relationship.removeProperty(TOLL_PROPERTY_KEY);
+		}
+		if (leg.getRoadClass() != null) {
+			relationship.setProperty(ROAD_CLASS_PROPERTY_KEY,
+					leg.getRoadClass());
+		} else if (relationship.hasProperty(ROAD_CLASS_PROPERTY_KEY)) {
+			relationship.removeProperty(ROAD_CLASS_PROPERTY_KEY);
+		}
 	}
 
-	/*
-	 * (non-Javadoc)
+	/**
+	 * Returns the relationship connecting two locations of a network within
+	 * the current transaction. Parallel relationships left by earlier versions
+	 * of the repository are deleted.
 	 * 
-	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
-	 * findShortestRoute(java.lang.String, java.lang.String)
+	 * @param network
+	 *            the network name.
+	 * @param origin
+	 *            the origin node.
+	 * @param destination
+	 *            the destination node.
+	 * @return the relationship instance, or null if the locations are not
+	 *         connected.
 	 */
-	@Override
-	public Route findShortestRoute(String origin, String destination)
-			throws RouteNotFoundRepositoryExeption, RepositoryExeption {
-		if (origin == null) {
-			throw new IllegalArgumentException("origin is null");
+	private Relationship findRelationship(String network, Node origin,
+			Node destination) {
+		final List<Relationship> relationships = new ArrayList<Relationship>(1);
+		final IndexHits<Relationship> hits = connectionsIndex.get(
+				NETWORK_PROPERTY_KEY, network, origin, destination);
+		try {
+			for (Relationship relationship : hits) {
+				relationships.add(relationship);
+			}
+		} finally {
+			hits.close();
+		}
 
+		if (relationships.isEmpty()) {
+			return null;
 		}
-		if (destination == null) {
-			throw new IllegalArgumentException("destination is null");
+		for (int i = 1; i < relationships.size(); i++) {
+			disconnect(relationships.get(i));
 		}
+		return relationships.get(0);
+	}
 
-		try (final Transaction tx = graphDatabase.beginTx()) {
-			// Finds the Logistica between the origin and the destination
-			final Path path = getPathFinder().findSinglePath(getNode(origin),
-					getNode(destination));
-			if (path == null) {
-				throw new RouteNotFoundRepositoryExeption(String.format(
-						"No route could be found between the %s and %s",
-						origin, destination));
+	/**
+	 * Returns the relationships of a network leaving a location within the
+	 * current transaction, by the id of their end node. Parallel relationships
+	 * left by earlier versions of the repository are deleted.
+	 * 
+	 * @param origin
+	 *            the origin node.
+	 * @param relationshipType
+	 *            the relationship type of the network.
+	 * @return the relationships leaving the origin, by end node id.
+	 */
+	private Map<Long, Relationship> findRelationships(Node origin,
+			RelationshipType relationshipType) {
+		final Map<Long, Relationship> relationships = new HashMap<Long, Relationship>();
+		final List<Relationship> parallels = new ArrayList<Relationship>();
+		for (Relationship relationship : origin.getRelationships(
+				relationshipType, Direction.OUTGOING)) {
+			if (relationships.containsKey(relationship.getEndNode().getId())) {
+				parallels.add(relationship);
+			} else {
+				relationships.put(relationship.getEndNode().getId(),
+						relationship);
 			}
+		}
+		for (Relationship relationship : parallels) {
+			disconnect(relationship);
+		}
+		return relationships;
+	}
 
-			// Commits the transaction
-			tx.success();
+	/**
+	 * Deletes a leg relationship within the current transaction.
+	 * 
+	 * @param relationship
+	 *            the relationship to be deleted.
+	 */
+	private void disconnect(Relationship relationship) {
+		connectionsIndex.remove(relationship);
+		relationship.delete();
+	}
 
-			// Returns a route constructed from the specified path
-			return toRoute(path);
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.repository.RouteRepository#replaceLegs
+	 * (java.lang.String, java.util.Collection)
+	 */
+	@Override
+	public void replaceLegs(String network, Collection<Leg> legs)
+			throws RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (legs == null) {
+			throw new IllegalArgumentException("legs is null");
+		}
+
+		// Replaces the network within a single transaction
+		writeLegs(network, legs.iterator(), Integer.MAX_VALUE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.repository.RouteRepository#importLegs
+	 * (java.lang.String, java.util.Iterator)
+	 */
+	@Override
+	public long importLegs(String network, Iterator<Leg> legs)
+			throws RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
 		}
+		if (legs == null) {
+			throw new IllegalArgumentException("legs is null");
+		}
+
+		// Replaces the network in batches
+		return writeLegs(network, legs, importBatchSize);
 	}
 
 	/**
-	 * Returns a route constructed from the specified path.
+	 * Replaces all the legs of a network with a stream of legs, writing only
+	 * the differences: legs which are new to the network are created, legs
+	 * whose properties changed are updated, and once the stream is exhausted,
+	 * the legs missing from it are deleted, along with the locations left
+	 * without legs. If a leg is given more than once, the last one prevails.
 	 * 
-	 * @param path
-	 *            path for which a route is required.
-	 * @return a route constructed from the specified path.
+	 * @param network
+	 *            the network name.
+	 * @param legs
+	 *            the legs the network will be made of.
+	 * @param batchSize
+	 *            the number of legs read, or deleted, between commits.
+	 * @return the number of legs read.
 	 * @throws IllegalArgumentException
-	 *             if path is null.
+	 *             if a leg is null.
 	 */
-	protected Route toRoute(Path path) {
-		if (path == null) {
-			throw new IllegalArgumentException("path is null");
-		}
+	private long writeLegs(String network, Iterator<Leg> legs, int batchSize) {
+		// Ids of the relationships of the given legs, as bits, since they are
+		// dense
+		final BitSet kept = new BitSet();
+		// Node ids resolved by this batch, sparing the index lookups
+		final Map<String, Long> nodeIds = new HashMap<String, Long>();
+		// Legs of the network leaving the origins met by the current batch, by
+		// origin and destination node id, sparing the connection lookups
+		final Map<Long, Map<Long, Relationship>> connections = new HashMap<Long, Map<Long, Relationship>>();
+		final RelationshipType relationshipType = getRelationshipType(network);
+		final Label label = getLabel(network);
+		long count = 0;
 
-		final List<Leg> legs = new LinkedList<Leg>();
-		for (Relationship relationship : path.relationships()) {
-			legs.add(toRouteLeg(relationship));
+		long start = System.nanoTime();
+		Transaction tx = graphDatabase.beginTx();
+		try {
+			while (legs.hasNext()) {
+				final Leg leg = legs.next();
+				if (leg == null) {
+					throw new IllegalArgumentException("leg is null");
+				}
+				final Node origin = resolveNode(leg.getOrigin(), label, nodeIds);
+				final Node destination = resolveNode(leg.getDestination(),
+						label, nodeIds);
+
+				// Reads the legs leaving the origin once per batch
+				Map<Long, Relationship> outgoing = connections.get(origin
+						.getId());
+				if (outgoing == null) {
+					outgoing = findRelationships(origin, relationshipType);
+					connections.put(origin.getId(), outgoing);
+				}
+
+				// Creates the relationship between the locations, or updates it
+				// if the leg changed
+				Relationship relationship = outgoing.get(destination.getId());
+				if (relationship == null) {
+					relationship = origin.createRelationshipTo(destination,
+							relationshipType);
+					connectionsIndex.add(relationship, NETWORK_PROPERTY_KEY,
+							network);
+					outgoing.put(destination.getId(), relationship);
+					setLegProperties(relationship, leg);
+				} else if (isChanged(relationship, leg)) {
+					setLegProperties(relationship, leg);
+				}
+				kept.set(toBitIndex(relationship.getId()));
+
+				// Commits the batch and starts the next one
+				if (++count % batchSize == 0) {
+					tx.success();
+					tx.close();
+					metrics.recordSince(RoutingStage.PERSIST, start);
+					publishNodeIds(nodeIds);
+					nodeIds.clear();
+					connections.clear();
+					start = System.nanoTime();
+					tx = graphDatabase.beginTx();
+				}
+			}
+
+			// Collects the legs of the network missing from the given ones
+			final List<Long> missing = new ArrayList<Long>();
+			for (Node node : GlobalGraphOperations.at(graphDatabase)
+					.getAllNodesWithLabel(label)) {
+				for (Relationship relationship : node.getRelationships(
+						relationshipType, Direction.OUTGOING)) {
+					if (!kept.get(toBitIndex(relationship.getId()))) {
+						missing.add(relationship.getId());
+					}
+				}
+			}
+
+			// Deletes them, and removes the locations left without legs from
+			// the network
+			final Set<Node> disconnected = new HashSet<Node>();
+			for (int i = 0; i < missing.size(); i++) {
+				final Relationship relationship = graphDatabase
+						.getRelationshipById(missing.get(i));
+				disconnected.add(relationship.getStartNode());
+				disconnected.add(relationship.getEndNode());
+				disconnect(relationship);
+
+				// Commits the batch and starts the next one
+				if ((i + 1) % batchSize == 0) {
+					removeLabel(disconnected, relationshipType, label);
+					tx.success();
+					tx.close();
+					metrics.recordSince(RoutingStage.PERSIST, start);
+					start = System.nanoTime();
+					tx = graphDatabase.beginTx();
+				}
+			}
+			removeLabel(disconnected, relationshipType, label);
+
+			// Commits the last batch
+			tx.success();
+		} finally {
+			tx.close();
 		}
-		return new Route((String) path.startNode().getProperty(
-				NAME_PROPERTY_KEY), (String) path.endNode()
-				.getProperty(NAME_PROPERTY_KEY).toString(), legs);
+		metrics.recordSince(RoutingStage.PERSIST, start);
+
+		publishNodeIds(nodeIds);
+		return count;
 	}
 
 	/**
-	 * Returns a route leg constructed from the specified relationship.
+	 * Returns true if the properties of a leg relationship differ from those
+	 * of a leg.
 	 * 
 	 * @param relationship
-	 *            relationship for which a route leg is required.
-	 * @return a route leg constructed from the relationship.
-	 * @throws IllegalArgumentException
-	 *             if relationship is null.
+	 *            the leg relationship.
+	 * @param leg
+	 *            the leg.
+	 * @return true if the leg changed.
 	 */
-	protected Leg toRouteLeg(Relationship relationship) {
-		if (relationship == null) {
-			throw new IllegalArgumentException("relationship is null");
+	private boolean isChanged(Relationship relationship, Leg leg) {
+		final Leg current = toRouteLeg(relationship);
+		return leg.getDistance() != current.getDistance()
+				|| !ObjectUtils.equals(leg.getTravelTimeProfile(),
+						current.getTravelTimeProfile())
+				|| leg.getToll() != current.getToll()
+				|| !ObjectUtils.equals(leg.getRoadClass(),
+						current.getRoadClass());
+	}
+
+	/**
+	 * Removes the locations left without legs from a network within the
+	 * current transaction.
+	 * 
+	 * @param nodes
+	 *            the locations which lost legs, cleared once checked.
+	 * @param relationshipType
+	 *            the relationship type of the network.
+	 * @param label
+	 *            the network label.
+	 */
+	private static void removeLabel(Set<Node> nodes,
+			RelationshipType relationshipType, Label label) {
+		for (Node node : nodes) {
+			if (!node.hasRelationship(relationshipType, Direction.BOTH)) {
+				node.removeLabel(label);
+			}
 		}
+		nodes.clear();
+	}
 
-		return new Leg((String) relationship.getStartNode().getProperty(
-				NAME_PROPERTY_KEY), (String) relationship.getEndNode()
-				.getProperty(NAME_PROPERTY_KEY),
-				(double) relationship.getProperty(DISTANCE_PROPERTY_KEY));
+	/**
+	 * Returns the bit index of a relationship id.
+	 * 
+	 * @param id
+	 *            the relationship id.
+	 * @return the bit index.
+	 * @throws IllegalStateException
+	 *             if the id does not fit in a bit index.
+	 */
+	private static int toBitIndex(long id) {
+		if (id > Integer.MAX_VALUE) {
+			throw new IllegalStateException("relationship id " + id
+					+ " is too large");
+		}
+		return (int) id;
 	}
 
 	/**
-	 * Returns the node referred to by this name. If the node does not exist,
-	 * then it will be created.
+	 * Returns the node referred to by this name within the current
+	 * transaction, creating it if it does not exist, and labels it.
 	 * 
 	 * @param name
 	 *            the node name.
+	 * @param label
+	 *            the network label.
+	 * @param nodeIds
+	 *            the ids of the nodes already resolved and labeled by the
+	 *            current transaction, by name.
 	 * @return the node instance.
-	 * @throws IllegalArgumentException
-	 *             if name is null.
 	 */
-	protected Node getNode(String name) {
+	private Node resolveNode(String name, Label label, Map<String, Long> nodeIds) {
+		final Long nodeId = nodeIds.get(name);
+		if (nodeId != null) {
+			return graphDatabase.getNodeById(nodeId);
+		}
+
+		final Node node = getNode(name, nodeIds);
+		node.addLabel(label);
+		return node;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * saveCoordinates(java.lang.String, double, double)
+	 */
+	@Override
+	public void saveCoordinates(String name, double latitude, double longitude)
+			throws RepositoryExeption {
 		if (name == null) {
 			throw new IllegalArgumentException("name is null");
 		}
+		if (latitude < -90 || latitude > 90) {
+			throw new IllegalArgumentException("latitude is invalid");
+		}
+		if (longitude < -180 || longitude > 180) {
+			throw new IllegalArgumentException("longitude is invalid");
+		}
 
-		Node node = null;
+		final Map<String, Long> nodeIds = new HashMap<String, Long>(1);
+
+		final long start = System.nanoTime();
+		try (final Transaction tx = graphDatabase.beginTx()) {
+			final Node node = getNode(name, nodeIds);
+			node.setProperty(LATITUDE_PROPERTY_KEY, latitude);
+			node.setProperty(LONGITUDE_PROPERTY_KEY, longitude);
+
+			// Commits the transaction
+			tx.success();
+		}
+		metrics.recordSince(RoutingStage.PERSIST, start);
+
+		publishNodeIds(nodeIds);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * findNetworkNames()
+	 */
+	@Override
+	public List<String> findNetworkNames() throws RepositoryExeption {
+		final List<String> networks = new ArrayList<String>();
 
 		try (final Transaction tx = graphDatabase.beginTx()) {
-			// Returns exact matches from this index, given the key/value pair
-			node = legsIndex.get(NAME_PROPERTY_KEY, name).getSingle();
-			if (node == null) {
-				// Creates a new node
-				node = graphDatabase.createNode();
-				node.setProperty(NAME_PROPERTY_KEY, name);
-				legsIndex.add(node, NAME_PROPERTY_KEY, name);
+			// Every network has a relationship type of its own, which outlives
+			// its legs, so only networks with labeled locations are listed
+			final GlobalGraphOperations operations = GlobalGraphOperations
+					.at(graphDatabase);
+			for (RelationshipType relationshipType : operations
+					.getAllRelationshipTypes()) {
+				final String name = relationshipType.name();
+				if (name.startsWith(NETWORK_RELATIONSHIP_TYPE_PREFIX)) {
+					final String network = name
+							.substring(NETWORK_RELATIONSHIP_TYPE_PREFIX
+									.length());
+					if (operations.getAllNodesWithLabel(getLabel(network))
+							.iterator().hasNext()) {
+						networks.add(network);
+					}
+				}
 			}
 
 			// Commits the transaction
 			tx.success();
 		}
 
-		return node;
+		return networks;
 	}
 
-	/**
-	 * Gets the path finder used to find the cheapest path between two nodes.
+	/*
+	 * (non-Javadoc)
 	 * 
-	 * @return the path finder used to find the cheapest path between two nodes.
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * getNetworkVersion(java.lang.String)
 	 */
-	protected abstract PathFinder<? extends Path> getPathFinder();
+	@Override
+	public long getNetworkVersion(String network) throws RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+
+		try (final Transaction tx = graphDatabase.beginTx()) {
+			final Node node = NetworkVersioning.findVersionNode(graphDatabase,
+					network);
+			final long version = (node == null) ? 0 : (Long) node
+					.getProperty(VERSION_PROPERTY_KEY);
+
+			// Commits the transaction
+			tx.success();
+
+			return version;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.repository.RouteRepository#findAllLegs
+	 * (java.lang.String)
+	 */
+	@Override
+	public List<Leg> findAllLegs(String network) throws RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+
+		final List<Leg> legs = new LinkedList<Leg>();
+		final RelationshipType relationshipType = getRelationshipType(network);
+
+		try (final Transaction tx = graphDatabase.beginTx()) {
+			// Collects the legs leaving every location of the network
+			for (Node node : GlobalGraphOperations.at(graphDatabase)
+					.getAllNodesWithLabel(getLabel(network))) {
+				for (Relationship relationship : node.getRelationships(
+						relationshipType, Direction.OUTGOING)) {
+					legs.add(toRouteLeg(relationship));
+				}
+			}
+
+			// Commits the transaction
+			tx.success();
+		}
+
+		return legs;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * findShortestRoute(java.lang.String, java.lang.String, java.lang.String)
+	 */
+	@Override
+	public Route findShortestRoute(String network, String origin,
+			String destination) throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (origin == null) {
+			throw new IllegalArgumentException("origin is null");
+
+		}
+		if (destination == null) {
+			throw new IllegalArgumentException("destination is null");
+		}
+
+		try (final Transaction tx = graphDatabase.beginTx()) {
+			// Finds the Logistica between the origin and the destination
+			final Node originNode = findNode(origin);
+			final Node destinationNode = findNode(destination);
+			final long start = System.nanoTime();
+			final Path path = (originNode == null || destinationNode == null) ? null
+					: getPathFinder(getRelationshipType(network))
+							.findSinglePath(originNode, destinationNode);
+			metrics.recordSince(RoutingStage.SEARCH, start);
+			if (path == null) {
+				throw new RouteNotFoundRepositoryExeption(String.format(
+						"No route could be found between the %s and %s",
+						origin, destination));
+			}
+
+			// Commits the transaction
+			tx.success();
+
+			// Returns a route constructed from the specified path
+			return toRoute(path);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * findShortestDistance(java.lang.String, java.lang.String,
+	 * java.lang.String)
+	 */
+	@Override
+	public double findShortestDistance(String network, String origin,
+			String destination) throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (origin == null) {
+			throw new IllegalArgumentException("origin is null");
+		}
+		if (destination == null) {
+			throw new IllegalArgumentException("destination is null");
+		}
+
+		try (final Transaction tx = graphDatabase.beginTx()) {
+			// Finds the Logistica between the origin and the destination
+			final Node originNode = findNode(origin);
+			final Node destinationNode = findNode(destination);
+			final long start = System.nanoTime();
+			final Path path = (originNode == null || destinationNode == null) ? null
+					: getPathFinder(getRelationshipType(network))
+							.findSinglePath(originNode, destinationNode);
+			metrics.recordSince(RoutingStage.SEARCH, start);
+			if (path == null) {
+				throw new RouteNotFoundRepositoryExeption(String.format(
+						"No route could be found between the %s and %s",
+						origin, destination));
+			}
+
+			// Sums the distances of the path, leaving the legs unread
+			double distance = 0;
+			for (Relationship relationship : path.relationships()) {
+				distance += (double) relationship
+						.getProperty(DISTANCE_PROPERTY_KEY);
+			}
+
+			// Commits the transaction
+			tx.success();
+
+			return distance;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * findCheapestRoute(java.lang.String, java.lang.String, java.lang.String,
+	 * org.drmit.shortestpath.domain.model.VehicleProfile, double)
+	 */
+	@Override
+	public Route findCheapestRoute(String network, String origin,
+			String destination, VehicleProfile vehicleProfile, double fuelPrice)
+			throws RouteNotFoundRepositoryExeption, RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (origin == null) {
+			throw new IllegalArgumentException("origin is null");
+		}
+		if (destination == null) {
+			throw new IllegalArgumentException("destination is null");
+		}
+
+		// Costs have no geometric estimate, so every repository uses Dijkstra
+		final PathFinder<? extends Path> pathFinder = GraphAlgoFactory
+				.dijkstra(PathExpanders.forTypeAndDirection(
+						getRelationshipType(network), Direction.OUTGOING),
+						new VehicleCostEvaluator(vehicleProfile, fuelPrice));
+
+		try (final Transaction tx = graphDatabase.beginTx()) {
+			// Finds the cheapest path between the origin and the destination
+			final Node originNode = findNode(origin);
+			final Node destinationNode = findNode(destination);
+			final long start = System.nanoTime();
+			final Path path = (originNode == null || destinationNode == null) ? null
+					: pathFinder.findSinglePath(originNode, destinationNode);
+			metrics.recordSince(RoutingStage.SEARCH, start);
+			if (path == null) {
+				throw new RouteNotFoundRepositoryExeption(String.format(
+						"No route could be found between the %s and %s",
+						origin, destination));
+			}
+
+			// Commits the transaction
+			tx.success();
+
+			// Returns a route constructed from the specified path
+			return toRoute(path);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * findKShortestRoutes(java.lang.String, java.lang.String,
+	 * java.lang.String, int)
+	 */
+	@Override
+	public List<Route> findKShortestRoutes(String network, String origin,
+			String destination, int k) throws RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (origin == null) {
+			throw new IllegalArgumentException("origin is null");
+		}
+		if (destination == null) {
+			throw new IllegalArgumentException("destination is null");
+		}
+		if (k <= 0) {
+			throw new IllegalArgumentException("k is not positive");
+		}
+
+		// Staying put is the only loopless route
+		if (origin.equals(destination)) {
+			final List<Leg> legs = Collections.emptyList();
+			return Collections.singletonList(new Route(origin, destination,
+					legs));
+		}
+
+		final long deadline = System.nanoTime()
+				+ TimeUnit.MILLISECONDS.toNanos(alternativeRoutesTimeout);
+		final List<Route> routes = new ArrayList<Route>();
+
+		try (final Transaction tx = graphDatabase.beginTx()) {
+			final Node originNode = findNode(origin);
+			final Node destinationNode = findNode(destination);
+			if (originNode != null && destinationNode != null) {
+				// Deviates from each route found with Yen's spur searches
+				final long start = System.nanoTime();
+				final List<List<Relationship>> paths = new KShortestPathFinder(
+						getRelationshipType(network),
+						CommonEvaluators.doubleCostEvaluator(
+								DISTANCE_PROPERTY_KEY)).findPaths(originNode,
+						destinationNode, k, deadline);
+				metrics.recordSince(RoutingStage.SEARCH, start);
+
+				for (List<Relationship> path : paths) {
+					final List<Leg> legs = new ArrayList<Leg>(path.size());
+					for (Relationship relationship : path) {
+						legs.add(toRouteLeg(relationship));
+					}
+					routes.add(new Route(origin, destination, legs));
+				}
+			}
+
+			// Commits the transaction
+			tx.success();
+		}
+
+		return routes;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * findFastestRoute(java.lang.String, java.lang.String, java.lang.String,
+	 * double)
+	 */
+	@Override
+	public TimedRoute findFastestRoute(String network, String origin,
+			String destination, double departureTime)
+			throws RouteNotFoundRepositoryExeption, RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (origin == null) {
+			throw new IllegalArgumentException("origin is null");
+		}
+		if (destination == null) {
+			throw new IllegalArgumentException("destination is null");
+		}
+		if (Double.isNaN(departureTime) || Double.isInfinite(departureTime)) {
+			throw new IllegalArgumentException("departureTime is not finite");
+		}
+
+		// Staying put requires no legs, even for unknown locations
+		if (origin.equals(destination)) {
+			final List<Leg> legs = Collections.emptyList();
+			return new TimedRoute(origin, destination, legs, departureTime,
+					departureTime);
+		}
+
+		final RelationshipType relationshipType = getRelationshipType(network);
+		final double secondsPerDistance = SECONDS_PER_HOUR / speed;
+
+		try (final Transaction tx = graphDatabase.beginTx()) {
+			final Node originNode = findNode(origin);
+			final Node destinationNode = findNode(destination);
+
+			// Runs Dijkstra by arrival time, which is exact since waiting never
+			// makes a leg arrive earlier, skipping stale queue entries
+			final long start = System.nanoTime();
+			final Map<Long, Relationship> predecessors = new HashMap<Long, Relationship>();
+			final Map<Long, Double> arrivals = new HashMap<Long, Double>();
+			final PriorityQueue<TreeEntry> queue = new PriorityQueue<TreeEntry>();
+			if (originNode != null && destinationNode != null) {
+				queue.add(new TreeEntry(originNode, departureTime, null));
+			}
+			double arrival = Double.NaN;
+			while (!queue.isEmpty()) {
+				final TreeEntry entry = queue.poll();
+				final long nodeId = entry.node.getId();
+				if (predecessors.containsKey(nodeId)) {
+					continue;
+				}
+
+				// Settles the node
+				predecessors.put(nodeId, entry.relationship);
+				if (nodeId == destinationNode.getId()) {
+					arrival = entry.distance;
+					break;
+				}
+
+				// Relaxes the outgoing legs at the arrival time
+				for (Relationship relationship : entry.node.getRelationships(
+						relationshipType, Direction.OUTGOING)) {
+					final Node next = relationship.getEndNode();
+					if (predecessors.containsKey(next.getId())) {
+						continue;
+					}
+					final double nextArrival = entry.distance
+							+ getTravelTime(relationship, entry.distance,
+									secondsPerDistance);
+					final Double tentativeArrival = arrivals.get(next.getId());
+					if (tentativeArrival == null
+							|| nextArrival < tentativeArrival) {
+						arrivals.put(next.getId(), nextArrival);
+						queue.add(new TreeEntry(next, nextArrival, relationship));
+					}
+				}
+			}
+			metrics.recordSince(RoutingStage.SEARCH, start);
+			if (Double.isNaN(arrival)) {
+				throw new RouteNotFoundRepositoryExeption(String.format(
+						"No route could be found between the %s and %s",
+						origin, destination));
+			}
+
+			// Walks the predecessors back from the destination
+			final long toRouteStart = System.nanoTime();
+			final LinkedList<Leg> legs = new LinkedList<Leg>();
+			for (Relationship relationship = predecessors.get(destinationNode
+					.getId()); relationship != null; relationship = predecessors
+					.get(relationship.getStartNode().getId())) {
+				legs.addFirst(toRouteLeg(relationship));
+			}
+			final TimedRoute route = new TimedRoute(origin, destination, legs,
+					departureTime, arrival);
+			metrics.recordSince(RoutingStage.TO_ROUTE, toRouteStart);
+
+			// Commits the transaction
+			tx.success();
+
+			return route;
+		}
+	}
+
+	/**
+	 * Gets the travel time along a leg relationship, from its travel time
+	 * profile or else from its distance.
+	 * 
+	 * @param relationship
+	 *            the leg relationship.
+	 * @param departureTime
+	 *            the departure time, in seconds.
+	 * @param secondsPerDistance
+	 *            the travel time per distance unit along legs without a
+	 *            profile.
+	 * @return the travel time, in seconds.
+	 */
+	private static double getTravelTime(Relationship relationship,
+			double departureTime, double secondsPerDistance) {
+		final Object departureTimes = relationship.getProperty(
+				PROFILE_DEPARTURE_TIMES_PROPERTY_KEY, null);
+		if (departureTimes instanceof double[]) {
+			final double[] travelTimes = (double[]) relationship
+					.getProperty(PROFILE_TRAVEL_TIMES_PROPERTY_KEY);
+			return TravelTimeProfile.evaluate((double[]) departureTimes,
+					travelTimes, 0, travelTimes.length, departureTime);
+		}
+		return (Double) relationship.getProperty(DISTANCE_PROPERTY_KEY)
+				* secondsPerDistance;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * findShortestRoutesFrom(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public ShortestPathTree findShortestRoutesFrom(String network,
+			String origin) throws RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (origin == null) {
+			throw new IllegalArgumentException("origin is null");
+		}
+
+		final RelationshipType relationshipType = getRelationshipType(network);
+		final List<String> locations = new ArrayList<String>();
+		final List<Double> distances = new ArrayList<Double>();
+		final List<Integer> predecessors = new ArrayList<Integer>();
+		final List<Double> legDistances = new ArrayList<Double>();
+
+		try (final Transaction tx = graphDatabase.beginTx()) {
+			final Node originNode = findNode(origin);
+			if (originNode == null) {
+				tx.success();
+				return ShortestPathTree.of(origin);
+			}
+
+			// Runs Dijkstra to exhaustion, skipping stale queue entries
+			final Map<Long, Integer> treeIndexes = new HashMap<Long, Integer>();
+			final Map<Long, Double> tentativeDistances = new HashMap<Long, Double>();
+			final PriorityQueue<TreeEntry> queue = new PriorityQueue<TreeEntry>();
+			queue.add(new TreeEntry(originNode, 0, null));
+			while (!queue.isEmpty()) {
+				final TreeEntry entry = queue.poll();
+				final long nodeId = entry.node.getId();
+				if (treeIndexes.containsKey(nodeId)) {
+					continue;
+				}
+
+				// Settles the node
+				treeIndexes.put(nodeId, locations.size());
+				locations.add(locations.isEmpty() ? origin
+						: (String) entry.node.getProperty(NAME_PROPERTY_KEY));
+				distances.add(entry.distance);
+				if (entry.relationship == null) {
+					predecessors.add(-1);
+					legDistances.add(0d);
+				} else {
+					predecessors.add(treeIndexes.get(entry.relationship
+							.getStartNode().getId()));
+					legDistances.add((Double) entry.relationship
+							.getProperty(DISTANCE_PROPERTY_KEY));
+				}
+
+				// Relaxes the outgoing legs
+				for (Relationship relationship : entry.node.getRelationships(
+						relationshipType, Direction.OUTGOING)) {
+					final Node next = relationship.getEndNode();
+					if (treeIndexes.containsKey(next.getId())) {
+						continue;
+					}
+					final double nextDistance = entry.distance
+							+ (Double) relationship
+									.getProperty(DISTANCE_PROPERTY_KEY);
+					final Double tentativeDistance = tentativeDistances.get(next
+							.getId());
+					if (tentativeDistance == null
+							|| nextDistance < tentativeDistance) {
+						tentativeDistances.put(next.getId(), nextDistance);
+						queue.add(new TreeEntry(next, nextDistance,
+								relationship));
+					}
+				}
+			}
+
+			// Commits the transaction
+			tx.success();
+		}
+
+		// Unboxes the tree
+		final int count = locations.size();
+		final double[] distanceArray = new double[count];
+		final int[] predecessorArray = new int[count];
+		final double[] legDistanceArray = new double[count];
+		for (int i = 0; i < count; i++) {
+			distanceArray[i] = distances.get(i);
+			predecessorArray[i] = predecessors.get(i);
+			legDistanceArray[i] = legDistances.get(i);
+		}
+		return new ShortestPathTree(origin,
+				locations.toArray(new String[count]), distanceArray,
+				predecessorArray, legDistanceArray);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * findDistances(java.lang.String, java.util.List, java.util.List)
+	 */
+	@Override
+	public DistanceMatrix findDistances(String network, List<String> origins,
+			List<String> destinations) throws RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (origins == null) {
+			throw new IllegalArgumentException("origins is null");
+		}
+		if (destinations == null) {
+			throw new IllegalArgumentException("destinations is null");
+		}
+
+		final double[][] distances = new double[origins.size()][destinations
+				.size()];
+
+		try (final Transaction tx = graphDatabase.beginTx()) {
+			final Node[] destinationNodes = new Node[destinations.size()];
+			for (int j = 0; j < destinationNodes.length; j++) {
+				destinationNodes[j] = findNode(destinations.get(j));
+			}
+
+			for (int i = 0; i < distances.length; i++) {
+				final String origin = origins.get(i);
+				final Node originNode = findNode(origin);
+
+				// Runs a single search from the origin, resumed until each
+				// destination is settled
+				final SingleSourceShortestPathDijkstra<Double> search = (originNode == null) ? null
+						: new SingleSourceShortestPathDijkstra<Double>(0d,
+								originNode, new DoubleEvaluator(
+										DISTANCE_PROPERTY_KEY),
+								new DoubleAdder(), new DoubleComparator(),
+								Direction.OUTGOING,
+								getRelationshipType(network));
+				for (int j = 0; j < destinationNodes.length; j++) {
+					if (origin.equals(destinations.get(j))) {
+						distances[i][j] = 0;
+					} else if (search == null || destinationNodes[j] == null) {
+						distances[i][j] = Double.POSITIVE_INFINITY;
+					} else {
+						final Double cost = search.getCost(destinationNodes[j]);
+						distances[i][j] = (cost == null) ? Double.POSITIVE_INFINITY
+								: cost;
+					}
+				}
+			}
+
+			// Commits the transaction
+			tx.success();
+		}
+
+		return new DistanceMatrix(origins, destinations, distances);
+	}
+
+	/**
+	 * Returns a route constructed from the specified path.
+	 * 
+	 * @param path
+	 *            path for which a route is required.
+	 * @return a route constructed from the specified path.
+	 * @throws IllegalArgumentException
+	 *             if path is null.
+	 */
+	protected Route toRoute(Path path) {
+		if (path == null) {
+			throw new IllegalArgumentException("path is null");
+		}
+
+		final long start = System.nanoTime();
+		final List<Leg> legs = new LinkedList<Leg>();
+		for (Relationship relationship : path.relationships()) {
+			legs.add(toRouteLeg(relationship));
+		}
+		final Route route = new Route((String) path.startNode().getProperty(
+				NAME_PROPERTY_KEY), (String) path.endNode()
+				.getProperty(NAME_PROPERTY_KEY).toString(), legs);
+		metrics.recordSince(RoutingStage.TO_ROUTE, start);
+		return route;
+	}
+
+	/**
+	 * Returns a route leg constructed from the specified relationship.
+	 * 
+	 * @param relationship
+	 *            relationship for which a route leg is required.
+	 * @return a route leg constructed from the relationship.
+	 * @throws IllegalArgumentException
+	 *             if relationship is null.
+	 */
+	protected Leg toRouteLeg(Relationship relationship) {
+		if (relationship == null) {
+			throw new IllegalArgumentException("relationship is null");
+		}
+
+		final TravelTimeProfile profile = relationship
+				.hasProperty(PROFILE_DEPARTURE_TIMES_PROPERTY_KEY) ? new TravelTimeProfile(
+				(double[]) relationship
+						.getProperty(PROFILE_DEPARTURE_TIMES_PROPERTY_KEY),
+				(double[]) relationship
+						.getProperty(PROFILE_TRAVEL_TIMES_PROPERTY_KEY)) : null;
+		return new Leg((String) relationship.getStartNode().getProperty(
+				NAME_PROPERTY_KEY), (String) relationship.getEndNode()
+				.getProperty(NAME_PROPERTY_KEY),
+				(double) relationship.getProperty(DISTANCE_PROPERTY_KEY),
+				profile, (double) relationship.getProperty(TOLL_PROPERTY_KEY,
+						0d), (String) relationship.getProperty(
+						ROAD_CLASS_PROPERTY_KEY, null));
+	}
+
+	/**
+	 * Returns the node referred to by this name within the current
+	 * transaction, without creating it. The cache holds every committed
+	 * location, so a location missing from it does not exist.
+	 * 
+	 * @param name
+	 *            the node name.
+	 * @return the node instance, or null if it does not exist.
+	 * @throws IllegalArgumentException
+	 *             if name is null.
+	 */
+	protected Node findNode(String name) {
+		if (name == null) {
+			throw new IllegalArgumentException("name is null");
+		}
+
+		final long start = System.nanoTime();
+		Node node = null;
+		final Long nodeId = nodeIds.get(name);
+		if (nodeId != null) {
+			try {
+				node = graphDatabase.getNodeById(nodeId);
+			} catch (NotFoundException e) {
+				// The node was deleted along with its name
+				nodeIds.remove(name, nodeId);
+			}
+		}
+		metrics.recordSince(RoutingStage.NODE_LOOKUP, start);
+		return node;
+	}
+
+	/**
+	 * Updates the cached node ids with the names assigned and removed by a
+	 * committed transaction.
+	 * 
+	 * @param data
+	 *            the changes made by the transaction.
+	 */
+	private void updateNodeIds(TransactionData data) {
+		for (PropertyEntry<Node> entry : data.removedNodeProperties()) {
+			if (NAME_PROPERTY_KEY.equals(entry.key())
+					&& entry.previouslyCommitedValue() instanceof String) {
+				nodeIds.remove(entry.previouslyCommitedValue(), entry.entity()
+						.getId());
+			}
+		}
+		for (PropertyEntry<Node> entry : data.assignedNodeProperties()) {
+			if (NAME_PROPERTY_KEY.equals(entry.key())) {
+				if (entry.previouslyCommitedValue() instanceof String) {
+					nodeIds.remove(entry.previouslyCommitedValue(), entry
+							.entity().getId());
+				}
+				if (entry.value() instanceof String) {
+					nodeIds.put((String) entry.value(), entry.entity().getId());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the node referred to by this name within the current
+	 * transaction. If the node does not exist, then it will be created. The
+	 * node id is recorded in nodeIds, which must be published once the
+	 * transaction commits.
+	 * 
+	 * @param name
+	 *            the node name.
+	 * @param nodeIds
+	 *            the ids of the nodes resolved by the current transaction, by
+	 *            name.
+	 * @return the node instance.
+	 * @throws IllegalArgumentException
+	 *             if name or nodeIds is null.
+	 * @see #publishNodeIds(Map)
+	 */
+	protected Node getNode(String name, Map<String, Long> nodeIds) {
+		if (name == null) {
+			throw new IllegalArgumentException("name is null");
+		}
+		if (nodeIds == null) {
+			throw new IllegalArgumentException("nodeIds is null");
+		}
+
+		final Long nodeId = nodeIds.get(name);
+		if (nodeId != null) {
+			return graphDatabase.getNodeById(nodeId);
+		}
+
+		Node node = findNode(name);
+		if (node == null) {
+			// Creates a new node
+			node = graphDatabase.createNode();
+			node.setProperty(NAME_PROPERTY_KEY, name);
+			legsIndex.add(node, NAME_PROPERTY_KEY, name);
+		}
+		nodeIds.put(name, node.getId());
+		return node;
+	}
+
+	/**
+	 * Adds the ids of the nodes resolved by a committed transaction to the
+	 * cache. Ids must not be published before the transaction commits, or a
+	 * rollback would leave them pointing to nodes which do not exist.
+	 * 
+	 * @param nodeIds
+	 *            the ids of the nodes resolved by the transaction, by name.
+	 * @throws IllegalArgumentException
+	 *             if nodeIds is null.
+	 */
+	protected void publishNodeIds(Map<String, Long> nodeIds) {
+		if (nodeIds == null) {
+			throw new IllegalArgumentException("nodeIds is null");
+		}
+		this.nodeIds.putAll(nodeIds);
+	}
+
+	/**
+	 * Gets the type of the relationships holding the legs of a network.
+	 * 
+	 * @param network
+	 *            the network name.
+	 * @return the relationship type of the network.
+	 * @throws IllegalArgumentException
+	 *             if network is null.
+	 */
+	protected RelationshipType getRelationshipType(String network) {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		return DynamicRelationshipType
+				.withName(NETWORK_RELATIONSHIP_TYPE_PREFIX + network);
+	}
+
+	/**
+	 * Gets the label of the locations of a network.
+	 * 
+	 * @param network
+	 *            the network name.
+	 * @return the label of the network.
+	 * @throws IllegalArgumentException
+	 *             if network is null.
+	 */
+	protected Label getLabel(String network) {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		return DynamicLabel.label(NETWORK_LABEL_PREFIX + network);
+	}
+
+	/**
+	 * Gets the path finder used to find the cheapest path between two nodes.
+	 * 
+	 * @param relationshipType
+	 *            the type of the relationships the path may follow.
+	 * @return the path finder used to find the cheapest path between two nodes.
+	 */
+	protected abstract PathFinder<? extends Path> getPathFinder(
+			RelationshipType relationshipType);
+
+	/**
+	 * Node queued by a single-source search, with the distance and the
+	 * relationship it was reached through.
+	 */
+	private static final class TreeEntry implements Comparable<TreeEntry> {
+
+		/** Reached node. */
+		private final Node node;
+
+		/** Tentative distance of the node. */
+		private final double distance;
+
+		/** Relationship the node was reached through, or null for the origin. */
+		private final Relationship relationship;
+
+		/**
+		 * Constructs a TreeEntry object.
+		 * 
+		 * @param node
+		 *            the reached node.
+		 * @param distance
+		 *            the tentative distance of the node.
+		 * @param relationship
+		 *            the relationship the node was reached through.
+		 */
+		TreeEntry(Node node, double distance, Relationship relationship) {
+			this.node = node;
+			this.distance = distance;
+			this.relationship = relationship;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.Comparable#compareTo(java.lang.Object)
+		 */
+		@Override
+		public int compareTo(TreeEntry other) {
+			return Double.compare(distance, other.distance);
+		}
+
+	}
 
 }
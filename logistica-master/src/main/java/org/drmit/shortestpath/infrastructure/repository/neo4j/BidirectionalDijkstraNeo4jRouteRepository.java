@@ -0,0 +1,52 @@
+package org.drmit.shortestpath.infrastructure.repository.neo4j;
+
+import org.neo4j.graphalgo.CommonEvaluators;
+import org.neo4j.graphalgo.CostEvaluator;
+import org.neo4j.graphalgo.PathFinder;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.RelationshipType;
+
+/**
+ * AbstractNeo4jRouteRepository implementation using a bidirectional Dijkstra
+ * algorithm, which meets in the middle instead of exploring every location
+ * closer to the origin than the destination.
+ * 
+ * @author Leandro Ferreira
+ */
+public class BidirectionalDijkstraNeo4jRouteRepository extends
+		AbstractNeo4jRouteRepository {
+
+	/** Distance evaluator */
+	final CostEvaluator<Double> costEvaluator = CommonEvaluators
+			.doubleCostEvaluator(DISTANCE_PROPERTY_KEY);
+
+	/**
+	 * Constructs a BidirectionalDijkstraNeo4jRouteRepository object.
+	 * 
+	 * @param graphDatabase
+	 *            the graphDatabase to use.
+	 * @throws IllegalArgumentException
+	 *             if graphDatabase is null.
+	 */
+	public BidirectionalDijkstraNeo4jRouteRepository(
+			GraphDatabaseService graphDatabase) {
+		super(graphDatabase);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.drmit.shortestpath.infrastructure.repository.neo4j.
+	 * AbstractNeo4jRouteRepository
+	 * #getPathFinder(org.neo4j.graphdb.RelationshipType)
+	 */
+	@Override
+	protected PathFinder<? extends Path> getPathFinder(
+			RelationshipType relationshipType) {
+		// Searches forward from the origin and backward from the destination
+		return new BidirectionalDijkstraPathFinder(relationshipType,
+				costEvaluator);
+	}
+
+}
@@ -0,0 +1,394 @@
+package org.drmit.shortestpath.infrastructure.repository.neo4j;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.neo4j.graphalgo.CostEvaluator;
+import org.neo4j.graphalgo.PathFinder;
+import org.neo4j.graphalgo.WeightedPath;
+import org.neo4j.graphalgo.impl.util.PathImpl;
+import org.neo4j.graphalgo.impl.util.WeightedPathImpl;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.traversal.TraversalMetadata;
+
+/**
+ * Path finder which runs two Dijkstra searches at once, one forward from the
+ * start node over outgoing relationships and one backward from the end node
+ * over incoming relationships, stopping as soon as no path through the two
+ * frontiers can beat the best meeting point found so far.
+ * <p>
+ * All search state is local to each call, so a single instance can be shared
+ * between threads.
+ *
+ * @author Leandro Ferreira
+ */
+public class BidirectionalDijkstraPathFinder implements
+		PathFinder<WeightedPath> {
+
+	/** Type of the relationships to expand. */
+	private final RelationshipType relationshipType;
+
+	/** Relationship cost evaluator. */
+	private final CostEvaluator<Double> costEvaluator;
+
+	/** Metadata of the last search. */
+	private volatile TraversalMetadata lastMetadata = null;
+
+	/**
+	 * Constructs a BidirectionalDijkstraPathFinder object.
+	 *
+	 * @param relationshipType
+	 *            type of the relationships to expand.
+	 * @param costEvaluator
+	 *            relationship cost evaluator.
+	 * @throws IllegalArgumentException
+	 *             if relationshipType or costEvaluator is null.
+	 */
+	public BidirectionalDijkstraPathFinder(RelationshipType relationshipType,
+			CostEvaluator<Double> costEvaluator) {
+		if (relationshipType == null) {
+			throw new IllegalArgumentException("relationshipType is null");
+		}
+		if (costEvaluator == null) {
+			throw new IllegalArgumentException("costEvaluator is null");
+		}
+		this.relationshipType = relationshipType;
+		this.costEvaluator = costEvaluator;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.neo4j.graphalgo.PathFinder#findSinglePath(org.neo4j.graphdb.Node,
+	 * org.neo4j.graphdb.Node)
+	 */
+	@Override
+	public WeightedPath findSinglePath(Node start, Node end) {
+		if (start.equals(end)) {
+			lastMetadata = new Metadata(1, 0);
+			return new WeightedPathImpl(0, PathImpl.singular(start));
+		}
+
+		final Frontier forward = new Frontier(start, Direction.OUTGOING);
+		final Frontier backward = new Frontier(end, Direction.INCOMING);
+		double best = Double.POSITIVE_INFINITY;
+		Node meeting = null;
+		int relationshipsTraversed = 0;
+
+		while (!forward.isEmpty() && !backward.isEmpty()) {
+			// No path through the frontiers can be shorter than the best one
+			if (forward.peekDistance() + backward.peekDistance() >= best) {
+				break;
+			}
+
+			// Expands the smaller frontier
+			final Frontier frontier = (forward.size() <= backward.size()) ? forward
+					: backward;
+			final Frontier opposite = (frontier == forward) ? backward
+					: forward;
+			final Node node = frontier.settle();
+			final double distance = frontier.getDistance(node);
+
+			for (Relationship relationship : node.getRelationships(
+					relationshipType, frontier.direction)) {
+				relationshipsTraversed++;
+				final Node next = relationship.getOtherNode(node);
+				final double nextDistance = distance
+						+ costEvaluator.getCost(relationship,
+								frontier.direction);
+				if (frontier.reach(next, nextDistance, relationship)) {
+					final Double oppositeDistance = opposite.distances
+							.get(next);
+					if (oppositeDistance != null
+							&& nextDistance + oppositeDistance < best) {
+						best = nextDistance + oppositeDistance;
+						meeting = next;
+					}
+				}
+			}
+		}
+
+		if (meeting == null) {
+			lastMetadata = new Metadata(0, relationshipsTraversed);
+			return null;
+		}
+
+		// Joins the two halves of the path at the meeting node
+		PathImpl.Builder builder = new PathImpl.Builder(start);
+		for (Relationship relationship : forward.getRelationships(meeting)) {
+			builder = builder.push(relationship);
+		}
+		final List<Relationship> tail = backward.getRelationships(meeting);
+		Collections.reverse(tail);
+		for (Relationship relationship : tail) {
+			builder = builder.push(relationship);
+		}
+
+		lastMetadata = new Metadata(1, relationshipsTraversed);
+		return new WeightedPathImpl(best, builder.build());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.neo4j.graphalgo.PathFinder#findAllPaths(org.neo4j.graphdb.Node,
+	 * org.neo4j.graphdb.Node)
+	 */
+	@Override
+	public Iterable<WeightedPath> findAllPaths(Node start, Node end) {
+		final WeightedPath path = findSinglePath(start, end);
+		if (path == null) {
+			return Collections.emptyList();
+		}
+		return Collections.singletonList(path);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.neo4j.graphalgo.PathFinder#metadata()
+	 */
+	@Override
+	public TraversalMetadata metadata() {
+		return lastMetadata;
+	}
+
+	/**
+	 * State of one direction of the search.
+	 */
+	private static final class Frontier {
+
+		/** Direction in which relationships are expanded. */
+		private final Direction direction;
+
+		/** Tentative distance of each reached node. */
+		private final Map<Node, Double> distances = new HashMap<Node, Double>();
+
+		/** Relationship through which each node was reached. */
+		private final Map<Node, Relationship> predecessors = new HashMap<Node, Relationship>();
+
+		/** Settled nodes. */
+		private final Set<Node> settled = new HashSet<Node>();
+
+		/** Reached nodes ordered by tentative distance. */
+		private final PriorityQueue<Entry> queue = new PriorityQueue<Entry>();
+
+		/**
+		 * Constructs a Frontier object.
+		 *
+		 * @param root
+		 *            the node the search starts from.
+		 * @param direction
+		 *            direction in which relationships are expanded.
+		 */
+		Frontier(Node root, Direction direction) {
+			this.direction = direction;
+			distances.put(root, 0d);
+			queue.add(new Entry(root, 0));
+		}
+
+		/**
+		 * Returns true if there are no more nodes to settle.
+		 *
+		 * @return true if there are no more nodes to settle.
+		 */
+		boolean isEmpty() {
+			discardStale();
+			return queue.isEmpty();
+		}
+
+		/**
+		 * Gets the number of queued entries.
+		 *
+		 * @return the number of queued entries.
+		 */
+		int size() {
+			return queue.size();
+		}
+
+		/**
+		 * Gets the distance of the next node to be settled.
+		 *
+		 * @return the distance of the next node to be settled.
+		 */
+		double peekDistance() {
+			discardStale();
+			return queue.peek().distance;
+		}
+
+		/**
+		 * Settles the closest queued node.
+		 *
+		 * @return the settled node.
+		 */
+		Node settle() {
+			discardStale();
+			final Node node = queue.poll().node;
+			settled.add(node);
+			return node;
+		}
+
+		/**
+		 * Gets the tentative distance of a reached node.
+		 *
+		 * @param node
+		 *            the node.
+		 * @return the tentative distance of the node.
+		 */
+		double getDistance(Node node) {
+			return distances.get(node);
+		}
+
+		/**
+		 * Records a tentative distance for the node if it improves the known
+		 * one.
+		 *
+		 * @param node
+		 *            the node.
+		 * @param distance
+		 *            the tentative distance.
+		 * @param relationship
+		 *            the relationship through which the node was reached.
+		 * @return true if the tentative distance was improved.
+		 */
+		boolean reach(Node node, double distance, Relationship relationship) {
+			final Double known = distances.get(node);
+			if (known != null && known <= distance) {
+				return false;
+			}
+			distances.put(node, distance);
+			predecessors.put(node, relationship);
+			queue.add(new Entry(node, distance));
+			return true;
+		}
+
+		/**
+		 * Gets the relationships leading from the root to the node, in the
+		 * order they were expanded.
+		 *
+		 * @param node
+		 *            a reached node.
+		 * @return the relationships leading from the root to the node.
+		 */
+		List<Relationship> getRelationships(Node node) {
+			final LinkedList<Relationship> relationships = new LinkedList<Relationship>();
+			for (Relationship relationship = predecessors.get(node); relationship != null; relationship = predecessors
+					.get(node)) {
+				relationships.addFirst(relationship);
+				node = relationship.getOtherNode(node);
+			}
+			return relationships;
+		}
+
+		/**
+		 * Drops queue entries which were superseded by a shorter distance or
+		 * whose node was already settled.
+		 */
+		private void discardStale() {
+			while (!queue.isEmpty()) {
+				final Entry entry = queue.peek();
+				if (!settled.contains(entry.node)
+						&& entry.distance <= distances.get(entry.node)) {
+					return;
+				}
+				queue.poll();
+			}
+		}
+
+	}
+
+	/**
+	 * Queue entry of a reached node.
+	 */
+	private static final class Entry implements Comparable<Entry> {
+
+		/** Reached node. */
+		private final Node node;
+
+		/** Tentative distance of the node. */
+		private final double distance;
+
+		/**
+		 * Constructs an Entry object.
+		 *
+		 * @param node
+		 *            the reached node.
+		 * @param distance
+		 *            the tentative distance of the node.
+		 */
+		Entry(Node node, double distance) {
+			this.node = node;
+			this.distance = distance;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Comparable#compareTo(java.lang.Object)
+		 */
+		@Override
+		public int compareTo(Entry other) {
+			return Double.compare(distance, other.distance);
+		}
+
+	}
+
+	/**
+	 * Metadata about a search.
+	 */
+	private static final class Metadata implements TraversalMetadata {
+
+		/** Number of paths returned. */
+		private final int pathsReturned;
+
+		/** Number of relationships traversed. */
+		private final int relationshipsTraversed;
+
+		/**
+		 * Constructs a Metadata object.
+		 *
+		 * @param pathsReturned
+		 *            number of paths returned.
+		 * @param relationshipsTraversed
+		 *            number of relationships traversed.
+		 */
+		Metadata(int pathsReturned, int relationshipsTraversed) {
+			this.pathsReturned = pathsReturned;
+			this.relationshipsTraversed = relationshipsTraversed;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.neo4j.graphdb.traversal.TraversalMetadata#getNumberOfPathsReturned
+		 * ()
+		 */
+		@Override
+		public int getNumberOfPathsReturned() {
+			return pathsReturned;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.neo4j.graphdb.traversal.TraversalMetadata#
+		 * getNumberOfRelationshipsTraversed()
+		 */
+		@Override
+		public int getNumberOfRelationshipsTraversed() {
+			return relationshipsTraversed;
+		}
+
+	}
+
+}
@@ -0,0 +1,101 @@
+package org.drmit.shortestpath.infrastructure.repository.neo4j;
+
+import org.neo4j.graphalgo.EstimateEvaluator;
+import org.neo4j.graphdb.Node;
+
+/**
+ * Estimates the remaining distance between two locations as the great-circle
+ * distance between their coordinates, in kilometers.
+ * <p>
+ * The estimate is only consistent, and the A* search exact, if every location
+ * of the network has coordinates and no leg is shorter than the great-circle
+ * distance between its endpoints: a location without coordinates is estimated
+ * at zero, which may close its neighbours with a cost too high, and the A*
+ * search of Neo4j never reopens a node. AStarNeo4jRouteRepository only uses it
+ * for networks whose locations all have coordinates.
+ * 
+ * @author Leandro Ferreira
+ */
+public class CoordinatesEstimateEvaluator implements EstimateEvaluator<Double> {
+
+	/** Mean Earth radius, in kilometers. */
+	private static final double EARTH_RADIUS = 6371.0088;
+
+	/** Latitude property key. */
+	private final String latitudePropertyKey;
+
+	/** Longitude property key. */
+	private final String longitudePropertyKey;
+
+	/**
+	 * Constructs a CoordinatesEstimateEvaluator object.
+	 * 
+	 * @param latitudePropertyKey
+	 *            latitude property key, in decimal degrees.
+	 * @param longitudePropertyKey
+	 *            longitude property key, in decimal degrees.
+	 * @throws IllegalArgumentException
+	 *             if latitudePropertyKey or longitudePropertyKey is null.
+	 */
+	public CoordinatesEstimateEvaluator(String latitudePropertyKey,
+			String longitudePropertyKey) {
+		if (latitudePropertyKey == null) {
+			throw new IllegalArgumentException("latitudePropertyKey is null");
+		}
+		if (longitudePropertyKey == null) {
+			throw new IllegalArgumentException("longitudePropertyKey is null");
+		}
+		this.latitudePropertyKey = latitudePropertyKey;
+		this.longitudePropertyKey = longitudePropertyKey;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.neo4j.graphalgo.EstimateEvaluator#getCost(org.neo4j.graphdb.Node,
+	 * org.neo4j.graphdb.Node)
+	 */
+	@Override
+	public Double getCost(Node node, Node goal) {
+		final Object latitude = node.getProperty(latitudePropertyKey, null);
+		final Object longitude = node.getProperty(longitudePropertyKey, null);
+		final Object goalLatitude = goal.getProperty(latitudePropertyKey, null);
+		final Object goalLongitude = goal.getProperty(longitudePropertyKey,
+				null);
+		if (latitude == null || longitude == null || goalLatitude == null
+				|| goalLongitude == null) {
+			return 0d;
+		}
+
+		return distance((Double) latitude, (Double) longitude,
+				(Double) goalLatitude, (Double) goalLongitude);
+	}
+
+	/**
+	 * Computes the great-circle distance between two coordinates using the
+	 * haversine formula.
+	 * 
+	 * @param latitude1
+	 *            latitude of the first point, in decimal degrees.
+	 * @param longitude1
+	 *            longitude of the first point, in decimal degrees.
+	 * @param latitude2
+	 *            latitude of the second point, in decimal degrees.
+	 * @param longitude2
+	 *            longitude of the second point, in decimal degrees.
+	 * @return the great-circle distance, in kilometers.
+	 */
+	public static double distance(double latitude1, double longitude1,
+			double latitude2, double longitude2) {
+		final double sinLatitude = Math.sin(Math.toRadians(latitude2
+				- latitude1) / 2);
+		final double sinLongitude = Math.sin(Math.toRadians(longitude2
+				- longitude1) / 2);
+		final double a = sinLatitude * sinLatitude
+				+ Math.cos(Math.toRadians(latitude1))
+				* Math.cos(Math.toRadians(latitude2)) * sinLongitude
+				* sinLongitude;
+		return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+	}
+
+}
@@ -0,0 +1,322 @@
+package org.drmit.shortestpath.infrastructure.repository.neo4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.neo4j.graphalgo.CostEvaluator;
+import org.neo4j.graphalgo.GraphAlgoFactory;
+import org.neo4j.graphalgo.WeightedPath;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.PathExpander;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.traversal.BranchState;
+
+/**
+ * Yen's search for the k shortest loopless paths between two nodes, over the
+ * outgoing relationships of a type.
+ * <p>
+ * Each round deviates from the last path found at every one of its nodes,
+ * with a Dijkstra spur search which expands neither the nodes of the root
+ * path nor any relationship from the spur node to the next node of a path
+ * found so far sharing the root, parallel relationships included, so that
+ * alternatives differ in locations. The search stops at its deadline and
+ * returns the paths found by then, which are always the shortest ones.
+ * <p>
+ * All search state is local to each call, so a single instance can be shared
+ * between threads.
+ *
+ * @author Leandro Ferreira
+ * @see <a href="http://www.jstor.org/stable/2629312">Yen, J. Y. Finding the K
+ *      Shortest Loopless Paths in a Network</a>
+ */
+public class KShortestPathFinder {
+
+	/** Type of the relationships to expand. */
+	private final RelationshipType relationshipType;
+
+	/** Relationship cost evaluator. */
+	private final CostEvaluator<Double> costEvaluator;
+
+	/**
+	 * Constructs a KShortestPathFinder object.
+	 *
+	 * @param relationshipType
+	 *            type of the relationships to expand.
+	 * @param costEvaluator
+	 *            relationship cost evaluator.
+	 * @throws IllegalArgumentException
+	 *             if relationshipType or costEvaluator is null.
+	 */
+	public KShortestPathFinder(RelationshipType relationshipType,
+			CostEvaluator<Double> costEvaluator) {
+		if (relationshipType == null) {
+			throw new IllegalArgumentException("relationshipType is null");
+		}
+		if (costEvaluator == null) {
+			throw new IllegalArgumentException("costEvaluator is null");
+		}
+		this.relationshipType = relationshipType;
+		this.costEvaluator = costEvaluator;
+	}
+
+	/**
+	 * Finds up to k shortest loopless paths between two distinct nodes, within
+	 * the current transaction.
+	 *
+	 * @param start
+	 *            the start node.
+	 * @param end
+	 *            the end node.
+	 * @param k
+	 *            the maximum number of paths.
+	 * @param deadline
+	 *            the deadline, in System.nanoTime() terms.
+	 * @return the relationships of each path found, shortest first. Fewer than
+	 *         k paths are returned if there are no more, or if the deadline
+	 *         elapsed.
+	 * @throws IllegalArgumentException
+	 *             if start or end is null, or if k is not positive.
+	 */
+	public List<List<Relationship>> findPaths(Node start, Node end, int k,
+			long deadline) {
+		if (start == null) {
+			throw new IllegalArgumentException("start is null");
+		}
+		if (end == null) {
+			throw new IllegalArgumentException("end is null");
+		}
+		if (k <= 0) {
+			throw new IllegalArgumentException("k is not positive");
+		}
+
+		final Set<Long> noIds = Collections.emptySet();
+		final Candidate first = search(start, end,
+				Collections.<Relationship> emptyList(), 0, noIds, noIds);
+		if (first == null) {
+			return Collections.emptyList();
+		}
+
+		// Paths found, and candidates for the next one
+		final List<Candidate> paths = new ArrayList<Candidate>();
+		paths.add(first);
+		final PriorityQueue<Candidate> candidates = new PriorityQueue<Candidate>();
+		final Set<List<Long>> seen = new HashSet<List<Long>>();
+		seen.add(first.relationshipIds);
+
+		while (paths.size() < k && System.nanoTime() < deadline) {
+			// Deviates from the last path at each of its nodes
+			final Candidate previous = paths.get(paths.size() - 1);
+			final Set<Long> bannedNodeIds = new HashSet<Long>();
+			double rootCost = 0;
+			for (int i = 0; i < previous.relationships.size()
+					&& System.nanoTime() < deadline; i++) {
+				final Relationship deviation = previous.relationships.get(i);
+				final Node spurNode = deviation.getStartNode();
+
+				// Bans the next nodes of the paths which share the root
+				final List<Long> rootIds = previous.relationshipIds.subList(
+						0, i);
+				final Set<Long> bannedNextIds = new HashSet<Long>();
+				for (Candidate path : paths) {
+					if (path.relationshipIds.size() > i
+							&& path.relationshipIds.subList(0, i).equals(
+									rootIds)) {
+						bannedNextIds.add(path.relationships.get(i)
+								.getEndNode().getId());
+					}
+				}
+
+				final Candidate candidate = search(spurNode, end,
+						previous.relationships.subList(0, i), rootCost,
+						bannedNodeIds, bannedNextIds);
+				if (candidate != null && seen.add(candidate.relationshipIds)) {
+					candidates.add(candidate);
+				}
+
+				// Extends the root past the spur node
+				bannedNodeIds.add(spurNode.getId());
+				rootCost += costEvaluator.getCost(deviation,
+						Direction.OUTGOING);
+			}
+
+			final Candidate next = candidates.poll();
+			if (next == null) {
+				break;
+			}
+			paths.add(next);
+		}
+
+		final List<List<Relationship>> relationships = new ArrayList<List<Relationship>>(
+				paths.size());
+		for (Candidate path : paths) {
+			relationships.add(path.relationships);
+		}
+		return relationships;
+	}
+
+	/**
+	 * Searches the shortest spur path from a node of the root path to the end
+	 * node, avoiding the banned nodes and the banned next nodes.
+	 *
+	 * @param spurNode
+	 *            the node the spur path starts from.
+	 * @param end
+	 *            the end node.
+	 * @param root
+	 *            the relationships of the root path, ending at the spur node.
+	 * @param rootCost
+	 *            the cost of the root path.
+	 * @param bannedNodeIds
+	 *            the ids of the nodes not to be expanded.
+	 * @param bannedNextIds
+	 *            the ids of the nodes not to be reached from the spur node.
+	 * @return the root path followed by the spur path, or null if the end node
+	 *         is not reachable.
+	 */
+	private Candidate search(Node spurNode, Node end, List<Relationship> root,
+			double rootCost, Set<Long> bannedNodeIds, Set<Long> bannedNextIds) {
+		final WeightedPath spur = GraphAlgoFactory.dijkstra(
+				new BannedExpander(Direction.OUTGOING, spurNode.getId(),
+						bannedNodeIds, bannedNextIds), costEvaluator)
+				.findSinglePath(spurNode, end);
+		if (spur == null) {
+			return null;
+		}
+
+		final List<Relationship> relationships = new ArrayList<Relationship>(
+				root);
+		for (Relationship relationship : spur.relationships()) {
+			relationships.add(relationship);
+		}
+		return new Candidate(relationships, rootCost + spur.weight());
+	}
+
+	/**
+	 * Expander of the relationships of the searched type, leaving out the
+	 * banned nodes, and the banned next nodes when expanding the spur node.
+	 */
+	private final class BannedExpander implements PathExpander<Object> {
+
+		/** Direction of the relationships to expand. */
+		private final Direction direction;
+
+		/** Id of the spur node. */
+		private final long spurNodeId;
+
+		/** Ids of the nodes not to be expanded. */
+		private final Set<Long> bannedNodeIds;
+
+		/** Ids of the nodes not to be reached from the spur node. */
+		private final Set<Long> bannedNextIds;
+
+		/**
+		 * Constructs a BannedExpander object.
+		 *
+		 * @param direction
+		 *            the direction of the relationships to expand.
+		 * @param spurNodeId
+		 *            the id of the spur node.
+		 * @param bannedNodeIds
+		 *            the ids of the nodes not to be expanded.
+		 * @param bannedNextIds
+		 *            the ids of the nodes not to be reached from the spur
+		 *            node.
+		 */
+		BannedExpander(Direction direction, long spurNodeId,
+				Set<Long> bannedNodeIds, Set<Long> bannedNextIds) {
+			this.direction = direction;
+			this.spurNodeId = spurNodeId;
+			this.bannedNodeIds = bannedNodeIds;
+			this.bannedNextIds = bannedNextIds;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.neo4j.graphdb.PathExpander#expand(org.neo4j.graphdb.Path,
+		 * org.neo4j.graphdb.traversal.BranchState)
+		 */
+		@Override
+		public Iterable<Relationship> expand(Path path, BranchState<Object> state) {
+			final Node node = path.endNode();
+			final boolean spur = node.getId() == spurNodeId;
+			final List<Relationship> relationships = new ArrayList<Relationship>();
+			for (Relationship relationship : node.getRelationships(
+					relationshipType, direction)) {
+				final long next = relationship.getOtherNode(node).getId();
+				if (!bannedNodeIds.contains(next)
+						&& !(spur && bannedNextIds.contains(next))) {
+					relationships.add(relationship);
+				}
+			}
+			return relationships;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.neo4j.graphdb.PathExpander#reverse()
+		 */
+		@Override
+		public PathExpander<Object> reverse() {
+			return new BannedExpander(direction.reverse(), spurNodeId,
+					bannedNodeIds, bannedNextIds);
+		}
+
+	}
+
+	/**
+	 * Path found or candidate for the next one, ordered by cost and then by
+	 * number of relationships.
+	 */
+	private static final class Candidate implements Comparable<Candidate> {
+
+		/** Relationships of the path. */
+		private final List<Relationship> relationships;
+
+		/** Ids of the relationships of the path. */
+		private final List<Long> relationshipIds;
+
+		/** Cost of the path. */
+		private final double cost;
+
+		/**
+		 * Constructs a Candidate object.
+		 *
+		 * @param relationships
+		 *            the relationships of the path.
+		 * @param cost
+		 *            the cost of the path.
+		 */
+		Candidate(List<Relationship> relationships, double cost) {
+			this.relationships = relationships;
+			this.relationshipIds = new ArrayList<Long>(relationships.size());
+			for (Relationship relationship : relationships) {
+				relationshipIds.add(relationship.getId());
+			}
+			this.cost = cost;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Comparable#compareTo(java.lang.Object)
+		 */
+		@Override
+		public int compareTo(Candidate other) {
+			final int byCost = Double.compare(cost, other.cost);
+			return (byCost != 0) ? byCost : relationships.size()
+					- other.relationships.size();
+		}
+
+	}
+
+}
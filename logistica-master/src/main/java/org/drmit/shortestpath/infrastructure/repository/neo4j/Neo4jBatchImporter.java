@@ -0,0 +1,290 @@
+package org.drmit.shortestpath.infrastructure.repository.neo4j;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.domain.model.TravelTimeProfile;
+import org.neo4j.graphdb.DynamicLabel;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.index.IndexHits;
+import org.neo4j.index.impl.lucene.LuceneIndexImplementation;
+import org.neo4j.index.lucene.unsafe.batchinsert.LuceneBatchInserterIndexProvider;
+import org.neo4j.unsafe.batchinsert.BatchInserter;
+import org.neo4j.unsafe.batchinsert.BatchInserterIndex;
+import org.neo4j.unsafe.batchinsert.BatchInserterIndexProvider;
+import org.neo4j.unsafe.batchinsert.BatchInserters;
+
+/**
+ * Offline importer writing legs straight into a Neo4j store through the batch
+ * inserter, bypassing transactions altogether. The resulting store has the same
+ * layout as the one written by the AbstractNeo4jRouteRepository.
+ * <p>
+ * Legs are always added, so the importer is meant for initial loads: importing
+ * a leg which already exists in the network leaves parallel relationships,
+ * which are cleaned up the next time the leg is saved through the repository.
+ * <p>
+ * The store must not be in use by any running database while the importer is
+ * open, and the importer must be closed for the store to be left consistent.
+ * 
+ * @author Leandro Ferreira
+ */
+public class Neo4jBatchImporter implements Closeable {
+
+	/** Underlying batch inserter. */
+	private final BatchInserter inserter;
+
+	/** Index provider of the batch inserter. */
+	private final BatchInserterIndexProvider indexProvider;
+
+	/** Index for legs lookup and querying. */
+	private final BatchInserterIndex legsIndex;
+
+	/** Index of the leg relationships, by network. */
+	private final BatchInserterIndex connectionsIndex;
+
+	/** Index of the network version nodes, by network. */
+	private final BatchInserterIndex versionsIndex;
+
+	/** Ids of the nodes resolved so far, by name. */
+	private final Map<String, Long> nodeIds = new HashMap<String, Long>();
+
+	/**
+	 * Constructs a Neo4jBatchImporter object.
+	 * 
+	 * @param storeDir
+	 *            the directory of the Neo4j store, created if needed.
+	 * @throws IllegalArgumentException
+	 *             if storeDir is null.
+	 */
+	public Neo4jBatchImporter(String storeDir) {
+		if (storeDir == null) {
+			throw new IllegalArgumentException("storeDir is null");
+		}
+
+		inserter = BatchInserters.inserter(storeDir);
+		indexProvider = new LuceneBatchInserterIndexProvider(inserter);
+		legsIndex = indexProvider.nodeIndex(
+				AbstractNeo4jRouteRepository.LEGS_INDEX_NAME,
+				LuceneIndexImplementation.EXACT_CONFIG);
+		connectionsIndex = indexProvider.relationshipIndex(
+				AbstractNeo4jRouteRepository.CONNECTIONS_INDEX_NAME,
+				LuceneIndexImplementation.EXACT_CONFIG);
+		versionsIndex = indexProvider.nodeIndex(
+				AbstractNeo4jRouteRepository.NETWORK_VERSIONS_INDEX_NAME,
+				LuceneIndexImplementation.EXACT_CONFIG);
+	}
+
+	/**
+	 * Imports a stream of legs into a network of the store, and increments
+	 * the version of the network, so that the copies of the network kept
+	 * elsewhere are known to be stale.
+	 * 
+	 * @param network
+	 *            the network name.
+	 * @param legs
+	 *            the legs to be imported.
+	 * @return the number of legs imported.
+	 * @throws IllegalArgumentException
+	 *             if network or legs is null.
+	 */
+	public long importLegs(String network, Iterator<Leg> legs) {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (legs == null) {
+			throw new IllegalArgumentException("legs is null");
+		}
+
+		final RelationshipType relationshipType = DynamicRelationshipType
+				.withName(AbstractNeo4jRouteRepository.NETWORK_RELATIONSHIP_TYPE_PREFIX
+						+ network);
+		final Label label = DynamicLabel
+				.label(AbstractNeo4jRouteRepository.NETWORK_LABEL_PREFIX
+						+ network);
+		final Set<Long> labeled = new HashSet<Long>();
+		final Map<String, Object> connection = Collections
+				.<String, Object> singletonMap(
+						AbstractNeo4jRouteRepository.NETWORK_PROPERTY_KEY,
+						network);
+
+		long count = 0;
+		while (legs.hasNext()) {
+			final Leg leg = legs.next();
+
+			// Creates a relationship between the origin and the destination
+			final long relationshipId = inserter.createRelationship(
+					getNodeId(leg.getOrigin(), label, labeled),
+					getNodeId(leg.getDestination(), label, labeled),
+					relationshipType, getProperties(leg));
+			connectionsIndex.add(relationshipId, connection);
+			count++;
+		}
+		incrementVersion(network);
+		return count;
+	}
+
+	/**
+	 * Increments the version of a network, as the
+	 * AbstractNeo4jRouteRepository does when a transaction writes its legs.
+	 * 
+	 * @param network
+	 *            the network name.
+	 */
+	private void incrementVersion(String network) {
+		final IndexHits<Long> hits = versionsIndex.get(
+				AbstractNeo4jRouteRepository.NETWORK_PROPERTY_KEY, network);
+		Long id;
+		try {
+			id = hits.getSingle();
+		} finally {
+			hits.close();
+		}
+
+		if (id == null) {
+			// Creates the version node
+			final Map<String, Object> properties = new HashMap<String, Object>(
+					4);
+			properties.put(AbstractNeo4jRouteRepository.NETWORK_PROPERTY_KEY,
+					network);
+			properties.put(AbstractNeo4jRouteRepository.VERSION_PROPERTY_KEY,
+					System.currentTimeMillis() + 1);
+			id = inserter.createNode(properties);
+			versionsIndex.add(id, Collections.<String, Object> singletonMap(
+					AbstractNeo4jRouteRepository.NETWORK_PROPERTY_KEY, network));
+			versionsIndex.flush();
+		} else {
+			final Long version = (Long) inserter.getNodeProperties(id).get(
+					AbstractNeo4jRouteRepository.VERSION_PROPERTY_KEY);
+			inserter.setNodeProperty(id,
+					AbstractNeo4jRouteRepository.VERSION_PROPERTY_KEY,
+					version + 1);
+		}
+	}
+
+	/**
+	 * Returns the relationship properties of a leg: its distance, and its
+	 * travel time profile, toll and road class if it has them.
+	 * 
+	 * @param leg
+	 *            the leg.
+	 * @return the relationship properties.
+	 */
+	private static Map<String, Object> getProperties(Leg leg) {
+		final TravelTimeProfile profile = leg.getTravelTimeProfile();
+		if (profile == null && leg.getToll() == 0 && leg.getRoadClass() == null) {
+			return Collections.<String, Object> singletonMap(
+					AbstractNeo4jRouteRepository.DISTANCE_PROPERTY_KEY,
+					leg.getDistance());
+		}
+		final Map<String, Object> properties = new HashMap<String, Object>(8);
+		properties.put(AbstractNeo4jRouteRepository.DISTANCE_PROPERTY_KEY,
+				leg.getDistance());
+		if (profile != null) {
+			properties
+					.put(AbstractNeo4jRouteRepository.PROFILE_DEPARTURE_TIMES_PROPERTY_KEY,
+							profile.getDepartureTimes());
+			properties
+					.put(AbstractNeo4jRouteRepository.PROFILE_TRAVEL_TIMES_PROPERTY_KEY,
+							profile.getTravelTimes());
+		}
+		if (leg.getToll() > 0) {
+			properties.put(AbstractNeo4jRouteRepository.TOLL_PROPERTY_KEY,
+					leg.getToll());
+		}
+		if (leg.getRoadClass() != null) {
+			properties.put(
+					AbstractNeo4jRouteRepository.ROAD_CLASS_PROPERTY_KEY,
+					leg.getRoadClass());
+		}
+		return properties;
+	}
+
+	/**
+	 * Returns the id of the node referred to by this name, creating the node
+	 * if it does not exist, and labels it.
+	 * 
+	 * @param name
+	 *            the node name.
+	 * @param label
+	 *            the network label.
+	 * @param labeled
+	 *            the ids of the nodes already labeled.
+	 * @return the node id.
+	 */
+	private long getNodeId(String name, Label label, Set<Long> labeled) {
+		final long nodeId = getNodeId(name);
+		if (labeled.add(nodeId) && !inserter.nodeHasLabel(nodeId, label)) {
+			// Keeps the labels of the other networks
+			final List<Label> labels = new ArrayList<Label>();
+			for (Label existing : inserter.getNodeLabels(nodeId)) {
+				labels.add(existing);
+			}
+			labels.add(label);
+			inserter.setNodeLabels(nodeId, labels.toArray(new Label[labels
+					.size()]));
+		}
+		return nodeId;
+	}
+
+	/**
+	 * Returns the id of the node referred to by this name, creating the node
+	 * if it does not exist.
+	 * 
+	 * @param name
+	 *            the node name.
+	 * @return the node id.
+	 */
+	private long getNodeId(String name) {
+		final Long nodeId = nodeIds.get(name);
+		if (nodeId != null) {
+			return nodeId;
+		}
+
+		final Map<String, Object> properties = Collections
+				.<String, Object> singletonMap(
+						AbstractNeo4jRouteRepository.NAME_PROPERTY_KEY, name);
+
+		// Looks the node up in case the store was not empty
+		final IndexHits<Long> hits = legsIndex.get(
+				AbstractNeo4jRouteRepository.NAME_PROPERTY_KEY, name);
+		Long id;
+		try {
+			id = hits.getSingle();
+		} finally {
+			hits.close();
+		}
+
+		if (id == null) {
+			// Creates a new node
+			id = inserter.createNode(properties);
+			legsIndex.add(id, properties);
+		}
+		nodeIds.put(name, id);
+		return id;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() {
+		legsIndex.flush();
+		connectionsIndex.flush();
+		versionsIndex.flush();
+		indexProvider.shutdown();
+		inserter.shutdown();
+	}
+
+}
@@ -0,0 +1,255 @@
+package org.drmit.shortestpath.infrastructure.repository.neo4j;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.ErrorState;
+import org.neo4j.graphdb.event.KernelEventHandler;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+import org.neo4j.graphdb.index.IndexHits;
+
+/**
+ * Transaction event handler incrementing, as each transaction commits, the
+ * versions of the networks whose leg relationships it created, deleted or
+ * changed, whichever repository or writer runs it.
+ * <p>
+ * A single handler is registered per graph database, however many
+ * repositories are constructed on it, so that each committed write increments
+ * the version of its networks exactly once. The handler is unregistered as
+ * the database shuts down.
+ *
+ * @author Leandro Ferreira
+ */
+final class NetworkVersioning extends TransactionEventHandler.Adapter<Object>
+		implements KernelEventHandler {
+
+	/** Registered handlers, by graph database. */
+	private static final Map<GraphDatabaseService, NetworkVersioning> handlers = new IdentityHashMap<GraphDatabaseService, NetworkVersioning>();
+
+	/** Versioned graph database. */
+	private final GraphDatabaseService graphDatabase;
+
+	/**
+	 * Constructs a NetworkVersioning object.
+	 *
+	 * @param graphDatabase
+	 *            the versioned graph database.
+	 */
+	private NetworkVersioning(GraphDatabaseService graphDatabase) {
+		this.graphDatabase = graphDatabase;
+	}
+
+	/**
+	 * Registers the handler of a graph database, unless it is registered
+	 * already.
+	 *
+	 * @param graphDatabase
+	 *            the graph database.
+	 * @throws IllegalArgumentException
+	 *             if graphDatabase is null.
+	 */
+	static void register(GraphDatabaseService graphDatabase) {
+		if (graphDatabase == null) {
+			throw new IllegalArgumentException("graphDatabase is null");
+		}
+
+		synchronized (handlers) {
+			if (!handlers.containsKey(graphDatabase)) {
+				final NetworkVersioning handler = new NetworkVersioning(
+						graphDatabase);
+				graphDatabase.registerTransactionEventHandler(handler);
+				graphDatabase.registerKernelEventHandler(handler);
+				handlers.put(graphDatabase, handler);
+			}
+		}
+	}
+
+	/**
+	 * Tells whether the handler of a graph database is registered.
+	 *
+	 * @param graphDatabase
+	 *            the graph database.
+	 * @return true if the handler is registered, false otherwise.
+	 */
+	static boolean isRegistered(GraphDatabaseService graphDatabase) {
+		synchronized (handlers) {
+			return handlers.containsKey(graphDatabase);
+		}
+	}
+
+	/**
+	 * Returns the version node of a network within the current transaction.
+	 *
+	 * @param graphDatabase
+	 *            the graph database.
+	 * @param network
+	 *            the network name.
+	 * @return the version node, or null if the network was never written.
+	 */
+	static Node findVersionNode(GraphDatabaseService graphDatabase,
+			String network) {
+		final IndexHits<Node> hits = graphDatabase
+				.index()
+				.forNodes(
+						AbstractNeo4jRouteRepository.NETWORK_VERSIONS_INDEX_NAME)
+				.get(AbstractNeo4jRouteRepository.NETWORK_PROPERTY_KEY, network);
+		try {
+			return hits.getSingle();
+		} finally {
+			hits.close();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.neo4j.graphdb.event.TransactionEventHandler.Adapter#beforeCommit(org
+	 * .neo4j.graphdb.event.TransactionData)
+	 */
+	@Override
+	public Object beforeCommit(TransactionData data) {
+		updateNetworkVersions(data);
+		return null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.neo4j.graphdb.event.KernelEventHandler#beforeShutdown()
+	 */
+	@Override
+	public void beforeShutdown() {
+		synchronized (handlers) {
+			handlers.remove(graphDatabase);
+		}
+		graphDatabase.unregisterTransactionEventHandler(this);
+		graphDatabase.unregisterKernelEventHandler(this);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.neo4j.graphdb.event.KernelEventHandler#kernelPanic(org.neo4j.graphdb
+	 * .event.ErrorState)
+	 */
+	@Override
+	public void kernelPanic(ErrorState error) {
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.neo4j.graphdb.event.KernelEventHandler#getResource()
+	 */
+	@Override
+	public Object getResource() {
+		return null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.neo4j.graphdb.event.KernelEventHandler#orderComparedTo(org.neo4j.
+	 * graphdb.event.KernelEventHandler)
+	 */
+	@Override
+	public ExecutionOrder orderComparedTo(KernelEventHandler other) {
+		return ExecutionOrder.DOESNT_MATTER;
+	}
+
+	/**
+	 * Increments, within a committing transaction, the versions of the
+	 * networks whose leg relationships it created, deleted or changed. The
+	 * version nodes are locked in network name order, so that concurrent
+	 * writers neither lose increments nor deadlock, and a network written for
+	 * the first time starts at the current time in milliseconds, so that its
+	 * versions are not repeated if the store is created again.
+	 *
+	 * @param data
+	 *            the changes of the transaction.
+	 */
+	private void updateNetworkVersions(TransactionData data) {
+		final Set<String> networks = new TreeSet<String>();
+		for (Relationship relationship : data.createdRelationships()) {
+			addNetwork(networks, relationship);
+		}
+		for (Relationship relationship : data.deletedRelationships()) {
+			addNetwork(networks, relationship);
+		}
+		for (PropertyEntry<Relationship> entry : data
+				.assignedRelationshipProperties()) {
+			addNetwork(networks, entry.entity());
+		}
+		for (PropertyEntry<Relationship> entry : data
+				.removedRelationshipProperties()) {
+			addNetwork(networks, entry.entity());
+		}
+
+		for (String network : networks) {
+			try (final Transaction tx = graphDatabase.beginTx()) {
+				Node node = findVersionNode(graphDatabase, network);
+				if (node == null) {
+					// Creates the version node, unless a concurrent writer did
+					node = graphDatabase.createNode();
+					node.setProperty(
+							AbstractNeo4jRouteRepository.NETWORK_PROPERTY_KEY,
+							network);
+					node.setProperty(
+							AbstractNeo4jRouteRepository.VERSION_PROPERTY_KEY,
+							System.currentTimeMillis());
+					final Node existing = graphDatabase
+							.index()
+							.forNodes(
+									AbstractNeo4jRouteRepository.NETWORK_VERSIONS_INDEX_NAME)
+							.putIfAbsent(
+									node,
+									AbstractNeo4jRouteRepository.NETWORK_PROPERTY_KEY,
+									network);
+					if (existing != null) {
+						node.delete();
+						node = existing;
+					}
+				}
+				tx.acquireWriteLock(node);
+				node.setProperty(
+						AbstractNeo4jRouteRepository.VERSION_PROPERTY_KEY,
+						(Long) node
+								.getProperty(AbstractNeo4jRouteRepository.VERSION_PROPERTY_KEY) + 1);
+
+				// Commits the transaction
+				tx.success();
+			}
+		}
+	}
+
+	/**
+	 * Adds the network of a relationship to a set, if it is a leg
+	 * relationship.
+	 *
+	 * @param networks
+	 *            the set of network names.
+	 * @param relationship
+	 *            the relationship.
+	 */
+	private static void addNetwork(Set<String> networks,
+			Relationship relationship) {
+		final String name = relationship.getType().name();
+		if (name.startsWith(AbstractNeo4jRouteRepository.NETWORK_RELATIONSHIP_TYPE_PREFIX)) {
+			networks.add(name
+					.substring(AbstractNeo4jRouteRepository.NETWORK_RELATIONSHIP_TYPE_PREFIX
+							.length()));
+		}
+	}
+
+}
@@ -0,0 +1,65 @@
+package org.drmit.shortestpath.infrastructure.repository.neo4j;
+
+import org.drmit.shortestpath.domain.model.VehicleProfile;
+import org.neo4j.graphalgo.CostEvaluator;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Relationship;
+
+/**
+ * Evaluates the cost of a leg for a vehicle profile as its fuel cost plus its
+ * weighted toll, from the distance, toll and road class properties of its
+ * relationship.
+ * 
+ * @author Leandro Ferreira
+ * @see VehicleProfile#getLegCost(org.drmit.shortestpath.domain.model.Leg,
+ *      double)
+ */
+public class VehicleCostEvaluator implements CostEvaluator<Double> {
+
+	/** Vehicle profile. */
+	private final VehicleProfile vehicleProfile;
+
+	/** Fuel price per liter. */
+	private final double fuelPrice;
+
+	/**
+	 * Constructs a VehicleCostEvaluator object.
+	 * 
+	 * @param vehicleProfile
+	 *            the vehicle profile.
+	 * @param fuelPrice
+	 *            fuel price per liter.
+	 * @throws IllegalArgumentException
+	 *             if vehicleProfile is null or fuelPrice is negative.
+	 */
+	public VehicleCostEvaluator(VehicleProfile vehicleProfile, double fuelPrice) {
+		if (vehicleProfile == null) {
+			throw new IllegalArgumentException("vehicleProfile is null");
+		}
+		if (!(fuelPrice >= 0)) {
+			throw new IllegalArgumentException("fuelPrice is negative");
+		}
+		this.vehicleProfile = vehicleProfile;
+		this.fuelPrice = fuelPrice;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.neo4j.graphalgo.CostEvaluator#getCost(org.neo4j.graphdb.Relationship,
+	 * org.neo4j.graphdb.Direction)
+	 */
+	@Override
+	public Double getCost(Relationship relationship, Direction direction) {
+		final double distance = (Double) relationship
+				.getProperty(AbstractNeo4jRouteRepository.DISTANCE_PROPERTY_KEY);
+		final double toll = (Double) relationship.getProperty(
+				AbstractNeo4jRouteRepository.TOLL_PROPERTY_KEY, 0d);
+		final String roadClass = (String) relationship.getProperty(
+				AbstractNeo4jRouteRepository.ROAD_CLASS_PROPERTY_KEY, null);
+		return fuelPrice * vehicleProfile.getFuelUse(distance, roadClass)
+				+ vehicleProfile.getTollCost(toll);
+	}
+
+}
@@ -0,0 +1,123 @@
+package org.drmit.shortestpath.infrastructure.repository.partition;
+
+import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.infrastructure.repository.memory.CompressedGraph;
+
+/**
+ * Cell of the first level of a partitioned graph, holding the outgoing legs
+ * of its nodes.
+ * <p>
+ * The legs are held in a compressed graph whose first node ids are the nodes
+ * of the cell, in the order of their partitioned ids, followed by the targets
+ * of the legs leaving the cell, whose partitioned ids are kept by the
+ * overlay.
+ *
+ * @author Leandro Ferreira
+ */
+final class Cell {
+
+	/** Outgoing legs of the nodes of the cell. */
+	private final CompressedGraph graph;
+
+	/** Partitioned id of the first node of the cell. */
+	private final int start;
+
+	/** Number of nodes in the cell. */
+	private final int size;
+
+	/** Partitioned ids of the targets outside the cell. */
+	private final int[] externalIds;
+
+	/** Position of the first target outside the cell in the external ids. */
+	private final int externalOffset;
+
+	/**
+	 * Constructs a Cell object.
+	 *
+	 * @param graph
+	 *            the outgoing legs of the nodes of the cell.
+	 * @param start
+	 *            the partitioned id of the first node of the cell.
+	 * @param size
+	 *            the number of nodes in the cell.
+	 * @param externalIds
+	 *            the partitioned ids of the targets outside the cells.
+	 * @param externalOffset
+	 *            the position of the first target outside this cell.
+	 */
+	Cell(CompressedGraph graph, int start, int size, int[] externalIds,
+			int externalOffset) {
+		this.graph = graph;
+		this.start = start;
+		this.size = size;
+		this.externalIds = externalIds;
+		this.externalOffset = externalOffset;
+	}
+
+	/**
+	 * Gets the outgoing legs of the nodes of the cell.
+	 *
+	 * @return the compressed graph holding the legs.
+	 */
+	CompressedGraph getGraph() {
+		return graph;
+	}
+
+	/**
+	 * Gets the first outgoing edge of the given node.
+	 *
+	 * @param id
+	 *            the partitioned id of a node of the cell.
+	 * @return the id of the first outgoing edge.
+	 */
+	int getFirstEdge(int id) {
+		return graph.getFirstEdge(id - start);
+	}
+
+	/**
+	 * Gets the edge following the last outgoing edge of the given node.
+	 *
+	 * @param id
+	 *            the partitioned id of a node of the cell.
+	 * @return the exclusive upper bound of the outgoing edge ids.
+	 */
+	int getLastEdge(int id) {
+		return graph.getLastEdge(id - start);
+	}
+
+	/**
+	 * Gets the target node of the given edge.
+	 *
+	 * @param edge
+	 *            the edge id.
+	 * @return the partitioned id of the target node.
+	 */
+	int getEdgeTarget(int edge) {
+		final int target = graph.getEdgeTarget(edge);
+		return (target < size) ? start + target : externalIds[externalOffset
+				+ target - size];
+	}
+
+	/**
+	 * Gets the distance covered by the given edge.
+	 *
+	 * @param edge
+	 *            the edge id.
+	 * @return the distance covered by the edge.
+	 */
+	double getEdgeDistance(int edge) {
+		return graph.getEdgeDistance(edge);
+	}
+
+	/**
+	 * Returns a leg constructed from the given edge.
+	 *
+	 * @param edge
+	 *            the edge id.
+	 * @return a leg constructed from the edge.
+	 */
+	Leg toLeg(int edge) {
+		return graph.toLeg(edge);
+	}
+
+}
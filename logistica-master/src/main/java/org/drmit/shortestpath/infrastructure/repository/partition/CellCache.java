@@ -0,0 +1,204 @@
+package org.drmit.shortestpath.infrastructure.repository.partition;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cells loaded from the partitioned graphs, shared by all of them and evicting
+ * the least recently used cell once full, so that the memory taken by the
+ * cells follows the working set of the queries rather than the size of the
+ * networks.
+ * <p>
+ * Cells are loaded without holding the lock of the cache, so that queries
+ * touching loaded cells never wait for a load. Threads racing to load the same
+ * cell may both load it, and the first one loaded is kept.
+ *
+ * @author Leandro Ferreira
+ */
+final class CellCache {
+
+	/** Cells in access order, least recently used first, guarded by itself. */
+	private final LinkedHashMap<Key, Cell> cells = new LinkedHashMap<Key, Cell>(
+			16, 0.75f, true);
+
+	/** Maximum number of cells. */
+	private volatile int maximumSize;
+
+	/** Number of cells loaded. */
+	private final AtomicLong loadCount = new AtomicLong();
+
+	/**
+	 * Constructs a CellCache object.
+	 *
+	 * @param maximumSize
+	 *            the maximum number of cells.
+	 * @throws IllegalArgumentException
+	 *             if maximumSize is not positive.
+	 */
+	CellCache(int maximumSize) {
+		setMaximumSize(maximumSize);
+	}
+
+	/**
+	 * Gets the maximum number of cells.
+	 *
+	 * @return the maximum number of cells.
+	 */
+	int getMaximumSize() {
+		return maximumSize;
+	}
+
+	/**
+	 * Sets the maximum number of cells, evicting the least recently used ones
+	 * over it.
+	 *
+	 * @param maximumSize
+	 *            the maximumSize to set.
+	 * @throws IllegalArgumentException
+	 *             if maximumSize is not positive.
+	 */
+	void setMaximumSize(int maximumSize) {
+		if (maximumSize <= 0) {
+			throw new IllegalArgumentException("maximumSize is not positive");
+		}
+		this.maximumSize = maximumSize;
+		synchronized (cells) {
+			evict();
+		}
+	}
+
+	/**
+	 * Gets the number of cells held.
+	 *
+	 * @return the number of cells held.
+	 */
+	int getSize() {
+		synchronized (cells) {
+			return cells.size();
+		}
+	}
+
+	/**
+	 * Gets the number of cells loaded so far.
+	 *
+	 * @return the number of cells loaded.
+	 */
+	long getLoadCount() {
+		return loadCount.get();
+	}
+
+	/**
+	 * Gets a cell of a partitioned graph, loading it if it is not held.
+	 *
+	 * @param graph
+	 *            the partitioned graph.
+	 * @param cell
+	 *            the cell index, in the first level.
+	 * @return the cell.
+	 * @throws IOException
+	 *             if the cell could not be loaded.
+	 */
+	Cell get(PartitionedGraph graph, int cell) throws IOException {
+		final Key key = new Key(graph, cell);
+		synchronized (cells) {
+			final Cell held = cells.get(key);
+			if (held != null) {
+				return held;
+			}
+		}
+
+		final Cell loaded = graph.loadCell(cell);
+		loadCount.incrementAndGet();
+		synchronized (cells) {
+			final Cell held = cells.get(key);
+			if (held != null) {
+				return held;
+			}
+			cells.put(key, loaded);
+			evict();
+		}
+		return loaded;
+	}
+
+	/**
+	 * Drops the cells of a partitioned graph which is no longer queried.
+	 *
+	 * @param graph
+	 *            the partitioned graph.
+	 */
+	void remove(PartitionedGraph graph) {
+		synchronized (cells) {
+			final Iterator<Key> keys = cells.keySet().iterator();
+			while (keys.hasNext()) {
+				if (keys.next().graph == graph) {
+					keys.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Evicts the least recently used cells over the maximum size. Only called
+	 * holding the lock of the cells.
+	 */
+	private void evict() {
+		final Iterator<Key> keys = cells.keySet().iterator();
+		while (cells.size() > maximumSize) {
+			keys.next();
+			keys.remove();
+		}
+	}
+
+	/**
+	 * Key of a cell of a partitioned graph, identified by reference.
+	 */
+	private static final class Key {
+
+		/** Partitioned graph. */
+		private final PartitionedGraph graph;
+
+		/** Cell index, in the first level. */
+		private final int cell;
+
+		/**
+		 * Constructs a Key object.
+		 *
+		 * @param graph
+		 *            the partitioned graph.
+		 * @param cell
+		 *            the cell index.
+		 */
+		Key(PartitionedGraph graph, int cell) {
+			this.graph = graph;
+			this.cell = cell;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(graph) + cell;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			final Key rhs = (Key) obj;
+			return graph == rhs.graph && cell == rhs.cell;
+		}
+
+	}
+
+}
@@ -0,0 +1,184 @@
+package org.drmit.shortestpath.infrastructure.repository.partition;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Directory the overlays are kept in, shared by the partitioned repositories
+ * of this process which are constructed on it.
+ * <p>
+ * The directory is locked through a lock file while any of them is open, so
+ * that repositories of another process cannot use it at the same time. Within
+ * the process, the repositories number their overlay directories from a
+ * single sequence, and count the overlay directories they use, which are not
+ * to be deleted by any of them until released: the overlays they query, and
+ * those they are building.
+ *
+ * @author Leandro Ferreira
+ */
+final class OverlayDirectory {
+
+	/** Name of the lock file. */
+	static final String LOCK_FILE = ".lock";
+
+	/** Open directories, by canonical file, guarded by itself. */
+	private static final Map<File, OverlayDirectory> directories = new HashMap<File, OverlayDirectory>();
+
+	/** Canonical directory file. */
+	private final File directory;
+
+	/** Channel of the lock file. */
+	private final FileChannel channel;
+
+	/** Lock held on the lock file. */
+	private final FileLock lock;
+
+	/** Number of repositories which opened the directory. */
+	private int openCount = 0;
+
+	/** Number of the last overlay directory. */
+	private long lastNumber = 0;
+
+	/** Number of uses of each overlay directory in use, by name. */
+	private final Map<String, Integer> useCounts = new HashMap<String, Integer>();
+
+	/**
+	 * Constructs an OverlayDirectory object.
+	 *
+	 * @param directory
+	 *            the canonical directory file.
+	 * @param channel
+	 *            the channel of the lock file.
+	 * @param lock
+	 *            the lock held on the lock file.
+	 */
+	private OverlayDirectory(File directory, FileChannel channel, FileLock lock) {
+		this.directory = directory;
+		this.channel = channel;
+		this.lock = lock;
+	}
+
+	/**
+	 * Opens a directory for a repository, locking it if no other repository
+	 * of this process has it open.
+	 *
+	 * @param directory
+	 *            the directory, which must exist.
+	 * @return the open directory, to be closed by the repository.
+	 * @throws IOException
+	 *             if the directory is locked by another process, or through
+	 *             another lock file channel, or could not be locked.
+	 */
+	static OverlayDirectory open(File directory) throws IOException {
+		final File canonical = directory.getCanonicalFile();
+		synchronized (directories) {
+			OverlayDirectory opened = directories.get(canonical);
+			if (opened == null) {
+				final FileChannel channel = FileChannel.open(new File(
+						canonical, LOCK_FILE).toPath(),
+						StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+				FileLock lock;
+				try {
+					lock = channel.tryLock();
+				} catch (OverlappingFileLockException e) {
+					// Locked through another channel of this process
+					lock = null;
+				} catch (IOException | RuntimeException e) {
+					channel.close();
+					throw e;
+				}
+				if (lock == null) {
+					channel.close();
+					throw new IOException(directory + " is locked");
+				}
+				opened = new OverlayDirectory(canonical, channel, lock);
+				directories.put(canonical, opened);
+			}
+			opened.openCount++;
+			return opened;
+		}
+	}
+
+	/**
+	 * Closes the directory for a repository, unlocking it once no repository
+	 * of this process has it open.
+	 *
+	 * @throws IOException
+	 *             if the directory could not be unlocked.
+	 */
+	void close() throws IOException {
+		synchronized (directories) {
+			if (--openCount == 0) {
+				directories.remove(directory);
+				try {
+					lock.release();
+				} finally {
+					channel.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Numbers the overlay directories to come after a number.
+	 *
+	 * @param number
+	 *            the number of an existing overlay directory.
+	 */
+	synchronized void skip(long number) {
+		lastNumber = Math.max(lastNumber, number);
+	}
+
+	/**
+	 * Gets the number of a new overlay directory.
+	 *
+	 * @return the number, greater than that of any other.
+	 */
+	synchronized long nextNumber() {
+		return ++lastNumber;
+	}
+
+	/**
+	 * Counts a use of an overlay directory.
+	 *
+	 * @param file
+	 *            the overlay directory, within the directory.
+	 */
+	synchronized void use(File file) {
+		final Integer count = useCounts.get(file.getName());
+		useCounts.put(file.getName(), (count == null) ? 1 : count + 1);
+	}
+
+	/**
+	 * Releases a use of an overlay directory.
+	 *
+	 * @param file
+	 *            the overlay directory.
+	 */
+	synchronized void release(File file) {
+		final Integer count = useCounts.get(file.getName());
+		if (count == null || count == 1) {
+			useCounts.remove(file.getName());
+		} else {
+			useCounts.put(file.getName(), count - 1);
+		}
+	}
+
+	/**
+	 * Returns true if an overlay directory is used by any repository.
+	 *
+	 * @param file
+	 *            the overlay directory.
+	 * @return true if the directory is in use.
+	 */
+	synchronized boolean isUsed(File file) {
+		return useCounts.containsKey(file.getName());
+	}
+
+}
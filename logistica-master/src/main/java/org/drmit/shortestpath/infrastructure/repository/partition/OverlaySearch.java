@@ -0,0 +1,404 @@
+package org.drmit.shortestpath.infrastructure.repository.partition;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.infrastructure.metrics.RoutingMetrics;
+import org.drmit.shortestpath.infrastructure.metrics.RoutingStage;
+
+/**
+ * Dijkstra search over the levels of a partitioned graph.
+ * <p>
+ * Each node is scanned at its query level: the highest level whose cell
+ * holding it holds neither the source nor the target. Nodes in the cells of
+ * the first level holding the source or the target are scanned by their legs;
+ * any other node is a boundary node of its cell of its query level, and is
+ * scanned by the clique of that cell and the legs leaving it. A search thus
+ * only loads the cells holding its source and target, and settles few nodes
+ * besides theirs.
+ * <p>
+ * A search may be restricted to the cell of a level holding its source, as
+ * the searches computing the cliques of that level and unpacking the paths
+ * across them into legs are. The search state is kept in hash maps sized to
+ * the nodes reached, rather than in arrays sized to the network, so its
+ * memory follows the size of the search.
+ *
+ * @author Leandro Ferreira
+ */
+final class OverlaySearch {
+
+	/** Routing metrics. */
+	private static final RoutingMetrics metrics = RoutingMetrics.getInstance();
+
+	/** Node reached by a leg of its predecessor, scanned in its cell. */
+	private static final int LEG = 0;
+
+	/** Node reached by a leg leaving the cell of its predecessor. */
+	private static final int CUT = 1;
+
+	/** Node reached by a path within a cell, across its clique. */
+	private static final int CLIQUE = 2;
+
+	/** Orders labels by distance. */
+	private static final Comparator<Label> BY_DISTANCE = new Comparator<Label>() {
+		@Override
+		public int compare(Label label1, Label label2) {
+			return Double.compare(label1.distance, label2.distance);
+		}
+	};
+
+	/** Searched graph. */
+	private final PartitionedGraph graph;
+
+	/** Current label of each reached node, by partitioned id. */
+	private final Map<Integer, Label> labels = new HashMap<Integer, Label>();
+
+	/** Labels not yet settled, some of them superseded. */
+	private final PriorityQueue<Label> queue = new PriorityQueue<Label>(16,
+			BY_DISTANCE);
+
+	/** Cell of each level holding the source, indexed by level minus one. */
+	private final int[] sourceCells;
+
+	/**
+	 * Cell of each level holding the target, indexed by level minus one, or -1
+	 * if the search has no target.
+	 */
+	private final int[] targetCells;
+
+	/** Highest level nodes are scanned at. */
+	private int topLevel;
+
+	/** Partitioned id of the first node the search may reach. */
+	private int from;
+
+	/** Partitioned id following the last node the search may reach. */
+	private int to;
+
+	/** Number of nodes settled by the current search. */
+	private int settledCount;
+
+	/** Number of edges relaxed by the current search. */
+	private int relaxedCount;
+
+	/**
+	 * Constructs an OverlaySearch object.
+	 *
+	 * @param graph
+	 *            the graph to search.
+	 */
+	OverlaySearch(PartitionedGraph graph) {
+		this.graph = graph;
+		this.sourceCells = new int[graph.getLevelCount()];
+		this.targetCells = new int[graph.getLevelCount()];
+	}
+
+	/**
+	 * Finds the length of the shortest path between two nodes, reporting the
+	 * search to the routing metrics.
+	 *
+	 * @param source
+	 *            the partitioned id of the source node.
+	 * @param target
+	 *            the partitioned id of the target node.
+	 * @return the length of the shortest path, or positive infinity if the
+	 *         target is not reachable from the source.
+	 * @throws IOException
+	 *             if a cell could not be loaded.
+	 */
+	double findDistance(int source, int target) throws IOException {
+		final long start = System.nanoTime();
+		run(source, target, graph.getLevelCount() + 1);
+		metrics.recordSince(RoutingStage.SEARCH, start);
+		metrics.recordSearch(settledCount, relaxedCount);
+		return getDistance(target);
+	}
+
+	/**
+	 * Finds the legs of the shortest path between two nodes, reporting the
+	 * search and the unpacking of the path to the routing metrics.
+	 *
+	 * @param source
+	 *            the partitioned id of the source node.
+	 * @param target
+	 *            the partitioned id of the target node.
+	 * @return the legs of the shortest path, in travel order, or null if the
+	 *         target is not reachable from the source.
+	 * @throws IOException
+	 *             if a cell could not be loaded.
+	 */
+	List<Leg> findLegs(int source, int target) throws IOException {
+		if (findDistance(source, target) == Double.POSITIVE_INFINITY) {
+			return null;
+		}
+		final long start = System.nanoTime();
+		final List<Leg> legs = getLegs(target);
+		metrics.recordSince(RoutingStage.TO_ROUTE, start);
+		return legs;
+	}
+
+	/**
+	 * Runs a search from a source node, restricted to its cell of a level,
+	 * until the target is settled or, without a target, until every node of
+	 * the cell reachable from the source is.
+	 *
+	 * @param source
+	 *            the partitioned id of the source node.
+	 * @param target
+	 *            the partitioned id of the target node, which must be in the
+	 *            same cell as the source, or -1 for none.
+	 * @param level
+	 *            the level of the cell the search is restricted to, above the
+	 *            levels of the graph for no restriction.
+	 * @throws IOException
+	 *             if a cell could not be loaded.
+	 */
+	void run(int source, int target, int level) throws IOException {
+		// Scans the nodes below the restricting level only
+		topLevel = Math.min(level - 1, graph.getLevelCount());
+		for (int l = 1; l <= topLevel; l++) {
+			sourceCells[l - 1] = graph.getCell(l, source);
+			targetCells[l - 1] = (target < 0) ? -1 : graph.getCell(l, target);
+		}
+		if (level <= graph.getLevelCount()) {
+			final int cell = graph.getCell(level, source);
+			from = graph.getCellStart(level, cell);
+			to = graph.getCellEnd(level, cell);
+		} else {
+			from = 0;
+			to = graph.getNodeCount();
+		}
+
+		labels.clear();
+		queue.clear();
+		settledCount = 0;
+		relaxedCount = 0;
+		reach(source, 0, -1, LEG, -1);
+		while (!queue.isEmpty()) {
+			final Label label = queue.poll();
+			if (label.settled || labels.get(label.node) != label) {
+				// Superseded by a shorter label of the same node
+				continue;
+			}
+			label.settled = true;
+			settledCount++;
+			if (label.node == target) {
+				break;
+			}
+			scan(label.node, label.distance);
+		}
+	}
+
+	/**
+	 * Gets the query level of a node: the highest level whose cell holding it
+	 * holds neither the source nor the target.
+	 *
+	 * @param node
+	 *            the partitioned id of the node.
+	 * @return the query level, 0 if a cell of the first level holding the
+	 *         source or the target holds the node.
+	 */
+	private int getQueryLevel(int node) {
+		for (int level = topLevel; level > 0; level--) {
+			final int cell = graph.getCell(level, node);
+			if (cell != sourceCells[level - 1]
+					&& cell != targetCells[level - 1]) {
+				return level;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Relaxes the edges of a settled node at its query level.
+	 *
+	 * @param node
+	 *            the partitioned id of the node.
+	 * @param distance
+	 *            the distance of the node.
+	 * @throws IOException
+	 *             if a cell could not be loaded.
+	 */
+	private void scan(int node, double distance) throws IOException {
+		final int level = getQueryLevel(node);
+		if (level == 0) {
+			// Relaxes the legs of the node
+			final Cell cell = graph.getCell(graph.getCell(1, node));
+			for (int edge = cell.getFirstEdge(node); edge < cell
+					.getLastEdge(node); edge++) {
+				final int target = cell.getEdgeTarget(edge);
+				if (target >= from && target < to) {
+					reach(target, distance + cell.getEdgeDistance(edge), node,
+							LEG, edge);
+				}
+			}
+			return;
+		}
+
+		// Relaxes the paths across the clique of the cell
+		final int cell = graph.getCell(level, node);
+		final int position = graph.getBoundaryPosition(level, node);
+		if (position < 0) {
+			throw new IllegalStateException(String.format(
+					"Node %d is not a boundary node of level %d", node, level));
+		}
+		for (int other = graph.getFirstBoundary(level, cell); other < graph
+				.getLastBoundary(level, cell); other++) {
+			final double length = graph.getCliqueDistance(level, cell,
+					position, other);
+			if (other != position && length < Double.POSITIVE_INFINITY) {
+				reach(graph.getBoundaryNode(level, other), distance + length,
+						node, CLIQUE, level);
+			}
+		}
+
+		// Relaxes the legs leaving the cell
+		final int start = graph.getCellStart(level, cell);
+		final int end = graph.getCellEnd(level, cell);
+		final int boundary = graph.getBoundaryPosition(1, node);
+		for (int cut = graph.getFirstCutEdge(boundary); cut < graph
+				.getLastCutEdge(boundary); cut++) {
+			final int target = graph.getCutEdgeTarget(cut);
+			if ((target < start || target >= end) && target >= from
+					&& target < to) {
+				reach(target, distance + graph.getCutEdgeDistance(cut), node,
+						CUT, cut);
+			}
+		}
+	}
+
+	/**
+	 * Reaches a node, unless it was already reached at a shorter or equal
+	 * distance.
+	 *
+	 * @param node
+	 *            the partitioned id of the node.
+	 * @param distance
+	 *            the distance the node is reached at.
+	 * @param predecessor
+	 *            the partitioned id of the node it is reached from, or -1.
+	 * @param kind
+	 *            how the node is reached from its predecessor.
+	 * @param via
+	 *            the edge id of a leg, the position of a leg leaving a cell or
+	 *            the level of a clique, depending on the kind.
+	 */
+	private void reach(int node, double distance, int predecessor, int kind,
+			int via) {
+		relaxedCount++;
+		final Label current = labels.get(node);
+		if (current == null || distance < current.distance) {
+			final Label label = new Label(node, distance, predecessor, kind,
+					via);
+			labels.put(node, label);
+			queue.add(label);
+		}
+	}
+
+	/**
+	 * Gets the distance of a node settled by the last search.
+	 *
+	 * @param node
+	 *            the partitioned id of the node.
+	 * @return the distance of the node, or positive infinity if it was not
+	 *         settled.
+	 */
+	double getDistance(int node) {
+		final Label label = labels.get(node);
+		return (label == null || !label.settled) ? Double.POSITIVE_INFINITY
+				: label.distance;
+	}
+
+	/**
+	 * Gets the legs of the shortest path found by the last search from its
+	 * source to the given node. Paths across cliques are unpacked by searches
+	 * restricted to their cells, in turn unpacked until only legs are left.
+	 *
+	 * @param node
+	 *            the partitioned id of a node settled by the last search.
+	 * @return the legs of the shortest path, in travel order.
+	 * @throws IOException
+	 *             if a cell could not be loaded.
+	 */
+	List<Leg> getLegs(int node) throws IOException {
+		final List<Label> path = new ArrayList<Label>();
+		for (Label label = labels.get(node); label.predecessor >= 0; label = labels
+				.get(label.predecessor)) {
+			path.add(label);
+		}
+		Collections.reverse(path);
+
+		final List<Leg> legs = new ArrayList<Leg>();
+		for (Label label : path) {
+			if (label.kind == CLIQUE) {
+				final OverlaySearch unpacking = new OverlaySearch(graph);
+				unpacking.run(label.predecessor, label.node, label.via);
+				legs.addAll(unpacking.getLegs(label.node));
+			} else {
+				final Cell cell = graph.getCell(graph.getCell(1,
+						label.predecessor));
+				legs.add(cell.toLeg((label.kind == CUT) ? graph
+						.getCutEdge(label.via) : label.via));
+			}
+		}
+		return legs;
+	}
+
+	/**
+	 * Distance at which a node is reached, and how.
+	 */
+	private static final class Label {
+
+		/** Partitioned id of the node. */
+		private final int node;
+
+		/** Distance the node is reached at. */
+		private final double distance;
+
+		/** Partitioned id of the node it is reached from, or -1. */
+		private final int predecessor;
+
+		/** How the node is reached from its predecessor. */
+		private final int kind;
+
+		/**
+		 * Edge id of a leg, position of a leg leaving a cell or level of a
+		 * clique, depending on the kind.
+		 */
+		private final int via;
+
+		/** True once the distance is final. */
+		private boolean settled = false;
+
+		/**
+		 * Constructs a Label object.
+		 *
+		 * @param node
+		 *            the partitioned id of the node.
+		 * @param distance
+		 *            the distance the node is reached at.
+		 * @param predecessor
+		 *            the node it is reached from, or -1.
+		 * @param kind
+		 *            how the node is reached from its predecessor.
+		 * @param via
+		 *            the leg, leg leaving a cell or clique level.
+		 */
+		Label(int node, double distance, int predecessor, int kind, int via) {
+			this.node = node;
+			this.distance = distance;
+			this.predecessor = predecessor;
+			this.kind = kind;
+			this.via = via;
+		}
+
+	}
+
+}
@@ -0,0 +1,358 @@
+package org.drmit.shortestpath.infrastructure.repository.partition;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import org.drmit.shortestpath.infrastructure.repository.memory.CompressedGraph;
+
+/**
+ * Multi-level partition of a graph into nested cells.
+ * <p>
+ * The graph is split by recursive bisection, each half grown by a
+ * breadth-first search from a pseudo-peripheral node over the legs taken in
+ * either direction, as in the graph growing initial partitioning of METIS.
+ * Nodes are renumbered in the order of the bisection, so every cell holds a
+ * contiguous range of partitioned ids. Cells of the first level hold at most
+ * <code>cellSize</code> nodes, and the cells of each following level are the
+ * largest subtrees of the bisection holding at most <code>fanout</code> times
+ * the nodes of the level below, so each cell is nested within a cell of every
+ * level above.
+ *
+ * @author Leandro Ferreira
+ */
+final class Partition {
+
+	/** Graph node id by partitioned id. */
+	private final int[] nodes;
+
+	/** Partitioned id by graph node id. */
+	private final int[] ids;
+
+	/**
+	 * Partitioned id of the first node of each cell, followed by the node
+	 * count, indexed by level minus one.
+	 */
+	private final int[][] cellOffsets;
+
+	/**
+	 * Constructs a Partition object.
+	 *
+	 * @param nodes
+	 *            graph node id by partitioned id.
+	 * @param ids
+	 *            partitioned id by graph node id.
+	 * @param cellOffsets
+	 *            offsets of the cells of each level.
+	 */
+	private Partition(int[] nodes, int[] ids, int[][] cellOffsets) {
+		this.nodes = nodes;
+		this.ids = ids;
+		this.cellOffsets = cellOffsets;
+	}
+
+	/**
+	 * Partitions a graph.
+	 *
+	 * @param graph
+	 *            the graph.
+	 * @param cellSize
+	 *            the maximum number of nodes in a cell of the first level.
+	 * @param fanout
+	 *            the factor the maximum number of nodes in a cell grows by
+	 *            from a level to the next.
+	 * @return the partition of the graph.
+	 * @throws IllegalArgumentException
+	 *             if graph is null, if cellSize is not positive or if fanout
+	 *             is less than 2.
+	 */
+	static Partition build(CompressedGraph graph, int cellSize, int fanout) {
+		if (graph == null) {
+			throw new IllegalArgumentException("graph is null");
+		}
+		if (cellSize <= 0) {
+			throw new IllegalArgumentException("cellSize is not positive");
+		}
+		if (fanout < 2) {
+			throw new IllegalArgumentException("fanout is less than 2");
+		}
+
+		final int nodeCount = graph.getNodeCount();
+		final int[] nodes = new int[nodeCount];
+		final int[] ids = new int[nodeCount];
+		for (int node = 0; node < nodeCount; node++) {
+			nodes[node] = node;
+			ids[node] = node;
+		}
+
+		// Bisects the ranges larger than a cell, recording the split point
+		// and the size of each of them
+		final Bisector bisector = new Bisector(graph, nodes, ids);
+		final List<int[]> splits = new ArrayList<int[]>();
+		final Deque<int[]> ranges = new ArrayDeque<int[]>();
+		ranges.push(new int[] { 0, nodeCount });
+		while (!ranges.isEmpty()) {
+			final int[] range = ranges.pop();
+			if (range[1] - range[0] > cellSize) {
+				final int split = bisector.bisect(range[0], range[1]);
+				splits.add(new int[] { split, range[1] - range[0] });
+				ranges.push(new int[] { range[0], split });
+				ranges.push(new int[] { split, range[1] });
+			}
+		}
+
+		// Cuts each level at the splits of the ranges larger than its cells,
+		// skipping the levels which would not merge any cell
+		final List<int[]> levels = new ArrayList<int[]>();
+		long maximumSize = cellSize;
+		int[] offsets = getOffsets(splits, maximumSize, nodeCount);
+		levels.add(offsets);
+		while (offsets.length > 2) {
+			maximumSize *= fanout;
+			final int[] next = getOffsets(splits, maximumSize, nodeCount);
+			if (next.length <= 2) {
+				break;
+			}
+			if (next.length < offsets.length) {
+				levels.add(next);
+				offsets = next;
+			}
+		}
+
+		return new Partition(nodes, ids, levels.toArray(new int[levels.size()][]));
+	}
+
+	/**
+	 * Gets the cell offsets of a level, cut at the splits of the ranges
+	 * holding more than its maximum number of nodes.
+	 *
+	 * @param splits
+	 *            the split point and size of each bisected range.
+	 * @param maximumSize
+	 *            the maximum number of nodes in a cell of the level.
+	 * @param nodeCount
+	 *            the number of nodes.
+	 * @return the offsets of the cells, followed by the node count.
+	 */
+	private static int[] getOffsets(List<int[]> splits, long maximumSize,
+			int nodeCount) {
+		int count = 0;
+		final int[] points = new int[splits.size()];
+		for (int[] split : splits) {
+			if (split[1] > maximumSize) {
+				points[count++] = split[0];
+			}
+		}
+		Arrays.sort(points, 0, count);
+
+		final int[] offsets = new int[count + 2];
+		System.arraycopy(points, 0, offsets, 1, count);
+		offsets[count + 1] = nodeCount;
+		return offsets;
+	}
+
+	/**
+	 * Gets the number of nodes.
+	 *
+	 * @return the number of nodes.
+	 */
+	int getNodeCount() {
+		return nodes.length;
+	}
+
+	/**
+	 * Gets the graph node with the given partitioned id.
+	 *
+	 * @param id
+	 *            the partitioned id.
+	 * @return the graph node id.
+	 */
+	int getNode(int id) {
+		return nodes[id];
+	}
+
+	/**
+	 * Gets the partitioned id of the given graph node.
+	 *
+	 * @param node
+	 *            the graph node id.
+	 * @return the partitioned id.
+	 */
+	int getId(int node) {
+		return ids[node];
+	}
+
+	/**
+	 * Gets the number of levels.
+	 *
+	 * @return the number of levels, at least one.
+	 */
+	int getLevelCount() {
+		return cellOffsets.length;
+	}
+
+	/**
+	 * Gets the cell offsets of the given level.
+	 *
+	 * @param level
+	 *            the level, starting at one.
+	 * @return the partitioned id of the first node of each cell, followed by
+	 *         the node count.
+	 */
+	int[] getCellOffsets(int level) {
+		return cellOffsets[level - 1];
+	}
+
+	/**
+	 * Graph growing bisection of ranges of partitioned ids, reordering the
+	 * nodes of a range so that each half is contiguous.
+	 */
+	private static final class Bisector {
+
+		/** Graph. */
+		private final CompressedGraph graph;
+
+		/** Graph node id by partitioned id. */
+		private final int[] nodes;
+
+		/** Partitioned id by graph node id. */
+		private final int[] ids;
+
+		/** Nodes in breadth-first order. */
+		private final int[] queue;
+
+		/** Stamp of the search which last visited each node. */
+		private final int[] stamps;
+
+		/** Stamp of the current search. */
+		private int stamp = 0;
+
+		/**
+		 * Constructs a Bisector object.
+		 *
+		 * @param graph
+		 *            the graph.
+		 * @param nodes
+		 *            graph node id by partitioned id, reordered in place.
+		 * @param ids
+		 *            partitioned id by graph node id, updated in place.
+		 */
+		Bisector(CompressedGraph graph, int[] nodes, int[] ids) {
+			this.graph = graph;
+			this.nodes = nodes;
+			this.ids = ids;
+			this.queue = new int[nodes.length];
+			this.stamps = new int[nodes.length];
+		}
+
+		/**
+		 * Bisects a range, growing its first half from a pseudo-peripheral
+		 * node: the last node reached by a search from the first node of the
+		 * range.
+		 *
+		 * @param from
+		 *            the first partitioned id of the range.
+		 * @param to
+		 *            the partitioned id following the range.
+		 * @return the partitioned id of the first node of the second half.
+		 */
+		int bisect(int from, int to) {
+			final int size = to - from;
+			search(from, to, nodes[from], 1);
+			final int peripheral = queue[0];
+
+			// Orders the range by distance from the peripheral node, carrying
+			// on from the next unvisited node of each exhausted component
+			search(from, to, peripheral, size);
+			for (int i = 0; i < size; i++) {
+				nodes[from + i] = queue[i];
+			}
+			for (int id = from; id < to; id++) {
+				ids[nodes[id]] = id;
+			}
+			return from + size / 2;
+		}
+
+		/**
+		 * Searches a range breadth-first, over the legs taken in either
+		 * direction, until the given number of nodes is visited or the range
+		 * is exhausted. Once the component of the start node is exhausted, the
+		 * search either stops, leaving its last node first in the queue, or
+		 * carries on from the next unvisited node of the range.
+		 *
+		 * @param from
+		 *            the first partitioned id of the range.
+		 * @param to
+		 *            the partitioned id following the range.
+		 * @param start
+		 *            the graph node to start from.
+		 * @param count
+		 *            the number of nodes to visit, 1 to only find the last
+		 *            node of the component of the start node.
+		 */
+		private void search(int from, int to, int start, int count) {
+			if (++stamp == Integer.MAX_VALUE) {
+				Arrays.fill(stamps, 0);
+				stamp = 1;
+			}
+			int head = 0;
+			int tail = 0;
+			int next = from;
+			queue[tail++] = start;
+			stamps[start] = stamp;
+			while (true) {
+				while (head < tail) {
+					final int node = queue[head++];
+					for (int edge = graph.getFirstEdge(node); edge < graph
+							.getLastEdge(node); edge++) {
+						tail = visit(from, to, graph.getEdgeTarget(edge), tail);
+					}
+					for (int position = graph.getFirstIncomingEdge(node); position < graph
+							.getLastIncomingEdge(node); position++) {
+						tail = visit(from, to, graph.getEdgeSource(graph
+								.getIncomingEdge(position)), tail);
+					}
+				}
+				if (count == 1) {
+					// Leaves the farthest node of the component first
+					queue[0] = queue[tail - 1];
+					return;
+				}
+				if (tail >= count) {
+					return;
+				}
+				while (stamps[nodes[next]] == stamp) {
+					next++;
+				}
+				queue[tail++] = nodes[next];
+				stamps[nodes[next]] = stamp;
+			}
+		}
+
+		/**
+		 * Queues a node if it is within the range and was not visited yet.
+		 *
+		 * @param from
+		 *            the first partitioned id of the range.
+		 * @param to
+		 *            the partitioned id following the range.
+		 * @param node
+		 *            the graph node id.
+		 * @param tail
+		 *            the position following the last queued node.
+		 * @return the position following the last queued node afterwards.
+		 */
+		private int visit(int from, int to, int node, int tail) {
+			final int id = ids[node];
+			if (id >= from && id < to && stamps[node] != stamp) {
+				stamps[node] = stamp;
+				queue[tail++] = node;
+			}
+			return tail;
+		}
+
+	}
+
+}
@@ -0,0 +1,1142 @@
+package org.drmit.shortestpath.infrastructure.repository.partition;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.infrastructure.repository.memory.CompressedGraph;
+
+/**
+ * Immutable multi-level overlay graph of a logistics network, kept on disk
+ * and loaded cell by cell.
+ * <p>
+ * The network is split by a {@link Partition} into nested cells. A node is a
+ * boundary node of its cell of a level if a leg joins it to a node of another
+ * cell of that level. Every cell of every level keeps a clique: the length of
+ * the shortest path between each pair of its boundary nodes which stays within
+ * the cell, computed bottom up from the cliques of the level below. Together
+ * with the legs leaving the cells, the cliques form the overlay, which is the
+ * only part of the network held in memory for as long as the graph is
+ * queried.
+ * <p>
+ * The legs of the nodes of each cell of the first level are written as a
+ * compressed graph snapshot of their own, and mapped into memory through a
+ * {@link CellCache} only when a search scans them: those holding the origin
+ * and the destination of a query, and those along the route unpacked from the
+ * cliques. The location names are written sorted into an index which is
+ * mapped into memory and searched by bisection.
+ *
+ * @author Leandro Ferreira
+ */
+final class PartitionedGraph {
+
+	/** Magic number identifying an overlay file ("LGP1"). */
+	private static final int OVERLAY_MAGIC = 0x4C475031;
+
+	/** Version of the overlay format. */
+	private static final int OVERLAY_VERSION = 2;
+
+	/** Name of the overlay file. */
+	static final String OVERLAY_FILE = "overlay";
+
+	/** Name of the location name index file. */
+	private static final String NAMES_FILE = "names";
+
+	/** Extension of the cell files. */
+	private static final String CELL_EXTENSION = ".graph";
+
+	/** Bytes in an int. */
+	private static final int INT_BYTES = 4;
+
+	/** Directory the graph is kept in, or null if it was not written. */
+	private final File directory;
+
+	/** Cache the cells are loaded through, or null if they are held. */
+	private final CellCache cache;
+
+	/** Cells of the first level of a graph built in memory, or null. */
+	private final Cell[] cells;
+
+	/**
+	 * Location name index: the node count, the offset of each name followed by
+	 * the size of the names, the partitioned id of each name, then the UTF-8
+	 * names, sorted.
+	 */
+	private final ByteBuffer names;
+
+	/** Number of nodes. */
+	private final int nodeCount;
+
+	/** Offsets of the cells of each level, indexed by level minus one. */
+	private final int[][] cellOffsets;
+
+	/**
+	 * Position of the external ids of each cell of the first level (length is
+	 * c + 1).
+	 */
+	private final int[] externalOffsets;
+
+	/** Partitioned ids of the targets outside the cells of the first level. */
+	private final int[] externalIds;
+
+	/**
+	 * Position of the first boundary node of each cell of each level, indexed
+	 * by level minus one.
+	 */
+	private final int[][] boundaryOffsets;
+
+	/**
+	 * Boundary nodes of each level, by increasing partitioned id, indexed by
+	 * level minus one.
+	 */
+	private final int[][] boundaryNodes;
+
+	/**
+	 * Position of the clique of each cell of each level, indexed by level
+	 * minus one.
+	 */
+	private final int[][] cliqueOffsets;
+
+	/**
+	 * Cliques of the cells of each level, as row-major matrices of distances
+	 * between their boundary nodes, indexed by level minus one.
+	 */
+	private final double[][] cliques;
+
+	/**
+	 * Position of the first leg leaving its cell of each boundary node of the
+	 * first level (length is b + 1).
+	 */
+	private final int[] cutOffsets;
+
+	/** Partitioned id of the target of each leg leaving its cell. */
+	private final int[] cutTargets;
+
+	/** Distance covered by each leg leaving its cell. */
+	private final double[] cutDistances;
+
+	/** Edge id of each leg leaving its cell, in the cell it leaves. */
+	private final int[] cutEdges;
+
+	/**
+	 * Constructs a PartitionedGraph object.
+	 *
+	 * @param directory
+	 *            the directory the graph is kept in, or null.
+	 * @param cache
+	 *            the cache the cells are loaded through, or null.
+	 * @param cells
+	 *            the cells of the first level, or null.
+	 * @param names
+	 *            the location name index.
+	 * @param nodeCount
+	 *            the number of nodes.
+	 * @param cellOffsets
+	 *            the offsets of the cells of each level.
+	 * @param externalOffsets
+	 *            the position of the external ids of each cell.
+	 * @param externalIds
+	 *            the partitioned ids of the targets outside the cells.
+	 * @param boundaryOffsets
+	 *            the position of the first boundary node of each cell.
+	 * @param boundaryNodes
+	 *            the boundary nodes of each level.
+	 * @param cliques
+	 *            the cliques of the cells of each level.
+	 * @param cutOffsets
+	 *            the position of the first leg leaving its cell of each
+	 *            boundary node.
+	 * @param cutTargets
+	 *            the target of each leg leaving its cell.
+	 * @param cutDistances
+	 *            the distance covered by each leg leaving its cell.
+	 * @param cutEdges
+	 *            the edge id of each leg leaving its cell.
+	 */
+	private PartitionedGraph(File directory, CellCache cache, Cell[] cells,
+			ByteBuffer names, int nodeCount, int[][] cellOffsets,
+			int[] externalOffsets, int[] externalIds,
+			int[][] boundaryOffsets, int[][] boundaryNodes,
+			double[][] cliques, int[] cutOffsets, int[] cutTargets,
+			double[] cutDistances, int[] cutEdges) {
+		this.directory = directory;
+		this.cache = cache;
+		this.cells = cells;
+		this.names = names;
+		this.nodeCount = nodeCount;
+		this.cellOffsets = cellOffsets;
+		this.externalOffsets = externalOffsets;
+		this.externalIds = externalIds;
+		this.boundaryOffsets = boundaryOffsets;
+		this.boundaryNodes = boundaryNodes;
+		this.cliques = cliques;
+		this.cutOffsets = cutOffsets;
+		this.cutTargets = cutTargets;
+		this.cutDistances = cutDistances;
+		this.cutEdges = cutEdges;
+
+		// Places the cliques of each level back to back
+		this.cliqueOffsets = new int[cellOffsets.length][];
+		for (int level = 0; level < cellOffsets.length; level++) {
+			final int cellCount = cellOffsets[level].length - 1;
+			final int[] offsets = new int[cellCount + 1];
+			for (int cell = 0; cell < cellCount; cell++) {
+				final long size = boundaryOffsets[level][cell + 1]
+						- boundaryOffsets[level][cell];
+				final long offset = offsets[cell] + size * size;
+				if (offset > Integer.MAX_VALUE) {
+					throw new IllegalStateException(String.format(
+							"Cliques of level %d do not fit in an array",
+							level + 1));
+				}
+				offsets[cell + 1] = (int) offset;
+			}
+			cliqueOffsets[level] = offsets;
+		}
+	}
+
+	/**
+	 * Builds the overlay graph of a compressed graph in memory, holding all of
+	 * its cells. The cliques are computed level by level, each from searches
+	 * over the level below restricted to its cell.
+	 *
+	 * @param graph
+	 *            the compressed graph.
+	 * @param cellSize
+	 *            the maximum number of nodes in a cell of the first level.
+	 * @param fanout
+	 *            the factor the maximum number of nodes in a cell grows by
+	 *            from a level to the next.
+	 * @return the overlay graph.
+	 * @throws IllegalArgumentException
+	 *             if graph is null, if cellSize is not positive or if fanout
+	 *             is less than 2.
+	 * @throws IllegalStateException
+	 *             if the cliques of a level do not fit in an array.
+	 */
+	static PartitionedGraph build(CompressedGraph graph, int cellSize,
+			int fanout) {
+		try {
+			return build(graph, cellSize, fanout, null, null);
+		} catch (IOException e) {
+			// Cells built in memory are never loaded
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Builds the overlay graph of a compressed graph into a directory, which
+	 * is created if needed, and opens it. The cells are split and written one
+	 * at a time, and the cliques are computed from the cells loaded back
+	 * through the given cache, so only the overlay and the cells the cache
+	 * holds are kept on the heap besides the compressed graph, which may be
+	 * mapped from a snapshot. The overlay is written last, so a directory
+	 * without it holds no complete graph.
+	 *
+	 * @param graph
+	 *            the compressed graph.
+	 * @param cellSize
+	 *            the maximum number of nodes in a cell of the first level.
+	 * @param fanout
+	 *            the factor the maximum number of nodes in a cell grows by
+	 *            from a level to the next.
+	 * @param directory
+	 *            the directory to write to.
+	 * @param cache
+	 *            the cache the cells are loaded through.
+	 * @param networkVersion
+	 *            the version of the network the graph holds the writes of.
+	 * @return the graph, opened from the directory.
+	 * @throws IllegalArgumentException
+	 *             if graph, directory or cache is null, if cellSize is not
+	 *             positive or if fanout is less than 2.
+	 * @throws IllegalStateException
+	 *             if the cliques of a level do not fit in an array.
+	 * @throws IOException
+	 *             if the graph could not be written or read back.
+	 */
+	static PartitionedGraph build(CompressedGraph graph, int cellSize,
+			int fanout, File directory, CellCache cache, long networkVersion)
+			throws IOException {
+		if (directory == null) {
+			throw new IllegalArgumentException("directory is null");
+		}
+		if (cache == null) {
+			throw new IllegalArgumentException("cache is null");
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create " + directory);
+		}
+
+		final PartitionedGraph built = build(graph, cellSize, fanout,
+				directory, cache);
+		try {
+			built.writeNames(directory);
+			built.writeOverlay(directory, networkVersion);
+		} finally {
+			// Drops the cells loaded by the clique searches
+			cache.remove(built);
+		}
+		return open(directory, cache);
+	}
+
+	/**
+	 * Builds the overlay graph of a compressed graph, holding its cells or
+	 * writing them to a directory one at a time.
+	 *
+	 * @param graph
+	 *            the compressed graph.
+	 * @param cellSize
+	 *            the maximum number of nodes in a cell of the first level.
+	 * @param fanout
+	 *            the factor the maximum number of nodes in a cell grows by
+	 *            from a level to the next.
+	 * @param directory
+	 *            the directory the cells are written to, or null to hold
+	 *            them.
+	 * @param cache
+	 *            the cache the written cells are loaded through, or null.
+	 * @return the overlay graph, without its names and overlay written.
+	 * @throws IOException
+	 *             if a cell could not be written or read back.
+	 */
+	private static PartitionedGraph build(CompressedGraph graph,
+			int cellSize, int fanout, File directory, CellCache cache)
+			throws IOException {
+		final Partition partition = Partition.build(graph, cellSize, fanout);
+		final int nodeCount = partition.getNodeCount();
+		final int levelCount = partition.getLevelCount();
+		final int[][] cellOffsets = new int[levelCount][];
+		for (int level = 1; level <= levelCount; level++) {
+			cellOffsets[level - 1] = partition.getCellOffsets(level);
+		}
+
+		// Finds the highest level each node is a boundary node of, and
+		// counts the legs leaving the cells of the first level
+		final int[] boundaryLevels = new int[nodeCount];
+		final int edgeCount = graph.getEdgeCount();
+		int cutCount = 0;
+		for (int edge = 0; edge < edgeCount; edge++) {
+			final int source = partition.getId(graph.getEdgeSource(edge));
+			final int target = partition.getId(graph.getEdgeTarget(edge));
+			for (int level = levelCount; level > 0; level--) {
+				if (getCell(cellOffsets, level, source) != getCell(
+						cellOffsets, level, target)) {
+					boundaryLevels[source] = Math.max(boundaryLevels[source],
+							level);
+					boundaryLevels[target] = Math.max(boundaryLevels[target],
+							level);
+					break;
+				}
+			}
+			if (getCell(cellOffsets, 1, source) != getCell(cellOffsets, 1,
+					target)) {
+				cutCount++;
+			}
+		}
+
+		// Lists the boundary nodes of each cell of each level
+		final int[][] boundaryOffsets = new int[levelCount][];
+		final int[][] boundaryNodes = new int[levelCount][];
+		for (int level = 1; level <= levelCount; level++) {
+			final int[] offsets = cellOffsets[level - 1];
+			final int[] boundaryOffset = new int[offsets.length];
+			int count = 0;
+			for (int cell = 0; cell < offsets.length - 1; cell++) {
+				for (int id = offsets[cell]; id < offsets[cell + 1]; id++) {
+					if (boundaryLevels[id] >= level) {
+						count++;
+					}
+				}
+				boundaryOffset[cell + 1] = count;
+			}
+			final int[] nodes = new int[count];
+			count = 0;
+			for (int id = 0; id < nodeCount; id++) {
+				if (boundaryLevels[id] >= level) {
+					nodes[count++] = id;
+				}
+			}
+			boundaryOffsets[level - 1] = boundaryOffset;
+			boundaryNodes[level - 1] = nodes;
+		}
+
+		// Splits the legs into the cells of the first level one cell at a
+		// time, listing the legs leaving each of them
+		final int[] firstOffsets = cellOffsets[0];
+		final int cellCount = firstOffsets.length - 1;
+		final CompressedGraph[] cellGraphs = (directory == null) ? new CompressedGraph[cellCount]
+				: null;
+		final int[] externalOffsets = new int[cellCount + 1];
+		final List<int[]> externals = new ArrayList<int[]>();
+		final int[] cutOffsets = new int[boundaryNodes[0].length + 1];
+		final int[] cutTargets = new int[cutCount];
+		final double[] cutDistances = new double[cutCount];
+		final int[] cutEdges = new int[cutCount];
+		int boundary = 0;
+		int cut = 0;
+		for (int cell = 0; cell < cellCount; cell++) {
+			final int start = firstOffsets[cell];
+			final int size = firstOffsets[cell + 1] - start;
+			final List<String> cellNames = new ArrayList<String>(size);
+			final List<Leg> legs = new ArrayList<Leg>();
+			for (int id = start; id < start + size; id++) {
+				final int node = partition.getNode(id);
+				cellNames.add(graph.getNodeName(node));
+				for (int edge = graph.getFirstEdge(node); edge < graph
+						.getLastEdge(node); edge++) {
+					legs.add(graph.toLeg(edge));
+				}
+			}
+			final CompressedGraph cellGraph = CompressedGraph.build(legs,
+					cellNames);
+
+			final int[] external = new int[cellGraph.getNodeCount() - size];
+			for (int i = 0; i < external.length; i++) {
+				external[i] = partition.getId(graph.getNodeId(cellGraph
+						.getNodeName(size + i)));
+			}
+			externals.add(external);
+			externalOffsets[cell + 1] = externalOffsets[cell]
+					+ external.length;
+
+			for (int id = start; id < start + size; id++) {
+				if (boundaryLevels[id] < 1) {
+					continue;
+				}
+				for (int edge = cellGraph.getFirstEdge(id - start); edge < cellGraph
+						.getLastEdge(id - start); edge++) {
+					final int target = cellGraph.getEdgeTarget(edge);
+					if (target >= size) {
+						cutEdges[cut] = edge;
+						cutTargets[cut] = external[target - size];
+						cutDistances[cut] = cellGraph.getEdgeDistance(edge);
+						cut++;
+					}
+				}
+				cutOffsets[++boundary] = cut;
+			}
+
+			if (directory == null) {
+				cellGraphs[cell] = cellGraph;
+			} else {
+				cellGraph.write(getCellFile(directory, cell));
+			}
+		}
+		final int[] externalIds = new int[externalOffsets[cellCount]];
+		for (int cell = 0; cell < cellCount; cell++) {
+			System.arraycopy(externals.get(cell), 0, externalIds,
+					externalOffsets[cell], externals.get(cell).length);
+		}
+		Cell[] cells = null;
+		if (directory == null) {
+			cells = new Cell[cellCount];
+			for (int cell = 0; cell < cellCount; cell++) {
+				cells[cell] = new Cell(cellGraphs[cell], firstOffsets[cell],
+						firstOffsets[cell + 1] - firstOffsets[cell],
+						externalIds, externalOffsets[cell]);
+			}
+		}
+
+		final String[] locations = new String[nodeCount];
+		for (int id = 0; id < nodeCount; id++) {
+			locations[id] = graph.getNodeName(partition.getNode(id));
+		}
+		final double[][] cliques = new double[levelCount][];
+		final PartitionedGraph built = new PartitionedGraph(directory, cache,
+				cells, index(locations), nodeCount, cellOffsets,
+				externalOffsets, externalIds, boundaryOffsets, boundaryNodes,
+				cliques, cutOffsets, cutTargets, cutDistances, cutEdges);
+
+		// Computes the cliques bottom up, each level searching the cliques of
+		// the levels below
+		final OverlaySearch search = new OverlaySearch(built);
+		for (int level = 1; level <= levelCount; level++) {
+			final int[] offsets = built.cliqueOffsets[level - 1];
+			final double[] clique = new double[offsets[offsets.length - 1]];
+			cliques[level - 1] = clique;
+			for (int cell = 0; cell < offsets.length - 1; cell++) {
+				final int first = built.getFirstBoundary(level, cell);
+				final int size = built.getLastBoundary(level, cell) - first;
+				for (int i = 0; i < size; i++) {
+					search.run(built.getBoundaryNode(level, first + i), -1,
+							level);
+					for (int j = 0; j < size; j++) {
+						clique[offsets[cell] + i * size + j] = search
+								.getDistance(built.getBoundaryNode(level, first
+										+ j));
+					}
+				}
+			}
+		}
+		return built;
+	}
+
+	/**
+	 * Builds the location name index.
+	 *
+	 * @param locations
+	 *            the location names indexed by partitioned id.
+	 * @return the index.
+	 */
+	private static ByteBuffer index(final String[] locations) {
+		final Integer[] order = new Integer[locations.length];
+		for (int id = 0; id < order.length; id++) {
+			order[id] = id;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer id1, Integer id2) {
+				return locations[id1].compareTo(locations[id2]);
+			}
+		});
+
+		final byte[][] encoded = new byte[order.length][];
+		int size = 0;
+		for (int i = 0; i < order.length; i++) {
+			encoded[i] = locations[order[i]].getBytes(StandardCharsets.UTF_8);
+			size += encoded[i].length;
+		}
+		try {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			final DataOutputStream output = new DataOutputStream(bytes);
+			output.writeInt(order.length);
+			int offset = 0;
+			for (byte[] name : encoded) {
+				output.writeInt(offset);
+				offset += name.length;
+			}
+			output.writeInt(size);
+			for (Integer id : order) {
+				output.writeInt(id);
+			}
+			for (byte[] name : encoded) {
+				output.write(name);
+			}
+			return ByteBuffer.wrap(bytes.toByteArray());
+		} catch (IOException e) {
+			// Byte array streams never fail
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Writes this graph to a directory, which is created if needed, for
+	 * {@link #open(File, CellCache)} to load it, without a network version.
+	 *
+	 * @param directory
+	 *            the directory to write to.
+	 * @throws IllegalArgumentException
+	 *             if directory is null.
+	 * @throws IllegalStateException
+	 *             if the cells of this graph are not held.
+	 * @throws IOException
+	 *             if the graph could not be written.
+	 */
+	void write(File directory) throws IOException {
+		write(directory, 0);
+	}
+
+	/**
+	 * Writes this graph to a directory, which is created if needed, for
+	 * {@link #open(File, CellCache)} to load it. The overlay is written last,
+	 * so a directory without it holds no complete graph.
+	 *
+	 * @param directory
+	 *            the directory to write to.
+	 * @param networkVersion
+	 *            the version of the network the graph holds the writes of.
+	 * @throws IllegalArgumentException
+	 *             if directory is null.
+	 * @throws IllegalStateException
+	 *             if the cells of this graph are not held.
+	 * @throws IOException
+	 *             if the graph could not be written.
+	 */
+	void write(File directory, long networkVersion) throws IOException {
+		if (directory == null) {
+			throw new IllegalArgumentException("directory is null");
+		}
+		if (cells == null) {
+			throw new IllegalStateException("cells are not held");
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create " + directory);
+		}
+
+		writeNames(directory);
+		for (int cell = 0; cell < cells.length; cell++) {
+			cells[cell].getGraph().write(getCellFile(directory, cell));
+		}
+		writeOverlay(directory, networkVersion);
+	}
+
+	/**
+	 * Writes the location name index to a directory.
+	 *
+	 * @param directory
+	 *            the directory to write to.
+	 * @throws IOException
+	 *             if the index could not be written.
+	 */
+	private void writeNames(File directory) throws IOException {
+		final File namesFile = new File(directory, NAMES_FILE);
+		try (final FileOutputStream output = new FileOutputStream(namesFile)) {
+			output.write(names.array(), names.arrayOffset(), names.limit());
+		}
+	}
+
+	/**
+	 * Writes the overlay to a directory, replacing it atomically.
+	 *
+	 * @param directory
+	 *            the directory to write to.
+	 * @param networkVersion
+	 *            the version of the network the graph holds the writes of.
+	 * @throws IOException
+	 *             if the overlay could not be written.
+	 */
+	private void writeOverlay(File directory, long networkVersion)
+			throws IOException {
+		final File overlayFile = new File(directory, OVERLAY_FILE);
+		final File temporary = new File(overlayFile.getPath() + ".tmp");
+		try (final DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(temporary)))) {
+			output.writeInt(OVERLAY_MAGIC);
+			output.writeInt(OVERLAY_VERSION);
+			output.writeLong(networkVersion);
+			output.writeInt(nodeCount);
+			output.writeInt(cellOffsets.length);
+			for (int level = 0; level < cellOffsets.length; level++) {
+				writeInts(output, cellOffsets[level]);
+				writeInts(output, boundaryOffsets[level]);
+				writeInts(output, boundaryNodes[level]);
+				writeDoubles(output, cliques[level]);
+			}
+			writeInts(output, externalOffsets);
+			writeInts(output, externalIds);
+			writeInts(output, cutOffsets);
+			writeInts(output, cutTargets);
+			writeDoubles(output, cutDistances);
+			writeInts(output, cutEdges);
+		}
+		Files.move(temporary.toPath(), overlayFile.toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Writes an array as its length followed by its elements.
+	 *
+	 * @param output
+	 *            the stream to write to.
+	 * @param array
+	 *            the array to be written.
+	 * @throws IOException
+	 *             if the array could not be written.
+	 */
+	private static void writeInts(DataOutputStream output, int[] array)
+			throws IOException {
+		output.writeInt(array.length);
+		for (int value : array) {
+			output.writeInt(value);
+		}
+	}
+
+	/**
+	 * Writes an array as its length followed by its elements.
+	 *
+	 * @param output
+	 *            the stream to write to.
+	 * @param array
+	 *            the array to be written.
+	 * @throws IOException
+	 *             if the array could not be written.
+	 */
+	private static void writeDoubles(DataOutputStream output, double[] array)
+			throws IOException {
+		output.writeInt(array.length);
+		for (double value : array) {
+			output.writeDouble(value);
+		}
+	}
+
+	/**
+	 * Opens a graph written by {@link #write(File)}. The overlay is read into
+	 * the heap, the name index is mapped into memory and the cells are loaded
+	 * through the given cache as the searches scan them.
+	 *
+	 * @param directory
+	 *            the directory the graph was written to.
+	 * @param cache
+	 *            the cache the cells are loaded through.
+	 * @return the graph.
+	 * @throws IllegalArgumentException
+	 *             if directory or cache is null.
+	 * @throws IOException
+	 *             if the overlay or the name index could not be read, or if
+	 *             the overlay was written in another version of the format.
+	 */
+	static PartitionedGraph open(File directory, CellCache cache)
+			throws IOException {
+		if (directory == null) {
+			throw new IllegalArgumentException("directory is null");
+		}
+		if (cache == null) {
+			throw new IllegalArgumentException("cache is null");
+		}
+
+		final File overlayFile = new File(directory, OVERLAY_FILE);
+		try (final DataInputStream input = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(overlayFile)))) {
+			if (input.readInt() != OVERLAY_MAGIC) {
+				throw new IOException(overlayFile + " is not an overlay");
+			}
+			if (input.readInt() != OVERLAY_VERSION) {
+				throw new IOException(overlayFile
+						+ " was written in another overlay version");
+			}
+			input.readLong();
+			final int nodeCount = input.readInt();
+			final int levelCount = input.readInt();
+			final int[][] cellOffsets = new int[levelCount][];
+			final int[][] boundaryOffsets = new int[levelCount][];
+			final int[][] boundaryNodes = new int[levelCount][];
+			final double[][] cliques = new double[levelCount][];
+			for (int level = 0; level < levelCount; level++) {
+				cellOffsets[level] = readInts(input);
+				boundaryOffsets[level] = readInts(input);
+				boundaryNodes[level] = readInts(input);
+				cliques[level] = readDoubles(input);
+			}
+			final int[] externalOffsets = readInts(input);
+			final int[] externalIds = readInts(input);
+			final int[] cutOffsets = readInts(input);
+			final int[] cutTargets = readInts(input);
+			final double[] cutDistances = readDoubles(input);
+			final int[] cutEdges = readInts(input);
+
+			return new PartitionedGraph(directory, cache, null, map(new File(
+					directory, NAMES_FILE)), nodeCount, cellOffsets,
+					externalOffsets, externalIds, boundaryOffsets,
+					boundaryNodes, cliques, cutOffsets, cutTargets,
+					cutDistances, cutEdges);
+		} catch (EOFException | NegativeArraySizeException e) {
+			throw new IOException(overlayFile + " is truncated", e);
+		}
+	}
+
+	/**
+	 * Reads the version of the network a graph written to a directory holds
+	 * the writes of, without opening it.
+	 *
+	 * @param directory
+	 *            the directory the graph was written to.
+	 * @return the network version, 0 if none was given.
+	 * @throws IllegalArgumentException
+	 *             if directory is null.
+	 * @throws IOException
+	 *             if the overlay could not be read, or if it was written in
+	 *             another version of the format.
+	 */
+	static long readNetworkVersion(File directory) throws IOException {
+		if (directory == null) {
+			throw new IllegalArgumentException("directory is null");
+		}
+
+		final File overlayFile = new File(directory, OVERLAY_FILE);
+		try (final DataInputStream input = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(overlayFile)))) {
+			if (input.readInt() != OVERLAY_MAGIC) {
+				throw new IOException(overlayFile + " is not an overlay");
+			}
+			if (input.readInt() != OVERLAY_VERSION) {
+				throw new IOException(overlayFile
+						+ " was written in another overlay version");
+			}
+			return input.readLong();
+		} catch (EOFException e) {
+			throw new IOException(overlayFile + " is truncated", e);
+		}
+	}
+
+	/**
+	 * Reads an array written by {@link #writeInts(DataOutputStream, int[])}.
+	 *
+	 * @param input
+	 *            the stream to read from.
+	 * @return the array read.
+	 * @throws IOException
+	 *             if the array could not be read.
+	 */
+	private static int[] readInts(DataInputStream input) throws IOException {
+		final int[] array = new int[input.readInt()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = input.readInt();
+		}
+		return array;
+	}
+
+	/**
+	 * Reads an array written by
+	 * {@link #writeDoubles(DataOutputStream, double[])}.
+	 *
+	 * @param input
+	 *            the stream to read from.
+	 * @return the array read.
+	 * @throws IOException
+	 *             if the array could not be read.
+	 */
+	private static double[] readDoubles(DataInputStream input)
+			throws IOException {
+		final double[] array = new double[input.readInt()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = input.readDouble();
+		}
+		return array;
+	}
+
+	/**
+	 * Maps a file into memory.
+	 *
+	 * @param file
+	 *            the file.
+	 * @return a read-only buffer mapping the file.
+	 * @throws IOException
+	 *             if the file could not be mapped.
+	 */
+	private static ByteBuffer map(File file) throws IOException {
+		try (final FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(file + " is too large to be mapped");
+			}
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size());
+		}
+	}
+
+	/**
+	 * Gets the file a cell of the first level is written to.
+	 *
+	 * @param directory
+	 *            the directory the graph is written to.
+	 * @param cell
+	 *            the cell index.
+	 * @return the cell file.
+	 */
+	private static File getCellFile(File directory, int cell) {
+		return new File(directory, cell + CELL_EXTENSION);
+	}
+
+	/**
+	 * Loads a cell of the first level from its file. Only called by the cell
+	 * cache.
+	 *
+	 * @param cell
+	 *            the cell index.
+	 * @return the cell.
+	 * @throws IOException
+	 *             if the cell could not be read.
+	 */
+	Cell loadCell(int cell) throws IOException {
+		final int[] offsets = cellOffsets[0];
+		return new Cell(CompressedGraph.map(getCellFile(directory, cell)),
+				offsets[cell], offsets[cell + 1] - offsets[cell],
+				externalIds, externalOffsets[cell]);
+	}
+
+	/**
+	 * Gets a cell of the first level, loading it if it is not held.
+	 *
+	 * @param cell
+	 *            the cell index.
+	 * @return the cell.
+	 * @throws IOException
+	 *             if the cell could not be loaded.
+	 */
+	Cell getCell(int cell) throws IOException {
+		return (cells != null) ? cells[cell] : cache.get(this, cell);
+	}
+
+	/**
+	 * Gets the number of nodes.
+	 *
+	 * @return the number of nodes.
+	 */
+	int getNodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * Gets the number of levels.
+	 *
+	 * @return the number of levels, at least one.
+	 */
+	int getLevelCount() {
+		return cellOffsets.length;
+	}
+
+	/**
+	 * Gets the number of cells of a level.
+	 *
+	 * @param level
+	 *            the level, starting at one.
+	 * @return the number of cells.
+	 */
+	int getCellCount(int level) {
+		return cellOffsets[level - 1].length - 1;
+	}
+
+	/**
+	 * Gets the partitioned id of the location with the given name, searching
+	 * the name index by bisection.
+	 *
+	 * @param name
+	 *            the location name.
+	 * @return the partitioned id, or -1 if the graph has no such location.
+	 */
+	int getNodeId(String name) {
+		final int count = names.getInt(0);
+		final int data = INT_BYTES * (2 + 2 * count);
+		int low = 0;
+		int high = count - 1;
+		while (low <= high) {
+			final int middle = (low + high) >>> 1;
+			final int offset = names.getInt(INT_BYTES * (1 + middle));
+			final int end = names.getInt(INT_BYTES * (2 + middle));
+			final byte[] bytes = new byte[end - offset];
+			for (int i = 0; i < bytes.length; i++) {
+				bytes[i] = names.get(data + offset + i);
+			}
+			final int comparison = new String(bytes, StandardCharsets.UTF_8)
+					.compareTo(name);
+			if (comparison < 0) {
+				low = middle + 1;
+			} else if (comparison > 0) {
+				high = middle - 1;
+			} else {
+				return names.getInt(INT_BYTES * (2 + count + middle));
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Gets the cell of a level holding a node.
+	 *
+	 * @param cellOffsets
+	 *            the offsets of the cells of each level.
+	 * @param level
+	 *            the level, starting at one.
+	 * @param id
+	 *            the partitioned id of the node.
+	 * @return the cell index.
+	 */
+	private static int getCell(int[][] cellOffsets, int level, int id) {
+		final int[] offsets = cellOffsets[level - 1];
+		final int position = Arrays.binarySearch(offsets, 0,
+				offsets.length - 1, id);
+		return (position >= 0) ? position : -position - 2;
+	}
+
+	/**
+	 * Gets the cell of a level holding a node.
+	 *
+	 * @param level
+	 *            the level, starting at one.
+	 * @param id
+	 *            the partitioned id of the node.
+	 * @return the cell index.
+	 */
+	int getCell(int level, int id) {
+		return getCell(cellOffsets, level, id);
+	}
+
+	/**
+	 * Gets the partitioned id of the first node of a cell.
+	 *
+	 * @param level
+	 *            the level, starting at one.
+	 * @param cell
+	 *            the cell index.
+	 * @return the partitioned id of the first node.
+	 */
+	int getCellStart(int level, int cell) {
+		return cellOffsets[level - 1][cell];
+	}
+
+	/**
+	 * Gets the partitioned id following the last node of a cell.
+	 *
+	 * @param level
+	 *            the level, starting at one.
+	 * @param cell
+	 *            the cell index.
+	 * @return the exclusive upper bound of the partitioned ids of the cell.
+	 */
+	int getCellEnd(int level, int cell) {
+		return cellOffsets[level - 1][cell + 1];
+	}
+
+	/**
+	 * Gets the position of a boundary node of a level.
+	 *
+	 * @param level
+	 *            the level, starting at one.
+	 * @param id
+	 *            the partitioned id of the node.
+	 * @return the position of the node, or a negative value if it is not a
+	 *         boundary node of the level.
+	 */
+	int getBoundaryPosition(int level, int id) {
+		return Arrays.binarySearch(boundaryNodes[level - 1], id);
+	}
+
+	/**
+	 * Gets the position of the first boundary node of a cell.
+	 *
+	 * @param level
+	 *            the level, starting at one.
+	 * @param cell
+	 *            the cell index.
+	 * @return the position of the first boundary node.
+	 */
+	int getFirstBoundary(int level, int cell) {
+		return boundaryOffsets[level - 1][cell];
+	}
+
+	/**
+	 * Gets the position following the last boundary node of a cell.
+	 *
+	 * @param level
+	 *            the level, starting at one.
+	 * @param cell
+	 *            the cell index.
+	 * @return the exclusive upper bound of the boundary node positions.
+	 */
+	int getLastBoundary(int level, int cell) {
+		return boundaryOffsets[level - 1][cell + 1];
+	}
+
+	/**
+	 * Gets the boundary node at the given position.
+	 *
+	 * @param level
+	 *            the level, starting at one.
+	 * @param position
+	 *            the position of the boundary node.
+	 * @return the partitioned id of the node.
+	 */
+	int getBoundaryNode(int level, int position) {
+		return boundaryNodes[level - 1][position];
+	}
+
+	/**
+	 * Gets the length of the shortest path within a cell between two of its
+	 * boundary nodes.
+	 *
+	 * @param level
+	 *            the level, starting at one.
+	 * @param cell
+	 *            the cell index.
+	 * @param from
+	 *            the position of the source boundary node.
+	 * @param to
+	 *            the position of the target boundary node.
+	 * @return the length of the shortest path, or positive infinity if the
+	 *         target cannot be reached within the cell.
+	 */
+	double getCliqueDistance(int level, int cell, int from, int to) {
+		final int first = boundaryOffsets[level - 1][cell];
+		final int size = boundaryOffsets[level - 1][cell + 1] - first;
+		return cliques[level - 1][cliqueOffsets[level - 1][cell]
+				+ (from - first) * size + to - first];
+	}
+
+	/**
+	 * Gets the position of the first leg leaving its cell of the first level
+	 * from a boundary node.
+	 *
+	 * @param position
+	 *            the position of the boundary node in the first level.
+	 * @return the position of the first leg.
+	 */
+	int getFirstCutEdge(int position) {
+		return cutOffsets[position];
+	}
+
+	/**
+	 * Gets the position following the last leg leaving its cell of the first
+	 * level from a boundary node.
+	 *
+	 * @param position
+	 *            the position of the boundary node in the first level.
+	 * @return the exclusive upper bound of the leg positions.
+	 */
+	int getLastCutEdge(int position) {
+		return cutOffsets[position + 1];
+	}
+
+	/**
+	 * Gets the target of a leg leaving its cell.
+	 *
+	 * @param cut
+	 *            the position of the leg.
+	 * @return the partitioned id of the target node.
+	 */
+	int getCutEdgeTarget(int cut) {
+		return cutTargets[cut];
+	}
+
+	/**
+	 * Gets the distance covered by a leg leaving its cell.
+	 *
+	 * @param cut
+	 *            the position of the leg.
+	 * @return the distance covered by the leg.
+	 */
+	double getCutEdgeDistance(int cut) {
+		return cutDistances[cut];
+	}
+
+	/**
+	 * Gets the edge id of a leg leaving its cell, in the cell it leaves.
+	 *
+	 * @param cut
+	 *            the position of the leg.
+	 * @return the edge id.
+	 */
+	int getCutEdge(int cut) {
+		return cutEdges[cut];
+	}
+
+	/**
+	 * Gets the number of boundary nodes of the first level, where the cells
+	 * are joined by legs.
+	 *
+	 * @return the number of boundary nodes.
+	 */
+	int getBoundaryNodeCount() {
+		return boundaryNodes[0].length;
+	}
+
+}
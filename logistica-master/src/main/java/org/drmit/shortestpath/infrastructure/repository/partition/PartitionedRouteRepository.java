@@ -0,0 +1,1084 @@
+package org.drmit.shortestpath.infrastructure.repository.partition;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.drmit.shortestpath.domain.model.DistanceMatrix;
+import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.domain.model.Route;
+import org.drmit.shortestpath.domain.model.ShortestPathTree;
+import org.drmit.shortestpath.domain.model.TimedRoute;
+import org.drmit.shortestpath.domain.model.VehicleProfile;
+import org.drmit.shortestpath.infrastructure.repository.RepositoryExeption;
+import org.drmit.shortestpath.infrastructure.repository.RouteNotFoundRepositoryExeption;
+import org.drmit.shortestpath.infrastructure.repository.RouteRepository;
+import org.drmit.shortestpath.infrastructure.repository.memory.CompressedGraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * RouteRepository implementation answering shortest route queries from a
+ * multi-level overlay graph per network, kept on disk and loaded cell by cell,
+ * for networks too large to be held in memory as a whole.
+ * <p>
+ * Writes are delegated to an underlying durable repository. After every write
+ * to a network, its overlay is built again in the background, written to a new
+ * directory and swapped in, and until then the queries on that network are
+ * delegated to the durable repository, so that they never see a network
+ * before a write which already returned. Overlays are opened from their
+ * directories at construction time, and the networks without one are built in
+ * the background. Each overlay records the version of its network in the
+ * durable repository, and one whose network has been written since, such as
+ * by an offline import, is dropped at construction time and built again.
+ * <p>
+ * The directory is locked while any repository of this process is open on it.
+ * Repositories sharing it number their overlay directories from a single
+ * sequence, and only delete those which none of them uses: neither queried nor
+ * being built. Repositories must be destroyed once no longer used, to stop
+ * their builder thread and release the directory.
+ * <p>
+ * Only the overlay of each network, the cliques of its cells and the legs
+ * joining them, is held in memory. The legs within the cells are loaded
+ * through a cache shared by all the networks, which evicts the least recently
+ * used cell once full, so the memory taken by the queries follows their
+ * working set rather than the size of the networks. Overlays are built the
+ * same way: the network is mapped from a snapshot and split into cells
+ * written one at a time. Cheapest, fastest and alternative routes and
+ * shortest path trees are not answered from the overlay, and are always
+ * delegated to the durable repository, whose Neo4j implementations answer
+ * all of them.
+ *
+ * @author Leandro Ferreira
+ */
+public class PartitionedRouteRepository implements RouteRepository {
+
+	/** Logger. */
+	private static final Logger logger = LoggerFactory
+			.getLogger(PartitionedRouteRepository.class);
+
+	/** Default maximum number of nodes in a cell of the first level. */
+	public static final int DEFAULT_CELL_SIZE = 1024;
+
+	/** Default factor the size of the cells grows by from a level to the next. */
+	public static final int DEFAULT_FANOUT = 16;
+
+	/** Default maximum number of cells held in memory. */
+	public static final int DEFAULT_MAXIMUM_CELL_COUNT = 1024;
+
+	/** Name of the snapshot a network is mapped from while it is built. */
+	private static final String NETWORK_FILE = "network.graph";
+
+	/** Underlying durable route repository. */
+	private RouteRepository durableRepository = null;
+
+	/** Directory the overlays are kept in. */
+	private File directory = null;
+
+	/** Maximum number of nodes in a cell of the first level. */
+	private final int cellSize;
+
+	/** Factor the size of the cells grows by from a level to the next. */
+	private final int fanout;
+
+	/** Cells loaded from the overlays of every network. */
+	private final CellCache cache = new CellCache(DEFAULT_MAXIMUM_CELL_COUNT);
+
+	/** Overlays queries are answered from, by network name. */
+	private volatile Map<String, Overlay> overlays = Collections.emptyMap();
+
+	/** Number of writes to each network, by network name. */
+	private final ConcurrentMap<String, AtomicLong> writeCounts = new ConcurrentHashMap<String, AtomicLong>();
+
+	/** Directory the overlays are kept in, as locked for this process. */
+	private final OverlayDirectory openDirectory;
+
+	/** Overlay directories used by this repository. */
+	private final Set<File> usedDirectories = Collections
+			.synchronizedSet(new HashSet<File>());
+
+	/**
+	 * Single background thread building the overlays. At most one build is
+	 * pending at any time, since each build picks up the latest writes.
+	 */
+	private final ThreadPoolExecutor builder = new ThreadPoolExecutor(1, 1, 0,
+			TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(1),
+			new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					final Thread thread = new Thread(runnable,
+							"overlay-builder");
+					thread.setDaemon(true);
+					return thread;
+				}
+			}, new ThreadPoolExecutor.DiscardPolicy());
+
+	/** Whether the repository was destroyed. */
+	private volatile boolean destroyed = false;
+
+	/**
+	 * Builds the overlays of the networks which are not current.
+	 */
+	private final Runnable build = new Runnable() {
+		@Override
+		public void run() {
+			try {
+				for (String network : durableRepository.findNetworkNames()) {
+					if (destroyed) {
+						return;
+					}
+					if (!isOverlayCurrent(network)) {
+						build(network);
+					}
+				}
+			} catch (RepositoryExeption e) {
+				logger.error(e.getMessage(), e);
+			}
+		}
+	};
+
+	/**
+	 * Constructs a PartitionedRouteRepository object with cells of the
+	 * default size.
+	 *
+	 * @param durableRepository
+	 *            the underlying durable route repository.
+	 * @param directory
+	 *            the directory the overlays are kept in.
+	 * @throws IllegalArgumentException
+	 *             if durableRepository or directory is null.
+	 * @throws RepositoryExeption
+	 *             if the networks could not be listed, or if the directory
+	 *             could not be created or is locked by another process.
+	 */
+	public PartitionedRouteRepository(RouteRepository durableRepository,
+			File directory) throws RepositoryExeption {
+		this(durableRepository, directory, DEFAULT_CELL_SIZE, DEFAULT_FANOUT);
+	}
+
+	/**
+	 * Constructs a PartitionedRouteRepository object. Overlays found in the
+	 * directory are opened before the constructor returns, and those of the
+	 * other networks are built in the background.
+	 *
+	 * @param durableRepository
+	 *            the underlying durable route repository.
+	 * @param directory
+	 *            the directory the overlays are kept in, which is created if
+	 *            needed.
+	 * @param cellSize
+	 *            the maximum number of nodes in a cell of the first level.
+	 * @param fanout
+	 *            the factor the maximum number of nodes in a cell grows by
+	 *            from a level to the next.
+	 * @throws IllegalArgumentException
+	 *             if durableRepository or directory is null, if cellSize is
+	 *             not positive or if fanout is less than 2.
+	 * @throws RepositoryExeption
+	 *             if the networks could not be listed, or if the directory
+	 *             could not be created or is locked by another process.
+	 */
+	public PartitionedRouteRepository(RouteRepository durableRepository,
+			File directory, int cellSize, int fanout)
+			throws RepositoryExeption {
+		if (cellSize <= 0) {
+			throw new IllegalArgumentException("cellSize is not positive");
+		}
+		if (fanout < 2) {
+			throw new IllegalArgumentException("fanout is less than 2");
+		}
+		setDurableRepository(durableRepository);
+		setDirectory(directory);
+		this.cellSize = cellSize;
+		this.fanout = fanout;
+
+		try {
+			openDirectory = OverlayDirectory.open(directory);
+		} catch (IOException e) {
+			throw new RepositoryExeption("Could not lock " + directory, e);
+		}
+		try {
+			overlays = open();
+		} catch (RepositoryExeption | RuntimeException e) {
+			destroy();
+			throw e;
+		}
+		builder.execute(build);
+	}
+
+	/**
+	 * Opens the latest complete overlay of each network, and deletes the
+	 * others and those older than their network, unless a repository of this
+	 * process still uses them.
+	 *
+	 * @return the overlays opened, by network name.
+	 * @throws RepositoryExeption
+	 *             if a repository access error occurs.
+	 */
+	private Map<String, Overlay> open() throws RepositoryExeption {
+		// Numbers the new overlay directories after the existing ones
+		final File[] files = directory.listFiles();
+		for (File file : (files == null) ? new File[0] : files) {
+			openDirectory.skip(getDirectoryNumber(file));
+		}
+
+		final Map<String, Overlay> opened = new HashMap<String, Overlay>();
+		for (String network : durableRepository.findNetworkNames()) {
+			File latest = null;
+			for (File file : getOverlayDirectories(network)) {
+				if (new File(file, PartitionedGraph.OVERLAY_FILE).isFile()
+						&& (latest == null || getDirectoryNumber(file) > getDirectoryNumber(latest))) {
+					latest = file;
+				}
+			}
+			if (latest != null) {
+				use(latest);
+				try {
+					final long version = durableRepository
+							.getNetworkVersion(network);
+					final long overlayVersion = PartitionedGraph
+							.readNetworkVersion(latest);
+					if (overlayVersion == version) {
+						opened.put(network, new Overlay(PartitionedGraph.open(
+								latest, cache), 0, latest));
+					} else {
+						logger.info(String.format(
+								"Overlay of %s is stale (version %d, %d stored)",
+								network, overlayVersion, version));
+						release(latest);
+					}
+				} catch (IOException e) {
+					logger.warn(String.format(
+							"Overlay of %s could not be opened: %s", network,
+							e.getMessage()));
+					release(latest);
+				}
+			}
+			deleteUnused(network);
+		}
+		return Collections.unmodifiableMap(opened);
+	}
+
+	/**
+	 * Stops building the overlays and releases the directory. A build in
+	 * progress is let finish its network rather than interrupted, since an
+	 * interrupt would close the channels of the durable repository it reads.
+	 * The repository must not be used afterwards.
+	 */
+	public void destroy() {
+		destroyed = true;
+		builder.shutdown();
+		builder.getQueue().clear();
+		try {
+			if (!builder.awaitTermination(1, TimeUnit.MINUTES)) {
+				logger.warn("Overlay builder did not stop");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (Overlay overlay : overlays.values()) {
+			cache.remove(overlay.graph);
+		}
+		synchronized (usedDirectories) {
+			for (File file : usedDirectories) {
+				openDirectory.release(file);
+			}
+			usedDirectories.clear();
+		}
+		try {
+			openDirectory.close();
+		} catch (IOException e) {
+			logger.warn("Could not unlock " + directory, e);
+		}
+	}
+
+	/**
+	 * Gets the underlying durable route repository.
+	 *
+	 * @return the underlying durable route repository.
+	 */
+	public RouteRepository getDurableRepository() {
+		return durableRepository;
+	}
+
+	/**
+	 * Sets the underlying durable route repository.
+	 *
+	 * @param durableRepository
+	 *            the durableRepository to set.
+	 * @throws IllegalArgumentException
+	 *             if durableRepository is null.
+	 */
+	private void setDurableRepository(RouteRepository durableRepository) {
+		if (durableRepository == null) {
+			throw new IllegalArgumentException("durableRepository is null");
+		}
+		this.durableRepository = durableRepository;
+	}
+
+	/**
+	 * Gets the directory the overlays are kept in.
+	 *
+	 * @return the overlay directory.
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Sets the directory the overlays are kept in, creating it if needed.
+	 *
+	 * @param directory
+	 *            the directory to set.
+	 * @throws IllegalArgumentException
+	 *             if directory is null.
+	 * @throws RepositoryExeption
+	 *             if the directory could not be created.
+	 */
+	private void setDirectory(File directory) throws RepositoryExeption {
+		if (directory == null) {
+			throw new IllegalArgumentException("directory is null");
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new RepositoryExeption("Could not create " + directory);
+		}
+		this.directory = directory;
+	}
+
+	/**
+	 * Gets the maximum number of nodes in a cell of the first level.
+	 *
+	 * @return the cell size.
+	 */
+	public int getCellSize() {
+		return cellSize;
+	}
+
+	/**
+	 * Gets the factor the maximum number of nodes in a cell grows by from a
+	 * level to the next.
+	 *
+	 * @return the fanout.
+	 */
+	public int getFanout() {
+		return fanout;
+	}
+
+	/**
+	 * Gets the maximum number of cells held in memory.
+	 *
+	 * @return the maximum number of cells.
+	 */
+	public int getMaximumCellCount() {
+		return cache.getMaximumSize();
+	}
+
+	/**
+	 * Sets the maximum number of cells held in memory, across all the
+	 * networks. Once it is reached, the least recently used cell is evicted.
+	 *
+	 * @param maximumCellCount
+	 *            the maximum number of cells to set.
+	 * @throws IllegalArgumentException
+	 *             if maximumCellCount is not positive.
+	 */
+	public void setMaximumCellCount(int maximumCellCount) {
+		if (maximumCellCount <= 0) {
+			throw new IllegalArgumentException(
+					"maximumCellCount is not positive");
+		}
+		cache.setMaximumSize(maximumCellCount);
+	}
+
+	/**
+	 * Gets the number of cells held in memory.
+	 *
+	 * @return the number of cells held.
+	 */
+	public int getCellCount() {
+		return cache.getSize();
+	}
+
+	/**
+	 * Gets the number of cells loaded from disk so far, including those loaded
+	 * again after being evicted.
+	 *
+	 * @return the number of cells loaded.
+	 */
+	public long getCellLoadCount() {
+		return cache.getLoadCount();
+	}
+
+	/**
+	 * Returns true if the overlay of a network holds all the writes to it, so
+	 * that its queries are answered from the overlay.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @return true if the overlay is up to date.
+	 */
+	public boolean isOverlayCurrent(String network) {
+		return getGraph(network) != null;
+	}
+
+	/**
+	 * Gets the overlay graph of a network, if it holds all the writes to it.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @return the overlay graph, or null if the network has none or it is not
+	 *         up to date.
+	 */
+	private PartitionedGraph getGraph(String network) {
+		final Overlay overlay = overlays.get(network);
+		return (overlay != null && overlay.writeCount == getWriteCount(network)
+				.get()) ? overlay.graph : null;
+	}
+
+	/**
+	 * Gets the number of writes to a network.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @return the write count of the network.
+	 */
+	private AtomicLong getWriteCount(String network) {
+		AtomicLong writeCount = writeCounts.get(network);
+		if (writeCount == null) {
+			writeCount = new AtomicLong();
+			final AtomicLong existing = writeCounts.putIfAbsent(network,
+					writeCount);
+			if (existing != null) {
+				writeCount = existing;
+			}
+		}
+		return writeCount;
+	}
+
+	/**
+	 * Builds the overlay of a network from the legs stored in the durable
+	 * repository into a new directory and swaps it in. The legs are read as a
+	 * whole, but only until they are written to a snapshot of the network,
+	 * which the overlay is then built from through a memory mapping, cell by
+	 * cell. Only called from the builder thread.
+	 *
+	 * @param network
+	 *            the network name.
+	 */
+	private void build(String network) {
+		// Counts the writes and reads the network version before reading,
+		// so that the overlay holds at least those writes
+		final long writeCount = getWriteCount(network).get();
+		final File overlayDirectory = getOverlayDirectory(network,
+				openDirectory.nextNumber());
+		use(overlayDirectory);
+		try {
+			final long start = System.currentTimeMillis();
+			final long networkVersion = durableRepository
+					.getNetworkVersion(network);
+			if (!overlayDirectory.mkdirs()) {
+				throw new IOException("Could not create " + overlayDirectory);
+			}
+			final File networkFile = new File(overlayDirectory, NETWORK_FILE);
+			CompressedGraph.build(durableRepository.findAllLegs(network))
+					.write(networkFile);
+			final PartitionedGraph opened = PartitionedGraph.build(
+					CompressedGraph.map(networkFile), cellSize, fanout,
+					overlayDirectory, cache, networkVersion);
+			delete(networkFile);
+
+			final Map<String, Overlay> swapped = new HashMap<String, Overlay>(
+					overlays);
+			final Overlay previous = swapped.put(network, new Overlay(opened,
+					writeCount, overlayDirectory));
+			overlays = Collections.unmodifiableMap(swapped);
+
+			// Keeps the previous directory for the queries still on it
+			if (previous != null) {
+				cache.remove(previous.graph);
+			}
+			for (File file : getOverlayDirectories(network)) {
+				if (!file.equals(overlayDirectory)
+						&& (previous == null || !file
+								.equals(previous.directory))) {
+					release(file);
+				}
+			}
+			deleteUnused(network);
+			logger.info(String.format(
+					"Overlay of %s built in %d ms (%d levels, %d cells, %d boundary nodes)",
+					network, System.currentTimeMillis() - start,
+					opened.getLevelCount(), opened.getCellCount(1),
+					opened.getBoundaryNodeCount()));
+		} catch (RepositoryExeption | IOException | RuntimeException e) {
+			logger.error(String.format("Overlay of %s could not be built: %s",
+					network, e.getMessage()), e);
+			release(overlayDirectory);
+			deleteUnused(network);
+		}
+	}
+
+	/**
+	 * Counts a use of an overlay directory by this repository.
+	 *
+	 * @param file
+	 *            the overlay directory.
+	 */
+	private void use(File file) {
+		if (usedDirectories.add(file)) {
+			openDirectory.use(file);
+		}
+	}
+
+	/**
+	 * Releases the use of an overlay directory by this repository, if it used
+	 * it.
+	 *
+	 * @param file
+	 *            the overlay directory.
+	 */
+	private void release(File file) {
+		if (usedDirectories.remove(file)) {
+			openDirectory.release(file);
+		}
+	}
+
+	/**
+	 * Deletes the overlay directories of a network which no repository of
+	 * this process uses, which are either complete and superseded, or left
+	 * incomplete by a build which did not finish.
+	 *
+	 * @param network
+	 *            the network name.
+	 */
+	private void deleteUnused(String network) {
+		synchronized (openDirectory) {
+			for (File file : getOverlayDirectories(network)) {
+				if (!openDirectory.isUsed(file)) {
+					delete(file);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Counts a write to a network and builds its overlay again in the
+	 * background. Queries on the network are delegated to the durable
+	 * repository until then.
+	 *
+	 * @param network
+	 *            the network name.
+	 */
+	private void changed(String network) {
+		getWriteCount(network).incrementAndGet();
+		builder.execute(build);
+	}
+
+	/**
+	 * Gets the prefix of the overlay directories of a network.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @return the URL-encoded network name followed by a dot.
+	 */
+	private static String getDirectoryPrefix(String network) {
+		try {
+			return URLEncoder.encode(network, "UTF-8") + ".";
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Gets an overlay directory of a network.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @param number
+	 *            the number of the directory.
+	 * @return the directory, named after the URL-encoded network name and the
+	 *         number.
+	 */
+	private File getOverlayDirectory(String network, long number) {
+		return new File(directory, getDirectoryPrefix(network) + number);
+	}
+
+	/**
+	 * Gets the overlay directories of a network, complete or not.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @return the overlay directories.
+	 */
+	private List<File> getOverlayDirectories(String network) {
+		final String prefix = getDirectoryPrefix(network);
+		final File[] files = directory.listFiles();
+		final List<File> directories = new ArrayList<File>();
+		for (File file : (files == null) ? new File[0] : files) {
+			if (file.getName().startsWith(prefix)
+					&& file.getName().indexOf('.', prefix.length()) < 0
+					&& getDirectoryNumber(file) > 0) {
+				directories.add(file);
+			}
+		}
+		return directories;
+	}
+
+	/**
+	 * Gets the number of an overlay directory.
+	 *
+	 * @param file
+	 *            the directory.
+	 * @return the number following the last dot of its name, or 0 if it has
+	 *         none.
+	 */
+	private static long getDirectoryNumber(File file) {
+		final String name = file.getName();
+		try {
+			return Long.parseLong(name.substring(name.lastIndexOf('.') + 1));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Deletes a directory and the files within it. A failure is only logged,
+	 * since the directory is left unused.
+	 *
+	 * @param file
+	 *            the directory or file to be deleted.
+	 */
+	private static void delete(File file) {
+		final File[] files = file.listFiles();
+		if (files != null) {
+			for (File child : files) {
+				delete(child);
+			}
+		}
+		if (file.exists() && !file.delete()) {
+			logger.warn("Could not delete " + file);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.repository.RouteRepository#saveLeg
+	 * (java.lang.String, org.drmit.shortestpath.domain.model.Leg)
+	 */
+	@Override
+	public void saveLeg(String network, Leg leg) throws RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (leg == null) {
+			throw new IllegalArgumentException("leg is null");
+		}
+
+		try {
+			durableRepository.saveLeg(network, leg);
+		} finally {
+			changed(network);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.repository.RouteRepository#saveLegs
+	 * (java.lang.String, java.util.List)
+	 */
+	@Override
+	public void saveLegs(String network, List<Leg> legs)
+			throws RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (legs == null) {
+			throw new IllegalArgumentException("legs is null");
+		}
+
+		try {
+			durableRepository.saveLegs(network, legs);
+		} finally {
+			changed(network);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.repository.RouteRepository#replaceLegs
+	 * (java.lang.String, java.util.Collection)
+	 */
+	@Override
+	public void replaceLegs(String network, Collection<Leg> legs)
+			throws RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (legs == null) {
+			throw new IllegalArgumentException("legs is null");
+		}
+
+		try {
+			durableRepository.replaceLegs(network, legs);
+		} finally {
+			changed(network);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.repository.RouteRepository#importLegs
+	 * (java.lang.String, java.util.Iterator)
+	 */
+	@Override
+	public long importLegs(String network, Iterator<Leg> legs)
+			throws RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (legs == null) {
+			throw new IllegalArgumentException("legs is null");
+		}
+
+		try {
+			return durableRepository.importLegs(network, legs);
+		} finally {
+			// Picks up whatever was committed, even if the import failed
+			changed(network);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * saveCoordinates(java.lang.String, double, double)
+	 */
+	@Override
+	public void saveCoordinates(String name, double latitude, double longitude)
+			throws RepositoryExeption {
+		// Overlays do not depend on coordinates
+		durableRepository.saveCoordinates(name, latitude, longitude);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * findNetworkNames()
+	 */
+	@Override
+	public List<String> findNetworkNames() throws RepositoryExeption {
+		return durableRepository.findNetworkNames();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * getNetworkVersion(java.lang.String)
+	 */
+	@Override
+	public long getNetworkVersion(String network) throws RepositoryExeption {
+		return durableRepository.getNetworkVersion(network);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.drmit.shortestpath.infrastructure.repository.RouteRepository#findAllLegs
+	 * (java.lang.String)
+	 */
+	@Override
+	public List<Leg> findAllLegs(String network) throws RepositoryExeption {
+		return durableRepository.findAllLegs(network);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * findShortestRoute(java.lang.String, java.lang.String, java.lang.String)
+	 */
+	@Override
+	public Route findShortestRoute(String network, String origin,
+			String destination) throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (origin == null) {
+			throw new IllegalArgumentException("origin is null");
+		}
+		if (destination == null) {
+			throw new IllegalArgumentException("destination is null");
+		}
+
+		// Pins the current overlay for the whole query
+		final PartitionedGraph graph = getGraph(network);
+		if (graph == null) {
+			return durableRepository.findShortestRoute(network, origin,
+					destination);
+		}
+
+		// Staying put requires no legs, even for unknown locations
+		if (origin.equals(destination)) {
+			final List<Leg> legs = Collections.emptyList();
+			return new Route(origin, destination, legs);
+		}
+
+		final int originNode = graph.getNodeId(origin);
+		final int destinationNode = graph.getNodeId(destination);
+		List<Leg> legs = null;
+		if (originNode >= 0 && destinationNode >= 0) {
+			try {
+				legs = new OverlaySearch(graph).findLegs(originNode,
+						destinationNode);
+			} catch (IOException e) {
+				throw new RepositoryExeption(String.format(
+						"Cells of %s could not be loaded", network), e);
+			}
+		}
+		if (legs == null) {
+			throw new RouteNotFoundRepositoryExeption(String.format(
+					"No route could be found between the %s and %s", origin,
+					destination));
+		}
+
+		return new Route(origin, destination, legs);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * findShortestDistance(java.lang.String, java.lang.String,
+	 * java.lang.String)
+	 */
+	@Override
+	public double findShortestDistance(String network, String origin,
+			String destination) throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (origin == null) {
+			throw new IllegalArgumentException("origin is null");
+		}
+		if (destination == null) {
+			throw new IllegalArgumentException("destination is null");
+		}
+
+		// Pins the current overlay for the whole query
+		final PartitionedGraph graph = getGraph(network);
+		if (graph == null) {
+			return durableRepository.findShortestDistance(network, origin,
+					destination);
+		}
+
+		final double distance = findShortestDistance(network, graph, origin,
+				destination);
+		if (distance == Double.POSITIVE_INFINITY) {
+			throw new RouteNotFoundRepositoryExeption(String.format(
+					"No route could be found between the %s and %s", origin,
+					destination));
+		}
+
+		return distance;
+	}
+
+	/**
+	 * Finds the length of the shortest route between two locations of an
+	 * overlay graph.
+	 *
+	 * @param network
+	 *            the network name.
+	 * @param graph
+	 *            the overlay graph of the network.
+	 * @param origin
+	 *            the origin location.
+	 * @param destination
+	 *            the destination location.
+	 * @return the length of the shortest route, 0 for the same location, or
+	 *         positive infinity if the destination is unknown or not
+	 *         reachable from the origin.
+	 * @throws RepositoryExeption
+	 *             if a cell could not be loaded.
+	 */
+	private double findShortestDistance(String network,
+			PartitionedGraph graph, String origin, String destination)
+			throws RepositoryExeption {
+		// Staying put costs nothing, even for unknown locations
+		if (origin.equals(destination)) {
+			return 0;
+		}
+
+		final int originNode = graph.getNodeId(origin);
+		final int destinationNode = graph.getNodeId(destination);
+		if (originNode < 0 || destinationNode < 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		try {
+			return new OverlaySearch(graph).findDistance(originNode,
+					destinationNode);
+		} catch (IOException e) {
+			throw new RepositoryExeption(String.format(
+					"Cells of %s could not be loaded", network), e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * findCheapestRoute(java.lang.String, java.lang.String, java.lang.String,
+	 * org.drmit.shortestpath.domain.model.VehicleProfile, double)
+	 */
+	@Override
+	public Route findCheapestRoute(String network, String origin,
+			String destination, VehicleProfile vehicleProfile, double fuelPrice)
+			throws RouteNotFoundRepositoryExeption, RepositoryExeption {
+		return durableRepository.findCheapestRoute(network, origin,
+				destination, vehicleProfile, fuelPrice);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * findFastestRoute(java.lang.String, java.lang.String, java.lang.String,
+	 * double)
+	 */
+	@Override
+	public TimedRoute findFastestRoute(String network, String origin,
+			String destination, double departureTime)
+			throws RouteNotFoundRepositoryExeption, RepositoryExeption {
+		return durableRepository.findFastestRoute(network, origin,
+				destination, departureTime);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * findKShortestRoutes(java.lang.String, java.lang.String,
+	 * java.lang.String, int)
+	 */
+	@Override
+	public List<Route> findKShortestRoutes(String network, String origin,
+			String destination, int k) throws RepositoryExeption {
+		return durableRepository.findKShortestRoutes(network, origin,
+				destination, k);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * findShortestRoutesFrom(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public ShortestPathTree findShortestRoutesFrom(String network,
+			String origin) throws RepositoryExeption {
+		return durableRepository.findShortestRoutesFrom(network, origin);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.drmit.shortestpath.infrastructure.repository.RouteRepository#
+	 * findDistances(java.lang.String, java.util.List, java.util.List)
+	 */
+	@Override
+	public DistanceMatrix findDistances(String network, List<String> origins,
+			List<String> destinations) throws RepositoryExeption {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		if (origins == null) {
+			throw new IllegalArgumentException("origins is null");
+		}
+		if (destinations == null) {
+			throw new IllegalArgumentException("destinations is null");
+		}
+
+		// Pins the current overlay for the whole query
+		final PartitionedGraph graph = getGraph(network);
+		if (graph == null) {
+			return durableRepository.findDistances(network, origins,
+					destinations);
+		}
+
+		// Searches each pair, since a search only descends into the cells of
+		// its own origin and destination
+		final double[][] distances = new double[origins.size()][destinations
+				.size()];
+		for (int i = 0; i < distances.length; i++) {
+			for (int j = 0; j < distances[i].length; j++) {
+				distances[i][j] = findShortestDistance(network, graph,
+						origins.get(i), destinations.get(j));
+			}
+		}
+
+		return new DistanceMatrix(origins, destinations, distances);
+	}
+
+	/**
+	 * Overlay graph of a network, with the number of writes it holds.
+	 */
+	private static final class Overlay {
+
+		/** Overlay graph. */
+		private final PartitionedGraph graph;
+
+		/** Number of writes to the network the graph holds. */
+		private final long writeCount;
+
+		/** Directory the graph is kept in. */
+		private final File directory;
+
+		/**
+		 * Constructs an Overlay object.
+		 *
+		 * @param graph
+		 *            the overlay graph.
+		 * @param writeCount
+		 *            the number of writes to the network the graph holds.
+		 * @param directory
+		 *            the directory the graph is kept in.
+		 */
+		Overlay(PartitionedGraph graph, long writeCount, File directory) {
+			this.graph = graph;
+			this.writeCount = writeCount;
+			this.directory = directory;
+		}
+
+	}
+
+}
@@ -0,0 +1,77 @@
+package org.drmit.shortestpath.presentation.batch;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+import org.drmit.shortestpath.infrastructure.repository.neo4j.Neo4jBatchImporter;
+import org.drmit.shortestpath.presentation.converter.LogisticsNetworkConverter;
+import org.drmit.shortestpath.presentation.converter.impl.DefaultLogisticsNetworkConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Command line tool loading logistics network files into a Neo4j store while
+ * the application is not running. Intended for initial loads, which are much
+ * faster offline than through the REST API.
+ * <p>
+ * Usage:
+ * <code>LogisticsNetworkBatchImport &lt;storeDir&gt; &lt;network&gt; &lt;file&gt;...</code>
+ * 
+ * @author Leandro Ferreira
+ */
+public final class LogisticsNetworkBatchImport {
+
+	/** Logger. */
+	private static final Logger logger = LoggerFactory
+			.getLogger(LogisticsNetworkBatchImport.class);
+
+	/** Character set of the network files. */
+	private static final String CHARSET = "UTF-8";
+
+	/**
+	 * Constructs a LogisticsNetworkBatchImport object.
+	 */
+	private LogisticsNetworkBatchImport() {
+	}
+
+	/**
+	 * Imports the given logistics network files into a network of the given
+	 * store.
+	 * 
+	 * @param args
+	 *            the store directory and the network name followed by the
+	 *            network files.
+	 * @throws IOException
+	 *             if a network file could not be read.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3) {
+			System.err.println("Usage: "
+					+ LogisticsNetworkBatchImport.class.getSimpleName()
+					+ " <storeDir> <network> <file>...");
+			System.exit(1);
+		}
+
+		final LogisticsNetworkConverter converter = new DefaultLogisticsNetworkConverter();
+		final Neo4jBatchImporter importer = new Neo4jBatchImporter(args[0]);
+		try {
+			for (int i = 2; i < args.length; i++) {
+				final long start = System.currentTimeMillis();
+				try (final Reader reader = new InputStreamReader(
+						new FileInputStream(args[i]), CHARSET)) {
+					final long count = importer.importLegs(args[1],
+							converter.readLegs(reader));
+					logger.info(String.format(
+							"Imported %d legs from %s into the %s network in %d ms",
+							count, args[i], args[1],
+							System.currentTimeMillis() - start));
+				}
+			}
+		} finally {
+			importer.close();
+		}
+	}
+
+}
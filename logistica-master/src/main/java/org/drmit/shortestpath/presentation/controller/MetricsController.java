@@ -0,0 +1,86 @@
+package org.drmit.shortestpath.presentation.controller;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.drmit.shortestpath.infrastructure.concurrent.BoundedExecutor;
+import org.drmit.shortestpath.infrastructure.metrics.LatencySnapshot;
+import org.drmit.shortestpath.infrastructure.metrics.RoutingMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+/**
+ * Routing metrics controller.
+ *
+ * @author Leandro Ferreira
+ */
+@Controller
+@RequestMapping("/metrics")
+public class MetricsController {
+
+	/** Nanoseconds per microsecond. */
+	private static final double NANOS_PER_MICRO = 1000.0;
+
+	/** Routing metrics. */
+	@Autowired
+	private RoutingMetrics routingMetrics = null;
+
+	/** Executors of the shipping queries. */
+	@Autowired(required = false)
+	private List<BoundedExecutor> executors = Collections.emptyList();
+
+	/**
+	 * Writes the routing metrics as plain text: a line per pipeline stage with
+	 * its count and latency mean, percentiles and maximum in microseconds,
+	 * followed by the search size counters and by a line per query executor
+	 * with its active threads, queued and rejected queries.
+	 *
+	 * @param response
+	 *            the response the metrics are written to.
+	 * @throws IOException
+	 *             if the response could not be written.
+	 */
+	@RequestMapping(method = RequestMethod.GET)
+	public void getMetrics(HttpServletResponse response) throws IOException {
+		final StringBuilder text = new StringBuilder();
+		text.append("# stage count mean p50 p90 p99 p999 max (microseconds)\n");
+		for (Map.Entry<String, LatencySnapshot> entry : routingMetrics
+				.getLatencies().entrySet()) {
+			final LatencySnapshot latency = entry.getValue();
+			text.append(entry.getKey()).append(' ')
+					.append(latency.getCount()).append(' ')
+					.append(latency.getMean() / NANOS_PER_MICRO).append(' ')
+					.append(latency.getP50() / NANOS_PER_MICRO).append(' ')
+					.append(latency.getP90() / NANOS_PER_MICRO).append(' ')
+					.append(latency.getP99() / NANOS_PER_MICRO).append(' ')
+					.append(latency.getP999() / NANOS_PER_MICRO).append(' ')
+					.append(latency.getMax() / NANOS_PER_MICRO).append('\n');
+		}
+		text.append("searches ").append(routingMetrics.getSearchCount())
+				.append('\n');
+		text.append("settledNodes ")
+				.append(routingMetrics.getSettledNodeCount()).append('\n');
+		text.append("relaxedEdges ")
+				.append(routingMetrics.getRelaxedEdgeCount()).append('\n');
+		text.append("# executor active queued rejected\n");
+		for (BoundedExecutor executor : executors) {
+			text.append(executor.getName()).append(' ')
+					.append(executor.getActiveCount()).append(' ')
+					.append(executor.getQueueSize()).append(' ')
+					.append(executor.getRejectedCount()).append('\n');
+		}
+
+		response.setContentType("text/plain;charset=UTF-8");
+		final Writer writer = response.getWriter();
+		writer.append(text);
+		writer.flush();
+	}
+
+}
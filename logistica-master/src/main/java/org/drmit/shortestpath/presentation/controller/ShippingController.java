@@ -1,29 +1,49 @@
 package org.drmit.shortestpath.presentation.controller;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.drmit.shortestpath.application.services.NoShippingRouteServiceException;
 import org.drmit.shortestpath.application.services.ServiceException;
+import org.drmit.shortestpath.application.services.ShippingDetailsBatch;
 import org.drmit.shortestpath.application.services.ShippingService;
-import org.drmit.shortestpath.domain.model.LogisticsNetwork;
 import org.drmit.shortestpath.domain.model.ShippingDetails;
+import org.drmit.shortestpath.domain.model.ShippingMatrix;
+import org.drmit.shortestpath.domain.model.ShippingQuote;
+import org.drmit.shortestpath.domain.model.ShortestPathTree;
 import org.drmit.shortestpath.presentation.converter.LogisticsNetworkConverter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PathVariable;
-import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.context.request.async.DeferredResult;
 
 /**
  * Shipping controller.
@@ -46,28 +66,83 @@ public class ShippingController {
 	@Autowired
 	private LogisticsNetworkConverter logisticsNetworkConverter = null;
 
+	/** Executor of the single route queries. */
+	@Autowired
+	@Qualifier("routeQueryExecutor")
+	private Executor routeQueryExecutor = null;
+
+	/** Executor of the bulk queries, kept apart from single route queries. */
+	@Autowired
+	@Qualifier("bulkQueryExecutor")
+	private Executor bulkQueryExecutor = null;
+
+	/** Default time a query may take, in milliseconds. */
+	public static final long DEFAULT_QUERY_TIMEOUT = 30000;
+
 	/**
-	 * Adds a new logistics network used for shipping route selection.
+	 * Time a query may take, in milliseconds, queueing included, before it is
+	 * answered with 503 Service Unavailable.
+	 */
+	private long queryTimeout = DEFAULT_QUERY_TIMEOUT;
+
+	/**
+	 * Adds a new logistics network used for shipping route selection, or
+	 * replaces the network with the same name. The request body is streamed
+	 * into the repository as it is read, so networks of any size can be
+	 * posted: legs already in the network are updated as they are read, and
+	 * the legs missing from the body are removed once it is read to the end.
+	 * The network is written in batches: if the request fails, the legs read
+	 * so far are kept, but no leg is removed, and posting the network again
+	 * completes the replacement.
 	 * 
 	 * @param name
 	 *            network name.
 	 * @param legs
-	 *            the shipping legs contained in this network.
+	 *            reader of the shipping legs contained in this network.
 	 * @throws ServiceException
 	 *             if a service access error occurs.
 	 */
 	@RequestMapping(value = "/logisticsNetwork/{name}", method = RequestMethod.POST, headers = "content-type=text/plain")
 	@ResponseStatus(HttpStatus.OK)
-	public void addLogisticsNetwork(@PathVariable String name,
-			@RequestBody String legs) throws ServiceException {
+	public void addLogisticsNetwork(@PathVariable String name, Reader legs)
+			throws ServiceException {
 		// Adds a new logistics network used for shipping route selection
-		shippingService.addLogisticsNetwork(new LogisticsNetwork(name,
-				logisticsNetworkConverter.parseLegs(legs)));
+		final long count = shippingService.importLogisticsNetwork(name,
+				logisticsNetworkConverter.readLegs(legs));
+		logger.info(String.format("Imported %d legs into the %s network",
+				count, name));
+	}
+
+	/**
+	 * Saves the coordinates of a location, shared by all the logistics
+	 * networks, which guide the route searches of the networks whose locations
+	 * all have coordinates.
+	 * 
+	 * @param location
+	 *            the location name.
+	 * @param latitude
+	 *            the location latitude, in decimal degrees.
+	 * @param longitude
+	 *            the location longitude, in decimal degrees.
+	 * @throws ServiceException
+	 *             if a service access error occurs.
+	 */
+	@RequestMapping(value = "/locations/{location}/coordinates", method = RequestMethod.PUT)
+	@ResponseStatus(HttpStatus.OK)
+	public void saveLocationCoordinates(@PathVariable String location,
+			@RequestParam double latitude, @RequestParam double longitude)
+			throws ServiceException {
+		// Saves the coordinates of the location
+		shippingService.saveLocationCoordinates(location, latitude, longitude);
 	}
 
 	/**
-	 * Gets an order shipping details.
+	 * Gets an order shipping details within a logistics network. In distance
+	 * only mode, only the length of the shortest route is searched and the
+	 * shipping route is left out of the details.
 	 * 
+	 * @param name
+	 *            network name.
 	 * @param origin
 	 *            the origin of shipment.
 	 * @param destination
@@ -76,19 +151,419 @@ public class ShippingController {
 	 *            vehicle mileage (in Kilometers per liter or KMPL).
 	 * @param fuelPrice
 	 *            fuel price per liter.
-	 * @return the order shipping details.
+	 * @param distanceOnly
+	 *            true to leave the shipping route out.
+	 * @return the order shipping details, set once the query executor
+	 *         answered it.
+	 */
+	@RequestMapping(value = "/logisticsNetwork/{name}/shippingDetails/{origin}/{destination}", method = RequestMethod.GET)
+	public @ResponseBody
+	DeferredResult<ShippingDetails> getShippingDetails(
+			@PathVariable final String name, @PathVariable final String origin,
+			@PathVariable final String destination,
+			@RequestParam final double vehicleMileage,
+			@RequestParam final double fuelPrice,
+			@RequestParam(defaultValue = "false") final boolean distanceOnly) {
+		// Gets an order shipping details
+		return defer(routeQueryExecutor, new Callable<ShippingDetails>() {
+			@Override
+			public ShippingDetails call() throws Exception {
+				if (distanceOnly) {
+					return shippingService.getShippingDetailsWithoutRoute(
+							name, origin, destination, vehicleMileage,
+							fuelPrice);
+				}
+				return shippingService.getShippingDetails(name, origin,
+						destination, vehicleMileage, fuelPrice);
+			}
+		});
+	}
+
+	/**
+	 * Gets an order shipping details within a logistics network along the
+	 * route which is cheapest for a vehicle profile.
+	 * 
+	 * @param name
+	 *            network name.
+	 * @param origin
+	 *            the origin of shipment.
+	 * @param destination
+	 *            the destination of shipment.
+	 * @param vehicleProfile
+	 *            the name of the vehicle profile.
+	 * @param fuelPrice
+	 *            fuel price per liter.
+	 * @return the order shipping details, set once the query executor
+	 *         answered it.
+	 */
+	@RequestMapping(value = "/logisticsNetwork/{name}/cheapestShippingDetails/{origin}/{destination}", method = RequestMethod.GET)
+	public @ResponseBody
+	DeferredResult<ShippingDetails> getCheapestShippingDetails(
+			@PathVariable final String name, @PathVariable final String origin,
+			@PathVariable final String destination,
+			@RequestParam final String vehicleProfile,
+			@RequestParam final double fuelPrice) {
+		// Gets an order shipping details
+		return defer(routeQueryExecutor, new Callable<ShippingDetails>() {
+			@Override
+			public ShippingDetails call() throws Exception {
+				return shippingService.getCheapestShippingDetails(name,
+						origin, destination, vehicleProfile, fuelPrice);
+			}
+		});
+	}
+
+	/**
+	 * Gets an order shipping details within a logistics network along the
+	 * fastest route for the given departure time.
+	 * 
+	 * @param name
+	 *            network name.
+	 * @param origin
+	 *            the origin of shipment.
+	 * @param destination
+	 *            the destination of shipment.
+	 * @param departureTime
+	 *            the departure time, in seconds since midnight.
+	 * @param vehicleMileage
+	 *            vehicle mileage (in Kilometers per liter or KMPL).
+	 * @param fuelPrice
+	 *            fuel price per liter.
+	 * @return the order shipping details, set once the query executor
+	 *         answered it.
+	 */
+	@RequestMapping(value = "/logisticsNetwork/{name}/fastestShippingDetails/{origin}/{destination}", method = RequestMethod.GET)
+	public @ResponseBody
+	DeferredResult<ShippingDetails> getFastestShippingDetails(
+			@PathVariable final String name, @PathVariable final String origin,
+			@PathVariable final String destination,
+			@RequestParam final double departureTime,
+			@RequestParam final double vehicleMileage,
+			@RequestParam final double fuelPrice) {
+		// Gets an order shipping details
+		return defer(routeQueryExecutor, new Callable<ShippingDetails>() {
+			@Override
+			public ShippingDetails call() throws Exception {
+				return shippingService.getFastestShippingDetails(name, origin,
+						destination, departureTime, vehicleMileage, fuelPrice);
+			}
+		});
+	}
+
+	/**
+	 * Streams the shipping details of a batch of orders within a logistics
+	 * network. The request body holds one order per line, made of the origin,
+	 * the destination, the vehicle mileage and the fuel price. The orders are
+	 * quoted as they are read, a window ahead of the response. The response
+	 * holds one line per order, in request order, made of the origin, the
+	 * destination, and either the route length and the shipping rate, NO_ROUTE
+	 * or ERROR, so that an order failing does not fail the batch. A malformed
+	 * line among the first window fails the batch; past it, the response being
+	 * streamed already, it is answered with a line made of ERROR and the
+	 * reason. If the request thread is interrupted, the orders left are
+	 * answered with ERROR rather than left out.
+	 * 
+	 * @param name
+	 *            network name.
+	 * @param quotes
+	 *            reader of the orders.
+	 * @param response
+	 *            the response the lines are written to.
 	 * @throws ServiceException
 	 *             if a service access error occurs.
+	 * @throws IOException
+	 *             if the request could not be read or the response written.
 	 */
-	@RequestMapping(value = "/shippingDetails/{origin}/{destination}", method = RequestMethod.GET)
+	@RequestMapping(value = "/logisticsNetwork/{name}/shippingDetails/batch", method = RequestMethod.POST, headers = "content-type=text/plain")
+	public void getShippingDetails(@PathVariable String name, Reader quotes,
+			HttpServletResponse response) throws ServiceException, IOException {
+		// Quotes the orders in parallel as they are read
+		final QuoteReader orders = new QuoteReader(quotes);
+		final ShippingDetailsBatch shippingDetails = shippingService
+				.getShippingDetails(name, orders);
+		try {
+			orders.checkFirstLines();
+
+			// Streams one line per order as soon as it and its predecessors
+			// are quoted
+			response.setContentType("text/plain;charset=UTF-8");
+			final Writer writer = response.getWriter();
+			final StringBuilder line = new StringBuilder();
+			while (shippingDetails.hasNext()) {
+				final Future<ShippingDetails> future = shippingDetails.next();
+				writeInvalidLines(writer, orders);
+				final ShippingQuote order = orders.pollOrder();
+				if (!future.isDone()) {
+					writer.flush();
+				}
+				line.setLength(0);
+				line.append(order.getOrigin()).append(' ')
+						.append(order.getDestination()).append(' ');
+				try {
+					final ShippingDetails details = future.get();
+					line.append(details.getShippingDistance())
+							.append(' ').append(details.getShippingRate());
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof NoShippingRouteServiceException) {
+						line.append("NO_ROUTE");
+					} else {
+						logger.error(e.getCause().getMessage(), e.getCause());
+						line.append("ERROR");
+					}
+				} catch (InterruptedException e) {
+					// Answers this order and the ones left with errors, rather
+					// than cutting the response short
+					Thread.currentThread().interrupt();
+					shippingDetails.cancel();
+					writer.append(line.append("ERROR\n"));
+					writeErrorLines(writer, orders);
+					break;
+				}
+				writer.append(line.append('\n'));
+			}
+			writeInvalidLines(writer, orders);
+			orders.checkRead();
+			writer.flush();
+		} finally {
+			// Cancels the searches left when the client is gone
+			shippingDetails.cancel();
+		}
+	}
+
+	/**
+	 * Gets the shipping distance and rate between every origin and every
+	 * destination of a logistics network in a single request.
+	 * 
+	 * @param name
+	 *            network name.
+	 * @param origins
+	 *            the origins of shipment, comma separated.
+	 * @param destinations
+	 *            the destinations of shipment, comma separated.
+	 * @param vehicleMileage
+	 *            vehicle mileage (in Kilometers per liter or KMPL).
+	 * @param fuelPrice
+	 *            fuel price per liter.
+	 * @return the shipping matrix, indexed by origin and destination, set once
+	 *         the query executor answered it.
+	 */
+	@RequestMapping(value = "/logisticsNetwork/{name}/shippingMatrix", method = RequestMethod.GET)
 	public @ResponseBody
-	ShippingDetails getShippingDetails(@PathVariable String origin,
-			@PathVariable String destination,
-			@RequestParam double vehicleMileage, @RequestParam double fuelPrice)
-			throws NoShippingRouteServiceException, ServiceException {
-		// Gets an order shipping details
-		return shippingService.getShippingDetails(origin, destination,
-				vehicleMileage, fuelPrice);
+	DeferredResult<ShippingMatrix> getShippingMatrix(
+			@PathVariable final String name,
+			@RequestParam final List<String> origins,
+			@RequestParam final List<String> destinations,
+			@RequestParam final double vehicleMileage,
+			@RequestParam final double fuelPrice) {
+		// Gets the shipping matrix
+		return defer(bulkQueryExecutor, new Callable<ShippingMatrix>() {
+			@Override
+			public ShippingMatrix call() throws Exception {
+				return shippingService.getShippingMatrix(name, origins,
+						destinations, vehicleMileage, fuelPrice);
+			}
+		});
+	}
+
+	/**
+	 * Gets the shipping details of up to k alternative routes within a
+	 * logistics network, shortest first.
+	 * 
+	 * @param name
+	 *            network name.
+	 * @param origin
+	 *            the origin of shipment.
+	 * @param destination
+	 *            the destination of shipment.
+	 * @param k
+	 *            the maximum number of alternatives.
+	 * @param vehicleMileage
+	 *            vehicle mileage (in Kilometers per liter or KMPL).
+	 * @param fuelPrice
+	 *            fuel price per liter.
+	 * @return the shipping details of each alternative, set once the query
+	 *         executor answered them.
+	 */
+	@RequestMapping(value = "/logisticsNetwork/{name}/alternativeShippingDetails/{origin}/{destination}", method = RequestMethod.GET)
+	public @ResponseBody
+	DeferredResult<List<ShippingDetails>> getAlternativeShippingDetails(
+			@PathVariable final String name, @PathVariable final String origin,
+			@PathVariable final String destination,
+			@RequestParam(defaultValue = "3") final int k,
+			@RequestParam final double vehicleMileage,
+			@RequestParam final double fuelPrice) {
+		// Gets the shipping details of every alternative
+		return defer(bulkQueryExecutor, new Callable<List<ShippingDetails>>() {
+			@Override
+			public List<ShippingDetails> call() throws Exception {
+				return shippingService.getAlternativeShippingDetails(name,
+						origin, destination, k, vehicleMileage, fuelPrice);
+			}
+		});
+	}
+
+	/**
+	 * Streams the shortest route length from an origin to every location
+	 * reachable from it within a logistics network, as plain text lines made
+	 * of the location and the length, nearest locations first.
+	 * 
+	 * @param name
+	 *            network name.
+	 * @param origin
+	 *            the origin of shipment.
+	 * @param response
+	 *            the response the lines are written to.
+	 * @throws ServiceException
+	 *             if a service access error occurs.
+	 * @throws IOException
+	 *             if the response could not be written.
+	 * @throws TimeoutException
+	 *             if the search took longer than the query timeout.
+	 */
+	@RequestMapping(value = "/logisticsNetwork/{name}/shortestRoutes/{origin}", method = RequestMethod.GET)
+	public void getShortestRoutesFrom(@PathVariable final String name,
+			@PathVariable final String origin, HttpServletResponse response)
+			throws ServiceException, IOException, TimeoutException {
+		// Gets the routes from the origin with a single search, run on the
+		// bulk query executor so that it is rejected once it is saturated
+		final ShortestPathTree tree = await(bulkQueryExecutor,
+				new Callable<ShortestPathTree>() {
+					@Override
+					public ShortestPathTree call() throws Exception {
+						return shippingService.getShortestRoutesFrom(name,
+								origin);
+					}
+				});
+
+		// Streams one line per reachable location
+		response.setContentType("text/plain;charset=UTF-8");
+		final Writer writer = response.getWriter();
+		final StringBuilder line = new StringBuilder();
+		for (int i = 0; i < tree.getLocationCount(); i++) {
+			line.setLength(0);
+			line.append(tree.getLocation(i)).append(' ')
+					.append(tree.getDistance(i)).append('\n');
+			writer.append(line);
+		}
+		writer.flush();
+	}
+
+	/**
+	 * Runs a query on an executor, releasing the servlet container thread
+	 * while it runs. Exceptions thrown by the query are handled by the
+	 * exception handlers of this controller. A query not answered within the
+	 * query timeout is answered with a TimeoutException, and skipped if it is
+	 * still queued.
+	 * 
+	 * @param executor
+	 *            the executor running the query.
+	 * @param query
+	 *            the query.
+	 * @return the result of the query, set once it ran.
+	 * @throws RejectedExecutionException
+	 *             if the executor is saturated.
+	 */
+	private <T> DeferredResult<T> defer(Executor executor,
+			final Callable<T> query) {
+		final DeferredResult<T> result = new DeferredResult<T>(queryTimeout,
+				new TimeoutException("Shipping query timed out"));
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (result.isSetOrExpired()) {
+					return;
+				}
+				try {
+					result.setResult(query.call());
+				} catch (Exception e) {
+					result.setErrorResult(e);
+				}
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Runs a query on an executor and waits for it on the calling thread, for
+	 * the queries whose results are streamed by the servlet container thread.
+	 * 
+	 * @param executor
+	 *            the executor running the query.
+	 * @param query
+	 *            the query.
+	 * @return the result of the query.
+	 * @throws ServiceException
+	 *             if the query failed with a service error.
+	 * @throws TimeoutException
+	 *             if the query was not answered within the query timeout, or
+	 *             the thread was interrupted while waiting for it.
+	 * @throws RejectedExecutionException
+	 *             if the executor is saturated.
+	 */
+	private <T> T await(Executor executor, Callable<T> query)
+			throws ServiceException, TimeoutException {
+		final FutureTask<T> task = new FutureTask<T>(query);
+		executor.execute(task);
+		try {
+			return task.get(queryTimeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TimeoutException("Interrupted");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof ServiceException) {
+				throw (ServiceException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			task.cancel(false);
+		}
+	}
+
+	/**
+	 * Writes a line for each malformed line read ahead of the next order, made
+	 * of ERROR and the reason.
+	 * 
+	 * @param writer
+	 *            the writer of the response.
+	 * @param orders
+	 *            the reader of the orders.
+	 * @throws IOException
+	 *             if the response could not be written.
+	 */
+	private static void writeInvalidLines(Writer writer, QuoteReader orders)
+			throws IOException {
+		String invalidLine;
+		while ((invalidLine = orders.pollInvalidLine()) != null) {
+			writer.append("ERROR ").append(invalidLine).append('\n');
+		}
+	}
+
+	/**
+	 * Writes a line for each order left, read or not, made of its origin, its
+	 * destination and ERROR.
+	 * 
+	 * @param writer
+	 *            the writer of the response.
+	 * @param orders
+	 *            the reader of the orders.
+	 * @throws IOException
+	 *             if the response could not be written.
+	 */
+	private static void writeErrorLines(Writer writer, QuoteReader orders)
+			throws IOException {
+		do {
+			writeInvalidLines(writer, orders);
+			ShippingQuote order;
+			while ((order = orders.pollOrder()) != null) {
+				writer.append(order.getOrigin()).append(' ')
+						.append(order.getDestination()).append(" ERROR\n");
+				writeInvalidLines(writer, orders);
+			}
+		} while (orders.hasNext() && orders.next() != null);
+		orders.checkRead();
 	}
 
 	/**
@@ -115,6 +590,26 @@ public class ShippingController {
 		logger.error(e.getMessage(), e);
 	}
 
+	/**
+	 * Custom exception handler.
+	 */
+	@ExceptionHandler(RejectedExecutionException.class)
+	@ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE, reason = "Too many shipping queries are pending")
+	public void handleRejectedExecutionException(RejectedExecutionException e) {
+		// Logging
+		logger.warn(e.getMessage());
+	}
+
+	/**
+	 * Custom exception handler.
+	 */
+	@ExceptionHandler(TimeoutException.class)
+	@ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE, reason = "The shipping query timed out")
+	public void handleTimeoutException(TimeoutException e) {
+		// Logging
+		logger.warn(e.getMessage());
+	}
+
 	/**
 	 * Custom exception handler.
 	 */
@@ -125,4 +620,165 @@ public class ShippingController {
 		logger.error(e.getMessage(), e);
 	}
 
+	/**
+	 * Reader of a batch of orders, one per line, which remembers the lines read
+	 * ahead of the response, in order: the orders, until their lines are
+	 * written, and the malformed lines, which are skipped.
+	 */
+	private static final class QuoteReader implements Iterator<ShippingQuote> {
+
+		/** Lines of the batch. */
+		private final BufferedReader lines;
+
+		/** Orders and reasons of the malformed lines read ahead, in order. */
+		private final Deque<Object> readAhead = new ArrayDeque<Object>();
+
+		/** Number of the last line read. */
+		private int lineNumber = 0;
+
+		/** Next order, read but not taken yet. */
+		private ShippingQuote next = null;
+
+		/** Error which stopped the reading. */
+		private IOException readError = null;
+
+		/**
+		 * Constructs a QuoteReader object.
+		 * 
+		 * @param reader
+		 *            reader of the orders.
+		 */
+		QuoteReader(Reader reader) {
+			this.lines = new BufferedReader(reader);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.Iterator#hasNext()
+		 */
+		@Override
+		public boolean hasNext() {
+			while (next == null && readError == null) {
+				String line;
+				try {
+					line = lines.readLine();
+				} catch (IOException e) {
+					readError = e;
+					break;
+				}
+				if (line == null) {
+					break;
+				}
+				lineNumber++;
+				line = line.trim();
+				if (!line.isEmpty()) {
+					next = parseQuote(line);
+				}
+			}
+			return next != null;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.Iterator#next()
+		 */
+		@Override
+		public ShippingQuote next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			final ShippingQuote quote = next;
+			next = null;
+			readAhead.add(quote);
+			return quote;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.Iterator#remove()
+		 */
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		/**
+		 * Parses an order, remembering the reason if the line is malformed.
+		 * 
+		 * @param line
+		 *            the trimmed line.
+		 * @return the order, or null if the line is malformed.
+		 */
+		private ShippingQuote parseQuote(String line) {
+			final String[] fields = line.split("\\s+");
+			if (fields.length == 4) {
+				try {
+					return new ShippingQuote(fields[0], fields[1],
+							Double.parseDouble(fields[2]),
+							Double.parseDouble(fields[3]));
+				} catch (NumberFormatException e) {
+					// Malformed line
+				}
+			}
+			readAhead.add(String.format("Invalid quote format at line %d",
+					lineNumber));
+			return null;
+		}
+
+		/**
+		 * Takes the next order read ahead, unless a malformed line precedes it.
+		 * 
+		 * @return the order, or null if none is next.
+		 */
+		ShippingQuote pollOrder() {
+			return (readAhead.peek() instanceof ShippingQuote) ? (ShippingQuote) readAhead
+					.poll() : null;
+		}
+
+		/**
+		 * Takes the reason of the next malformed line read ahead, unless an
+		 * order precedes it.
+		 * 
+		 * @return the reason, or null if no malformed line is next.
+		 */
+		String pollInvalidLine() {
+			return (readAhead.peek() instanceof String) ? (String) readAhead
+					.poll() : null;
+		}
+
+		/**
+		 * Checks the lines read ahead before the response is written.
+		 * 
+		 * @throws IOException
+		 *             if the lines could not be read.
+		 * @throws IllegalArgumentException
+		 *             if a line is not an origin, a destination, a vehicle
+		 *             mileage and a fuel price.
+		 */
+		void checkFirstLines() throws IOException {
+			checkRead();
+			for (Object line : readAhead) {
+				if (line instanceof String) {
+					throw new IllegalArgumentException((String) line);
+				}
+			}
+		}
+
+		/**
+		 * Checks that the lines were read without error.
+		 * 
+		 * @throws IOException
+		 *             if the lines could not be read.
+		 */
+		void checkRead() throws IOException {
+			if (readError != null) {
+				throw readError;
+			}
+		}
+
+	}
+
 }
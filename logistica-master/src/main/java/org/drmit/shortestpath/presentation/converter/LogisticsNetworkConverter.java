@@ -1,5 +1,7 @@
 package org.drmit.shortestpath.presentation.converter;
 
+import java.io.Reader;
+import java.util.Iterator;
 import java.util.List;
 
 import org.drmit.shortestpath.domain.model.Leg;
@@ -12,16 +14,33 @@ import org.drmit.shortestpath.domain.model.Leg;
 public interface LogisticsNetworkConverter {
 
 	/**
-	 * Converts the string argument into a list of legs.
+	 * Converts the character sequence argument into a list of legs.
 	 * 
 	 * @param lexicalLegs
-	 *            a string containing the lexical representation of the list of
+	 *            a character sequence containing the lexical representation of the list of
 	 *            legs.
 	 * @return a list of legs value represented by the string argument.
 	 * @throws IllegalArgumentException
 	 *             if string parameter does not conform to lexical the lexical
 	 *             representation of the list of legs.
 	 */
-	public List<Leg> parseLegs(String lexicalLegs);
+	public List<Leg> parseLegs(CharSequence lexicalLegs);
+
+	/**
+	 * Reads legs lazily from the lexical representation of a list of legs, so
+	 * that arbitrarily large networks can be streamed without being held in
+	 * memory. The reader is closed once the last leg has been read.
+	 * 
+	 * @param reader
+	 *            the reader providing the lexical representation of the list
+	 *            of legs.
+	 * @return an iterator over the legs read. Its methods throw
+	 *         IllegalArgumentException when a line does not conform to the
+	 *         lexical representation of a leg, and IllegalStateException when
+	 *         the reader fails.
+	 * @throws IllegalArgumentException
+	 *             if reader is null.
+	 */
+	public Iterator<Leg> readLegs(Reader reader);
 
 }
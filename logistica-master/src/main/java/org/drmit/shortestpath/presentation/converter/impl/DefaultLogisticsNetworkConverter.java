@@ -1,16 +1,22 @@
 package org.drmit.shortestpath.presentation.converter.impl;
 
-import java.util.LinkedList;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.StringTokenizer;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.NoSuchElementException;
 
 import org.drmit.shortestpath.domain.model.Leg;
 import org.drmit.shortestpath.presentation.converter.LogisticsNetworkConverter;
 import org.springframework.stereotype.Component;
 
 /**
+ * Logistics network converter of the text format, with one leg per line made
+ * of the origin, the destination and the distance separated by whitespace,
+ * such as "A B 10.5". Lines are parsed in a single pass without regular
+ * expressions, and the location names are interned per call.
  *
  * @author Leandro Ferreira
  */
@@ -18,12 +24,8 @@ import org.springframework.stereotype.Component;
 public class DefaultLogisticsNetworkConverter implements
 		LogisticsNetworkConverter {
 
-	/** Lines delimiters. */
-	private static final String LINE_DELIMITERS = "\r\n";
-
-	/** Leg pattern. */
-	private static final Pattern LEG_PATTERN = Pattern
-			.compile("\\s*(\\w+)\\s*(\\w+)\\s*(\\d+)\\s*");
+	/** Size of the buffer legs are read into. */
+	private static final int BUFFER_SIZE = 8192;
 
 	/**
 	 * Constructs a DefaultLogisticsNetworkConverter object.
@@ -35,42 +37,203 @@ public class DefaultLogisticsNetworkConverter implements
 	 * (non-Javadoc)
 	 * 
 	 * @see
-	 * org.drmit.shortestpath.presentation.converter.LegConverter#parseLegs(
-	 * java.lang.String)
+	 * org.drmit.shortestpath.presentation.converter.LogisticsNetworkConverter
+	 * #parseLegs(java.lang.CharSequence)
 	 */
 	@Override
-	public List<Leg> parseLegs(String lexicalLegs) {
+	public List<Leg> parseLegs(CharSequence lexicalLegs) {
 		if (lexicalLegs == null) {
 			throw new IllegalArgumentException("lexicalLegs is null");
 		}
 
-		// Lines tokenizer
-		final StringTokenizer linesTokenizer = new StringTokenizer(lexicalLegs,
-				LINE_DELIMITERS);
-
 		// The legs list
-		final List<Leg> legs = new LinkedList<Leg>();
+		final List<Leg> legs = new ArrayList<Leg>();
+
+		// Parses each non-empty line in place
+		final LegTokenizer tokenizer = new LegTokenizer();
+		final int length = lexicalLegs.length();
+		int lineNumber = 0;
+		int lineStart = 0;
+		while (lineStart < length) {
+			int lineEnd = lineStart;
+			while (lineEnd < length
+					&& !isLineTerminator(lexicalLegs.charAt(lineEnd))) {
+				lineEnd++;
+			}
+			if (lineEnd > lineStart) {
+				legs.add(tokenizer.parseLeg(lexicalLegs, lineStart, lineEnd,
+						++lineNumber));
+			}
+			lineStart = lineEnd + 1;
+		}
+
+		return legs;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.drmit.shortestpath.presentation.converter.LogisticsNetworkConverter
+	 * #readLegs(java.io.Reader)
+	 */
+	@Override
+	public Iterator<Leg> readLegs(Reader reader) {
+		if (reader == null) {
+			throw new IllegalArgumentException("reader is null");
+		}
+
+		return new LegIterator(reader);
+	}
+
+	/**
+	 * Checks whether a character terminates a line. Since empty lines are
+	 * skipped, a carriage return followed by a line feed needs no special
+	 * handling.
+	 * 
+	 * @param c
+	 *            the character.
+	 * @return true if it is a carriage return or a line feed.
+	 */
+	private static boolean isLineTerminator(char c) {
+		return c == '\n' || c == '\r';
+	}
+
+	/**
+	 * Iterator parsing one line ahead of the caller. Empty lines are skipped
+	 * and not counted. Lines lying entirely in the read buffer are parsed in
+	 * place, and the others are gathered into a reusable line buffer first.
+	 */
+	private static final class LegIterator implements Iterator<Leg> {
+
+		/** Reader, or null once exhausted. */
+		private Reader reader;
+
+		/** Characters read. */
+		private final char[] buffer = new char[BUFFER_SIZE];
 
-		// Iterates over each line
-		for (int lineNumber = 1; linesTokenizer.hasMoreTokens(); lineNumber++) {
-			// Returns the next token in this string tokenizer's string
-			final String line = linesTokenizer.nextToken();
+		/** The read characters as a character sequence. */
+		private final CharBuffer chars = CharBuffer.wrap(buffer);
 
-			// Gets a matcher that will match the input against the pattern
-			final Matcher matcher = LEG_PATTERN.matcher(line);
+		/** Index of the next character to be consumed. */
+		private int position = 0;
 
-			// Checks if the line formatted correctly
-			if (!matcher.matches()) {
-				throw new IllegalArgumentException(String.format(
-						"Invalid leg format at line %d", lineNumber));
+		/** Index after the last character read. */
+		private int limit = 0;
+
+		/** Line spanning more than one read. */
+		private final StringBuilder line = new StringBuilder();
+
+		/** Tokenizer interning the names of the legs. */
+		private final LegTokenizer tokenizer = new LegTokenizer();
+
+		/** Next leg, or null if not parsed yet. */
+		private Leg next = null;
+
+		/** Number of the last non-empty line read. */
+		private int lineNumber = 0;
+
+		/**
+		 * Constructs a LegIterator object.
+		 * 
+		 * @param reader
+		 *            the reader.
+		 */
+		LegIterator(Reader reader) {
+			this.reader = reader;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.Iterator#hasNext()
+		 */
+		@Override
+		public boolean hasNext() {
+			if (next == null && reader != null) {
+				next = readNext();
+			}
+			return next != null;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.Iterator#next()
+		 */
+		@Override
+		public Leg next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
 			}
+			final Leg leg = next;
+			next = null;
+			return leg;
+		}
 
-			// Parses the current line
-			legs.add(new Leg(matcher.group(1), matcher.group(2), Double
-					.valueOf(matcher.group(3))));
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.Iterator#remove()
+		 */
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		/**
+		 * Parses the next non-empty line, closing the reader at the end.
+		 * 
+		 * @return the leg parsed, or null if there are no more lines.
+		 */
+		private Leg readNext() {
+			try {
+				line.setLength(0);
+				while (true) {
+					// Refills the buffer
+					if (position == limit) {
+						limit = reader.read(buffer);
+						position = 0;
+						if (limit < 0) {
+							limit = 0;
+							reader.close();
+							reader = null;
+							return line.length() == 0 ? null : tokenizer
+									.parseLeg(line, 0, line.length(),
+											++lineNumber);
+						}
+					}
+
+					// Looks for the end of the line
+					final int lineStart = position;
+					while (position < limit
+							&& !isLineTerminator(buffer[position])) {
+						position++;
+					}
+					if (position == limit) {
+						line.append(buffer, lineStart, position - lineStart);
+						continue;
+					}
+					final int lineEnd = position++;
+
+					// Parses in place, or out of the line buffer
+					if (line.length() == 0) {
+						if (lineEnd > lineStart) {
+							return tokenizer.parseLeg(chars, lineStart,
+									lineEnd, ++lineNumber);
+						}
+					} else {
+						line.append(buffer, lineStart, lineEnd - lineStart);
+						return tokenizer.parseLeg(line, 0, line.length(),
+								++lineNumber);
+					}
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException(String.format(
+						"Could not read the legs after line %d", lineNumber), e);
+			}
 		}
 
-		return legs;
 	}
 
 }
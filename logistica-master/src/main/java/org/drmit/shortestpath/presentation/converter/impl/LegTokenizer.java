@@ -0,0 +1,484 @@
+package org.drmit.shortestpath.presentation.converter.impl;
+
+import java.util.Arrays;
+
+import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.domain.model.TravelTimeProfile;
+import org.drmit.shortestpath.infrastructure.metrics.RoutingMetrics;
+import org.drmit.shortestpath.infrastructure.metrics.RoutingStage;
+
+/**
+ * Single-pass tokenizer of the lexical representation of a leg: an origin
+ * name, a destination name and a distance, separated and optionally surrounded
+ * by whitespace. Names are made of letters, digits and underscores, and the
+ * distance is a non-negative decimal number such as 10 or 12.5.
+ * <p>
+ * The distance may be followed by a travel time profile, a comma separated
+ * list of breakpoints made of a departure time and a travel time in seconds
+ * joined by an equals sign, such as "A B 10 0=600,28800=1500", by a toll such
+ * as "toll=4.5" and by a road class such as "class=highway", in any order.
+ * <p>
+ * Location names are interned in a table of the tokenizer, so that every leg
+ * parsed by the same tokenizer shares one String per location. Tokenizers are
+ * not thread-safe.
+ * <p>
+ * One leg in every 64 is timed into the routing metrics, which keeps the clock
+ * reads off the import path while still sampling the parse latency.
+ *
+ * @author Leandro Ferreira
+ */
+final class LegTokenizer {
+
+	/** Initial capacity of the names table, a power of two. */
+	private static final int INITIAL_CAPACITY = 256;
+
+	/** Powers of ten exactly representable as doubles. */
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4,
+			1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15,
+			1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	/** Largest mantissa exactly representable as a double. */
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+	/** Prefix of the toll attribute. */
+	private static final String TOLL_KEY = "toll=";
+
+	/** Prefix of the road class attribute. */
+	private static final String ROAD_CLASS_KEY = "class=";
+
+	/** Mask of the leg count selecting the legs which are timed. */
+	private static final int SAMPLE_MASK = 63;
+
+	/** Routing metrics. */
+	private static final RoutingMetrics metrics = RoutingMetrics.getInstance();
+
+	/** Interned names, in open addressing with linear probing. */
+	private String[] names = new String[INITIAL_CAPACITY];
+
+	/** Number of interned names. */
+	private int nameCount = 0;
+
+	/** Number of legs parsed. */
+	private int legCount = 0;
+
+	/** Value of the last number parsed. */
+	private double number = 0;
+
+	/** Departure times of the profile being parsed. */
+	private double[] departureTimes = new double[8];
+
+	/** Travel times of the profile being parsed. */
+	private double[] travelTimes = new double[8];
+
+	/** Travel time profile last parsed. */
+	private TravelTimeProfile parsedProfile = null;
+
+	/**
+	 * Constructs a LegTokenizer object.
+	 */
+	LegTokenizer() {
+	}
+
+	/**
+	 * Parses a leg out of a line.
+	 *
+	 * @param line
+	 *            the characters holding the line.
+	 * @param start
+	 *            the index of the first character of the line.
+	 * @param end
+	 *            the index after the last character of the line.
+	 * @param lineNumber
+	 *            the line number reported on errors.
+	 * @return the leg parsed.
+	 * @throws IllegalArgumentException
+	 *             if the line does not conform to the lexical representation
+	 *             of a leg.
+	 */
+	Leg parseLeg(CharSequence line, int start, int end, int lineNumber) {
+		if ((legCount++ & SAMPLE_MASK) != 0) {
+			return parse(line, start, end, lineNumber);
+		}
+		final long startNanos = System.nanoTime();
+		final Leg leg = parse(line, start, end, lineNumber);
+		metrics.recordSince(RoutingStage.PARSE, startNanos);
+		return leg;
+	}
+
+	/**
+	 * Parses a leg out of a line, untimed.
+	 *
+	 * @param line
+	 *            the characters holding the line.
+	 * @param start
+	 *            the index of the first character of the line.
+	 * @param end
+	 *            the index after the last character of the line.
+	 * @param lineNumber
+	 *            the line number reported on errors.
+	 * @return the leg parsed.
+	 * @throws IllegalArgumentException
+	 *             if the line does not conform to the lexical representation
+	 *             of a leg.
+	 */
+	private Leg parse(CharSequence line, int start, int end, int lineNumber) {
+		int position = skipWhitespace(line, start, end);
+
+		// Origin
+		final int originStart = position;
+		position = skipName(line, position, end);
+		if (position == originStart) {
+			throw invalidLeg(lineNumber);
+		}
+		final String origin = intern(line, originStart, position);
+
+		// Destination
+		int separatorStart = position;
+		position = skipWhitespace(line, position, end);
+		final int destinationStart = position;
+		position = skipName(line, position, end);
+		if (position == separatorStart || position == destinationStart) {
+			throw invalidLeg(lineNumber);
+		}
+		final String destination = intern(line, destinationStart, position);
+
+		// Distance
+		separatorStart = position;
+		position = skipWhitespace(line, position, end);
+		if (position == separatorStart) {
+			throw invalidLeg(lineNumber);
+		}
+		position = parseNumber(line, position, end, lineNumber);
+		final double distance = number;
+
+		// Optional attributes, the last of each kind prevailing
+		TravelTimeProfile profile = null;
+		double toll = 0;
+		String roadClass = null;
+		while (true) {
+			separatorStart = position;
+			position = skipWhitespace(line, position, end);
+			if (position == end) {
+				break;
+			}
+			if (position == separatorStart) {
+				throw invalidLeg(lineNumber);
+			}
+			if (isDigit(line.charAt(position))) {
+				position = parseProfile(line, position, end, lineNumber);
+				profile = parsedProfile;
+			} else if (startsWith(line, position, end, TOLL_KEY)) {
+				position = parseNumber(line, position + TOLL_KEY.length(),
+						end, lineNumber);
+				toll = number;
+			} else if (startsWith(line, position, end, ROAD_CLASS_KEY)) {
+				final int roadClassStart = position + ROAD_CLASS_KEY.length();
+				position = skipName(line, roadClassStart, end);
+				if (position == roadClassStart) {
+					throw invalidLeg(lineNumber);
+				}
+				roadClass = intern(line, roadClassStart, position);
+			} else {
+				throw invalidLeg(lineNumber);
+			}
+		}
+
+		return new Leg(origin, destination, distance, profile, toll,
+				roadClass);
+	}
+
+	/**
+	 * Parses a travel time profile, leaving it in the parsedProfile field.
+	 *
+	 * @param line
+	 *            the characters holding the profile.
+	 * @param start
+	 *            the index of the first character of the profile.
+	 * @param end
+	 *            the index after the last character of the line.
+	 * @param lineNumber
+	 *            the line number reported on errors.
+	 * @return the index after the last character of the profile.
+	 * @throws IllegalArgumentException
+	 *             if there is no valid profile at the start index.
+	 */
+	private int parseProfile(CharSequence line, int start, int end,
+			int lineNumber) {
+		int position = start;
+		int count = 0;
+		do {
+			if (count == departureTimes.length) {
+				departureTimes = Arrays.copyOf(departureTimes, count * 2);
+				travelTimes = Arrays.copyOf(travelTimes, count * 2);
+			}
+			position = parseNumber(line, count == 0 ? position
+					: position + 1, end, lineNumber);
+			departureTimes[count] = number;
+			if (position == end || line.charAt(position) != '=') {
+				throw invalidLeg(lineNumber);
+			}
+			position = parseNumber(line, position + 1, end, lineNumber);
+			travelTimes[count] = number;
+			count++;
+		} while (position < end && line.charAt(position) == ',');
+
+		try {
+			parsedProfile = new TravelTimeProfile(Arrays.copyOf(
+					departureTimes, count), Arrays.copyOf(travelTimes, count));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException(String.format(
+					"Invalid travel time profile at line %d: %s", lineNumber,
+					e.getMessage()), e);
+		}
+		return position;
+	}
+
+	/**
+	 * Parses a non-negative decimal number, leaving its value in the number
+	 * field.
+	 *
+	 * @param line
+	 *            the characters holding the number.
+	 * @param start
+	 *            the index of the first character of the number.
+	 * @param end
+	 *            the index after the last character of the line.
+	 * @param lineNumber
+	 *            the line number reported on errors.
+	 * @return the index after the last character of the number.
+	 * @throws IllegalArgumentException
+	 *             if there is no number at the start index.
+	 */
+	private int parseNumber(CharSequence line, int start, int end,
+			int lineNumber) {
+		// Integer part
+		int position = start;
+		long mantissa = 0;
+		while (position < end && isDigit(line.charAt(position))) {
+			if (mantissa < MAX_EXACT_MANTISSA) {
+				mantissa = mantissa * 10 + (line.charAt(position) - '0');
+			}
+			position++;
+		}
+		if (position == start) {
+			throw invalidLeg(lineNumber);
+		}
+
+		// Fraction part
+		int scale = 0;
+		if (position < end && line.charAt(position) == '.') {
+			position++;
+			final int fractionStart = position;
+			while (position < end && isDigit(line.charAt(position))) {
+				if (mantissa < MAX_EXACT_MANTISSA) {
+					mantissa = mantissa * 10 + (line.charAt(position) - '0');
+				}
+				position++;
+			}
+			scale = position - fractionStart;
+			if (scale == 0) {
+				throw invalidLeg(lineNumber);
+			}
+		}
+
+		// Divides exactly when both operands are exact doubles, and falls back
+		// to the JDK otherwise so that the result is always correctly rounded
+		if (mantissa < MAX_EXACT_MANTISSA && scale < POWERS_OF_TEN.length) {
+			number = mantissa / POWERS_OF_TEN[scale];
+		} else {
+			number = Double.parseDouble(line.subSequence(start, position)
+					.toString());
+		}
+		return position;
+	}
+
+	/**
+	 * Gets the interned String with the given characters, interning a new one
+	 * if there is none.
+	 *
+	 * @param line
+	 *            the characters holding the name.
+	 * @param start
+	 *            the index of the first character of the name.
+	 * @param end
+	 *            the index after the last character of the name.
+	 * @return the interned name.
+	 */
+	private String intern(CharSequence line, int start, int end) {
+		// Hashes like String.hashCode, then spreads the high bits
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + line.charAt(i);
+		}
+		hash ^= hash >>> 16;
+
+		final int mask = names.length - 1;
+		int slot = hash & mask;
+		String name;
+		while ((name = names[slot]) != null) {
+			if (regionEquals(name, line, start, end)) {
+				return name;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		name = line.subSequence(start, end).toString();
+		names[slot] = name;
+		if (++nameCount * 2 > names.length) {
+			grow();
+		}
+		return name;
+	}
+
+	/**
+	 * Doubles the capacity of the names table.
+	 */
+	private void grow() {
+		final String[] oldNames = names;
+		names = new String[oldNames.length * 2];
+		final int mask = names.length - 1;
+		for (String name : oldNames) {
+			if (name != null) {
+				int hash = name.hashCode();
+				hash ^= hash >>> 16;
+				int slot = hash & mask;
+				while (names[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				names[slot] = name;
+			}
+		}
+	}
+
+	/**
+	 * Checks whether a String has the given characters.
+	 *
+	 * @param name
+	 *            the String.
+	 * @param line
+	 *            the characters holding the name.
+	 * @param start
+	 *            the index of the first character of the name.
+	 * @param end
+	 *            the index after the last character of the name.
+	 * @return true if they are equal.
+	 */
+	private static boolean regionEquals(String name, CharSequence line,
+			int start, int end) {
+		if (name.length() != end - start) {
+			return false;
+		}
+		for (int i = 0; i < name.length(); i++) {
+			if (name.charAt(i) != line.charAt(start + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks whether the characters at a position start with a prefix.
+	 *
+	 * @param line
+	 *            the characters.
+	 * @param position
+	 *            the index of the first character to check.
+	 * @param end
+	 *            the index after the last character to check.
+	 * @param prefix
+	 *            the prefix.
+	 * @return true if the characters start with the prefix.
+	 */
+	private static boolean startsWith(CharSequence line, int position,
+			int end, String prefix) {
+		return end - position >= prefix.length()
+				&& regionEquals(prefix, line, position,
+						position + prefix.length());
+	}
+
+	/**
+	 * Skips whitespace characters.
+	 *
+	 * @param line
+	 *            the characters.
+	 * @param position
+	 *            the index of the first character to check.
+	 * @param end
+	 *            the index after the last character to check.
+	 * @return the index of the first non-whitespace character, or end.
+	 */
+	private static int skipWhitespace(CharSequence line, int position, int end) {
+		while (position < end && isWhitespace(line.charAt(position))) {
+			position++;
+		}
+		return position;
+	}
+
+	/**
+	 * Skips name characters.
+	 *
+	 * @param line
+	 *            the characters.
+	 * @param position
+	 *            the index of the first character to check.
+	 * @param end
+	 *            the index after the last character to check.
+	 * @return the index of the first non-name character, or end.
+	 */
+	private static int skipName(CharSequence line, int position, int end) {
+		while (position < end && isNameCharacter(line.charAt(position))) {
+			position++;
+		}
+		return position;
+	}
+
+	/**
+	 * Checks whether a character is whitespace, as in the \s regular
+	 * expression class.
+	 *
+	 * @param c
+	 *            the character.
+	 * @return true if it is whitespace.
+	 */
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f'
+				|| c == '\u000B';
+	}
+
+	/**
+	 * Checks whether a character may be part of a name, as in the \w regular
+	 * expression class.
+	 *
+	 * @param c
+	 *            the character.
+	 * @return true if it is a letter, a digit or an underscore.
+	 */
+	private static boolean isNameCharacter(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+				|| isDigit(c) || c == '_';
+	}
+
+	/**
+	 * Checks whether a character is a decimal digit.
+	 *
+	 * @param c
+	 *            the character.
+	 * @return true if it is a digit.
+	 */
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	/**
+	 * Creates the exception thrown for a malformed line.
+	 *
+	 * @param lineNumber
+	 *            the line number.
+	 * @return the exception.
+	 */
+	private static IllegalArgumentException invalidLeg(int lineNumber) {
+		return new IllegalArgumentException(String.format(
+				"Invalid leg format at line %d", lineNumber));
+	}
+
+}
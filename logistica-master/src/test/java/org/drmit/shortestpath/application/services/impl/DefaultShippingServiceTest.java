@@ -8,17 +8,34 @@ package org.drmit.shortestpath.application.services.impl;
  */
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.drmit.shortestpath.application.services.NoShippingRouteServiceException;
 import org.drmit.shortestpath.application.services.ServiceException;
+import org.drmit.shortestpath.application.services.ShippingDetailsBatch;
+import org.drmit.shortestpath.application.services.ShippingRatingService;
 import org.drmit.shortestpath.application.services.ShippingService;
 import org.drmit.shortestpath.domain.model.Leg;
 import org.drmit.shortestpath.domain.model.LogisticsNetwork;
 import org.drmit.shortestpath.domain.model.Route;
 import org.drmit.shortestpath.domain.model.ShippingDetails;
+import org.drmit.shortestpath.domain.model.ShippingMatrix;
+import org.drmit.shortestpath.domain.model.ShippingQuote;
+import org.drmit.shortestpath.infrastructure.concurrent.BoundedExecutor;
+import org.drmit.shortestpath.infrastructure.repository.RouteRepository;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -35,10 +52,21 @@ import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 @ContextConfiguration("classpath:applicationContext-test.xml")
 public class DefaultShippingServiceTest {
 
+	/** Logistics network name. */
+	private static final String NETWORK = "Sample Logistics Network";
+
 	/** Shipping service. */
 	@Autowired
 	private ShippingService shippingService;
 
+	/** Route repository. */
+	@Autowired
+	private RouteRepository routeRepository;
+
+	/** Shipping rating service. */
+	@Autowired
+	private ShippingRatingService shippingRatingService;
+
 	/**
 	 * Sets up the fixture.
 	 * 
@@ -58,7 +86,7 @@ public class DefaultShippingServiceTest {
 
 		// Creates the logistics network
 		final LogisticsNetwork logisticsNetwork = new LogisticsNetwork(
-				"Sample Logistics Network", legs);
+				NETWORK, legs);
 
 		// Registers the logistics network
 		shippingService.addLogisticsNetwork(logisticsNetwork);
@@ -66,7 +94,7 @@ public class DefaultShippingServiceTest {
 
 	/**
 	 * Test method for
-	 * {@link org.drmit.shortestpath.application.services.impl.DefaultShippingService#getShippingDetails(java.lang.String, java.lang.String, double, double)}
+	 * {@link org.drmit.shortestpath.application.services.impl.DefaultShippingService#getShippingDetails(java.lang.String, java.lang.String, java.lang.String, double, double)}
 	 * .
 	 */
 	@Test
@@ -74,7 +102,7 @@ public class DefaultShippingServiceTest {
 			throws NoShippingRouteServiceException, ServiceException {
 		// Gets the order shipping details
 		final ShippingDetails shippingDetails = shippingService
-				.getShippingDetails("A", "D", 10, 2.5);
+				.getShippingDetails(NETWORK, "A", "D", 10, 2.5);
 
 		// Expected legs
 		final List<Leg> expectedLegs = new LinkedList<Leg>();
@@ -89,4 +117,228 @@ public class DefaultShippingServiceTest {
 		assertEquals(expectedRoute, shippingDetails.getShippingRoute());
 	}
 
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.application.services.impl.DefaultShippingService#getShippingDetailsWithoutRoute(java.lang.String, java.lang.String, java.lang.String, double, double)}
+	 * .
+	 */
+	@Test
+	public void testGetShippingDetailsWithoutRoute()
+			throws NoShippingRouteServiceException, ServiceException {
+		// Gets the order shipping details without the route
+		final ShippingDetails shippingDetails = shippingService
+				.getShippingDetailsWithoutRoute(NETWORK, "A", "D", 10, 2.5);
+
+		// Asserts that only the route length is kept
+		assertEquals(6.25, shippingDetails.getShippingRate(), 0.001);
+		assertEquals(25, shippingDetails.getShippingDistance(), 0.001);
+		assertNull(shippingDetails.getShippingRoute());
+
+		// Asserts that unreachable destinations are reported
+		try {
+			shippingService.getShippingDetailsWithoutRoute(NETWORK, "E", "A",
+					10, 2.5);
+			fail("Unreachable destination was quoted");
+		} catch (NoShippingRouteServiceException e) {
+			// Expected
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.application.services.impl.DefaultShippingService#getShippingDetails(java.lang.String, java.util.Iterator)}
+	 * .
+	 */
+	@Test
+	public void testGetShippingDetailsBatch() throws Exception {
+		// Quotes a batch repeating a route with another vehicle
+		final ShippingDetailsBatch batch = shippingService.getShippingDetails(
+				NETWORK, Arrays.asList(new ShippingQuote("A", "D", 10, 2.5),
+						new ShippingQuote("A", "X", 10, 2.5),
+						new ShippingQuote("A", "D", 5, 2.5)).iterator());
+		final List<Future<ShippingDetails>> shippingDetails = new ArrayList<Future<ShippingDetails>>();
+		while (batch.hasNext()) {
+			shippingDetails.add(batch.next());
+		}
+
+		// Asserts that the orders are quoted in order
+		assertEquals(3, shippingDetails.size());
+		assertEquals(6.25, shippingDetails.get(0).get().getShippingRate(),
+				0.001);
+		assertEquals(12.5, shippingDetails.get(2).get().getShippingRate(),
+				0.001);
+		assertEquals(25, shippingDetails.get(2).get().getShippingDistance(),
+				0.001);
+		assertNull(shippingDetails.get(2).get().getShippingRoute());
+
+		// Asserts that an order without a route fails on its own
+		try {
+			shippingDetails.get(1).get();
+			fail("Order without a route was quoted");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof NoShippingRouteServiceException);
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.application.services.impl.DefaultShippingService#getShippingDetails(java.lang.String, java.util.Iterator)}
+	 * .
+	 */
+	@Test
+	public void testGetShippingDetailsBatchBackpressure() throws Exception {
+		// Quotes a batch of more searches than a small executor can queue
+		final DefaultShippingService windowed = new DefaultShippingService(
+				routeRepository, shippingRatingService);
+		final BoundedExecutor executor = new BoundedExecutor("batch-test", 1, 2);
+		windowed.setBatchExecutor(executor);
+		windowed.setBatchWindow(2);
+		final List<ShippingQuote> quotes = new ArrayList<ShippingQuote>();
+		for (int i = 0; i < 50; i++) {
+			quotes.add(new ShippingQuote("A", (i % 2 == 0) ? "D" : "X" + i,
+					10, 2.5));
+		}
+		final ShippingDetailsBatch shippingDetails = windowed
+				.getShippingDetails(NETWORK, quotes.iterator());
+
+		// Asserts that every order is quoted nonetheless
+		try {
+			for (int i = 0; i < 50; i++) {
+				try {
+					assertEquals(6.25, shippingDetails.next().get()
+							.getShippingRate(), 0.001);
+					assertEquals(0, i % 2);
+				} catch (ExecutionException e) {
+					assertEquals(1, i % 2);
+					assertTrue(e.getCause() instanceof NoShippingRouteServiceException);
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		// Asserts that a saturated executor rejects a new batch
+		windowed.setBatchExecutor(new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				throw new RejectedExecutionException("Saturated");
+			}
+		});
+		try {
+			windowed.getShippingDetails(NETWORK, quotes.iterator());
+			fail("Batch was accepted by a saturated executor");
+		} catch (RejectedExecutionException e) {
+			// Expected
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.application.services.impl.DefaultShippingService#getShippingDetails(java.lang.String, java.util.Iterator)}
+	 * .
+	 */
+	@Test
+	public void testGetShippingDetailsBatchStreamsQuotes() throws Exception {
+		final DefaultShippingService windowed = new DefaultShippingService(
+				routeRepository, shippingRatingService);
+		final BoundedExecutor executor = new BoundedExecutor("batch-test", 1, 8);
+		windowed.setBatchExecutor(executor);
+		windowed.setBatchWindow(2);
+
+		// Counts the orders read from a batch of 10
+		final int[] readCount = new int[1];
+		final Iterator<ShippingQuote> quotes = new Iterator<ShippingQuote>() {
+			@Override
+			public boolean hasNext() {
+				return readCount[0] < 10;
+			}
+
+			@Override
+			public ShippingQuote next() {
+				readCount[0]++;
+				return new ShippingQuote("A", "D", 10, 2.5);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+		try {
+			// Asserts that the orders are read a window ahead of the consumer
+			final ShippingDetailsBatch shippingDetails = windowed
+					.getShippingDetails(NETWORK, quotes);
+			assertEquals(3, readCount[0]);
+			assertEquals(6.25, shippingDetails.next().get().getShippingRate(),
+					0.001);
+			assertEquals(3, readCount[0]);
+			assertEquals(6.25, shippingDetails.next().get().getShippingRate(),
+					0.001);
+			assertEquals(4, readCount[0]);
+
+			// Asserts that a cancelled batch stops reading
+			shippingDetails.cancel();
+			assertFalse(shippingDetails.hasNext());
+			assertEquals(4, readCount[0]);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.application.services.impl.DefaultShippingService#getCheapestShippingDetails(java.lang.String, java.lang.String, java.lang.String, java.lang.String, double)}
+	 * .
+	 */
+	@Test
+	public void testGetCheapestShippingDetails()
+			throws NoShippingRouteServiceException, ServiceException {
+		// Tolls a highway detour around an urban route
+		shippingService.addLogisticsNetwork(new LogisticsNetwork(
+				"Tolled Logistics Network", Arrays.asList(new Leg("A", "B",
+						10, null, 0, "urban"), new Leg("B", "D", 10, null, 0,
+						"urban"), new Leg("A", "C", 12, null, 2, "highway"),
+						new Leg("C", "D", 12, null, 0, "highway"))));
+
+		// Gets the order shipping details for the configured truck
+		final ShippingDetails shippingDetails = shippingService
+				.getCheapestShippingDetails("Tolled Logistics Network", "A",
+						"D", "truck", 4);
+
+		// Asserts that the rate is the fuel cost plus the weighted tolls
+		assertEquals(24, shippingDetails.getShippingRoute().getLength(), 0.001);
+		assertEquals(24 * 0.8 + 2 * 3, shippingDetails.getShippingRate(),
+				0.001);
+
+		// Asserts that unknown profiles are rejected
+		try {
+			shippingService.getCheapestShippingDetails(NETWORK, "A", "D",
+					"bicycle", 4);
+			fail("Unknown vehicle profile was accepted");
+		} catch (IllegalArgumentException e) {
+			assertEquals("vehicleProfile is unknown", e.getMessage());
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.application.services.impl.DefaultShippingService#getShippingMatrix(java.lang.String, java.util.List, java.util.List, double, double)}
+	 * .
+	 */
+	@Test
+	public void testGetShippingMatrix() throws ServiceException {
+		// Gets the shipping matrix
+		final ShippingMatrix shippingMatrix = shippingService
+				.getShippingMatrix(NETWORK, Arrays.asList("A", "B"),
+						Arrays.asList("D", "A"), 10, 2.5);
+
+		// Asserts that the expected and the actual values are equals
+		assertEquals(25, shippingMatrix.getDistances()[0][0], 0.001);
+		assertEquals(6.25, shippingMatrix.getShippingRates()[0][0], 0.001);
+		assertEquals(0, shippingMatrix.getShippingRates()[0][1], 0.001);
+		assertEquals(15, shippingMatrix.getDistances()[1][0], 0.001);
+		assertNull(shippingMatrix.getDistances()[1][1]);
+		assertNull(shippingMatrix.getShippingRates()[1][1]);
+	}
+
 }
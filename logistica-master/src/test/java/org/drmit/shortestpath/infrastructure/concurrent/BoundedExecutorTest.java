@@ -0,0 +1,59 @@
+package org.drmit.shortestpath.infrastructure.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+
+/**
+ * BoundedExecutor test case.
+ *
+ * @author Leandro Ferreira
+ */
+public class BoundedExecutorTest {
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.concurrent.BoundedExecutor#execute(java.lang.Runnable)}
+	 * .
+	 */
+	@Test
+	public void testRejectsWhenSaturated() throws InterruptedException {
+		final BoundedExecutor executor = new BoundedExecutor("test", 1, 1);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Runnable blocker = new Runnable() {
+			@Override
+			public void run() {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		try {
+			// Occupies the thread and the queue
+			executor.execute(blocker);
+			started.await();
+			executor.execute(blocker);
+			assertEquals(1, executor.getQueueSize());
+
+			// Asserts that the next task is rejected and counted
+			try {
+				executor.execute(blocker);
+				fail("Saturated executor accepted a task");
+			} catch (RejectedExecutionException e) {
+				assertEquals(1, executor.getRejectedCount());
+			}
+		} finally {
+			release.countDown();
+			executor.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,60 @@
+package org.drmit.shortestpath.infrastructure.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * LatencyHistogram test case.
+ *
+ * @author Leandro Ferreira
+ */
+public class LatencyHistogramTest {
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.metrics.LatencyHistogram#bucketOf(long)}
+	 * .
+	 */
+	@Test
+	public void testBucketBounds() {
+		// Asserts that every value lies within its bucket bounds, and that the
+		// bounds are within 1/32 of each other
+		final long[] values = { 0, 1, 63, 64, 65, 100, 1000, 12345,
+				1000000007L, Long.MAX_VALUE / 3, Long.MAX_VALUE };
+		for (long value : values) {
+			final int bucket = LatencyHistogram.bucketOf(value);
+			final long lowest = LatencyHistogram.lowestOf(bucket);
+			final long highest = LatencyHistogram.highestOf(bucket);
+			assertTrue(lowest <= value && value <= highest);
+			assertTrue(highest - lowest <= lowest / 32);
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.metrics.LatencyHistogram#snapshot()}
+	 * .
+	 */
+	@Test
+	public void testSnapshot() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 1; value <= 1000; value++) {
+			histogram.record(value * 1000);
+		}
+
+		// Asserts that the percentiles are within the histogram precision
+		final LatencySnapshot snapshot = histogram.snapshot();
+		assertEquals(1000, snapshot.getCount());
+		assertEquals(500500, snapshot.getMean(), 500500 / 32.0);
+		assertEquals(500000, snapshot.getP50(), 500000 / 32.0);
+		assertEquals(990000, snapshot.getP99(), 990000 / 32.0);
+		assertEquals(1000000, snapshot.getMax(), 1000000 / 32.0);
+
+		// Asserts that a reset clears the values
+		histogram.reset();
+		assertEquals(0, histogram.snapshot().getCount());
+	}
+
+}
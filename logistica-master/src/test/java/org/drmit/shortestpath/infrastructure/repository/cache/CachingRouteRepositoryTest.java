@@ -0,0 +1,343 @@
+package org.drmit.shortestpath.infrastructure.repository.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import org.drmit.shortestpath.domain.model.DistanceMatrix;
+import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.domain.model.Route;
+import org.drmit.shortestpath.domain.model.ShortestPathTree;
+import org.drmit.shortestpath.domain.model.TimedRoute;
+import org.drmit.shortestpath.domain.model.VehicleProfile;
+import org.drmit.shortestpath.infrastructure.repository.RepositoryExeption;
+import org.drmit.shortestpath.infrastructure.repository.RouteNotFoundRepositoryExeption;
+import org.drmit.shortestpath.infrastructure.repository.RouteRepository;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * CachingRouteRepository test case.
+ *
+ * @author Leandro Ferreira
+ */
+public class CachingRouteRepositoryTest {
+
+	/** Network name. */
+	private static final String NETWORK = "Test";
+
+	/** Underlying route repository. */
+	private CountingRouteRepository delegate;
+
+	/**
+	 * Sets up the fixture.
+	 *
+	 * @throws Exception
+	 *             if an error occurs.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		delegate = new CountingRouteRepository();
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.cache.CachingRouteRepository#findShortestRoute(java.lang.String, java.lang.String, java.lang.String)}
+	 * .
+	 */
+	@Test
+	public void testHitsAndMisses() throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		final CachingRouteRepository routeRepository = new CachingRouteRepository(
+				delegate, 10, EvictionPolicy.LRU);
+
+		final Route route = routeRepository.findShortestRoute(NETWORK,
+				"A", "D");
+		assertSame(route, routeRepository.findShortestRoute(NETWORK, "A", "D"));
+		routeRepository.findShortestRoute(NETWORK, "A", "C");
+
+		// Asserts that only the misses reached the underlying repository
+		assertEquals(2, delegate.lookups);
+		assertEquals(1, routeRepository.getHitCount());
+		assertEquals(2, routeRepository.getMissCount());
+		assertEquals(2, routeRepository.getSize());
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.cache.CachingRouteRepository#findShortestRoute(java.lang.String, java.lang.String, java.lang.String)}
+	 * .
+	 */
+	@Test
+	public void testLruEviction() throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		final CachingRouteRepository routeRepository = new CachingRouteRepository(
+				delegate, 2, EvictionPolicy.LRU);
+
+		routeRepository.findShortestRoute(NETWORK, "A", "B");
+		routeRepository.findShortestRoute(NETWORK, "A", "C");
+		routeRepository.findShortestRoute(NETWORK, "A", "B");
+		routeRepository.findShortestRoute(NETWORK, "A", "D");
+
+		// A-C was the least recently used route
+		assertEquals(1, routeRepository.getEvictionCount());
+		routeRepository.findShortestRoute(NETWORK, "A", "B");
+		assertEquals(3, delegate.lookups);
+		routeRepository.findShortestRoute(NETWORK, "A", "C");
+		assertEquals(4, delegate.lookups);
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.cache.CachingRouteRepository#findShortestRoute(java.lang.String, java.lang.String, java.lang.String)}
+	 * .
+	 */
+	@Test
+	public void testLfuEviction() throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		final CachingRouteRepository routeRepository = new CachingRouteRepository(
+				delegate, 2, EvictionPolicy.LFU);
+
+		routeRepository.findShortestRoute(NETWORK, "A", "B");
+		routeRepository.findShortestRoute(NETWORK, "A", "B");
+		routeRepository.findShortestRoute(NETWORK, "A", "C");
+		routeRepository.findShortestRoute(NETWORK, "A", "C");
+		routeRepository.findShortestRoute(NETWORK, "A", "C");
+		routeRepository.findShortestRoute(NETWORK, "A", "B");
+		routeRepository.findShortestRoute(NETWORK, "A", "B");
+		routeRepository.findShortestRoute(NETWORK, "A", "D");
+
+		// A-C was the least frequently used route when A-D came in
+		assertEquals(1, routeRepository.getEvictionCount());
+		routeRepository.findShortestRoute(NETWORK, "A", "B");
+		assertEquals(3, delegate.lookups);
+
+		// A-D was the least frequently used route when A-E came in
+		routeRepository.findShortestRoute(NETWORK, "A", "E");
+		routeRepository.findShortestRoute(NETWORK, "A", "B");
+		assertEquals(4, delegate.lookups);
+		routeRepository.findShortestRoute(NETWORK, "A", "D");
+		assertEquals(5, delegate.lookups);
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.cache.CachingRouteRepository#saveLeg(java.lang.String, org.drmit.shortestpath.domain.model.Leg)}
+	 * .
+	 */
+	@Test
+	public void testInvalidationOnSave() throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		final CachingRouteRepository routeRepository = new CachingRouteRepository(
+				delegate, 10, EvictionPolicy.LFU);
+
+		routeRepository.findShortestRoute(NETWORK, "A", "D");
+		routeRepository.saveLeg(NETWORK, new Leg("A", "D", 1));
+		assertEquals(0, routeRepository.getSize());
+
+		routeRepository.findShortestRoute(NETWORK, "A", "D");
+		routeRepository.saveLegs(NETWORK, Arrays.asList(new Leg("A", "D", 2)));
+		routeRepository.findShortestRoute(NETWORK, "A", "D");
+
+		// Asserts that every lookup after a write reached the repository
+		assertEquals(3, delegate.lookups);
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.cache.CachingRouteRepository#saveLeg(java.lang.String, org.drmit.shortestpath.domain.model.Leg)}
+	 * .
+	 */
+	@Test
+	public void testInvalidationIsPerNetwork()
+			throws RouteNotFoundRepositoryExeption, RepositoryExeption {
+		final CachingRouteRepository routeRepository = new CachingRouteRepository(
+				delegate, 10, EvictionPolicy.LFU);
+
+		routeRepository.findShortestRoute(NETWORK, "A", "D");
+		routeRepository.findShortestRoute("Other", "A", "D");
+		assertEquals(2, routeRepository.getSize());
+
+		routeRepository.saveLeg("Other", new Leg("A", "D", 1));
+		assertEquals(1, routeRepository.getSize());
+
+		routeRepository.findShortestRoute(NETWORK, "A", "D");
+		routeRepository.findShortestRoute("Other", "A", "D");
+
+		// Asserts that only the changed network reached the repository again
+		assertEquals(3, delegate.lookups);
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.cache.CachingRouteRepository#findShortestRoutesFrom(java.lang.String, java.lang.String)}
+	 * .
+	 */
+	@Test
+	public void testRoutesFromCachedTree()
+			throws RouteNotFoundRepositoryExeption, RepositoryExeption {
+		final CachingRouteRepository routeRepository = new CachingRouteRepository(
+				delegate, 10, EvictionPolicy.LRU);
+
+		final ShortestPathTree tree = routeRepository.findShortestRoutesFrom(
+				NETWORK, "A");
+		assertSame(tree, routeRepository.findShortestRoutesFrom(NETWORK, "A"));
+
+		// Asserts that routes from the origin are reconstructed from the tree
+		final Route route = routeRepository.findShortestRoute(NETWORK, "A",
+				"Z");
+		assertEquals(1, route.getLength(), 0.001);
+		assertEquals(1, delegate.treeLookups);
+		assertEquals(0, delegate.lookups);
+
+		// Asserts that trees are invalidated with their network
+		routeRepository.saveLeg(NETWORK, new Leg("A", "Z", 2));
+		assertEquals(0, routeRepository.getTreeCount());
+		routeRepository.findShortestRoutesFrom(NETWORK, "A");
+		assertEquals(2, delegate.treeLookups);
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.cache.CachingRouteRepository#invalidate(java.lang.String, java.util.Collection)}
+	 * .
+	 */
+	@Test
+	public void testIncrementalInvalidation()
+			throws RouteNotFoundRepositoryExeption, RepositoryExeption {
+		final CachingRouteRepository routeRepository = new CachingRouteRepository(
+				delegate, 10, EvictionPolicy.LRU);
+		routeRepository.findShortestRoute(NETWORK, "A", "B");
+		routeRepository.findShortestRoute(NETWORK, "A", "C");
+		routeRepository.findShortestRoute(NETWORK, "X", "Y");
+
+		// Asserts that a longer leg only removes the routes using it
+		routeRepository.saveLeg(NETWORK, new Leg("A", "B", 5));
+		assertEquals(2, routeRepository.getSize());
+
+		// Asserts that a new leg only removes the routes it may shorten
+		routeRepository.saveLeg(NETWORK, new Leg("C", "Y", 0.5));
+		assertEquals(1, routeRepository.getSize());
+		routeRepository.findShortestRoute(NETWORK, "A", "C");
+		assertEquals(3, delegate.lookups);
+
+		// Asserts that a cached tree proves a leg unreachable from its origin
+		routeRepository.findShortestRoutesFrom(NETWORK, "A");
+		routeRepository.saveLeg(NETWORK, new Leg("Q", "R", 0.5));
+		assertEquals(1, routeRepository.getSize());
+		assertEquals(1, routeRepository.getTreeCount());
+
+		// Asserts that a leg shortening the tree removes it
+		routeRepository.saveLeg(NETWORK, new Leg("A", "W", 0.5));
+		routeRepository.saveLeg(NETWORK, new Leg("W", "Z", 0.25));
+		assertEquals(0, routeRepository.getTreeCount());
+	}
+
+	/**
+	 * Route repository answering every query with a fresh single-leg route.
+	 */
+	private static final class CountingRouteRepository implements
+			RouteRepository {
+
+		/** Number of route lookups. */
+		private int lookups = 0;
+
+		/** Number of shortest path tree lookups. */
+		private int treeLookups = 0;
+
+		@Override
+		public void saveLeg(String network, Leg leg) {
+		}
+
+		@Override
+		public void saveLegs(String network, List<Leg> legs) {
+		}
+
+		@Override
+		public void replaceLegs(String network, Collection<Leg> legs) {
+		}
+
+		@Override
+		public long importLegs(String network, Iterator<Leg> legs) {
+			return 0;
+		}
+
+		@Override
+		public void saveCoordinates(String name, double latitude,
+				double longitude) {
+		}
+
+		@Override
+		public List<String> findNetworkNames() {
+			return new ArrayList<String>();
+		}
+
+		@Override
+		public long getNetworkVersion(String network) {
+			return 0;
+		}
+
+		@Override
+		public List<Leg> findAllLegs(String network) {
+			return new ArrayList<Leg>();
+		}
+
+		@Override
+		public DistanceMatrix findDistances(String network,
+				List<String> origins, List<String> destinations) {
+			return new DistanceMatrix(origins, destinations,
+					new double[origins.size()][destinations.size()]);
+		}
+
+		@Override
+		public Route findCheapestRoute(String network, String origin,
+				String destination, VehicleProfile vehicleProfile,
+				double fuelPrice) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public TimedRoute findFastestRoute(String network, String origin,
+				String destination, double departureTime) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public List<Route> findKShortestRoutes(String network,
+				String origin, String destination, int k) {
+			return new ArrayList<Route>();
+		}
+
+		@Override
+		public ShortestPathTree findShortestRoutesFrom(String network,
+				String origin) {
+			treeLookups++;
+			return new ShortestPathTree(origin, new String[] { origin, "Z" },
+					new double[] { 0, 1 }, new int[] { -1, 0 }, new double[] {
+							0, 1 });
+		}
+
+		@Override
+		public Route findShortestRoute(String network, String origin,
+				String destination) {
+			lookups++;
+			final List<Leg> legs = new ArrayList<Leg>();
+			legs.add(new Leg(origin, destination, 1));
+			return new Route(origin, destination, legs);
+		}
+
+		@Override
+		public double findShortestDistance(String network, String origin,
+				String destination) {
+			lookups++;
+			return 1;
+		}
+
+	}
+
+}
@@ -0,0 +1,130 @@
+package org.drmit.shortestpath.infrastructure.repository.memory;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.domain.model.Route;
+import org.drmit.shortestpath.infrastructure.repository.RepositoryExeption;
+import org.drmit.shortestpath.infrastructure.repository.RouteNotFoundRepositoryExeption;
+import org.drmit.shortestpath.infrastructure.repository.RouteRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+/**
+ * AltInMemoryRouteRepository test case.
+ *
+ * @author Leandro Ferreira
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("classpath:applicationContext-test.xml")
+public class AltInMemoryRouteRepositoryTest {
+
+	/** Network name. */
+	private static final String NETWORK = "Test";
+
+	/** Durable route repository. */
+	@Autowired
+	private RouteRepository durableRepository;
+
+	/** In-memory route repository. */
+	private AltInMemoryRouteRepository routeRepository;
+
+	/**
+	 * Sets up the fixture.
+	 *
+	 * @throws Exception
+	 *             if an error occurs.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		// Creates the route legs
+		final List<Leg> legs = new LinkedList<Leg>();
+		legs.add(new Leg("A", "B", 10));
+		legs.add(new Leg("B", "D", 15));
+		legs.add(new Leg("A", "C", 20));
+		legs.add(new Leg("C", "D", 20));
+		legs.add(new Leg("B", "E", 50));
+		legs.add(new Leg("D", "E", 50));
+
+		// Saves all given Legs into the durable repository
+		durableRepository.saveLegs(NETWORK, legs);
+
+		// Loads the in-memory repository from the durable one
+		routeRepository = new AltInMemoryRouteRepository(
+				durableRepository);
+	}
+
+	/**
+	 * Tears down the fixture.
+	 */
+	@After
+	public void tearDown() {
+		routeRepository.destroy();
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.AbstractInMemoryRouteRepository#findShortestRoute(java.lang.String, java.lang.String, java.lang.String)}
+	 * .
+	 */
+	@Test
+	public void testFindShortestRouteAToD()
+			throws RouteNotFoundRepositoryExeption, RepositoryExeption {
+		// Finds the shortest route between the origin and the destination
+		final Route actualRoute = routeRepository.findShortestRoute(NETWORK,
+				"A", "D");
+
+		// Expected legs
+		final List<Leg> expectedLegs = new LinkedList<Leg>();
+		expectedLegs.add(new Leg("A", "B", 10));
+		expectedLegs.add(new Leg("B", "D", 15));
+
+		// Asserts that the expected and the actual values are equals
+		assertEquals(new Route("A", "D", expectedLegs), actualRoute);
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.AbstractInMemoryRouteRepository#saveLeg(java.lang.String, org.drmit.shortestpath.domain.model.Leg)}
+	 * .
+	 */
+	@Test
+	public void testRebuildAfterSaveLeg() throws Exception {
+		// Saves a leg towards a new location
+		routeRepository.saveLeg(NETWORK, new Leg("E", "ALT1", 5));
+
+		// Waits for the landmarks to be picked again
+		for (int i = 0; i < 100 && !routeRepository.isLandmarksCurrent(NETWORK); i++) {
+			Thread.sleep(50);
+		}
+
+		// Finds the shortest route between the origin and the destination
+		final Route actualRoute = routeRepository.findShortestRoute(NETWORK,
+				"A",
+				"ALT1");
+
+		// Asserts that the new leg is visible to queries
+		assertEquals(65, actualRoute.getLength(), 0.001);
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.AbstractInMemoryRouteRepository#findShortestRoute(java.lang.String, java.lang.String, java.lang.String)}
+	 * .
+	 */
+	@Test(expected = RouteNotFoundRepositoryExeption.class)
+	public void testNoRoute() throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		// Finds the shortest route between the origin and the destination
+		routeRepository.findShortestRoute(NETWORK, "E", "A");
+	}
+
+}
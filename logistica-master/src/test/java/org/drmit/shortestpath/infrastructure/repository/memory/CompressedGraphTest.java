@@ -0,0 +1,145 @@
+package org.drmit.shortestpath.infrastructure.repository.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.drmit.shortestpath.domain.model.Leg;
+import org.junit.Test;
+
+/**
+ * CompressedGraph test case.
+ *
+ * @author Leandro Ferreira
+ */
+public class CompressedGraphTest {
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.CompressedGraph#update(java.util.Collection)}
+	 * .
+	 */
+	@Test
+	public void testUpdateMatchesBuild() {
+		// Creates a random network, a leg per pair of locations as saved by
+		// the durable repositories
+		final Map<String, Leg> network = new LinkedHashMap<String, Leg>();
+		for (Leg leg : RandomNetworks.createLegs(42, 200, 800)) {
+			put(network, leg);
+		}
+		CompressedGraph graph = CompressedGraph.build(network.values());
+
+		// Saves batches of existing legs with new distances, tolls and road
+		// classes, and of new legs, some of them to new locations
+		final Random random = new Random(42);
+		final List<Leg> legs = new ArrayList<Leg>(network.values());
+		for (int round = 0; round < 50; round++) {
+			final List<Leg> saved = new ArrayList<Leg>();
+			for (int i = 0; i < 1 + random.nextInt(5); i++) {
+				final Leg existing = legs.get(random.nextInt(legs.size()));
+				final Leg leg;
+				switch (random.nextInt(4)) {
+				case 0:
+					leg = new Leg("N" + random.nextInt(220), "N"
+							+ random.nextInt(220), random.nextInt(100));
+					break;
+				case 1:
+					leg = new Leg(existing.getOrigin(),
+							existing.getDestination(), random.nextInt(100),
+							null, 1 + random.nextInt(10), "R"
+									+ random.nextInt(3));
+					break;
+				default:
+					leg = new Leg(existing.getOrigin(),
+							existing.getDestination(), random.nextInt(100));
+				}
+				put(network, leg);
+				saved.add(leg);
+			}
+			final CompressedGraph updated = graph.update(saved);
+
+			// Asserts that the graph holds the same legs as one built anew
+			assertTrue(updated.keepsNodeIds(graph));
+			assertEquals(describe(network.values()), describe(updated));
+			graph = updated;
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.CompressedGraph#update(java.util.Collection)}
+	 * .
+	 */
+	@Test
+	public void testUpdateParallelLegs() {
+		final CompressedGraph graph = CompressedGraph.build(Arrays.asList(
+				new Leg("A", "B", 10), new Leg("A", "B", 20), new Leg("B",
+						"C", 5)));
+
+		// Asserts that a leg between parallel legs is not applied
+		assertNull(graph.update(Collections.singletonList(new Leg("A", "B",
+				15))));
+
+		// Asserts that the last of the legs between the same locations wins
+		final CompressedGraph updated = graph.update(Arrays.asList(new Leg(
+				"B", "C", 7), new Leg("B", "C", 3)));
+		assertEquals(Arrays.asList("A B 10.0 0.0 null", "A B 20.0 0.0 null",
+				"B C 3.0 0.0 null"), describe(updated));
+	}
+
+	/**
+	 * Describes the legs of a graph.
+	 *
+	 * @param graph
+	 *            the graph.
+	 * @return the sorted descriptions of the legs.
+	 */
+	private static List<String> describe(CompressedGraph graph) {
+		final List<Leg> legs = new ArrayList<Leg>();
+		for (int edge = 0; edge < graph.getEdgeCount(); edge++) {
+			legs.add(graph.toLeg(edge));
+		}
+		return describe(legs);
+	}
+
+	/**
+	 * Describes legs by their locations, distance, toll and road class.
+	 *
+	 * @param legs
+	 *            the legs.
+	 * @return the sorted descriptions of the legs.
+	 */
+	private static List<String> describe(Collection<Leg> legs) {
+		final List<String> descriptions = new ArrayList<String>();
+		for (Leg leg : legs) {
+			descriptions.add(leg.getOrigin() + " " + leg.getDestination() + " "
+					+ leg.getDistance() + " " + leg.getToll() + " "
+					+ leg.getRoadClass());
+		}
+		Collections.sort(descriptions);
+		return descriptions;
+	}
+
+	/**
+	 * Saves a leg into a network, replacing the leg between the same
+	 * locations.
+	 *
+	 * @param network
+	 *            the legs by origin and destination.
+	 * @param leg
+	 *            the leg.
+	 */
+	private static void put(Map<String, Leg> network, Leg leg) {
+		network.put(leg.getOrigin() + "->" + leg.getDestination(), leg);
+	}
+
+}
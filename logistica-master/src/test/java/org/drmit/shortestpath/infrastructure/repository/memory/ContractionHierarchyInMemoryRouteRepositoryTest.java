@@ -0,0 +1,237 @@
+package org.drmit.shortestpath.infrastructure.repository.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.drmit.shortestpath.domain.model.DistanceMatrix;
+import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.domain.model.Route;
+import org.drmit.shortestpath.infrastructure.repository.RepositoryExeption;
+import org.drmit.shortestpath.infrastructure.repository.RouteNotFoundRepositoryExeption;
+import org.drmit.shortestpath.infrastructure.repository.RouteRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+/**
+ * ContractionHierarchyInMemoryRouteRepository test case.
+ *
+ * @author Leandro Ferreira
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("classpath:applicationContext-test.xml")
+public class ContractionHierarchyInMemoryRouteRepositoryTest {
+
+	/** Network name. */
+	private static final String NETWORK = "Test";
+
+	/** Durable route repository. */
+	@Autowired
+	private RouteRepository durableRepository;
+
+	/** In-memory route repository. */
+	private ContractionHierarchyInMemoryRouteRepository routeRepository;
+
+	/**
+	 * Sets up the fixture.
+	 *
+	 * @throws Exception
+	 *             if an error occurs.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		// Creates the route legs
+		final List<Leg> legs = new LinkedList<Leg>();
+		legs.add(new Leg("A", "B", 10));
+		legs.add(new Leg("B", "D", 15));
+		legs.add(new Leg("A", "C", 20));
+		legs.add(new Leg("C", "D", 20));
+		legs.add(new Leg("B", "E", 50));
+		legs.add(new Leg("D", "E", 50));
+
+		// Saves all given Legs into the durable repository
+		durableRepository.saveLegs(NETWORK, legs);
+
+		// Loads the in-memory repository from the durable one
+		routeRepository = new ContractionHierarchyInMemoryRouteRepository(
+				durableRepository);
+	}
+
+	/**
+	 * Tears down the fixture.
+	 */
+	@After
+	public void tearDown() {
+		routeRepository.destroy();
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.AbstractInMemoryRouteRepository#findShortestRoute(java.lang.String, java.lang.String, java.lang.String)}
+	 * .
+	 */
+	@Test
+	public void testFindShortestRouteAToD()
+			throws RouteNotFoundRepositoryExeption, RepositoryExeption {
+		// Finds the shortest route between the origin and the destination
+		final Route actualRoute = routeRepository.findShortestRoute(NETWORK,
+				"A", "D");
+
+		// Expected legs
+		final List<Leg> expectedLegs = new LinkedList<Leg>();
+		expectedLegs.add(new Leg("A", "B", 10));
+		expectedLegs.add(new Leg("B", "D", 15));
+
+		// Asserts that the expected and the actual values are equals
+		assertEquals(new Route("A", "D", expectedLegs), actualRoute);
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.AbstractInMemoryRouteRepository#saveLeg(java.lang.String, org.drmit.shortestpath.domain.model.Leg)}
+	 * .
+	 */
+	@Test
+	public void testRebuildAfterSaveLeg() throws Exception {
+		// Saves a leg towards a new location
+		routeRepository.saveLeg(NETWORK, new Leg("E", "CH1", 5));
+
+		// Waits for the background rebuild
+		for (int i = 0; i < 100 && !routeRepository.isHierarchyCurrent(NETWORK); i++) {
+			Thread.sleep(50);
+		}
+
+		// Finds the shortest route between the origin and the destination
+		final Route actualRoute = routeRepository.findShortestRoute(NETWORK,
+				"A",
+				"CH1");
+
+		// Asserts that the new leg is visible to queries
+		assertEquals(65, actualRoute.getLength(), 0.001);
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.AbstractInMemoryRouteRepository#addHub(java.lang.String, java.lang.String)}
+	 * .
+	 */
+	@Test
+	public void testHubsAcrossRebuilds() throws Exception {
+		routeRepository.replaceLegs("HubCH", Arrays.asList(new Leg("HC1",
+				"HC2", 10), new Leg("HC2", "HC4", 15), new Leg("HC1", "HC3", 20),
+				new Leg("HC3", "HC4", 1)));
+		routeRepository.addHub("HubCH", "HC1");
+		awaitHierarchy("HubCH");
+		assertEquals(21, routeRepository.findShortestDistance("HubCH", "HC1",
+				"HC4"), 0.001);
+
+		// Asserts that the tree is repaired for the latest graph, not for the
+		// graph of the hierarchy still being rebuilt, so that it holds the
+		// first leg when the hierarchy catches up before the second one
+		routeRepository.saveLeg("HubCH", new Leg("HC1", "HC3", 1));
+		awaitHierarchy("HubCH");
+		assertEquals(2, routeRepository.findShortestDistance("HubCH", "HC1",
+				"HC4"), 0.001);
+		routeRepository.saveLeg("HubCH", new Leg("HC5", "HC6", 1));
+		assertEquals(2, routeRepository.findShortestDistance("HubCH", "HC1",
+				"HC4"), 0.001);
+		awaitHierarchy("HubCH");
+		assertEquals(2, routeRepository.findShortestDistance("HubCH", "HC1",
+				"HC4"), 0.001);
+
+		// Asserts that the repaired tree matches a fresh search
+		final DijkstraInMemoryRouteRepository fresh = new DijkstraInMemoryRouteRepository(
+				durableRepository);
+		try {
+			assertEquals(fresh.findShortestRoutesFrom("HubCH", "HC1"),
+					routeRepository.findShortestRoutesFrom("HubCH", "HC1"));
+		} finally {
+			fresh.destroy();
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.AbstractInMemoryRouteRepository#findShortestRoute(java.lang.String, java.lang.String, java.lang.String)}
+	 * .
+	 */
+	@Test(expected = RouteNotFoundRepositoryExeption.class)
+	public void testNoRoute() throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		// Finds the shortest route between the origin and the destination
+		routeRepository.findShortestRoute(NETWORK, "E", "A");
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.AbstractInMemoryRouteRepository#findShortestDistance(java.lang.String, java.lang.String, java.lang.String)}
+	 * .
+	 */
+	@Test
+	public void testFindShortestDistanceWithHubLabels() throws Exception {
+		// Derives the hub labels in the background
+		routeRepository.setHubLabeling(true);
+		for (int i = 0; i < 100
+				&& !routeRepository.isHubLabelsCurrent(NETWORK); i++) {
+			Thread.sleep(50);
+		}
+
+		// Asserts that the distances are read off the labels
+		assertTrue(routeRepository.isHubLabelsCurrent(NETWORK));
+		assertEquals(25, routeRepository.findShortestDistance(NETWORK, "A",
+				"D"), 0.001);
+		assertEquals(0, routeRepository.findShortestDistance(NETWORK, "E",
+				"E"), 0.001);
+		try {
+			routeRepository.findShortestDistance(NETWORK, "E", "A");
+			fail("Unreachable destination has a distance");
+		} catch (RouteNotFoundRepositoryExeption e) {
+			// Expected
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.ContractionHierarchyInMemoryRouteRepository#findDistances(java.lang.String, java.util.List, java.util.List)}
+	 * .
+	 */
+	@Test
+	public void testFindDistances() throws RepositoryExeption {
+		// Finds the distances between every origin and destination
+		final DistanceMatrix actualMatrix = routeRepository.findDistances(NETWORK,
+				Arrays.asList("A", "B", "E"), Arrays.asList("D", "E", "A", "X"));
+
+		// Expected distances
+		final double x = Double.POSITIVE_INFINITY;
+		final double[][] expectedDistances = { { 25, 60, 0, x },
+				{ 15, 50, x, x }, { x, 0, x, x } };
+
+		// Asserts that the expected and the actual values are equals
+		assertEquals(new DistanceMatrix(Arrays.asList("A", "B", "E"),
+				Arrays.asList("D", "E", "A", "X"), expectedDistances),
+				actualMatrix);
+	}
+
+	/**
+	 * Waits for the background rebuild of the hierarchy of a network.
+	 *
+	 * @param network
+	 *            the network name.
+	 */
+	private void awaitHierarchy(String network) throws InterruptedException {
+		for (int i = 0; i < 100 && !routeRepository.isHierarchyCurrent(network); i++) {
+			Thread.sleep(50);
+		}
+		assertTrue(routeRepository.isHierarchyCurrent(network));
+	}
+
+}
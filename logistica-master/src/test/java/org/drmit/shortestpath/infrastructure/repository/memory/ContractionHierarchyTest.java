@@ -0,0 +1,122 @@
+package org.drmit.shortestpath.infrastructure.repository.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.drmit.shortestpath.domain.model.Leg;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * ContractionHierarchy test case.
+ *
+ * @author Leandro Ferreira
+ */
+public class ContractionHierarchyTest {
+
+	/** Random network. */
+	private CompressedGraph graph;
+
+	/** Hierarchy built over the random network. */
+	private ContractionHierarchy hierarchy;
+
+	/**
+	 * Sets up the fixture.
+	 *
+	 * @throws Exception
+	 *             if an error occurs.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		// Creates a random network with zero-length legs
+		graph = CompressedGraph.build(RandomNetworks.createLegs(42, 300, 1500));
+		hierarchy = ContractionHierarchy.build(graph);
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.ContractionHierarchy#findShortestPath(org.drmit.shortestpath.infrastructure.repository.memory.ContractionHierarchy.Query, int, int)}
+	 * .
+	 */
+	@Test
+	public void testMatchesDijkstra() {
+		final DijkstraSearch search = new DijkstraSearch(graph.getNodeCount());
+		final ContractionHierarchy.Query query = hierarchy.newQuery();
+		final int nodeCount = graph.getNodeCount();
+
+		for (int origin = 0; origin < nodeCount; origin += 7) {
+			for (int destination = 0; destination < nodeCount; destination += 3) {
+				if (origin == destination) {
+					continue;
+				}
+				final List<Leg> legs = hierarchy.findShortestPath(query,
+						origin, destination);
+				if (!search.run(graph, origin, destination)) {
+					assertNull(legs);
+					continue;
+				}
+
+				// Asserts that the unpacked legs form an equally short path
+				double length = 0;
+				String location = graph.getNodeName(origin);
+				for (Leg leg : legs) {
+					assertEquals(location, leg.getOrigin());
+					location = leg.getDestination();
+					length += leg.getDistance();
+				}
+				assertEquals(graph.getNodeName(destination), location);
+				assertEquals(search.getDistance(destination), length, 0.001);
+			}
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.ContractionHierarchy#findShortestPath(org.drmit.shortestpath.infrastructure.repository.memory.ContractionHierarchy.Query, int, int)}
+	 * .
+	 */
+	@Test
+	public void testZeroLengthPath() {
+		// Creates a zero-length path beside a longer one
+		final CompressedGraph zeroGraph = CompressedGraph.build(Arrays.asList(
+				new Leg("A", "B", 0), new Leg("B", "C", 0), new Leg("A", "X",
+						5), new Leg("X", "C", 5)));
+		final ContractionHierarchy zeroHierarchy = ContractionHierarchy
+				.build(zeroGraph);
+
+		// Asserts that the zero-length path is found
+		assertEquals(Arrays.asList(new Leg("A", "B", 0), new Leg("B", "C", 0)),
+				zeroHierarchy.findShortestPath(zeroHierarchy.newQuery(),
+						zeroGraph.getNodeId("A"), zeroGraph.getNodeId("C")));
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.ContractionHierarchy#findDistances(org.drmit.shortestpath.infrastructure.repository.memory.ContractionHierarchy.Query, int[], int[])}
+	 * .
+	 */
+	@Test
+	public void testFindDistancesMatchesDijkstra() {
+		final DijkstraSearch search = new DijkstraSearch(graph.getNodeCount());
+		final int[] origins = { 0, 5, -1, 17, 42, 99, 120, 250 };
+		final int[] destinations = { 3, 5, 64, -1, 128, 200, 299 };
+
+		final double[][] distances = hierarchy.findDistances(
+				hierarchy.newQuery(), origins, destinations);
+
+		for (int i = 0; i < origins.length; i++) {
+			for (int j = 0; j < destinations.length; j++) {
+				final double expected = (origins[i] >= 0
+						&& destinations[j] >= 0 && search.run(graph,
+						origins[i], destinations[j])) ? search
+						.getDistance(destinations[j])
+						: Double.POSITIVE_INFINITY;
+				assertEquals(expected, distances[i][j], 0.001);
+			}
+		}
+	}
+
+}
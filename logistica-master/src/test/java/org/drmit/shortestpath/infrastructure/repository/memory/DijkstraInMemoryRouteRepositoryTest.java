@@ -0,0 +1,588 @@
+package org.drmit.shortestpath.infrastructure.repository.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.drmit.shortestpath.domain.model.DistanceMatrix;
+import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.domain.model.Route;
+import org.drmit.shortestpath.domain.model.ShortestPathTree;
+import org.drmit.shortestpath.domain.model.TimedRoute;
+import org.drmit.shortestpath.domain.model.TravelTimeProfile;
+import org.drmit.shortestpath.domain.model.VehicleProfile;
+import org.drmit.shortestpath.infrastructure.repository.RepositoryExeption;
+import org.drmit.shortestpath.infrastructure.repository.RouteNotFoundRepositoryExeption;
+import org.drmit.shortestpath.infrastructure.repository.RouteRepository;
+import org.drmit.shortestpath.infrastructure.repository.neo4j.DijkstraNeo4jRouteRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+/**
+ * DijkstraInMemoryRouteRepository test case.
+ *
+ * @author Leandro Ferreira
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("classpath:applicationContext-test.xml")
+public class DijkstraInMemoryRouteRepositoryTest {
+
+	/** Network name. */
+	private static final String NETWORK = "Test";
+
+	/** Durable route repository. */
+	@Autowired
+	private RouteRepository durableRepository;
+
+	/** Underlying graph database. */
+	@Autowired
+	private GraphDatabaseService graphDatabase;
+
+	/** In-memory route repository. */
+	private DijkstraInMemoryRouteRepository routeRepository;
+
+	/**
+	 * Sets up the fixture.
+	 *
+	 * @throws Exception
+	 *             if an error occurs.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		// Creates the route legs
+		final List<Leg> legs = new LinkedList<Leg>();
+		legs.add(new Leg("A", "B", 10));
+		legs.add(new Leg("B", "D", 15));
+		legs.add(new Leg("A", "C", 20));
+		legs.add(new Leg("C", "D", 20));
+		legs.add(new Leg("B", "E", 50));
+		legs.add(new Leg("D", "E", 50));
+
+		// Saves all given Legs into the durable repository
+		durableRepository.saveLegs(NETWORK, legs);
+
+		// Loads the in-memory repository from the durable one
+		routeRepository = new DijkstraInMemoryRouteRepository(
+				durableRepository);
+	}
+
+	/**
+	 * Tears down the fixture.
+	 */
+	@After
+	public void tearDown() {
+		routeRepository.destroy();
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.AbstractInMemoryRouteRepository#findShortestRoute(java.lang.String, java.lang.String, java.lang.String)}
+	 * .
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidOrigin() throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		// Finds the shortest route between the origin and the destination
+		routeRepository.findShortestRoute(NETWORK, null, "D");
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.AbstractInMemoryRouteRepository#findShortestRoute(java.lang.String, java.lang.String, java.lang.String)}
+	 * .
+	 */
+	@Test
+	public void testSameLocation() throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		// Finds the shortest route between the origin and the destination
+		final Route actualRoute = routeRepository.findShortestRoute(NETWORK,
+				"A", "A");
+
+		// Expected legs
+		final List<Leg> expectedLegs = Collections.emptyList();
+
+		// Asserts that the expected and the actual values are equals
+		assertEquals(new Route("A", "A", expectedLegs), actualRoute);
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.AbstractInMemoryRouteRepository#findShortestRoute(java.lang.String, java.lang.String, java.lang.String)}
+	 * .
+	 */
+	@Test
+	public void testFindShortestRouteAToD()
+			throws RouteNotFoundRepositoryExeption, RepositoryExeption {
+		// Finds the shortest route between the origin and the destination
+		final Route actualRoute = routeRepository.findShortestRoute(NETWORK,
+				"A", "D");
+
+		// Expected legs
+		final List<Leg> expectedLegs = new LinkedList<Leg>();
+		expectedLegs.add(new Leg("A", "B", 10));
+		expectedLegs.add(new Leg("B", "D", 15));
+
+		// Asserts that the expected and the actual values are equals
+		assertEquals(new Route("A", "D", expectedLegs), actualRoute);
+		assertEquals(25, actualRoute.getLength(), 0.001);
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.AbstractInMemoryRouteRepository#saveLeg(java.lang.String, org.drmit.shortestpath.domain.model.Leg)}
+	 * .
+	 */
+	@Test
+	public void testSaveLeg() throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		// Saves a leg towards a new location
+		routeRepository.saveLeg(NETWORK, new Leg("E", "MEM1", 5));
+
+		// Finds the shortest route between the origin and the destination
+		final Route actualRoute = routeRepository.findShortestRoute(NETWORK,
+				"A",
+				"MEM1");
+
+		// Asserts that the new leg is visible to queries
+		assertEquals(65, actualRoute.getLength(), 0.001);
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.AbstractInMemoryRouteRepository#findShortestRoute(java.lang.String, java.lang.String, java.lang.String)}
+	 * .
+	 */
+	@Test(expected = RouteNotFoundRepositoryExeption.class)
+	public void testNoRoute() throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		// Finds the shortest route between the origin and the destination
+		routeRepository.findShortestRoute(NETWORK, "A", "X");
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.AbstractInMemoryRouteRepository#saveLeg(java.lang.String, org.drmit.shortestpath.domain.model.Leg)}
+	 * .
+	 */
+	@Test(expected = RouteNotFoundRepositoryExeption.class)
+	public void testNetworksAreIsolated() throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		// Connects a shared location within another network
+		routeRepository.saveLeg("Isolated", new Leg("D", "MEM2", 5));
+
+		// Finds the shortest route between the origin and the destination
+		routeRepository.findShortestRoute(NETWORK, "A", "MEM2");
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.AbstractInMemoryRouteRepository#findDistances(java.lang.String, java.util.List, java.util.List)}
+	 * .
+	 */
+	@Test
+	public void testFindDistances() throws RepositoryExeption {
+		// Finds the distances between every origin and destination
+		final DistanceMatrix actualMatrix = routeRepository.findDistances(NETWORK,
+				Arrays.asList("A", "B", "E"), Arrays.asList("D", "E", "A", "X"));
+
+		// Expected distances
+		final double x = Double.POSITIVE_INFINITY;
+		final double[][] expectedDistances = { { 25, 60, 0, x },
+				{ 15, 50, x, x }, { x, 0, x, x } };
+
+		// Asserts that the expected and the actual values are equals
+		assertEquals(new DistanceMatrix(Arrays.asList("A", "B", "E"),
+				Arrays.asList("D", "E", "A", "X"), expectedDistances),
+				actualMatrix);
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.AbstractInMemoryRouteRepository#findShortestRoutesFrom(java.lang.String, java.lang.String)}
+	 * .
+	 */
+	@Test
+	public void testFindShortestRoutesFrom() throws RepositoryExeption {
+		// Finds the shortest routes from the origin to every location
+		final ShortestPathTree tree = routeRepository.findShortestRoutesFrom(
+				NETWORK, "A");
+
+		// Asserts that the expected and the actual values are equals
+		assertEquals("A", tree.getLocation(0));
+		assertEquals(0, tree.getDistance("A"), 0.001);
+		assertEquals(10, tree.getDistance("B"), 0.001);
+		assertEquals(20, tree.getDistance("C"), 0.001);
+		assertEquals(25, tree.getDistance("D"), 0.001);
+		assertEquals(60, tree.getDistance("E"), 0.001);
+		assertFalse(tree.isReachable("X"));
+		for (int i = 1; i < tree.getLocationCount(); i++) {
+			assertTrue(tree.getDistance(i - 1) <= tree.getDistance(i));
+		}
+
+		// Asserts that routes are reconstructed from the tree
+		final Route route = tree.getRoute("E");
+		assertEquals(Arrays.asList(new Leg("A", "B", 10), new Leg("B", "E",
+				50)), route.getLegs());
+		assertNull(tree.getRoute("X"));
+
+		// Asserts that unknown origins only reach themselves
+		assertEquals(1, routeRepository.findShortestRoutesFrom(NETWORK, "X")
+				.getLocationCount());
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.AbstractInMemoryRouteRepository#findKShortestRoutes(java.lang.String, java.lang.String, java.lang.String, int)}
+	 * .
+	 */
+	@Test
+	public void testFindKShortestRoutes() throws RepositoryExeption {
+		// Finds more alternatives than there are
+		final List<Route> routes = routeRepository.findKShortestRoutes(
+				NETWORK, "A", "E", 5);
+
+		// Asserts that every loopless route was found, shortest first
+		assertEquals(3, routes.size());
+		assertEquals(Arrays.asList(new Leg("A", "B", 10), new Leg("B", "E",
+				50)), routes.get(0).getLegs());
+		assertEquals(Arrays.asList(new Leg("A", "B", 10), new Leg("B", "D",
+				15), new Leg("D", "E", 50)), routes.get(1).getLegs());
+		assertEquals(Arrays.asList(new Leg("A", "C", 20), new Leg("C", "D",
+				20), new Leg("D", "E", 50)), routes.get(2).getLegs());
+
+		// Asserts that k bounds the alternatives
+		assertEquals(1, routeRepository.findKShortestRoutes(NETWORK, "A", "E",
+				1).size());
+		assertEquals(0, routeRepository.findKShortestRoutes(NETWORK, "A", "X",
+				3).size());
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.AbstractInMemoryRouteRepository#findCheapestRoute(java.lang.String, java.lang.String, java.lang.String, org.drmit.shortestpath.domain.model.VehicleProfile, double)}
+	 * .
+	 */
+	@Test
+	public void testFindCheapestRoute() throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		// Tolls a highway detour around an urban route
+		routeRepository.replaceLegs("Tolled", Arrays.asList(new Leg("TL1",
+				"TL2", 10, null, 0, "urban"), new Leg("TL2", "TL4", 10, null,
+				0, "urban"), new Leg("TL1", "TL3", 12, null, 2, "highway"),
+				new Leg("TL3", "TL4", 12, null, 0, "highway")));
+		final Map<String, Double> fuelFactors = new HashMap<String, Double>();
+		fuelFactors.put("urban", 1.5);
+		fuelFactors.put("highway", 0.8);
+		final VehicleProfile truck = new VehicleProfile("truck", 4, 3,
+				fuelFactors);
+
+		// Asserts that cheap fuel favors the toll-free urban route
+		Route route = routeRepository.findCheapestRoute("Tolled", "TL1",
+				"TL4", truck, 1);
+		assertEquals(Arrays.asList(new Leg("TL1", "TL2", 10), new Leg("TL2",
+				"TL4", 10)), route.getLegs());
+		assertEquals("urban", route.getLegs().get(0).getRoadClass());
+
+		// Asserts that expensive fuel favors the tolled highway
+		route = routeRepository.findCheapestRoute("Tolled", "TL1", "TL4",
+				truck, 4);
+		assertEquals(Arrays.asList(new Leg("TL1", "TL3", 12), new Leg("TL3",
+				"TL4", 12)), route.getLegs());
+		assertEquals(2, route.getLegs().get(0).getToll(), 0);
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.AbstractInMemoryRouteRepository#findFastestRoute(java.lang.String, java.lang.String, java.lang.String, double)}
+	 * .
+	 */
+	@Test
+	public void testFindFastestRoute() throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		// Congests the shortest route at 8:00, other legs take a minute per
+		// distance unit
+		final TravelTimeProfile rushHour = new TravelTimeProfile(new double[] {
+				0, 28800, 36000 }, new double[] { 600, 3600, 600 });
+		routeRepository.replaceLegs("TimeDependent", Arrays.asList(new Leg(
+				"TD1", "TD2", 10, rushHour), new Leg("TD2", "TD4", 10),
+				new Leg("TD1", "TD3", 20), new Leg("TD3", "TD4", 20)));
+
+		// Asserts that the shortest route is the fastest one at midnight
+		TimedRoute route = routeRepository.findFastestRoute("TimeDependent",
+				"TD1", "TD4", 0);
+		assertEquals(Arrays.asList(new Leg("TD1", "TD2", 10, rushHour),
+				new Leg("TD2", "TD4", 10)), route.getLegs());
+		assertEquals(rushHour, route.getLegs().get(0).getTravelTimeProfile());
+		assertEquals(1200, route.getTravelTime(), 0.001);
+
+		// Asserts that the congested leg is avoided at rush hour
+		route = routeRepository.findFastestRoute("TimeDependent", "TD1",
+				"TD4", 28800);
+		assertEquals(40, route.getLength(), 0.001);
+		assertEquals(31200, route.getArrivalTime(), 0.001);
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.AbstractInMemoryRouteRepository#AbstractInMemoryRouteRepository(org.drmit.shortestpath.infrastructure.repository.RouteRepository, java.io.File)}
+	 * .
+	 */
+	@Test
+	public void testSnapshot() throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		// Writes the snapshots of a network with profiles, tolls and road
+		// classes
+		final File snapshotDirectory = new File("target/graphSnapshots");
+		final DijkstraInMemoryRouteRepository snapshotting = new DijkstraInMemoryRouteRepository(
+				durableRepository, snapshotDirectory);
+		final TravelTimeProfile rushHour = new TravelTimeProfile(new double[] {
+				0, 28800, 36000 }, new double[] { 600, 3600, 600 });
+		try {
+			snapshotting.replaceLegs("Snapshot", Arrays.asList(new Leg("SN1",
+					"SN2", 10, rushHour, 0, "urban"), new Leg("SN2", "SN3", 10,
+					null, 2, "highway"), new Leg("SN1", "SN3", 30)));
+			assertTrue(new File(snapshotDirectory, "Snapshot.graph").isFile());
+		} finally {
+			snapshotting.destroy();
+		}
+
+		// Asserts that a repository opened from the snapshots finds the same
+		// routes, with the same leg attributes
+		final DijkstraInMemoryRouteRepository opened = new DijkstraInMemoryRouteRepository(
+				durableRepository, snapshotDirectory);
+		try {
+			assertEquals(routeRepository.findShortestRoute(NETWORK, "A", "E"),
+					opened.findShortestRoute(NETWORK, "A", "E"));
+			final Route route = opened.findShortestRoute("Snapshot", "SN1",
+					"SN3");
+			assertEquals(20, route.getLength(), 0);
+			assertEquals(rushHour, route.getLegs().get(0)
+					.getTravelTimeProfile());
+			assertEquals("urban", route.getLegs().get(0).getRoadClass());
+			assertEquals(2, route.getLegs().get(1).getToll(), 0);
+			assertEquals("highway", route.getLegs().get(1).getRoadClass());
+			assertEquals(1200, opened.findFastestRoute("Snapshot", "SN1", "SN3",
+					0).getTravelTime(), 0.001);
+		} finally {
+			opened.destroy();
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.AbstractInMemoryRouteRepository#AbstractInMemoryRouteRepository(org.drmit.shortestpath.infrastructure.repository.RouteRepository, java.io.File)}
+	 * .
+	 */
+	@Test
+	public void testStaleSnapshot() throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		// Writes the snapshot of a network, then writes the network bypassing
+		// the repository
+		final File snapshotDirectory = new File("target/graphSnapshots");
+		final DijkstraInMemoryRouteRepository snapshotting = new DijkstraInMemoryRouteRepository(
+				durableRepository, snapshotDirectory);
+		try {
+			snapshotting.replaceLegs("Stale", Arrays.asList(new Leg("ST1",
+					"ST2", 10)));
+		} finally {
+			snapshotting.destroy();
+		}
+		durableRepository.saveLeg("Stale", new Leg("ST2", "ST3", 5));
+
+		// Asserts that a repository opened afterwards loads the network again
+		final DijkstraInMemoryRouteRepository opened = new DijkstraInMemoryRouteRepository(
+				durableRepository, snapshotDirectory);
+		try {
+			assertEquals(15,
+					opened.findShortestDistance("Stale", "ST1", "ST3"), 0.001);
+		} finally {
+			opened.destroy();
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.AbstractInMemoryRouteRepository#saveLegs(java.lang.String, java.util.List)}
+	 * .
+	 */
+	@Test
+	public void testSaveLegsAppliesLegs() throws Exception {
+		durableRepository.replaceLegs("Incremental",
+				Collections.singletonList(new Leg("IN1", "IN2", 10)));
+
+		// Counts the networks loaded from the durable repository, with
+		// another repository open on the same database
+		final AtomicInteger loads = new AtomicInteger();
+		final RouteRepository counting = (RouteRepository) Proxy
+				.newProxyInstance(RouteRepository.class.getClassLoader(),
+						new Class<?>[] { RouteRepository.class },
+						new InvocationHandler() {
+							@Override
+							public Object invoke(Object proxy, Method method,
+									Object[] args) throws Throwable {
+								if (method.getName().equals("findAllLegs")) {
+									loads.incrementAndGet();
+								}
+								try {
+									return method.invoke(durableRepository,
+											args);
+								} catch (InvocationTargetException e) {
+									throw e.getCause();
+								}
+							}
+						});
+		final DijkstraNeo4jRouteRepository other = new DijkstraNeo4jRouteRepository(
+				graphDatabase);
+		DijkstraInMemoryRouteRepository incremental = null;
+		try {
+			incremental = new DijkstraInMemoryRouteRepository(counting);
+			final int initialLoads = loads.get();
+
+			// Asserts that the saved legs are applied to the graph, without
+			// loading the network again
+			incremental.saveLeg("Incremental", new Leg("IN2", "IN3", 5));
+			incremental.saveLegs("Incremental", Arrays.asList(new Leg("IN1",
+					"IN2", 4), new Leg("IN3", "IN4", 1)));
+			assertEquals(10, incremental.findShortestDistance("Incremental",
+					"IN1", "IN4"), 0.001);
+			assertEquals(initialLoads, loads.get());
+
+			// Asserts that a write bypassing the repository makes the next
+			// write load the network
+			durableRepository.saveLeg("Incremental", new Leg("IN1", "IN4", 2));
+			incremental.saveLeg("Incremental", new Leg("IN4", "IN5", 1));
+			assertEquals(3, incremental.findShortestDistance("Incremental",
+					"IN1", "IN5"), 0.001);
+			assertEquals(initialLoads + 1, loads.get());
+		} finally {
+			if (incremental != null) {
+				incremental.destroy();
+			}
+			other.destroy();
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.AbstractInMemoryRouteRepository#addHub(java.lang.String, java.lang.String)}
+	 * .
+	 */
+	@Test
+	public void testHubs() throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		routeRepository.replaceLegs("Hub", Arrays.asList(new Leg("HB1", "HB2",
+				10), new Leg("HB2", "HB4", 15), new Leg("HB1", "HB3", 20),
+				new Leg("HB3", "HB4", 20), new Leg("HB4", "HB5", 5)));
+		routeRepository.addHub("Hub", "HB1");
+		assertEquals(Collections.singleton("HB1"),
+				routeRepository.getHubs("Hub"));
+		assertEquals(25, routeRepository.findShortestRoutesFrom("Hub", "HB1")
+				.getDistance("HB4"), 0);
+
+		// Asserts that the subtree of a longer tree leg is reattached
+		routeRepository.saveLeg("Hub", new Leg("HB2", "HB4", 40));
+		final ShortestPathTree tree = routeRepository.findShortestRoutesFrom(
+				"Hub", "HB1");
+		assertEquals(40, tree.getDistance("HB4"), 0);
+		assertEquals(45, tree.getDistance("HB5"), 0);
+		assertEquals(
+				new Route("HB1", "HB4", Arrays.asList(new Leg("HB1", "HB3", 20),
+						new Leg("HB3", "HB4", 20))), tree.getRoute("HB4"));
+
+		// Asserts that shorter legs to a new location lower the tree
+		routeRepository.saveLegs("Hub", Arrays.asList(
+				new Leg("HB1", "HB6", 1), new Leg("HB6", "HB5", 2)));
+		assertEquals(3, routeRepository.findShortestRoute("Hub", "HB1", "HB5")
+				.getLength(), 0);
+		final DistanceMatrix matrix = routeRepository.findDistances("Hub",
+				Arrays.asList("HB1"), Arrays.asList("HB5", "HB4", "HB7"));
+		assertEquals(3, matrix.getDistance(0, 0), 0);
+		assertEquals(40, matrix.getDistance(0, 1), 0);
+		assertEquals(Double.POSITIVE_INFINITY, matrix.getDistance(0, 2), 0);
+
+		// Asserts that the repaired tree matches a fresh search
+		final DijkstraInMemoryRouteRepository fresh = new DijkstraInMemoryRouteRepository(
+				durableRepository);
+		try {
+			assertEquals(fresh.findShortestRoutesFrom("Hub", "HB1"),
+					routeRepository.findShortestRoutesFrom("Hub", "HB1"));
+		} finally {
+			fresh.destroy();
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.AbstractInMemoryRouteRepository#getVersion()}
+	 * .
+	 */
+	@Test
+	public void testConcurrentWrites() throws Exception {
+		// Alternates a network between a two leg route and a direct leg while
+		// another thread queries it
+		final List<Leg> twoLegs = Arrays.asList(new Leg("VR1", "VR2", 10),
+				new Leg("VR2", "VR3", 10));
+		final List<Leg> directLeg = Arrays.asList(new Leg("VR1", "VR3", 5));
+		routeRepository.replaceLegs("Versioned", twoLegs);
+		final long version = ((AbstractInMemoryRouteRepository) routeRepository)
+				.getVersion().getVersion();
+		final AtomicBoolean writing = new AtomicBoolean(true);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final Thread reader = new Thread() {
+			@Override
+			public void run() {
+				try {
+					while (writing.get()) {
+						final double length = routeRepository
+								.findShortestRoute("Versioned", "VR1", "VR3")
+								.getLength();
+						if (length != 20 && length != 5) {
+							throw new AssertionError("Partial network seen");
+						}
+					}
+				} catch (Throwable e) {
+					failure.set(e);
+				}
+			}
+		};
+		reader.start();
+		for (int i = 0; i < 20; i++) {
+			routeRepository.replaceLegs("Versioned", (i % 2 == 0) ? directLeg
+					: twoLegs);
+		}
+		writing.set(false);
+		reader.join();
+
+		// Asserts that every query saw a whole version, and that every write
+		// published one
+		assertNull(failure.get());
+		assertEquals(version + 20,
+				((AbstractInMemoryRouteRepository) routeRepository)
+						.getVersion().getVersion());
+		assertEquals(20, routeRepository.findShortestRoute("Versioned", "VR1",
+				"VR3").getLength(), 0);
+	}
+
+}
@@ -0,0 +1,148 @@
+package org.drmit.shortestpath.infrastructure.repository.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.domain.model.ShortestPathTree;
+import org.junit.Test;
+
+/**
+ * DynamicShortestPathTree test case.
+ *
+ * @author Leandro Ferreira
+ */
+public class DynamicShortestPathTreeTest {
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.DynamicShortestPathTree#update(org.drmit.shortestpath.infrastructure.repository.memory.CompressedGraph, java.util.Collection)}
+	 * .
+	 */
+	@Test
+	public void testMatchesDijkstra() {
+		// Creates a random network, a leg per pair of locations as saved by
+		// the durable repositories
+		final Random random = new Random(42);
+		final Map<String, Leg> network = new LinkedHashMap<String, Leg>();
+		for (int i = 0; i < 1500; i++) {
+			put(network, randomLeg(random, 300));
+		}
+		CompressedGraph graph = CompressedGraph.build(network.values());
+		DynamicShortestPathTree tree = DynamicShortestPathTree.build(graph,
+				"N0");
+
+		// Saves batches of longer, shorter and new legs, some of them to new
+		// locations
+		for (int round = 0; round < 50; round++) {
+			final List<Leg> saved = new ArrayList<Leg>();
+			for (int i = 0; i < 1 + random.nextInt(5); i++) {
+				final Leg leg = randomLeg(random, 320);
+				put(network, leg);
+				saved.add(leg);
+			}
+			graph = CompressedGraph.build(network.values(), graph);
+			tree = tree.update(graph, saved);
+			assertMatches(graph, tree);
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.DynamicShortestPathTree#toShortestPathTree()}
+	 * .
+	 */
+	@Test
+	public void testToShortestPathTree() {
+		final Map<String, Leg> network = new LinkedHashMap<String, Leg>();
+		put(network, new Leg("A", "B", 0));
+		put(network, new Leg("B", "C", 2));
+		put(network, new Leg("A", "C", 5));
+		CompressedGraph graph = CompressedGraph.build(network.values());
+		DynamicShortestPathTree tree = DynamicShortestPathTree.build(graph,
+				"A");
+
+		// Asserts that a zero long leg keeps its predecessor first
+		ShortestPathTree shortestPathTree = tree.toShortestPathTree();
+		assertEquals(3, shortestPathTree.getLocationCount());
+		assertEquals("A", shortestPathTree.getLocation(0));
+		assertEquals("B", shortestPathTree.getLocation(1));
+		assertEquals(2, shortestPathTree.getDistance("C"), 0);
+
+		// Asserts that a longer tree leg moves its subtree
+		final Leg leg = new Leg("B", "C", 10);
+		put(network, leg);
+		graph = CompressedGraph.build(network.values(), graph);
+		tree = tree.update(graph, Collections.singletonList(leg));
+		shortestPathTree = tree.toShortestPathTree();
+		assertEquals(5, shortestPathTree.getDistance("C"), 0);
+		assertEquals(1, shortestPathTree.getRoute("C").getLegs().size());
+	}
+
+	/**
+	 * Asserts that the tree holds the distances a full search finds.
+	 *
+	 * @param graph
+	 *            the graph.
+	 * @param tree
+	 *            the repaired tree.
+	 */
+	private static void assertMatches(CompressedGraph graph,
+			DynamicShortestPathTree tree) {
+		final DijkstraSearch search = new DijkstraSearch(graph.getNodeCount());
+		search.runAll(graph, graph.getNodeId(tree.getOrigin()),
+				new int[graph.getNodeCount()]);
+		for (int node = 0; node < graph.getNodeCount(); node++) {
+			if (!search.isReached(node)) {
+				assertEquals(Double.POSITIVE_INFINITY, tree.getDistance(node),
+						0);
+				assertNull(tree.getLegs(node));
+				continue;
+			}
+			assertEquals(search.getDistance(node), tree.getDistance(node),
+					0.001);
+
+			// Asserts that the tree path is as short
+			double length = 0;
+			for (Leg leg : tree.getLegs(node)) {
+				length += leg.getDistance();
+			}
+			assertEquals(search.getDistance(node), length, 0.001);
+		}
+	}
+
+	/**
+	 * Creates a random leg.
+	 *
+	 * @param random
+	 *            the random number generator.
+	 * @param locationCount
+	 *            the number of locations to pick from.
+	 * @return the random leg.
+	 */
+	private static Leg randomLeg(Random random, int locationCount) {
+		return new Leg("N" + random.nextInt(locationCount), "N"
+				+ random.nextInt(locationCount), random.nextInt(100));
+	}
+
+	/**
+	 * Saves a leg into a network, replacing the leg between the same
+	 * locations.
+	 *
+	 * @param network
+	 *            the legs by origin and destination.
+	 * @param leg
+	 *            the leg.
+	 */
+	private static void put(Map<String, Leg> network, Leg leg) {
+		network.put(leg.getOrigin() + "->" + leg.getDestination(), leg);
+	}
+
+}
@@ -0,0 +1,61 @@
+package org.drmit.shortestpath.infrastructure.repository.memory;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * HubLabels test case.
+ *
+ * @author Leandro Ferreira
+ */
+public class HubLabelsTest {
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.HubLabels#getDistance(int, int)}
+	 * .
+	 */
+	@Test
+	public void testMatchesDijkstra() {
+		// Creates a random network with zero-length and fractional legs
+		assertMatches(CompressedGraph.build(RandomNetworks.createLegs(42, 300,
+				1500)));
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.HubLabels#getDistance(int, int)}
+	 * .
+	 */
+	@Test
+	public void testSparseNetwork() {
+		// Creates a random network with more dead ends and unreachable pairs
+		assertMatches(CompressedGraph.build(RandomNetworks.createLegs(7, 150,
+				200)));
+	}
+
+	/**
+	 * Asserts that the labels of a graph give the distances a full search
+	 * finds.
+	 *
+	 * @param graph
+	 *            the graph.
+	 */
+	private static void assertMatches(CompressedGraph graph) {
+		final HubLabels labels = HubLabels.build(ContractionHierarchy
+				.build(graph));
+		final DijkstraSearch search = new DijkstraSearch(graph.getNodeCount());
+		final int nodeCount = graph.getNodeCount();
+		for (int origin = 0; origin < nodeCount; origin += 3) {
+			search.runAll(graph, origin, new int[nodeCount]);
+			for (int destination = 0; destination < nodeCount; destination++) {
+				final double expected = search.isReached(destination) ? search
+						.getDistance(destination) : Double.POSITIVE_INFINITY;
+				assertEquals(expected,
+						labels.getDistance(origin, destination), 0.001);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,116 @@
+package org.drmit.shortestpath.infrastructure.repository.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.infrastructure.metrics.RoutingMetrics;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Landmarks test case.
+ *
+ * @author Leandro Ferreira
+ */
+public class LandmarksTest {
+
+	/** Random network. */
+	private CompressedGraph graph;
+
+	/** Landmarks picked from the random network. */
+	private Landmarks landmarks;
+
+	/**
+	 * Sets up the fixture.
+	 *
+	 * @throws Exception
+	 *             if an error occurs.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		// Creates a random grid-like network with dead ends, whose locations
+		// carry no coordinates
+		final Random random = new Random(42);
+		final List<Leg> legs = new ArrayList<Leg>();
+		for (int i = 0; i < 400; i++) {
+			if (i % 20 < 19) {
+				legs.add(new Leg("N" + i, "N" + (i + 1), 1 + random.nextInt(10)));
+				legs.add(new Leg("N" + (i + 1), "N" + i, 1 + random.nextInt(10)));
+			}
+			if (i < 380) {
+				legs.add(new Leg("N" + i, "N" + (i + 20), 1 + random.nextInt(10)));
+				legs.add(new Leg("N" + (i + 20), "N" + i, 1 + random.nextInt(10)));
+			}
+		}
+		legs.add(new Leg("N0", "DEAD END", 1));
+		graph = CompressedGraph.build(legs);
+		landmarks = Landmarks.build(graph, 8);
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.Landmarks#getLowerBound(int, int)}
+	 * .
+	 */
+	@Test
+	public void testLowerBounds() {
+		assertEquals(8, landmarks.getCount());
+
+		final DijkstraSearch search = new DijkstraSearch(graph.getNodeCount());
+		final int[] settled = new int[graph.getNodeCount()];
+		final int nodeCount = graph.getNodeCount();
+		for (int origin = 0; origin < nodeCount; origin += 7) {
+			search.runAll(graph, origin, settled);
+			for (int destination = 0; destination < nodeCount; destination++) {
+				// Asserts that the bounds never exceed the distances
+				if (search.isReached(destination)) {
+					assertTrue(landmarks.getLowerBound(origin, destination) <= search
+							.getDistance(destination));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.memory.DijkstraSearch#run(org.drmit.shortestpath.infrastructure.repository.memory.CompressedGraph, int, int, org.drmit.shortestpath.infrastructure.repository.memory.Landmarks)}
+	 * .
+	 */
+	@Test
+	public void testMatchesDijkstra() {
+		final RoutingMetrics metrics = RoutingMetrics.getInstance();
+		final DijkstraSearch dijkstra = new DijkstraSearch(graph.getNodeCount());
+		final DijkstraSearch alt = new DijkstraSearch(graph.getNodeCount());
+		final int nodeCount = graph.getNodeCount();
+
+		long dijkstraSettled = 0;
+		long altSettled = 0;
+		for (int origin = 0; origin < nodeCount; origin += 11) {
+			for (int destination = 0; destination < nodeCount; destination += 13) {
+				long before = metrics.getSettledNodeCount();
+				final boolean found = dijkstra.run(graph, origin, destination);
+				dijkstraSettled += metrics.getSettledNodeCount() - before;
+
+				before = metrics.getSettledNodeCount();
+				assertEquals(found,
+						alt.run(graph, origin, destination, landmarks));
+				altSettled += metrics.getSettledNodeCount() - before;
+				if (found) {
+					assertEquals(dijkstra.getDistance(destination),
+							alt.getDistance(destination), 0.001);
+				}
+			}
+		}
+
+		// Asserts that the bounds prune the searches
+		assertTrue(altSettled < dijkstraSettled / 2);
+		assertFalse(alt.run(graph, graph.getNodeId("DEAD END"), 0, landmarks));
+	}
+
+}
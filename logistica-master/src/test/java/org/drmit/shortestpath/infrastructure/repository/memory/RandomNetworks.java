@@ -0,0 +1,61 @@
+package org.drmit.shortestpath.infrastructure.repository.memory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.drmit.shortestpath.domain.model.Leg;
+
+/**
+ * Random networks the route indexes are checked against, with parallel legs,
+ * loops and dead ends.
+ * <p>
+ * A sixth of the legs are zero-length and another sixth have fractional
+ * distances which are not floats, so that every index meets ties and
+ * zero-length paths as well as ordinary ones.
+ *
+ * @author Leandro Ferreira
+ */
+public final class RandomNetworks {
+
+	/**
+	 * Not instantiable.
+	 */
+	private RandomNetworks() {
+	}
+
+	/**
+	 * Creates the legs of a random network, named N0, N1 and so on.
+	 *
+	 * @param seed
+	 *            the seed of the random network.
+	 * @param locationCount
+	 *            the number of locations.
+	 * @param legCount
+	 *            the number of legs.
+	 * @return the legs of the network.
+	 */
+	public static List<Leg> createLegs(long seed, int locationCount,
+			int legCount) {
+		final Random random = new Random(seed);
+		final List<Leg> legs = new ArrayList<Leg>(legCount);
+		for (int i = 0; i < legCount; i++) {
+			final String origin = "N" + random.nextInt(locationCount);
+			final String destination = "N" + random.nextInt(locationCount);
+			final double distance;
+			switch (random.nextInt(6)) {
+			case 0:
+				distance = 0;
+				break;
+			case 1:
+				distance = 0.1 + random.nextDouble() * 100;
+				break;
+			default:
+				distance = 1 + random.nextInt(100);
+			}
+			legs.add(new Leg(origin, destination, distance));
+		}
+		return legs;
+	}
+
+}
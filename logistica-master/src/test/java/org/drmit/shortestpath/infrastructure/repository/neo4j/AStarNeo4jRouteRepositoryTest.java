@@ -0,0 +1,143 @@
+package org.drmit.shortestpath.infrastructure.repository.neo4j;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.domain.model.Route;
+import org.drmit.shortestpath.infrastructure.repository.RepositoryExeption;
+import org.drmit.shortestpath.infrastructure.repository.RouteNotFoundRepositoryExeption;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+/**
+ * AStarNeo4jRouteRepository test case.
+ * 
+ * @author Leandro Ferreira
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("classpath:applicationContext-test.xml")
+public class AStarNeo4jRouteRepositoryTest {
+
+	/** Network name. */
+	private static final String NETWORK = "Test";
+
+	/** Graph database. */
+	@Autowired
+	private GraphDatabaseService graphDatabase;
+
+	/** Route repository. */
+	private AStarNeo4jRouteRepository routeRepository;
+
+	/**
+	 * Sets up the fixture.
+	 * 
+	 * @throws Exception
+	 *             if an error occurs.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		routeRepository = new AStarNeo4jRouteRepository(graphDatabase);
+
+		// Creates the route legs, all longer than the straight line
+		final List<Leg> legs = new LinkedList<Leg>();
+		legs.add(new Leg("SaoPaulo", "Campinas", 95));
+		legs.add(new Leg("Campinas", "RioDeJaneiro", 500));
+		legs.add(new Leg("SaoPaulo", "SaoJoseDosCampos", 95));
+		legs.add(new Leg("SaoJoseDosCampos", "RioDeJaneiro", 340));
+		routeRepository.saveLegs(NETWORK, legs);
+
+		// Saves the coordinates of all but one location
+		routeRepository.saveCoordinates("SaoPaulo", -23.55, -46.63);
+		routeRepository.saveCoordinates("Campinas", -22.91, -47.06);
+		routeRepository.saveCoordinates("RioDeJaneiro", -22.91, -43.17);
+	}
+
+	/**
+	 * Tears down the fixture.
+	 */
+	@After
+	public void tearDown() {
+		routeRepository.destroy();
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.neo4j.AbstractNeo4jRouteRepository#findShortestRoute(java.lang.String, java.lang.String, java.lang.String)}
+	 * .
+	 */
+	@Test
+	public void testFindShortestRoute() throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		// Finds the shortest route between the origin and the destination
+		final Route actualRoute = routeRepository.findShortestRoute(NETWORK,
+				"SaoPaulo", "RioDeJaneiro");
+
+		// Expected legs
+		final List<Leg> expectedLegs = new LinkedList<Leg>();
+		expectedLegs.add(new Leg("SaoPaulo", "SaoJoseDosCampos", 95));
+		expectedLegs.add(new Leg("SaoJoseDosCampos", "RioDeJaneiro", 340));
+
+		// Asserts that the expected and the actual values are equals
+		assertEquals(new Route("SaoPaulo", "RioDeJaneiro", expectedLegs),
+				actualRoute);
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.neo4j.AbstractNeo4jRouteRepository#findShortestRoute(java.lang.String, java.lang.String, java.lang.String)}
+	 * .
+	 */
+	@Test
+	public void testFindShortestRoutePartialCoordinates()
+			throws RouteNotFoundRepositoryExeption, RepositoryExeption {
+		final List<Leg> legs = new LinkedList<Leg>();
+		legs.add(new Leg("PCS", "PCU", 1));
+		legs.add(new Leg("PCU", "PCV", 1));
+		legs.add(new Leg("PCS", "PCV", 5));
+		legs.add(new Leg("PCV", "PCG", 12));
+		routeRepository.replaceLegs("Partial", legs);
+
+		// Locates all but PCV, whose zero estimate would close it through the
+		// direct leg before PCU, estimated 11 km away from PCG, reaches it
+		routeRepository.saveCoordinates("PCS", 0, 0.1);
+		routeRepository.saveCoordinates("PCU", 0, 0.1);
+		routeRepository.saveCoordinates("PCG", 0, 0);
+		try (final Transaction tx = graphDatabase.beginTx()) {
+			final Node node = routeRepository.findNode("PCV");
+			node.removeProperty(AbstractNeo4jRouteRepository.LATITUDE_PROPERTY_KEY);
+			node.removeProperty(AbstractNeo4jRouteRepository.LONGITUDE_PROPERTY_KEY);
+			tx.success();
+		}
+
+		// Asserts that the network is searched without the estimate
+		assertEquals(14, routeRepository.findShortestRoute("Partial", "PCS",
+				"PCG").getLength(), 0.001);
+
+		// Asserts that the network is searched with it once fully located
+		routeRepository.saveCoordinates("PCV", 0, 0.1);
+		assertEquals(14, routeRepository.findShortestRoute("Partial", "PCS",
+				"PCG").getLength(), 0.001);
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.neo4j.AStarNeo4jRouteRepository#saveCoordinates(java.lang.String, double, double)}
+	 * .
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidCoordinates() throws RepositoryExeption {
+		routeRepository.saveCoordinates("SaoPaulo", -123.55, -46.63);
+	}
+
+}
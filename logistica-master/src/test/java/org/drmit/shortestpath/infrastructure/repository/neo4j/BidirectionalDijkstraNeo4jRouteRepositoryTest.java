@@ -0,0 +1,147 @@
+package org.drmit.shortestpath.infrastructure.repository.neo4j;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.domain.model.Route;
+import org.drmit.shortestpath.infrastructure.repository.RepositoryExeption;
+import org.drmit.shortestpath.infrastructure.repository.RouteNotFoundRepositoryExeption;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+/**
+ * BidirectionalDijkstraNeo4jRouteRepository test case.
+ * 
+ * @author Leandro Ferreira
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("classpath:applicationContext-test.xml")
+public class BidirectionalDijkstraNeo4jRouteRepositoryTest {
+
+	/** Network name. */
+	private static final String NETWORK = "Test";
+
+	/** Graph database. */
+	@Autowired
+	private GraphDatabaseService graphDatabase;
+
+	/** Route repository. */
+	private BidirectionalDijkstraNeo4jRouteRepository routeRepository;
+
+	/**
+	 * Sets up the fixture.
+	 * 
+	 * @throws Exception
+	 *             if an error occurs.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		routeRepository = new BidirectionalDijkstraNeo4jRouteRepository(
+				graphDatabase);
+
+		// Creates the route legs
+		final List<Leg> legs = new LinkedList<Leg>();
+		legs.add(new Leg("A", "B", 10));
+		legs.add(new Leg("B", "D", 15));
+		legs.add(new Leg("A", "C", 20));
+		legs.add(new Leg("C", "D", 20));
+		legs.add(new Leg("B", "E", 50));
+		legs.add(new Leg("D", "E", 50));
+
+		// Saves all given Legs into the repository
+		routeRepository.saveLegs(NETWORK, legs);
+	}
+
+	/**
+	 * Tears down the fixture.
+	 */
+	@After
+	public void tearDown() {
+		routeRepository.destroy();
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.neo4j.AbstractNeo4jRouteRepository#findShortestRoute(java.lang.String, java.lang.String, java.lang.String)}
+	 * .
+	 */
+	@Test
+	public void testSameLocation() throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		// Finds the shortest route between the origin and the destination
+		final Route actualRoute = routeRepository.findShortestRoute(NETWORK,
+				"A", "A");
+
+		// Expected legs
+		final List<Leg> expectedLegs = Collections.emptyList();
+
+		// Asserts that the expected and the actual values are equals
+		assertEquals(new Route("A", "A", expectedLegs), actualRoute);
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.neo4j.AbstractNeo4jRouteRepository#findShortestRoute(java.lang.String, java.lang.String, java.lang.String)}
+	 * .
+	 */
+	@Test
+	public void testFindShortestRouteAToD()
+			throws RouteNotFoundRepositoryExeption, RepositoryExeption {
+		// Finds the shortest route between the origin and the destination
+		final Route actualRoute = routeRepository.findShortestRoute(NETWORK,
+				"A", "D");
+
+		// Expected legs
+		final List<Leg> expectedLegs = new LinkedList<Leg>();
+		expectedLegs.add(new Leg("A", "B", 10));
+		expectedLegs.add(new Leg("B", "D", 15));
+
+		// Asserts that the expected and the actual values are equals
+		assertEquals(new Route("A", "D", expectedLegs), actualRoute);
+		assertEquals(25, actualRoute.getLength(), 0.001);
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.neo4j.AbstractNeo4jRouteRepository#findShortestRoute(java.lang.String, java.lang.String, java.lang.String)}
+	 * .
+	 */
+	@Test
+	public void testFindShortestRouteAToE()
+			throws RouteNotFoundRepositoryExeption, RepositoryExeption {
+		// Finds the shortest route between the origin and the destination
+		final Route actualRoute = routeRepository.findShortestRoute(NETWORK,
+				"A", "E");
+
+		// Expected legs
+		final List<Leg> expectedLegs = new LinkedList<Leg>();
+		expectedLegs.add(new Leg("A", "B", 10));
+		expectedLegs.add(new Leg("B", "E", 50));
+
+		// Asserts that the expected and the actual values are equals
+		assertEquals(new Route("A", "E", expectedLegs), actualRoute);
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.neo4j.AbstractNeo4jRouteRepository#findShortestRoute(java.lang.String, java.lang.String, java.lang.String)}
+	 * .
+	 */
+	@Test(expected = RouteNotFoundRepositoryExeption.class)
+	public void testNoRoute() throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		// Finds the shortest route between the origin and the destination
+		routeRepository.findShortestRoute(NETWORK, "E", "A");
+	}
+
+}
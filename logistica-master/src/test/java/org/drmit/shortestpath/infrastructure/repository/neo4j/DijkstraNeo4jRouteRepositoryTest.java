@@ -1,19 +1,41 @@
 package org.drmit.shortestpath.infrastructure.repository.neo4j;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.drmit.shortestpath.domain.model.DistanceMatrix;
 import org.drmit.shortestpath.domain.model.Route;
+import org.drmit.shortestpath.domain.model.ShortestPathTree;
+import org.drmit.shortestpath.domain.model.TimedRoute;
+import org.drmit.shortestpath.domain.model.TravelTimeProfile;
 import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.domain.model.VehicleProfile;
 import org.drmit.shortestpath.infrastructure.repository.RepositoryExeption;
 import org.drmit.shortestpath.infrastructure.repository.RouteNotFoundRepositoryExeption;
 import org.drmit.shortestpath.infrastructure.repository.RouteRepository;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicLabel;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.tooling.GlobalGraphOperations;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
@@ -27,10 +49,17 @@ import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 @ContextConfiguration("classpath:applicationContext-test.xml")
 public class DijkstraNeo4jRouteRepositoryTest {
 
+	/** Network name. */
+	private static final String NETWORK = "Test";
+
 	/** Location repository. */
 	@Autowired
 	private RouteRepository routeRepository;
 
+	/** Underlying graph database. */
+	@Autowired
+	private GraphDatabaseService graphDatabase;
+
 	/**
 	 * Sets up the fixture.
 	 * 
@@ -49,43 +78,44 @@ public class DijkstraNeo4jRouteRepositoryTest {
 		legs.add(new Leg("D", "E", 50));
 
 		// Saves all given Legs into the repository
-		routeRepository.saveLegs(legs);
+		routeRepository.saveLegs(NETWORK, legs);
 	}
 
 	/**
 	 * Test method for
-	 * {@link org.drmit.poc.dijkstra.infrastructure.repository.neo4j.AbstractNeo4jRouteRepository#findShortestRoute(java.lang.String, java.lang.String)}
+	 * {@link org.drmit.poc.dijkstra.infrastructure.repository.neo4j.AbstractNeo4jRouteRepository#findShortestRoute(java.lang.String, java.lang.String, java.lang.String)}
 	 * .
 	 */
 	@Test(expected = IllegalArgumentException.class)
 	public void testInvalidOrigin() throws RouteNotFoundRepositoryExeption,
 			RepositoryExeption {
 		// Finds the shortest route between the origin and the destination
-		routeRepository.findShortestRoute(null, "D");
+		routeRepository.findShortestRoute(NETWORK, null, "D");
 	}
 
 	/**
 	 * Test method for
-	 * {@link org.drmit.poc.dijkstra.infrastructure.repository.neo4j.AbstractNeo4jRouteRepository#findShortestRoute(java.lang.String, java.lang.String)}
+	 * {@link org.drmit.poc.dijkstra.infrastructure.repository.neo4j.AbstractNeo4jRouteRepository#findShortestRoute(java.lang.String, java.lang.String, java.lang.String)}
 	 * .
 	 */
 	@Test(expected = IllegalArgumentException.class)
 	public void testInvalidDestination()
 			throws RouteNotFoundRepositoryExeption, RepositoryExeption {
 		// Finds the shortest route between the origin and the destination
-		routeRepository.findShortestRoute("A", null);
+		routeRepository.findShortestRoute(NETWORK, "A", null);
 	}
 
 	/**
 	 * Test method for
-	 * {@link org.drmit.poc.dijkstra.infrastructure.repository.neo4j.AbstractNeo4jRouteRepository#findShortestRoute(java.lang.String, java.lang.String)}
+	 * {@link org.drmit.poc.dijkstra.infrastructure.repository.neo4j.AbstractNeo4jRouteRepository#findShortestRoute(java.lang.String, java.lang.String, java.lang.String)}
 	 * .
 	 */
 	@Test
 	public void testSameLocation() throws RouteNotFoundRepositoryExeption,
 			RepositoryExeption {
 		// Finds the shortest route between the origin and the destination
-		final Route actualRoute = routeRepository.findShortestRoute("A", "A");
+		final Route actualRoute = routeRepository.findShortestRoute(NETWORK,
+				"A", "A");
 
 		// Expected legs
 		final List<Leg> expectedLegs = Collections.emptyList();
@@ -100,14 +130,15 @@ public class DijkstraNeo4jRouteRepositoryTest {
 
 	/**
 	 * Test method for
-	 * {@link org.drmit.poc.dijkstra.infrastructure.repository.neo4j.AbstractNeo4jRouteRepository#findShortestRoute(java.lang.String, java.lang.String)}
+	 * {@link org.drmit.poc.dijkstra.infrastructure.repository.neo4j.AbstractNeo4jRouteRepository#findShortestRoute(java.lang.String, java.lang.String, java.lang.String)}
 	 * .
 	 */
 	@Test
 	public void testFindShortestRouteAToD() throws RouteNotFoundRepositoryExeption,
 			RepositoryExeption {
 		// Finds the shortest route between the origin and the destination
-		final Route actualRoute = routeRepository.findShortestRoute("A", "D");
+		final Route actualRoute = routeRepository.findShortestRoute(NETWORK,
+				"A", "D");
 
 		// Expected legs
 		final List<Leg> expectedLegs = new LinkedList<Leg>();
@@ -124,14 +155,521 @@ public class DijkstraNeo4jRouteRepositoryTest {
 
 	/**
 	 * Test method for
-	 * {@link org.drmit.poc.dijkstra.infrastructure.repository.neo4j.AbstractNeo4jRouteRepository#findShortestRoute(java.lang.String, java.lang.String)}
+	 * {@link org.drmit.poc.dijkstra.infrastructure.repository.neo4j.AbstractNeo4jRouteRepository#findShortestRoute(java.lang.String, java.lang.String, java.lang.String)}
 	 * .
 	 */
 	@Test(expected = RouteNotFoundRepositoryExeption.class)
 	public void testNoRoute() throws RouteNotFoundRepositoryExeption,
 			RepositoryExeption {
 		// Finds the shortest route between the origin and the destination
-		routeRepository.findShortestRoute("A", "X");
+		routeRepository.findShortestRoute(NETWORK, "A", "X");
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.neo4j.AbstractNeo4jRouteRepository#findShortestRoute(java.lang.String, java.lang.String, java.lang.String)}
+	 * .
+	 */
+	@Test
+	public void testNetworksAreIsolated() throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		// Connects a shared location within another network
+		routeRepository.saveLeg("Isolated", new Leg("A", "ISO1", 5));
+		assertTrue(routeRepository.findNetworkNames().contains("Isolated"));
+		assertTrue(routeRepository.findNetworkNames().contains(NETWORK));
+
+		// Asserts that each network only follows its own legs
+		assertEquals(5, routeRepository.findShortestRoute("Isolated", "A",
+				"ISO1").getLength(), 0.001);
+		try {
+			routeRepository.findShortestRoute(NETWORK, "A", "ISO1");
+			fail("Route found across networks");
+		} catch (RouteNotFoundRepositoryExeption e) {
+			// Expected
+		}
+		try {
+			routeRepository.findShortestRoute("Isolated", "A", "D");
+			fail("Route found across networks");
+		} catch (RouteNotFoundRepositoryExeption e) {
+			// Expected
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.neo4j.AbstractNeo4jRouteRepository#saveLegs(java.lang.String, java.util.List)}
+	 * .
+	 */
+	@Test
+	public void testSaveLegsUpdatesExistingLegs()
+			throws RouteNotFoundRepositoryExeption, RepositoryExeption {
+		// Saves the same legs twice, changing a distance
+		routeRepository.saveLegs("Upsert",
+				Arrays.asList(new Leg("UPS1", "UPS2", 10), new Leg("UPS2",
+						"UPS3", 10)));
+		routeRepository.saveLegs("Upsert",
+				Arrays.asList(new Leg("UPS1", "UPS2", 5), new Leg("UPS2",
+						"UPS3", 10)));
+
+		// Asserts that no parallel legs were created
+		final List<Leg> actualLegs = routeRepository.findAllLegs("Upsert");
+		assertEquals(2, actualLegs.size());
+		assertEquals(15, routeRepository.findShortestRoute("Upsert", "UPS1",
+				"UPS3").getLength(), 0.001);
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.neo4j.AbstractNeo4jRouteRepository#replaceLegs(java.lang.String, java.util.Collection)}
+	 * .
+	 */
+	@Test
+	public void testReplaceLegs() throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		routeRepository.replaceLegs("Replace",
+				Arrays.asList(new Leg("REP1", "REP2", 10), new Leg("REP2",
+						"REP3", 10)));
+
+		// Replaces the network, keeping, updating and adding legs
+		routeRepository.replaceLegs("Replace",
+				Arrays.asList(new Leg("REP2", "REP3", 5), new Leg("REP3",
+						"REP4", 5)));
+
+		// Asserts that the network is made of the given legs only
+		final List<Leg> actualLegs = routeRepository.findAllLegs("Replace");
+		assertEquals(
+				new HashSet<Leg>(Arrays.asList(new Leg("REP2", "REP3", 5),
+						new Leg("REP3", "REP4", 5))), new HashSet<Leg>(
+						actualLegs));
+		assertEquals(10, routeRepository.findShortestRoute("Replace", "REP2",
+				"REP4").getLength(), 0.001);
+		try {
+			routeRepository.findShortestRoute("Replace", "REP1", "REP2");
+			fail("Removed leg still found");
+		} catch (RouteNotFoundRepositoryExeption e) {
+			// Expected
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.neo4j.AbstractNeo4jRouteRepository#getNetworkVersion(java.lang.String)}
+	 * .
+	 */
+	@Test
+	public void testGetNetworkVersion() throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		// Writes a network through the repository
+		routeRepository.saveLeg("Versions", new Leg("VR1", "VR2", 1));
+		final long version = routeRepository.getNetworkVersion("Versions");
+		assertTrue(version > 0);
+		routeRepository.saveLegs("Versions",
+				Arrays.asList(new Leg("VR2", "VR3", 2), new Leg("VR3", "VR4",
+						3)));
+		assertEquals(version + 1, routeRepository.getNetworkVersion("Versions"));
+
+		// Asserts that reads and writes to other networks leave it unchanged
+		routeRepository.findShortestRoute("Versions", "VR1", "VR4");
+		routeRepository.saveLeg("Other", new Leg("VR1", "VR2", 1));
+		assertEquals(version + 1, routeRepository.getNetworkVersion("Versions"));
+
+		// Asserts that writes bypassing the repository are versioned too
+		try (final Transaction tx = graphDatabase.beginTx()) {
+			for (Node node : GlobalGraphOperations.at(graphDatabase)
+					.getAllNodesWithLabel(
+							DynamicLabel.label("Network:Versions"))) {
+				for (Relationship relationship : node.getRelationships(
+						DynamicRelationshipType
+								.withName("CONNECTED:Versions"),
+						Direction.OUTGOING)) {
+					relationship.setProperty(
+							AbstractNeo4jRouteRepository.DISTANCE_PROPERTY_KEY,
+							5d);
+				}
+			}
+			tx.success();
+		}
+		assertEquals(version + 2, routeRepository.getNetworkVersion("Versions"));
+		assertEquals(0, routeRepository.getNetworkVersion("Unwritten"));
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.neo4j.AbstractNeo4jRouteRepository#getNetworkVersion(java.lang.String)}
+	 * .
+	 */
+	@Test
+	public void testGetNetworkVersionSharedStore() throws RepositoryExeption {
+		// Opens more repositories on the same database
+		final DijkstraNeo4jRouteRepository first = new DijkstraNeo4jRouteRepository(
+				graphDatabase);
+		final BidirectionalDijkstraNeo4jRouteRepository second = new BidirectionalDijkstraNeo4jRouteRepository(
+				graphDatabase);
+		try {
+			first.saveLeg("SharedVersions", new Leg("SV1", "SV2", 1));
+			final long version = routeRepository
+					.getNetworkVersion("SharedVersions");
+
+			// Asserts that each write increments the version exactly once,
+			// whichever repository runs it
+			second.saveLeg("SharedVersions", new Leg("SV2", "SV3", 1));
+			assertEquals(version + 1,
+					first.getNetworkVersion("SharedVersions"));
+			first.saveLegs("SharedVersions", Arrays.asList(new Leg("SV1",
+					"SV2", 2), new Leg("SV3", "SV4", 1)));
+			assertEquals(version + 2,
+					second.getNetworkVersion("SharedVersions"));
+		} finally {
+			first.destroy();
+			second.destroy();
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.neo4j.AbstractNeo4jRouteRepository#findNetworkNames()}
+	 * .
+	 */
+	@Test
+	public void testEmptiedNetworkIsNotListed() throws RepositoryExeption {
+		// Saves a network and then removes all its legs
+		routeRepository.saveLeg("Emptied", new Leg("EMP1", "EMP2", 10));
+		assertTrue(routeRepository.findNetworkNames().contains("Emptied"));
+		routeRepository.replaceLegs("Emptied", Collections.<Leg> emptyList());
+
+		// Asserts that the network is no longer listed
+		assertFalse(routeRepository.findNetworkNames().contains("Emptied"));
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.neo4j.AbstractNeo4jRouteRepository#findDistances(java.lang.String, java.util.List, java.util.List)}
+	 * .
+	 */
+	@Test
+	public void testFindDistances() throws RepositoryExeption {
+		// Finds the distances between every origin and destination
+		final DistanceMatrix actualMatrix = routeRepository.findDistances(NETWORK,
+				Arrays.asList("A", "B", "E"), Arrays.asList("D", "E", "A", "X"));
+
+		// Expected distances
+		final double x = Double.POSITIVE_INFINITY;
+		final double[][] expectedDistances = { { 25, 60, 0, x },
+				{ 15, 50, x, x }, { x, 0, x, x } };
+
+		// Asserts that the expected and the actual values are equals
+		assertEquals(new DistanceMatrix(Arrays.asList("A", "B", "E"),
+				Arrays.asList("D", "E", "A", "X"), expectedDistances),
+				actualMatrix);
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.neo4j.AbstractNeo4jRouteRepository#importLegs(java.lang.String, java.util.Iterator)}
+	 * .
+	 */
+	@Test
+	public void testImportLegs() throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		// Imports legs in batches smaller than the network
+		final DijkstraNeo4jRouteRepository importingRepository = new DijkstraNeo4jRouteRepository(
+				graphDatabase);
+		importingRepository.setImportBatchSize(2);
+		final List<Leg> legs = new LinkedList<Leg>();
+		legs.add(new Leg("IMP1", "IMP2", 5));
+		legs.add(new Leg("IMP2", "IMP3", 5));
+		legs.add(new Leg("IMP1", "IMP3", 20));
+		legs.add(new Leg("IMP3", "IMP4", 5));
+		legs.add(new Leg("IMP4", "IMP5", 5));
+		legs.add(new Leg("IMP1", "IMP2", 4));
+		try {
+			assertEquals(6, importingRepository.importLegs("Imported",
+					legs.iterator()));
+		} finally {
+			importingRepository.destroy();
+		}
+
+		// Finds the shortest route between the origin and the destination
+		final Route actualRoute = routeRepository.findShortestRoute(
+				"Imported", "IMP1", "IMP5");
+
+		// Asserts that every batch was committed, and that a leg imported
+		// again by a later batch was updated rather than duplicated
+		assertEquals(19, actualRoute.getLength(), 0.001);
+		assertEquals(4, actualRoute.getLegs().size());
+		assertEquals(5, routeRepository.findAllLegs("Imported").size());
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.neo4j.AbstractNeo4jRouteRepository#importLegs(java.lang.String, java.util.Iterator)}
+	 * .
+	 */
+	@Test
+	public void testImportLegsWritesOnlyChanges() throws RepositoryExeption {
+		final List<Leg> legs = Arrays.asList(new Leg("UNC1", "UNC2", 10),
+				new Leg("UNC2", "UNC3", 10));
+		routeRepository.replaceLegs("Unchanged", legs);
+		final long version = routeRepository.getNetworkVersion("Unchanged");
+
+		// Asserts that importing the same legs writes nothing
+		assertEquals(2, routeRepository.importLegs("Unchanged",
+				legs.iterator()));
+		assertEquals(version, routeRepository.getNetworkVersion("Unchanged"));
+
+		// Asserts that changing a leg writes it
+		routeRepository.importLegs("Unchanged",
+				Arrays.asList(new Leg("UNC1", "UNC2", 5),
+						new Leg("UNC2", "UNC3", 10)).iterator());
+		assertEquals(version + 1,
+				routeRepository.getNetworkVersion("Unchanged"));
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.neo4j.AbstractNeo4jRouteRepository#importLegs(java.lang.String, java.util.Iterator)}
+	 * .
+	 */
+	@Test
+	public void testImportLegsReplacesNetwork()
+			throws RouteNotFoundRepositoryExeption, RepositoryExeption {
+		routeRepository.replaceLegs("Reimported",
+				Arrays.asList(new Leg("RIM1", "RIM2", 10), new Leg("RIM2",
+						"RIM3", 10), new Leg("RIM3", "RIM4", 10)));
+
+		// Imports the network again without its first and last legs
+		final DijkstraNeo4jRouteRepository importingRepository = new DijkstraNeo4jRouteRepository(
+				graphDatabase);
+		importingRepository.setImportBatchSize(1);
+		try {
+			assertEquals(2, importingRepository.importLegs("Reimported",
+					Arrays.asList(new Leg("RIM2", "RIM3", 5),
+							new Leg("RIM3", "RIM5", 5)).iterator()));
+		} finally {
+			importingRepository.destroy();
+		}
+
+		// Asserts that the legs missing from the import were deleted, along
+		// with the locations left without legs
+		assertEquals(
+				new HashSet<Leg>(Arrays.asList(new Leg("RIM2", "RIM3", 5),
+						new Leg("RIM3", "RIM5", 5))),
+				new HashSet<Leg>(routeRepository.findAllLegs("Reimported")));
+		assertEquals(5, routeRepository.findShortestRoute("Reimported",
+				"RIM2", "RIM3").getLength(), 0.001);
+		try {
+			routeRepository.findShortestRoute("Reimported", "RIM1", "RIM3");
+			fail("Removed leg still found");
+		} catch (RouteNotFoundRepositoryExeption e) {
+			// Expected
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.neo4j.AbstractNeo4jRouteRepository#findShortestRoute(java.lang.String, java.lang.String, java.lang.String)}
+	 * .
+	 */
+	@Test
+	public void testSearchDoesNotCreateLocations() throws RepositoryExeption {
+		// Searches a route to an unknown location
+		try {
+			routeRepository.findShortestRoute(NETWORK, "A", "UNK1");
+			fail("RouteNotFoundRepositoryExeption expected");
+		} catch (RouteNotFoundRepositoryExeption e) {
+			// Expected
+		}
+
+		// Asserts that the location was not created
+		try (final Transaction tx = graphDatabase.beginTx()) {
+			assertNull(graphDatabase.index()
+					.forNodes(AbstractNeo4jRouteRepository.LEGS_INDEX_NAME)
+					.get(AbstractNeo4jRouteRepository.NAME_PROPERTY_KEY, "UNK1")
+					.getSingle());
+			tx.success();
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.neo4j.AbstractNeo4jRouteRepository#findShortestRoute(java.lang.String, java.lang.String, java.lang.String)}
+	 * .
+	 */
+	@Test
+	public void testFindsLocationsOfOtherWriters()
+			throws RouteNotFoundRepositoryExeption, RepositoryExeption {
+		// Writes a leg straight to the database, leaving the index out
+		final String originName = "DIR1-" + System.nanoTime();
+		final String destinationName = "DIR2-" + System.nanoTime();
+		final Label label = DynamicLabel
+				.label(AbstractNeo4jRouteRepository.NETWORK_LABEL_PREFIX
+						+ "Direct");
+		try (final Transaction tx = graphDatabase.beginTx()) {
+			final Node origin = graphDatabase.createNode(label);
+			origin.setProperty(AbstractNeo4jRouteRepository.NAME_PROPERTY_KEY,
+					originName);
+			final Node destination = graphDatabase.createNode(label);
+			destination.setProperty(
+					AbstractNeo4jRouteRepository.NAME_PROPERTY_KEY,
+					destinationName);
+			origin.createRelationshipTo(
+					destination,
+					DynamicRelationshipType
+							.withName(AbstractNeo4jRouteRepository.NETWORK_RELATIONSHIP_TYPE_PREFIX
+									+ "Direct")).setProperty(
+					AbstractNeo4jRouteRepository.DISTANCE_PROPERTY_KEY, 7d);
+			tx.success();
+		}
+
+		// Asserts that the repository sees the committed locations
+		assertEquals(7, routeRepository.findShortestRoute("Direct",
+				originName, destinationName).getLength(), 0.001);
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.neo4j.AbstractNeo4jRouteRepository#findShortestRoutesFrom(java.lang.String, java.lang.String)}
+	 * .
+	 */
+	@Test
+	public void testFindShortestRoutesFrom() throws RepositoryExeption {
+		// Finds the shortest routes from the origin to every location
+		final ShortestPathTree tree = routeRepository.findShortestRoutesFrom(
+				NETWORK, "A");
+
+		// Asserts that the expected and the actual values are equals
+		assertEquals("A", tree.getLocation(0));
+		assertEquals(0, tree.getDistance("A"), 0.001);
+		assertEquals(10, tree.getDistance("B"), 0.001);
+		assertEquals(20, tree.getDistance("C"), 0.001);
+		assertEquals(25, tree.getDistance("D"), 0.001);
+		assertEquals(60, tree.getDistance("E"), 0.001);
+		assertFalse(tree.isReachable("X"));
+		for (int i = 1; i < tree.getLocationCount(); i++) {
+			assertTrue(tree.getDistance(i - 1) <= tree.getDistance(i));
+		}
+
+		// Asserts that routes are reconstructed from the tree
+		final Route route = tree.getRoute("E");
+		assertEquals(Arrays.asList(new Leg("A", "B", 10), new Leg("B", "E",
+				50)), route.getLegs());
+		assertNull(tree.getRoute("X"));
+
+		// Asserts that unknown origins only reach themselves
+		assertEquals(1, routeRepository.findShortestRoutesFrom(NETWORK, "X")
+				.getLocationCount());
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.neo4j.AbstractNeo4jRouteRepository#findFastestRoute(java.lang.String, java.lang.String, java.lang.String, double)}
+	 * .
+	 */
+	@Test
+	public void testFindFastestRoute() throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		// Congests the shortest route at 8:00, other legs take a minute per
+		// distance unit
+		final TravelTimeProfile rushHour = new TravelTimeProfile(new double[] {
+				0, 28800, 36000 }, new double[] { 600, 3600, 600 });
+		routeRepository.replaceLegs("TimeDependentNeo4j", Arrays.asList(
+				new Leg("TDN1", "TDN2", 10, rushHour), new Leg("TDN2", "TDN4",
+						10), new Leg("TDN1", "TDN3", 20), new Leg("TDN3",
+						"TDN4", 20)));
+
+		// Asserts that the shortest route is the fastest one at midnight
+		TimedRoute route = routeRepository.findFastestRoute(
+				"TimeDependentNeo4j", "TDN1", "TDN4", 0);
+		assertEquals(Arrays.asList(new Leg("TDN1", "TDN2", 10, rushHour),
+				new Leg("TDN2", "TDN4", 10)), route.getLegs());
+		assertEquals(rushHour, route.getLegs().get(0).getTravelTimeProfile());
+		assertEquals(1200, route.getTravelTime(), 0.001);
+
+		// Asserts that the congested leg is avoided at rush hour
+		route = routeRepository.findFastestRoute("TimeDependentNeo4j", "TDN1",
+				"TDN4", 28800);
+		assertEquals(40, route.getLength(), 0.001);
+		assertEquals(31200, route.getArrivalTime(), 0.001);
+
+		// Asserts that staying put takes no time
+		route = routeRepository.findFastestRoute("TimeDependentNeo4j", "TDN1",
+				"TDN1", 100);
+		assertTrue(route.getLegs().isEmpty());
+		assertEquals(100, route.getArrivalTime(), 0.001);
+
+		// Asserts that unreachable and unknown destinations are not found
+		for (String destination : Arrays.asList("TDN1", "TDNX")) {
+			try {
+				routeRepository.findFastestRoute("TimeDependentNeo4j", "TDN4",
+						destination, 0);
+				fail("RouteNotFoundRepositoryExeption expected");
+			} catch (RouteNotFoundRepositoryExeption e) {
+				// Expected
+			}
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.neo4j.AbstractNeo4jRouteRepository#findKShortestRoutes(java.lang.String, java.lang.String, java.lang.String, int)}
+	 * .
+	 */
+	@Test
+	public void testFindKShortestRoutes() throws RepositoryExeption {
+		// Finds more alternatives than there are
+		final List<Route> routes = routeRepository.findKShortestRoutes(
+				NETWORK, "A", "E", 5);
+
+		// Asserts that every loopless route was found, shortest first
+		assertEquals(3, routes.size());
+		assertEquals(Arrays.asList(new Leg("A", "B", 10), new Leg("B", "E",
+				50)), routes.get(0).getLegs());
+		assertEquals(Arrays.asList(new Leg("A", "B", 10), new Leg("B", "D",
+				15), new Leg("D", "E", 50)), routes.get(1).getLegs());
+		assertEquals(Arrays.asList(new Leg("A", "C", 20), new Leg("C", "D",
+				20), new Leg("D", "E", 50)), routes.get(2).getLegs());
+
+		// Asserts that k bounds the alternatives
+		assertEquals(1, routeRepository.findKShortestRoutes(NETWORK, "A", "E",
+				1).size());
+		assertEquals(0, routeRepository.findKShortestRoutes(NETWORK, "A", "X",
+				3).size());
+		assertEquals(0, routeRepository.findKShortestRoutes(NETWORK, "E", "A",
+				3).size());
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.neo4j.AbstractNeo4jRouteRepository#findCheapestRoute(java.lang.String, java.lang.String, java.lang.String, org.drmit.shortestpath.domain.model.VehicleProfile, double)}
+	 * .
+	 */
+	@Test
+	public void testFindCheapestRoute() throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		// Tolls a highway detour around an urban route
+		routeRepository.replaceLegs("Tolled", Arrays.asList(new Leg("TL1",
+				"TL2", 10, null, 0, "urban"), new Leg("TL2", "TL4", 10, null,
+				0, "urban"), new Leg("TL1", "TL3", 12, null, 2, "highway"),
+				new Leg("TL3", "TL4", 12, null, 0, "highway")));
+		final Map<String, Double> fuelFactors = new HashMap<String, Double>();
+		fuelFactors.put("urban", 1.5);
+		fuelFactors.put("highway", 0.8);
+		final VehicleProfile truck = new VehicleProfile("truck", 4, 3,
+				fuelFactors);
+
+		// Asserts that cheap fuel favors the toll-free urban route
+		Route route = routeRepository.findCheapestRoute("Tolled", "TL1",
+				"TL4", truck, 1);
+		assertEquals(Arrays.asList(new Leg("TL1", "TL2", 10), new Leg("TL2",
+				"TL4", 10)), route.getLegs());
+		assertEquals("urban", route.getLegs().get(0).getRoadClass());
+
+		// Asserts that expensive fuel favors the tolled highway
+		route = routeRepository.findCheapestRoute("Tolled", "TL1", "TL4",
+				truck, 4);
+		assertEquals(Arrays.asList(new Leg("TL1", "TL3", 12), new Leg("TL3",
+				"TL4", 12)), route.getLegs());
+		assertEquals(2, route.getLegs().get(0).getToll(), 0);
 	}
 
 }
@@ -0,0 +1,105 @@
+package org.drmit.shortestpath.infrastructure.repository.neo4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.domain.model.Route;
+import org.drmit.shortestpath.infrastructure.repository.RouteRepository;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+
+/**
+ * Neo4jBatchImporter test case.
+ * 
+ * @author Leandro Ferreira
+ */
+public class Neo4jBatchImporterTest {
+
+	/** Network name. */
+	private static final String NETWORK = "Test";
+
+	/** Folder the stores are created in, deleted after each test. */
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.neo4j.Neo4jBatchImporter#importLegs(java.lang.String, java.util.Iterator)}
+	 * .
+	 */
+	@Test
+	public void testImportLegs() throws Exception {
+		final String storeDir = new File(folder.getRoot(), "batchDb")
+				.getPath();
+
+		// Creates the route legs
+		final List<Leg> legs = new LinkedList<Leg>();
+		legs.add(new Leg("A", "B", 10));
+		legs.add(new Leg("B", "D", 15));
+		legs.add(new Leg("A", "C", 20));
+		legs.add(new Leg("C", "D", 20));
+
+		// Imports the legs offline
+		final Neo4jBatchImporter importer = new Neo4jBatchImporter(storeDir);
+		try {
+			assertEquals(4, importer.importLegs(NETWORK, legs.iterator()));
+		} finally {
+			importer.close();
+		}
+
+		// Opens the store as the application does
+		final long version;
+		GraphDatabaseService graphDatabase = new GraphDatabaseFactory()
+				.newEmbeddedDatabase(storeDir);
+		try {
+			final RouteRepository routeRepository = new DijkstraNeo4jRouteRepository(
+					graphDatabase);
+			final Route actualRoute = routeRepository.findShortestRoute(
+					NETWORK, "A", "D");
+
+			// Asserts that the imported nodes were indexed and connected
+			assertEquals(25, actualRoute.getLength(), 0.001);
+
+			// Asserts that the import versioned the network
+			version = routeRepository.getNetworkVersion(NETWORK);
+			assertTrue(version > 0);
+		} finally {
+			graphDatabase.shutdown();
+		}
+
+		// Imports another leg offline
+		final Neo4jBatchImporter next = new Neo4jBatchImporter(storeDir);
+		try {
+			assertEquals(1, next.importLegs(NETWORK, Collections.singletonList(
+					new Leg("D", "E", 5)).iterator()));
+		} finally {
+			next.close();
+		}
+
+		// Asserts that the import incremented the version
+		graphDatabase = new GraphDatabaseFactory().newEmbeddedDatabase(storeDir);
+		try {
+			final RouteRepository routeRepository = new DijkstraNeo4jRouteRepository(
+					graphDatabase);
+			assertEquals(30, routeRepository.findShortestDistance(NETWORK,
+					"A", "E"), 0.001);
+			assertEquals(version + 1, routeRepository.getNetworkVersion(NETWORK));
+		} finally {
+			graphDatabase.shutdown();
+		}
+
+		// Asserts that the versioning of the database ended with it
+		assertFalse(NetworkVersioning.isRegistered(graphDatabase));
+	}
+
+}
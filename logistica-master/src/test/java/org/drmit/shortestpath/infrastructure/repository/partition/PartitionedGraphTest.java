@@ -0,0 +1,180 @@
+package org.drmit.shortestpath.infrastructure.repository.partition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.infrastructure.repository.memory.CompressedGraph;
+import org.drmit.shortestpath.infrastructure.repository.memory.RandomNetworks;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * PartitionedGraph test case.
+ *
+ * @author Leandro Ferreira
+ */
+public class PartitionedGraphTest {
+
+	/** Folder the test directories are created in, deleted after each test. */
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.partition.OverlaySearch#findDistance(int, int)}
+	 * .
+	 */
+	@Test
+	public void testMatchesFloydWarshall() throws Exception {
+		// Creates a random network with parallel legs, zero-length legs and
+		// dead ends
+		final CompressedGraph graph = CompressedGraph.build(RandomNetworks
+				.createLegs(42, 200, 800));
+		final PartitionedGraph built = PartitionedGraph.build(graph, 8, 2);
+		assertTrue(built.getLevelCount() > 1);
+		assertMatches(graph, built);
+
+		// Writes the graph and loads it again, a few cells at a time
+		final File directory = new File(folder.getRoot(), "overlay");
+		built.write(directory);
+		final CellCache cache = new CellCache(4);
+		assertMatches(graph, PartitionedGraph.open(directory, cache));
+		assertEquals(4, cache.getSize());
+		assertTrue(cache.getLoadCount() > built.getCellCount(1));
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.partition.PartitionedGraph#build(org.drmit.shortestpath.infrastructure.repository.memory.CompressedGraph, int, int, java.io.File, org.drmit.shortestpath.infrastructure.repository.partition.CellCache, long)}
+	 * .
+	 */
+	@Test
+	public void testBuildIntoDirectory() throws Exception {
+		final CompressedGraph graph = CompressedGraph.build(RandomNetworks
+				.createLegs(7, 200, 800));
+
+		// Builds the graph a cell at a time, holding a few cells at most
+		final File directory = new File(folder.getRoot(), "overlay");
+		final CellCache cache = new CellCache(4);
+		final PartitionedGraph built = PartitionedGraph.build(graph, 8, 2,
+				directory, cache, 7);
+		assertTrue(built.getLevelCount() > 1);
+		assertEquals(7, PartitionedGraph.readNetworkVersion(directory));
+		assertEquals(0, cache.getSize());
+		assertMatches(graph, built);
+		assertTrue(cache.getSize() <= 4);
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.partition.OverlaySearch#findLegs(int, int)}
+	 * .
+	 */
+	@Test
+	public void testDisconnected() throws Exception {
+		// Creates two chains with no leg between them
+		final List<Leg> legs = new ArrayList<Leg>();
+		for (int i = 0; i < 20; i++) {
+			legs.add(new Leg("A" + i, "A" + (i + 1), 1));
+			legs.add(new Leg("B" + i, "B" + (i + 1), 2));
+		}
+		final PartitionedGraph graph = PartitionedGraph.build(
+				CompressedGraph.build(legs), 4, 2);
+
+		// Asserts that only the chain of the origin is reachable
+		assertEquals(Arrays.asList(new Leg("A3", "A4", 1), new Leg("A4",
+				"A5", 1)), new OverlaySearch(graph).findLegs(
+				graph.getNodeId("A3"), graph.getNodeId("A5")));
+		assertEquals(40, new OverlaySearch(graph).findDistance(
+				graph.getNodeId("B0"), graph.getNodeId("B20")), 0.001);
+		assertNull(new OverlaySearch(graph).findLegs(graph.getNodeId("A0"),
+				graph.getNodeId("B1")));
+		assertNull(new OverlaySearch(graph).findLegs(graph.getNodeId("A5"),
+				graph.getNodeId("A3")));
+		assertEquals(-1, graph.getNodeId("C0"));
+	}
+
+	/**
+	 * Asserts that the searches over an overlay graph give the distances of a
+	 * full search, along routes of legs of the graph.
+	 *
+	 * @param graph
+	 *            the graph.
+	 * @param partitioned
+	 *            the overlay graph built from it.
+	 */
+	private static void assertMatches(CompressedGraph graph,
+			PartitionedGraph partitioned) throws Exception {
+		final double[][] expected = findAllDistances(graph);
+		final int nodeCount = graph.getNodeCount();
+		for (int origin = 0; origin < nodeCount; origin += 3) {
+			final int source = partitioned.getNodeId(graph
+					.getNodeName(origin));
+			for (int destination = 0; destination < nodeCount; destination++) {
+				if (destination == origin) {
+					continue;
+				}
+				final int target = partitioned.getNodeId(graph
+						.getNodeName(destination));
+				final List<Leg> legs = new OverlaySearch(partitioned)
+						.findLegs(source, target);
+				if (expected[origin][destination] == Double.POSITIVE_INFINITY) {
+					assertNull(legs);
+					continue;
+				}
+
+				// Asserts that the legs chain from the origin to the
+				// destination and add up to the distance
+				String location = graph.getNodeName(origin);
+				double length = 0;
+				for (Leg leg : legs) {
+					assertEquals(location, leg.getOrigin());
+					location = leg.getDestination();
+					length += leg.getDistance();
+				}
+				assertEquals(graph.getNodeName(destination), location);
+				assertEquals(expected[origin][destination], length, 0.001);
+			}
+		}
+	}
+
+	/**
+	 * Finds the distances between every pair of nodes of a graph.
+	 *
+	 * @param graph
+	 *            the graph.
+	 * @return the distances, indexed by origin and destination node ids.
+	 */
+	private static double[][] findAllDistances(CompressedGraph graph) {
+		final int nodeCount = graph.getNodeCount();
+		final double[][] distances = new double[nodeCount][nodeCount];
+		for (int node = 0; node < nodeCount; node++) {
+			Arrays.fill(distances[node], Double.POSITIVE_INFINITY);
+			distances[node][node] = 0;
+			for (int edge = graph.getFirstEdge(node); edge < graph
+					.getLastEdge(node); edge++) {
+				final int target = graph.getEdgeTarget(edge);
+				distances[node][target] = Math.min(distances[node][target],
+						graph.getEdgeDistance(edge));
+			}
+		}
+		for (int k = 0; k < nodeCount; k++) {
+			for (int i = 0; i < nodeCount; i++) {
+				for (int j = 0; j < nodeCount; j++) {
+					distances[i][j] = Math.min(distances[i][j],
+							distances[i][k] + distances[k][j]);
+				}
+			}
+		}
+		return distances;
+	}
+
+}
@@ -0,0 +1,319 @@
+package org.drmit.shortestpath.infrastructure.repository.partition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.drmit.shortestpath.domain.model.DistanceMatrix;
+import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.domain.model.Route;
+import org.drmit.shortestpath.domain.model.TimedRoute;
+import org.drmit.shortestpath.infrastructure.repository.RepositoryExeption;
+import org.drmit.shortestpath.infrastructure.repository.RouteNotFoundRepositoryExeption;
+import org.drmit.shortestpath.infrastructure.repository.RouteRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+/**
+ * PartitionedRouteRepository test case.
+ *
+ * @author Leandro Ferreira
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("classpath:applicationContext-test.xml")
+public class PartitionedRouteRepositoryTest {
+
+	/** Network name. */
+	private static final String NETWORK = "Test";
+
+	/** Durable route repository. */
+	@Autowired
+	private RouteRepository durableRepository;
+
+	/** Folder the test directories are created in, deleted after each test. */
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	/** Directory the overlays are kept in. */
+	private File directory;
+
+	/** Partitioned route repository. */
+	private PartitionedRouteRepository routeRepository;
+
+	/**
+	 * Sets up the fixture.
+	 *
+	 * @throws Exception
+	 *             if an error occurs.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		// Creates the route legs
+		final List<Leg> legs = new LinkedList<Leg>();
+		legs.add(new Leg("A", "B", 10));
+		legs.add(new Leg("B", "D", 15));
+		legs.add(new Leg("A", "C", 20));
+		legs.add(new Leg("C", "D", 20));
+		legs.add(new Leg("B", "E", 50));
+		legs.add(new Leg("D", "E", 50));
+
+		// Saves all given Legs into the durable repository
+		durableRepository.saveLegs(NETWORK, legs);
+
+		// Builds the overlays into a new directory, in cells of two locations
+		directory = new File(folder.getRoot(), "overlays");
+		routeRepository = new PartitionedRouteRepository(durableRepository,
+				directory, 2, 2);
+		awaitOverlay(routeRepository, NETWORK);
+	}
+
+	/**
+	 * Tears down the fixture.
+	 */
+	@After
+	public void tearDown() {
+		routeRepository.destroy();
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.partition.PartitionedRouteRepository#findShortestRoute(java.lang.String, java.lang.String, java.lang.String)}
+	 * .
+	 */
+	@Test
+	public void testFindShortestRouteAToD()
+			throws RouteNotFoundRepositoryExeption, RepositoryExeption {
+		// Finds the shortest route between the origin and the destination
+		final Route actualRoute = routeRepository.findShortestRoute(NETWORK,
+				"A", "D");
+
+		// Expected legs
+		final List<Leg> expectedLegs = new LinkedList<Leg>();
+		expectedLegs.add(new Leg("A", "B", 10));
+		expectedLegs.add(new Leg("B", "D", 15));
+
+		// Asserts that the expected and the actual values are equals
+		assertEquals(new Route("A", "D", expectedLegs), actualRoute);
+		assertEquals(25, routeRepository.findShortestDistance(NETWORK, "A",
+				"D"), 0.001);
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.partition.PartitionedRouteRepository#findShortestRoute(java.lang.String, java.lang.String, java.lang.String)}
+	 * .
+	 */
+	@Test(expected = RouteNotFoundRepositoryExeption.class)
+	public void testNoRoute() throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		// Finds the shortest route between the origin and the destination
+		routeRepository.findShortestRoute(NETWORK, "E", "A");
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.partition.PartitionedRouteRepository#saveLeg(java.lang.String, org.drmit.shortestpath.domain.model.Leg)}
+	 * .
+	 */
+	@Test
+	public void testRebuildAfterSaveLeg() throws Exception {
+		// Saves a leg towards a new location
+		routeRepository.saveLeg(NETWORK, new Leg("E", "PART1", 5));
+
+		// Asserts that the new leg is visible to queries right away
+		assertEquals(65, routeRepository.findShortestDistance(NETWORK, "A",
+				"PART1"), 0.001);
+
+		// Asserts that the new leg is visible to the rebuilt overlay
+		awaitOverlay(routeRepository, NETWORK);
+		assertEquals(65, routeRepository.findShortestRoute(NETWORK, "A",
+				"PART1").getLength(), 0.001);
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.partition.PartitionedRouteRepository#PartitionedRouteRepository(org.drmit.shortestpath.infrastructure.repository.RouteRepository, java.io.File, int, int)}
+	 * .
+	 */
+	@Test
+	public void testReopen() throws Exception {
+		// Opens the overlays written by the other repository
+		final PartitionedRouteRepository reopened = new PartitionedRouteRepository(
+				durableRepository, directory, 2, 2);
+		try {
+			// Asserts that the overlay is queried before any rebuild
+			assertTrue(reopened.isOverlayCurrent(NETWORK));
+			assertEquals(25,
+					reopened.findShortestDistance(NETWORK, "A", "D"), 0.001);
+			assertTrue(reopened.getCellLoadCount() > 0);
+		} finally {
+			reopened.destroy();
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.partition.PartitionedRouteRepository#PartitionedRouteRepository(org.drmit.shortestpath.infrastructure.repository.RouteRepository, java.io.File, int, int)}
+	 * .
+	 */
+	@Test
+	public void testReopenWhileBuilding() throws Exception {
+		// Opens the directory again while the other repository builds
+		routeRepository.saveLeg(NETWORK, new Leg("E", "PART2", 5));
+		final PartitionedRouteRepository reopened = new PartitionedRouteRepository(
+				durableRepository, directory, 2, 2);
+		try {
+			// Asserts that neither repository deletes nor overwrites the
+			// overlays of the other
+			awaitOverlay(routeRepository, NETWORK);
+			awaitOverlay(reopened, NETWORK);
+			assertEquals(65, routeRepository.findShortestDistance(NETWORK,
+					"A", "PART2"), 0.001);
+			assertEquals(65, reopened.findShortestDistance(NETWORK, "A",
+					"PART2"), 0.001);
+		} finally {
+			reopened.destroy();
+		}
+
+		// Asserts that the overlays of the remaining repository are kept
+		routeRepository.setMaximumCellCount(1);
+		assertEquals(60, routeRepository.findShortestDistance(NETWORK, "A",
+				"E"), 0.001);
+		assertEquals(25, routeRepository.findShortestDistance(NETWORK, "A",
+				"D"), 0.001);
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.partition.PartitionedRouteRepository#PartitionedRouteRepository(org.drmit.shortestpath.infrastructure.repository.RouteRepository, java.io.File, int, int)}
+	 * .
+	 */
+	@Test(expected = RepositoryExeption.class)
+	public void testLockedDirectory() throws Exception {
+		// Locks a directory as another process would
+		final File locked = new File(folder.getRoot(), "locked");
+		assertTrue(locked.mkdirs());
+		try (final FileChannel channel = FileChannel.open(new File(locked,
+				OverlayDirectory.LOCK_FILE).toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+				final FileLock lock = channel.lock()) {
+			new PartitionedRouteRepository(durableRepository, locked, 2, 2);
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.partition.PartitionedRouteRepository#PartitionedRouteRepository(org.drmit.shortestpath.infrastructure.repository.RouteRepository, java.io.File, int, int)}
+	 * .
+	 */
+	@Test
+	public void testReopenStale() throws Exception {
+		routeRepository.saveLegs("PartStale",
+				Arrays.asList(new Leg("PS1", "PS2", 10)));
+		awaitOverlay(routeRepository, "PartStale");
+
+		// Writes the network bypassing the partitioned repository, as an
+		// offline import does
+		durableRepository.saveLeg("PartStale", new Leg("PS1", "PS2", 4));
+
+		// Asserts that the stale overlay is not queried, and is built again
+		final PartitionedRouteRepository reopened = new PartitionedRouteRepository(
+				durableRepository, directory, 2, 2);
+		try {
+			assertEquals(4, reopened.findShortestDistance("PartStale", "PS1",
+					"PS2"), 0.001);
+			awaitOverlay(reopened, "PartStale");
+			assertEquals(4, reopened.findShortestDistance("PartStale", "PS1",
+					"PS2"), 0.001);
+		} finally {
+			reopened.destroy();
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.partition.PartitionedRouteRepository#findFastestRoute(java.lang.String, java.lang.String, java.lang.String, double)}
+	 * .
+	 */
+	@Test
+	public void testFindFastestRoute() throws RouteNotFoundRepositoryExeption,
+			RepositoryExeption {
+		// Asserts that the query is answered by the durable repository
+		final TimedRoute route = routeRepository.findFastestRoute(NETWORK,
+				"A", "D", 100);
+		assertEquals(Arrays.asList(new Leg("A", "B", 10), new Leg("B", "D",
+				15)), route.getLegs());
+		assertEquals(100 + 25 * 60, route.getArrivalTime(), 0.001);
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.partition.PartitionedRouteRepository#findKShortestRoutes(java.lang.String, java.lang.String, java.lang.String, int)}
+	 * .
+	 */
+	@Test
+	public void testFindKShortestRoutes() throws RepositoryExeption {
+		// Asserts that the query is answered by the durable repository
+		final List<Route> routes = routeRepository.findKShortestRoutes(
+				NETWORK, "A", "D", 2);
+		assertEquals(2, routes.size());
+		assertEquals(25, routes.get(0).getLength(), 0.001);
+		assertEquals(Arrays.asList(new Leg("A", "C", 20), new Leg("C", "D",
+				20)), routes.get(1).getLegs());
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.infrastructure.repository.partition.PartitionedRouteRepository#findDistances(java.lang.String, java.util.List, java.util.List)}
+	 * .
+	 */
+	@Test
+	public void testFindDistances() throws RepositoryExeption {
+		// Finds the distances between every origin and destination
+		final DistanceMatrix actualMatrix = routeRepository.findDistances(
+				NETWORK, Arrays.asList("A", "B", "E"),
+				Arrays.asList("D", "E", "A", "X"));
+
+		// Expected distances
+		final double x = Double.POSITIVE_INFINITY;
+		final double[][] expectedDistances = { { 25, 60, 0, x },
+				{ 15, 50, x, x }, { x, 0, x, x } };
+
+		// Asserts that the expected and the actual values are equals
+		assertEquals(new DistanceMatrix(Arrays.asList("A", "B", "E"),
+				Arrays.asList("D", "E", "A", "X"), expectedDistances),
+				actualMatrix);
+	}
+
+	/**
+	 * Waits for the background build of the overlay of a network.
+	 *
+	 * @param routeRepository
+	 *            the partitioned route repository.
+	 * @param network
+	 *            the network name.
+	 */
+	private static void awaitOverlay(
+			PartitionedRouteRepository routeRepository, String network)
+			throws InterruptedException {
+		for (int i = 0; i < 100 && !routeRepository.isOverlayCurrent(network); i++) {
+			Thread.sleep(50);
+		}
+		assertTrue(routeRepository.isOverlayCurrent(network));
+	}
+
+}
@@ -0,0 +1,419 @@
+package org.drmit.shortestpath.presentation.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+
+import org.drmit.shortestpath.application.services.ShippingRatingService;
+import org.drmit.shortestpath.application.services.ShippingService;
+import org.drmit.shortestpath.application.services.impl.DefaultShippingService;
+import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.domain.model.LogisticsNetwork;
+import org.drmit.shortestpath.domain.model.ShippingDetails;
+import org.drmit.shortestpath.infrastructure.repository.RouteRepository;
+import org.drmit.shortestpath.presentation.converter.LogisticsNetworkConverter;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+/**
+ * ShippingController test case.
+ *
+ * @author Leandro Ferreira
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("classpath:applicationContext-test.xml")
+public class ShippingControllerTest {
+
+	/** Logistics network name. */
+	private static final String NETWORK = "Sample Logistics Network";
+
+	/** Executor rejecting every query, as a saturated one does. */
+	private static final Executor SATURATED_EXECUTOR = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			throw new RejectedExecutionException("Saturated");
+		}
+	};
+
+	/** Executor queueing every query, as a stuck one does. */
+	private static final Executor STUCK_EXECUTOR = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+		}
+	};
+
+	/** Shipping service. */
+	@Autowired
+	private ShippingService shippingService;
+
+	/** Route repository. */
+	@Autowired
+	private RouteRepository routeRepository;
+
+	/** Shipping rating service. */
+	@Autowired
+	private ShippingRatingService shippingRatingService;
+
+	/** Logistics network converter. */
+	@Autowired
+	private LogisticsNetworkConverter logisticsNetworkConverter;
+
+	/** Executor of the single route queries. */
+	@Autowired
+	@Qualifier("routeQueryExecutor")
+	private Executor routeQueryExecutor;
+
+	/** Executor of the bulk queries. */
+	@Autowired
+	@Qualifier("bulkQueryExecutor")
+	private Executor bulkQueryExecutor;
+
+	/**
+	 * Sets up the fixture.
+	 *
+	 * @throws Exception
+	 *             if an error occurs.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		// Registers the logistics network
+		shippingService.addLogisticsNetwork(new LogisticsNetwork(NETWORK,
+				Arrays.asList(new Leg("A", "B", 10), new Leg("B", "D", 15),
+						new Leg("A", "C", 20), new Leg("C", "D", 20), new Leg(
+								"B", "E", 50), new Leg("D", "E", 50))));
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.presentation.controller.ShippingController#addLogisticsNetwork(java.lang.String, java.io.Reader)}
+	 * .
+	 */
+	@Test
+	public void testAddLogisticsNetwork() throws Exception {
+		final MockMvc mockMvc = createMockMvc(shippingService,
+				routeQueryExecutor, bulkQueryExecutor);
+		mockMvc.perform(
+				post("/shipping/logisticsNetwork/{name}", "Posted")
+						.contentType(MediaType.TEXT_PLAIN).content(
+								"P1 P2 10\nP2 P3 10\n")).andExpect(
+				status().isOk());
+
+		// Posts the network again without its first leg
+		mockMvc.perform(
+				post("/shipping/logisticsNetwork/{name}", "Posted")
+						.contentType(MediaType.TEXT_PLAIN).content(
+								"P2 P3 5\n")).andExpect(status().isOk());
+
+		// Asserts that the posted network replaced the previous one
+		assertEquals(Arrays.asList(new Leg("P2", "P3", 5)),
+				routeRepository.findAllLegs("Posted"));
+		assertEquals(5, routeRepository.findAllLegs("Posted").get(0)
+				.getDistance(), 0.001);
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.presentation.controller.ShippingController#saveLocationCoordinates(java.lang.String, double, double)}
+	 * .
+	 */
+	@Test
+	public void testSaveLocationCoordinates() throws Exception {
+		final MockMvc mockMvc = createMockMvc(shippingService,
+				routeQueryExecutor, bulkQueryExecutor);
+		mockMvc.perform(
+				put("/shipping/locations/{location}/coordinates", "A").param(
+						"latitude", "-23.55").param("longitude", "-46.63"))
+				.andExpect(status().isOk());
+
+		// Asserts that coordinates out of range are rejected
+		mockMvc.perform(
+				put("/shipping/locations/{location}/coordinates", "A").param(
+						"latitude", "-123.55").param("longitude", "-46.63"))
+				.andExpect(status().isBadRequest());
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.presentation.controller.ShippingController#getShippingDetails(java.lang.String, java.io.Reader, javax.servlet.http.HttpServletResponse)}
+	 * .
+	 */
+	@Test
+	public void testGetShippingDetailsBatch() throws Exception {
+		final MockMvc mockMvc = createMockMvc(shippingService,
+				routeQueryExecutor, bulkQueryExecutor);
+
+		// Asserts that one line is streamed per order, in request order
+		mockMvc.perform(
+				post("/shipping/logisticsNetwork/{name}/shippingDetails/batch",
+						NETWORK).contentType(MediaType.TEXT_PLAIN).content(
+						"A D 10 2.5\n  A X 10 2.5\n\nA D 5 2.5\n"))
+				.andExpect(status().isOk())
+				.andExpect(
+						content().string(
+								"A D 25.0 6.25\nA X NO_ROUTE\nA D 25.0 12.5\n"));
+
+		// Asserts that malformed orders are rejected
+		mockMvc.perform(
+				post("/shipping/logisticsNetwork/{name}/shippingDetails/batch",
+						NETWORK).contentType(MediaType.TEXT_PLAIN).content(
+						"A D 10 2.5\nA D ten 2.5\n")).andExpect(
+				status().isBadRequest());
+		mockMvc.perform(
+				post("/shipping/logisticsNetwork/{name}/shippingDetails/batch",
+						NETWORK).contentType(MediaType.TEXT_PLAIN).content(
+						"A D 10\n")).andExpect(status().isBadRequest());
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.presentation.controller.ShippingController#getShippingDetails(java.lang.String, java.io.Reader, javax.servlet.http.HttpServletResponse)}
+	 * .
+	 */
+	@Test
+	public void testGetShippingDetailsBatchSaturated() throws Exception {
+		// Searches the batches on a saturated executor
+		final DefaultShippingService saturated = new DefaultShippingService(
+				routeRepository, shippingRatingService);
+		saturated.setBatchExecutor(SATURATED_EXECUTOR);
+		final MockMvc mockMvc = createMockMvc(saturated, routeQueryExecutor,
+				bulkQueryExecutor);
+
+		// Asserts that the batch is rejected as a whole
+		mockMvc.perform(
+				post("/shipping/logisticsNetwork/{name}/shippingDetails/batch",
+						NETWORK).contentType(MediaType.TEXT_PLAIN).content(
+						"A D 10 2.5\n")).andExpect(
+				status().isServiceUnavailable());
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.presentation.controller.ShippingController#getShippingDetails(java.lang.String, java.io.Reader, javax.servlet.http.HttpServletResponse)}
+	 * .
+	 */
+	@Test
+	public void testGetShippingDetailsBatchStreaming() throws Exception {
+		final DefaultShippingService windowed = new DefaultShippingService(
+				routeRepository, shippingRatingService);
+		windowed.setBatchExecutor(bulkQueryExecutor);
+		windowed.setBatchWindow(1);
+
+		// Asserts that a malformed order past the first window is answered in
+		// its place
+		createMockMvc(windowed, routeQueryExecutor, bulkQueryExecutor)
+				.perform(
+						post(
+								"/shipping/logisticsNetwork/{name}/shippingDetails/batch",
+								NETWORK).contentType(MediaType.TEXT_PLAIN)
+								.content(
+										"A D 10 2.5\nA D 10 2.5\nA D 10 2.5\n"
+												+ "A D ten 2.5\nA D 5 2.5\n"))
+				.andExpect(status().isOk())
+				.andExpect(
+						content().string(
+								"A D 25.0 6.25\nA D 25.0 6.25\nA D 25.0 6.25\n"
+										+ "ERROR Invalid quote format at line 4\n"
+										+ "A D 25.0 12.5\n"));
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.presentation.controller.ShippingController#getShippingDetails(java.lang.String, java.io.Reader, javax.servlet.http.HttpServletResponse)}
+	 * .
+	 */
+	@Test
+	public void testGetShippingDetailsBatchInterrupted() throws Exception {
+		final DefaultShippingService stuck = new DefaultShippingService(
+				routeRepository, shippingRatingService);
+		stuck.setBatchExecutor(STUCK_EXECUTOR);
+		stuck.setBatchWindow(1);
+		final MockMvc mockMvc = createMockMvc(stuck, routeQueryExecutor,
+				bulkQueryExecutor);
+
+		// Asserts that every order is answered when the request thread is
+		// interrupted while awaiting the first one
+		Thread.currentThread().interrupt();
+		try {
+			mockMvc.perform(
+					post(
+							"/shipping/logisticsNetwork/{name}/shippingDetails/batch",
+							NETWORK).contentType(MediaType.TEXT_PLAIN).content(
+							"A D 10 2.5\nA X 10 2.5\nA D ten 2.5\nB D 5 2.5\n"))
+					.andExpect(status().isOk())
+					.andExpect(
+							content().string(
+									"A D ERROR\nA X ERROR\n"
+											+ "ERROR Invalid quote format at line 3\n"
+											+ "B D ERROR\n"));
+		} finally {
+			Thread.interrupted();
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.presentation.controller.ShippingController#getShippingDetails(java.lang.String, java.lang.String, java.lang.String, double, double, boolean)}
+	 * .
+	 */
+	@Test
+	public void testGetShippingDetails() throws Exception {
+		final MockMvc mockMvc = createMockMvc(shippingService,
+				routeQueryExecutor, bulkQueryExecutor);
+
+		// Asserts that the query is answered off the request thread
+		MvcResult result = mockMvc
+				.perform(
+						get(
+								"/shipping/logisticsNetwork/{name}/shippingDetails/{origin}/{destination}",
+								NETWORK, "A", "D").param("vehicleMileage",
+								"10").param("fuelPrice", "2.5")
+								.param("distanceOnly", "true"))
+				.andExpect(request().asyncStarted()).andReturn();
+		final ShippingDetails shippingDetails = (ShippingDetails) result
+				.getAsyncResult(5000);
+		assertEquals(6.25, shippingDetails.getShippingRate(), 0.001);
+		assertEquals(25, shippingDetails.getShippingDistance(), 0.001);
+		assertNull(shippingDetails.getShippingRoute());
+
+		// Asserts that an unreachable destination is answered with no content
+		result = mockMvc
+				.perform(
+						get(
+								"/shipping/logisticsNetwork/{name}/shippingDetails/{origin}/{destination}",
+								NETWORK, "E", "A").param("vehicleMileage",
+								"10").param("fuelPrice", "2.5"))
+				.andExpect(request().asyncStarted()).andReturn();
+		result.getAsyncResult(5000);
+		mockMvc.perform(asyncDispatch(result)).andExpect(
+				status().isNoContent());
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.presentation.controller.ShippingController#getShippingDetails(java.lang.String, java.lang.String, java.lang.String, double, double, boolean)}
+	 * .
+	 */
+	@Test
+	public void testGetShippingDetailsSaturated() throws Exception {
+		final MockMvc mockMvc = createMockMvc(shippingService,
+				SATURATED_EXECUTOR, SATURATED_EXECUTOR);
+
+		// Asserts that single and bulk queries are rejected with 503
+		mockMvc.perform(
+				get(
+						"/shipping/logisticsNetwork/{name}/shippingDetails/{origin}/{destination}",
+						NETWORK, "A", "D").param("vehicleMileage", "10")
+						.param("fuelPrice", "2.5")).andExpect(
+				status().isServiceUnavailable());
+		mockMvc.perform(
+				get("/shipping/logisticsNetwork/{name}/shippingMatrix",
+						NETWORK).param("origins", "A,B")
+						.param("destinations", "D")
+						.param("vehicleMileage", "10")
+						.param("fuelPrice", "2.5")).andExpect(
+				status().isServiceUnavailable());
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.presentation.controller.ShippingController#getShippingDetails(java.lang.String, java.lang.String, java.lang.String, double, double, boolean)}
+	 * .
+	 */
+	@Test
+	public void testGetShippingDetailsTimeout() throws Exception {
+		final MockMvc mockMvc = createMockMvc(shippingService,
+				STUCK_EXECUTOR, STUCK_EXECUTOR);
+
+		// Times the query out while it is still queued
+		final MvcResult result = mockMvc
+				.perform(
+						get(
+								"/shipping/logisticsNetwork/{name}/shippingDetails/{origin}/{destination}",
+								NETWORK, "A", "D").param("vehicleMileage",
+								"10").param("fuelPrice", "2.5"))
+				.andExpect(request().asyncStarted()).andReturn();
+		final MockAsyncContext asyncContext = (MockAsyncContext) result
+				.getRequest().getAsyncContext();
+		for (AsyncListener listener : asyncContext.getListeners()) {
+			listener.onTimeout(new AsyncEvent(asyncContext));
+		}
+
+		// Asserts that the query is answered with 503
+		mockMvc.perform(asyncDispatch(result)).andExpect(
+				status().isServiceUnavailable());
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.presentation.controller.ShippingController#getShortestRoutesFrom(java.lang.String, java.lang.String, javax.servlet.http.HttpServletResponse)}
+	 * .
+	 */
+	@Test
+	public void testGetShortestRoutesFrom() throws Exception {
+		// Asserts that the routes are streamed, nearest locations first
+		createMockMvc(shippingService, routeQueryExecutor, bulkQueryExecutor)
+				.perform(
+						get("/shipping/logisticsNetwork/{name}/shortestRoutes/{origin}",
+								NETWORK, "C"))
+				.andExpect(status().isOk())
+				.andExpect(content().string("C 0.0\nD 20.0\nE 70.0\n"));
+
+		// Asserts that the search is rejected by a saturated executor
+		createMockMvc(shippingService, routeQueryExecutor, SATURATED_EXECUTOR)
+				.perform(
+						get("/shipping/logisticsNetwork/{name}/shortestRoutes/{origin}",
+								NETWORK, "C")).andExpect(
+						status().isServiceUnavailable());
+	}
+
+	/**
+	 * Creates a standalone MockMvc over a shipping controller.
+	 *
+	 * @param shippingService
+	 *            the shipping service of the controller.
+	 * @param routeQueryExecutor
+	 *            the executor of the single route queries.
+	 * @param bulkQueryExecutor
+	 *            the executor of the bulk queries.
+	 * @return the MockMvc.
+	 */
+	private MockMvc createMockMvc(ShippingService shippingService,
+			Executor routeQueryExecutor, Executor bulkQueryExecutor) {
+		final ShippingController controller = new ShippingController();
+		ReflectionTestUtils.setField(controller, "shippingService",
+				shippingService);
+		ReflectionTestUtils.setField(controller, "logisticsNetworkConverter",
+				logisticsNetworkConverter);
+		ReflectionTestUtils.setField(controller, "routeQueryExecutor",
+				routeQueryExecutor);
+		ReflectionTestUtils.setField(controller, "bulkQueryExecutor",
+				bulkQueryExecutor);
+		ReflectionTestUtils.setField(controller, "queryTimeout", 1000L);
+		return MockMvcBuilders.standaloneSetup(controller).build();
+	}
+
+}
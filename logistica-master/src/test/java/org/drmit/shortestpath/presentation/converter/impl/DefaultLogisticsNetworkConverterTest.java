@@ -0,0 +1,219 @@
+package org.drmit.shortestpath.presentation.converter.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.StringReader;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.drmit.shortestpath.domain.model.Leg;
+import org.drmit.shortestpath.domain.model.TravelTimeProfile;
+import org.junit.Test;
+
+/**
+ * DefaultLogisticsNetworkConverter test case.
+ * 
+ * @author Leandro Ferreira
+ */
+public class DefaultLogisticsNetworkConverterTest {
+
+	/** Converter under test. */
+	private final DefaultLogisticsNetworkConverter converter = new DefaultLogisticsNetworkConverter();
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.presentation.converter.impl.DefaultLogisticsNetworkConverter#readLegs(java.io.Reader)}
+	 * .
+	 */
+	@Test
+	public void testReadLegs() {
+		final Iterator<Leg> legs = converter.readLegs(new StringReader(
+				"A B 10\r\n\r\n B  D 15 \nA C 20"));
+
+		// Expected legs
+		final List<Leg> expectedLegs = new LinkedList<Leg>();
+		expectedLegs.add(new Leg("A", "B", 10));
+		expectedLegs.add(new Leg("B", "D", 15));
+		expectedLegs.add(new Leg("A", "C", 20));
+
+		// Asserts that the expected and the actual values are equals
+		for (Leg expectedLeg : expectedLegs) {
+			final Leg actualLeg = legs.next();
+			assertEquals(expectedLeg, actualLeg);
+			assertEquals(expectedLeg.getDistance(), actualLeg.getDistance(),
+					0.001);
+		}
+		assertFalse(legs.hasNext());
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.presentation.converter.impl.DefaultLogisticsNetworkConverter#parseLegs(java.lang.CharSequence)}
+	 * .
+	 */
+	@Test
+	public void testInvalidLine() {
+		try {
+			converter.parseLegs("A B 10\n\nB D\nA C 20");
+		} catch (IllegalArgumentException e) {
+			// Empty lines are not counted
+			assertEquals("Invalid leg format at line 2", e.getMessage());
+			return;
+		}
+		throw new AssertionError("IllegalArgumentException expected");
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.presentation.converter.impl.DefaultLogisticsNetworkConverter#parseLegs(java.lang.CharSequence)}
+	 * .
+	 */
+	@Test
+	public void testParseLegs() {
+		final List<Leg> legs = converter
+				.parseLegs("\tA B 10.5\rB_1 A 0.25\n\nA B_1 7 ");
+
+		assertEquals(3, legs.size());
+		assertEquals(10.5, legs.get(0).getDistance(), 0);
+		assertEquals(0.25, legs.get(1).getDistance(), 0);
+		assertEquals(7, legs.get(2).getDistance(), 0);
+		assertEquals(new Leg("A", "B_1", 7), legs.get(2));
+
+		// Names are interned
+		assertSame(legs.get(0).getOrigin(), legs.get(1).getDestination());
+		assertSame(legs.get(1).getOrigin(), legs.get(2).getDestination());
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.presentation.converter.impl.DefaultLogisticsNetworkConverter#parseLegs(java.lang.CharSequence)}
+	 * .
+	 */
+	@Test
+	public void testParseTravelTimeProfiles() {
+		final List<Leg> legs = converter
+				.parseLegs("A B 10 0=600,28800=3600.5,36000=600 \nB C 5");
+
+		// Asserts that the profile breakpoints follow the distance
+		final TravelTimeProfile profile = legs.get(0).getTravelTimeProfile();
+		assertEquals(3, profile.getBreakpointCount());
+		assertEquals(3600.5, profile.getTravelTime(28800), 0);
+		assertEquals(2100.25, profile.getTravelTime(14400), 0.001);
+		assertEquals(600, profile.getTravelTime(86400 + 50000), 0);
+		assertNull(legs.get(1).getTravelTimeProfile());
+
+		// Asserts that malformed and non-FIFO profiles are rejected
+		final String[] invalidProfiles = { "A B 1 0", "A B 1 0=", "A B 1 =5",
+				"A B 1 0=5,", "A B 1 0=5;10=5" };
+		for (String invalidProfile : invalidProfiles) {
+			try {
+				converter.parseLegs(invalidProfile);
+			} catch (IllegalArgumentException e) {
+				assertEquals(invalidProfile, "Invalid leg format at line 1",
+						e.getMessage());
+				continue;
+			}
+			throw new AssertionError("IllegalArgumentException expected for "
+					+ invalidProfile);
+		}
+		try {
+			converter.parseLegs("A B 1 0=5000,100=10");
+			throw new AssertionError("IllegalArgumentException expected");
+		} catch (IllegalArgumentException e) {
+			assertEquals(
+					"Invalid travel time profile at line 1: profile is not FIFO",
+					e.getMessage());
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.presentation.converter.impl.DefaultLogisticsNetworkConverter#parseLegs(java.lang.CharSequence)}
+	 * .
+	 */
+	@Test
+	public void testParseTollsAndRoadClasses() {
+		final List<Leg> legs = converter
+				.parseLegs("A B 10 toll=4.5 class=highway\nB C 5 class=urban 0=60\nC D 1");
+
+		// Asserts that the attributes follow the distance in any order
+		assertEquals(4.5, legs.get(0).getToll(), 0);
+		assertEquals("highway", legs.get(0).getRoadClass());
+		assertEquals(0, legs.get(1).getToll(), 0);
+		assertEquals("urban", legs.get(1).getRoadClass());
+		assertEquals(60, legs.get(1).getTravelTimeProfile().getTravelTime(0),
+				0);
+		assertNull(legs.get(2).getRoadClass());
+
+		// Asserts that unknown and empty attributes are rejected
+		final String[] invalidAttributes = { "A B 1 tolls=1", "A B 1 toll=",
+				"A B 1 class=", "A B 1 toll=1class=x", "A B 1 class=a-b" };
+		for (String invalidAttribute : invalidAttributes) {
+			try {
+				converter.parseLegs(invalidAttribute);
+			} catch (IllegalArgumentException e) {
+				assertEquals(invalidAttribute, "Invalid leg format at line 1",
+						e.getMessage());
+				continue;
+			}
+			throw new AssertionError("IllegalArgumentException expected for "
+					+ invalidAttribute);
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.presentation.converter.impl.DefaultLogisticsNetworkConverter#parseLegs(java.lang.CharSequence)}
+	 * .
+	 */
+	@Test
+	public void testInvalidLegs() {
+		final String[] invalidLegs = { "A B", "A B C", "A B 1.", "A B .5",
+				"A B -1", "A-B C 1", "AB 1", "A B 1 2", " ", "A B 1e3" };
+		for (String invalidLeg : invalidLegs) {
+			try {
+				converter.parseLegs("A B 10\n" + invalidLeg);
+			} catch (IllegalArgumentException e) {
+				assertEquals(invalidLeg, "Invalid leg format at line 2",
+						e.getMessage());
+				continue;
+			}
+			throw new AssertionError("IllegalArgumentException expected for "
+					+ invalidLeg);
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.drmit.shortestpath.presentation.converter.impl.DefaultLogisticsNetworkConverter#readLegs(java.io.Reader)}
+	 * .
+	 */
+	@Test
+	public void testReadLongLines() {
+		// Builds lines longer than the read buffer
+		final StringBuilder name = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			name.append((char) ('a' + i % 26));
+		}
+		final StringBuilder lexicalLegs = new StringBuilder();
+		for (int i = 0; i < 3; i++) {
+			lexicalLegs.append(name).append(i).append(' ').append(name)
+					.append(i + 1).append(' ').append(i).append(".5\r\n");
+		}
+
+		final Iterator<Leg> legs = converter.readLegs(new StringReader(
+				lexicalLegs.toString()));
+		for (int i = 0; i < 3; i++) {
+			final Leg leg = legs.next();
+			assertEquals(new Leg(name.toString() + i, name.toString() + (i + 1),
+					i + 0.5), leg);
+			assertEquals(i + 0.5, leg.getDistance(), 0);
+		}
+		assertFalse(legs.hasNext());
+	}
+
+}